@@ -0,0 +1,43 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Field of a {@link JsonModel}. Supported types are String, Integer, Long, Boolean, Double, Date, UUID,
+ * byte[] (as Base64), nested models, lists of models or strings and maps of strings.
+ * Other fields, including primitive ones, are still read and written by hand.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.FIELD)
+public @interface JsonField {
+
+    /**
+     * Get the JSON field name.
+     *
+     * @return JSON field name.
+     */
+    String value();
+
+    /**
+     * Whether the field is required: reading fails if it is missing and writing fails if it is null.
+     *
+     * @return true if the field is required.
+     */
+    boolean required() default false;
+
+    /**
+     * Whether a String value is likely repeated in many logs and shared through the string pool of the log serializer
+     * when read with a streaming reader.
+     *
+     * @return true if the value is pooled.
+     */
+    boolean pooled() default false;
+}
@@ -0,0 +1,545 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.codegen;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.tools.Diagnostic;
+
+/**
+ * Generate the serializer of each {@link JsonModel}.
+ * <p>
+ * The serializer of a model named Foo is a package private FooSerializer class with static methods to read and write
+ * the {@link JsonField} fields of a Foo: from a JSONObject, from a JsonReader (whole object or one field, so that
+ * sub-classes can read their own fields) and to a JSONStringer.
+ * It also compares and hashes these fields for equals and hashCode.
+ * <p>
+ * A list of models is read with the factory of its element type, a Foo list needs a json.FooFactory class next to Foo.
+ */
+public class ModelProcessor extends AbstractProcessor {
+
+    /**
+     * Suffix of generated class names.
+     */
+    static final String SERIALIZER_SUFFIX = "Serializer";
+
+    /**
+     * Streaming read of a pooled string, see {@link FieldType} for the template format.
+     */
+    private static final String POOLED_READ_STREAM = "model.$S(JSONUtils.readPooledString(reader));";
+
+    /**
+     * Check of a required value, see {@link FieldType} for the template format.
+     */
+    private static final String CHECK_REQUIRED = "JSONUtils.checkRequired(\"$N\", $G);";
+
+    /**
+     * Interface of nested models.
+     */
+    private static final String MODEL_CLASS_NAME = "com.microsoft.appcenter.ingestion.models.Model";
+
+    /**
+     * Package of model factories, relative to the model package.
+     */
+    private static final String FACTORY_PACKAGE = ".json.";
+
+    /**
+     * Suffix of model factory class names.
+     */
+    private static final String FACTORY_SUFFIX = "Factory";
+
+    /**
+     * Indentation of generated code.
+     */
+    private static final String INDENT = "    ";
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(JsonModel.class.getCanonicalName());
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnvironment) {
+        for (Element element : roundEnvironment.getElementsAnnotatedWith(JsonModel.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@JsonModel can only be used on classes");
+                continue;
+            }
+            TypeElement model = (TypeElement) element;
+            List<ModelField> fields = getFields(model);
+            if (fields == null) {
+                continue;
+            }
+            try {
+                generate(model, fields);
+            } catch (IOException e) {
+                error(model, "Cannot write serializer: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    /**
+     * Get the annotated fields in declaration order.
+     *
+     * @return fields, or null if one of them is invalid (an error has been reported).
+     */
+    private List<ModelField> getFields(TypeElement model) {
+        Set<String> methods = new HashSet<>();
+        for (Element member : processingEnv.getElementUtils().getAllMembers(model)) {
+            if (member.getKind() == ElementKind.METHOD && !member.getModifiers().contains(Modifier.STATIC)) {
+                methods.add(member.getSimpleName() + "/" + ((ExecutableElement) member).getParameters().size());
+            }
+        }
+        List<ModelField> fields = new ArrayList<>();
+        boolean valid = true;
+        for (Element member : model.getEnclosedElements()) {
+            JsonField annotation = member.getAnnotation(JsonField.class);
+            if (annotation == null || member.getKind() != ElementKind.FIELD) {
+                continue;
+            }
+            FieldType type = getFieldType(member.asType());
+            if (type == null) {
+                error(member, "Unsupported @JsonField type: " + member.asType());
+                valid = false;
+                continue;
+            }
+            if (annotation.pooled() && type != FieldType.STRING) {
+                error(member, "Only String fields can be pooled");
+                valid = false;
+                continue;
+            }
+            ModelField field = new ModelField((VariableElement) member, annotation, type);
+            if (type == FieldType.MODEL) {
+                TypeElement nestedModel = (TypeElement) processingEnv.getTypeUtils().asElement(member.asType());
+                if (nestedModel.getModifiers().contains(Modifier.ABSTRACT)) {
+                    error(member, "Nested models cannot be abstract: " + nestedModel.getQualifiedName());
+                    valid = false;
+                    continue;
+                }
+                field.typeName = nestedModel.getQualifiedName().toString();
+            } else if (type == FieldType.MODEL_LIST) {
+                TypeMirror elementType = ((DeclaredType) member.asType()).getTypeArguments().get(0);
+                TypeElement element = (TypeElement) processingEnv.getTypeUtils().asElement(elementType);
+                String packageName = processingEnv.getElementUtils().getPackageOf(element).getQualifiedName().toString();
+                String factory = packageName + FACTORY_PACKAGE + element.getSimpleName() + FACTORY_SUFFIX;
+                if (processingEnv.getElementUtils().getTypeElement(factory) == null) {
+                    error(member, "@JsonField needs " + factory + " to read " + element.getSimpleName() + " lists");
+                    valid = false;
+                    continue;
+                }
+                field.typeName = factory;
+            }
+            if (!methods.contains(field.getter + "/0") || !methods.contains(field.setter + "/1")) {
+                error(member, "@JsonField needs " + field.getter + "() and " + field.setter + "(value) methods");
+                valid = false;
+                continue;
+            }
+            fields.add(field);
+        }
+        return valid ? fields : null;
+    }
+
+    /**
+     * Get the type of a field.
+     *
+     * @return field type, or null if not supported.
+     */
+    private FieldType getFieldType(TypeMirror type) {
+        if (type.getKind() == TypeKind.ARRAY) {
+            return ((ArrayType) type).getComponentType().getKind() == TypeKind.BYTE ? FieldType.BYTES : null;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        String name = getClassName(type);
+        List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+        if (List.class.getName().equals(name) && arguments.size() == 1) {
+            TypeMirror elementType = arguments.get(0);
+            if (String.class.getName().equals(getClassName(elementType))) {
+                return FieldType.STRING_LIST;
+            }
+            return isModel(elementType) ? FieldType.MODEL_LIST : null;
+        }
+        if (Map.class.getName().equals(name) && arguments.size() == 2) {
+            boolean stringMap = String.class.getName().equals(getClassName(arguments.get(0)))
+                    && String.class.getName().equals(getClassName(arguments.get(1)));
+            return stringMap ? FieldType.STRING_MAP : null;
+        }
+        for (FieldType fieldType : FieldType.values()) {
+            if (name.equals(fieldType.className)) {
+                return fieldType;
+            }
+        }
+        return isModel(type) ? FieldType.MODEL : null;
+    }
+
+    private static String getClassName(TypeMirror type) {
+        if (type.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        return ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString();
+    }
+
+    private boolean isModel(TypeMirror type) {
+        TypeElement model = processingEnv.getElementUtils().getTypeElement(MODEL_CLASS_NAME);
+        return type.getKind() == TypeKind.DECLARED && model != null
+                && processingEnv.getTypeUtils().isAssignable(type, model.asType());
+    }
+
+    private void generate(TypeElement model, List<ModelField> fields) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(model).getQualifiedName().toString();
+        String modelName = model.getSimpleName().toString();
+        String className = modelName + SERIALIZER_SUFFIX;
+        Set<FieldType> types = new HashSet<>();
+        for (ModelField field : fields) {
+            types.add(field.type);
+        }
+        Code code = new Code();
+        code.line("// Generated by " + ModelProcessor.class.getName() + " from " + model.getQualifiedName() + ", do not edit.")
+                .line("package " + packageName + ";")
+                .line("")
+                .line("import android.util.JsonReader;")
+                .line("");
+        if (types.contains(FieldType.DATE)) {
+            code.line("import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;");
+        }
+        code.line("import com.microsoft.appcenter.ingestion.models.json.JSONUtils;")
+                .line("")
+                .line("import org.json.JSONException;")
+                .line("import org.json.JSONObject;")
+                .line("import org.json.JSONStringer;")
+                .line("")
+                .line("import java.io.IOException;");
+        if (types.contains(FieldType.BYTES)) {
+            code.line("import java.util.Arrays;");
+        }
+        if (types.contains(FieldType.UUID)) {
+            code.line("import java.util.UUID;");
+        }
+        code.line("")
+                .line("@SuppressWarnings(\"unused\")")
+                .open("final class " + className)
+                .line("")
+                .open("private " + className + "()")
+                .close()
+                .line("");
+
+        /* JSON tree. */
+        code.open("static void read(" + modelName + " model, JSONObject object) throws JSONException");
+        for (ModelField field : fields) {
+            code.lines(field.expand(field.required ? field.type.readRequired : field.type.readOptional));
+        }
+        code.close().line("");
+
+        /* Streaming JSON. */
+        code.open("static void read(" + modelName + " model, JsonReader reader) throws JSONException, IOException")
+                .line("reader.beginObject();")
+                .open("while (reader.hasNext())")
+                .open("if (!readField(model, reader, reader.nextName()))")
+                .line("reader.skipValue();")
+                .close()
+                .close()
+                .line("reader.endObject();")
+                .line("checkRequired(model);")
+                .close()
+                .line("");
+        code.open("static boolean readField(" + modelName + " model, JsonReader reader, String name) throws JSONException, IOException")
+                .open("switch (name)");
+        for (ModelField field : fields) {
+            code.line("case \"" + field.name + "\": {").indent()
+                    .lines(field.expand(field.pooled ? POOLED_READ_STREAM : field.type.readStream))
+                    .line("return true;")
+                    .unindent().line("}")
+                    .line("");
+        }
+        code.line("default:").indent()
+                .line("return false;")
+                .unindent()
+                .close()
+                .close()
+                .line("");
+        code.open("static void checkRequired(" + modelName + " model) throws JSONException");
+        for (ModelField field : fields) {
+            if (field.required) {
+                code.line("JSONUtils.checkRequired(\"" + field.name + "\", model." + field.getter + "());");
+            }
+        }
+        code.close().line("");
+        code.open("static void write(" + modelName + " model, JSONStringer writer) throws JSONException");
+        for (ModelField field : fields) {
+            code.lines(field.expand(field.required ? field.type.writeRequired : field.type.writeOptional));
+        }
+        code.close().line("");
+
+        /* Equality. */
+        code.line("@SuppressWarnings(\"EqualsReplaceableByObjectsCall\")")
+                .open("static boolean equals(" + modelName + " a, " + modelName + " b)");
+        for (ModelField field : fields) {
+            String a = "a." + field.getter + "()";
+            String b = "b." + field.getter + "()";
+            if (field.type == FieldType.BYTES) {
+                code.open("if (!Arrays.equals(" + a + ", " + b + "))");
+            } else {
+                code.open("if (" + a + " != null ? !" + a + ".equals(" + b + ") : " + b + " != null)");
+            }
+            code.line("return false;")
+                    .close();
+        }
+        code.line("return true;")
+                .close()
+                .line("");
+        code.open("static int hashCode(" + modelName + " model)")
+                .line("int result = 0;");
+        for (ModelField field : fields) {
+            String value = "model." + field.getter + "()";
+            if (field.type == FieldType.BYTES) {
+                code.line("result = 31 * result + Arrays.hashCode(" + value + ");");
+            } else {
+                code.line("result = 31 * result + (" + value + " != null ? " + value + ".hashCode() : 0);");
+            }
+        }
+        code.line("return result;")
+                .close()
+                .close();
+        Writer writer = processingEnv.getFiler().createSourceFile(packageName + "." + className, model).openWriter();
+        try {
+            writer.write(code.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Supported field types with the code reading and writing them.
+     * In code templates, $N is the JSON name, $G the getter call, $S the setter name
+     * and $T the nested model class or the list element factory class.
+     */
+    enum FieldType {
+
+        STRING("java.lang.String",
+                "model.$S(object.getString(\"$N\"));",
+                "model.$S(object.optString(\"$N\", null));",
+                "model.$S(JSONUtils.readString(reader));",
+                "writer.key(\"$N\").value($G);"),
+
+        INTEGER("java.lang.Integer",
+                "model.$S(object.getInt(\"$N\"));",
+                "model.$S(JSONUtils.readInteger(object, \"$N\"));",
+                "model.$S(JSONUtils.readInteger(reader));",
+                "writer.key(\"$N\").value($G);"),
+
+        LONG("java.lang.Long",
+                "model.$S(object.getLong(\"$N\"));",
+                "model.$S(JSONUtils.readLong(object, \"$N\"));",
+                "model.$S(JSONUtils.readLong(reader));",
+                "writer.key(\"$N\").value($G);"),
+
+        BOOLEAN("java.lang.Boolean",
+                "model.$S(object.getBoolean(\"$N\"));",
+                "model.$S(JSONUtils.readBoolean(object, \"$N\"));",
+                "model.$S(JSONUtils.readBoolean(reader));",
+                "writer.key(\"$N\").value($G);"),
+
+        DOUBLE("java.lang.Double",
+                "model.$S(object.getDouble(\"$N\"));",
+                "model.$S(JSONUtils.readDouble(object, \"$N\"));",
+                "model.$S(JSONUtils.readDouble(reader));",
+                "writer.key(\"$N\").value($G);"),
+
+        DATE("java.util.Date",
+                "model.$S(JSONDateUtils.toDate(object.getString(\"$N\")));",
+                "model.$S(object.has(\"$N\") ? JSONDateUtils.toDate(object.getString(\"$N\")) : null);",
+                "String value = JSONUtils.readString(reader);\nmodel.$S(value != null ? JSONDateUtils.toDate(value) : null);",
+                "writer.key(\"$N\").value(JSONDateUtils.toString($G));",
+                "if ($G != null) {\n    writer.key(\"$N\").value(JSONDateUtils.toString($G));\n}"),
+
+        UUID("java.util.UUID",
+                "model.$S(UUID.fromString(object.getString(\"$N\")));",
+                "model.$S(object.has(\"$N\") ? UUID.fromString(object.getString(\"$N\")) : null);",
+                "String value = JSONUtils.readString(reader);\nmodel.$S(value != null ? UUID.fromString(value) : null);",
+                CHECK_REQUIRED + "\nwriter.key(\"$N\").value($G.toString());",
+                "if ($G != null) {\n    writer.key(\"$N\").value($G.toString());\n}"),
+
+        BYTES(null,
+                "model.$S(JSONUtils.decodeBase64(object.getString(\"$N\")));",
+                "model.$S(object.has(\"$N\") ? JSONUtils.decodeBase64(object.getString(\"$N\")) : null);",
+                "String value = JSONUtils.readString(reader);\nmodel.$S(value != null ? JSONUtils.decodeBase64(value) : null);",
+                CHECK_REQUIRED + "\nwriter.key(\"$N\").value(JSONUtils.encodeBase64($G));",
+                "if ($G != null) {\n    writer.key(\"$N\").value(JSONUtils.encodeBase64($G));\n}"),
+
+        MODEL(null,
+                "if (object.has(\"$N\")) {\n    $T value = new $T();\n    value.read(object.getJSONObject(\"$N\"));\n    model.$S(value);\n}\n" + CHECK_REQUIRED,
+                "if (object.has(\"$N\")) {\n    $T value = new $T();\n    value.read(object.getJSONObject(\"$N\"));\n    model.$S(value);\n}",
+                "$T value = new $T();\nvalue.read(reader);\nmodel.$S(value);",
+                CHECK_REQUIRED + "\nwriter.key(\"$N\").object();\n$G.write(writer);\nwriter.endObject();",
+                "if ($G != null) {\n    writer.key(\"$N\").object();\n    $G.write(writer);\n    writer.endObject();\n}"),
+
+        MODEL_LIST(null,
+                "model.$S(JSONUtils.readArray(object, \"$N\", $T.getInstance()));\n" + CHECK_REQUIRED,
+                "model.$S(JSONUtils.readArray(object, \"$N\", $T.getInstance()));",
+                "model.$S(JSONUtils.readArray(reader, $T.getInstance()));",
+                CHECK_REQUIRED + "\nJSONUtils.writeArray(writer, \"$N\", $G);",
+                "JSONUtils.writeArray(writer, \"$N\", $G);"),
+
+        STRING_LIST(null,
+                "model.$S(JSONUtils.readStringArray(object, \"$N\"));\n" + CHECK_REQUIRED,
+                "model.$S(JSONUtils.readStringArray(object, \"$N\"));",
+                "model.$S(JSONUtils.readStringArray(reader));",
+                CHECK_REQUIRED + "\nJSONUtils.writeStringArray(writer, \"$N\", $G);",
+                "JSONUtils.writeStringArray(writer, \"$N\", $G);"),
+
+        STRING_MAP(null,
+                "model.$S(JSONUtils.readMap(object, \"$N\"));\n" + CHECK_REQUIRED,
+                "model.$S(JSONUtils.readMap(object, \"$N\"));",
+                "model.$S(JSONUtils.readMap(reader));",
+                CHECK_REQUIRED + "\nJSONUtils.writeMap(writer, \"$N\", $G);",
+                "JSONUtils.writeMap(writer, \"$N\", $G);");
+
+        /**
+         * Class matched by this type, null if the type is matched by {@link ModelProcessor#getFieldType}.
+         */
+        final String className;
+
+        final String readRequired;
+
+        final String readOptional;
+
+        final String readStream;
+
+        final String writeRequired;
+
+        final String writeOptional;
+
+        FieldType(String className, String readRequired, String readOptional, String readStream, String writeRequired) {
+            this(className, readRequired, readOptional, readStream, writeRequired, "JSONUtils.write(writer, \"$N\", $G);");
+        }
+
+        FieldType(String className, String readRequired, String readOptional, String readStream, String writeRequired, String writeOptional) {
+            this.className = className;
+            this.readRequired = readRequired;
+            this.readOptional = readOptional;
+            this.readStream = readStream;
+            this.writeRequired = writeRequired;
+            this.writeOptional = writeOptional;
+        }
+    }
+
+    private static class ModelField {
+
+        final String name;
+
+        final boolean required;
+
+        final boolean pooled;
+
+        final FieldType type;
+
+        final String getter;
+
+        final String setter;
+
+        /**
+         * Nested model class or list element factory class, null for other types.
+         */
+        String typeName;
+
+        ModelField(VariableElement field, JsonField annotation, FieldType type) {
+            String fieldName = field.getSimpleName().toString();
+            String capitalized = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            this.name = annotation.value();
+            this.required = annotation.required();
+            this.pooled = annotation.pooled();
+            this.type = type;
+            this.getter = "get" + capitalized;
+            this.setter = "set" + capitalized;
+        }
+
+        String expand(String template) {
+            String code = template.replace("$N", name).replace("$G", "model." + getter + "()").replace("$S", setter);
+            return typeName != null ? code.replace("$T", typeName) : code;
+        }
+    }
+
+    /**
+     * Generated code with indentation.
+     */
+    private static class Code {
+
+        private final StringBuilder mBuilder = new StringBuilder();
+
+        private int mDepth;
+
+        Code line(String line) {
+            if (!line.isEmpty()) {
+                for (int i = 0; i < mDepth; i++) {
+                    mBuilder.append(INDENT);
+                }
+            }
+            mBuilder.append(line).append('\n');
+            return this;
+        }
+
+        Code lines(String lines) {
+            for (String line : lines.split("\n")) {
+                line(line);
+            }
+            return this;
+        }
+
+        Code indent() {
+            mDepth++;
+            return this;
+        }
+
+        Code unindent() {
+            mDepth--;
+            return this;
+        }
+
+        Code open(String declaration) {
+            return line(declaration + " {").indent();
+        }
+
+        Code close() {
+            return unindent().line("}");
+        }
+
+        @Override
+        public String toString() {
+            return mBuilder.toString();
+        }
+    }
+}
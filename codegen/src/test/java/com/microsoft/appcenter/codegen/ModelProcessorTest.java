@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.codegen;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ModelProcessorTest {
+
+    /**
+     * Minimal declarations of the Android, JSON and SDK classes used by generated code, so that it can be compiled,
+     * and of models nested in the tested ones.
+     */
+    private static final String[][] STUBS = {
+            {"android/util/JsonReader", "package android.util; public class JsonReader {"
+                    + " public void beginObject() {} public void endObject() {} public boolean hasNext() { return false; }"
+                    + " public String nextName() { return null; } public void skipValue() {} }"},
+            {"org/json/JSONException", "package org.json; public class JSONException extends Exception {"
+                    + " public JSONException(String message) {} }"},
+            {"org/json/JSONObject", "package org.json; public class JSONObject {"
+                    + " public boolean has(String name) { return false; }"
+                    + " public String getString(String name) throws JSONException { return null; }"
+                    + " public String optString(String name, String fallback) { return null; }"
+                    + " public int getInt(String name) throws JSONException { return 0; }"
+                    + " public long getLong(String name) throws JSONException { return 0; }"
+                    + " public boolean getBoolean(String name) throws JSONException { return false; }"
+                    + " public double getDouble(String name) throws JSONException { return 0; }"
+                    + " public JSONObject getJSONObject(String name) throws JSONException { return null; } }"},
+            {"org/json/JSONStringer", "package org.json; public class JSONStringer {"
+                    + " public JSONStringer key(String name) throws JSONException { return this; }"
+                    + " public JSONStringer value(Object value) throws JSONException { return this; }"
+                    + " public JSONStringer object() throws JSONException { return this; }"
+                    + " public JSONStringer endObject() throws JSONException { return this; } }"},
+            {"com/microsoft/appcenter/ingestion/models/Model", "package com.microsoft.appcenter.ingestion.models;"
+                    + " import android.util.JsonReader; import org.json.*;"
+                    + " public interface Model {"
+                    + " void read(JSONObject object) throws JSONException;"
+                    + " void read(JsonReader reader) throws JSONException, java.io.IOException;"
+                    + " void write(JSONStringer writer) throws JSONException; }"},
+            {"com/microsoft/appcenter/ingestion/models/json/ModelFactory", "package com.microsoft.appcenter.ingestion.models.json;"
+                    + " import com.microsoft.appcenter.ingestion.models.Model; import java.util.List;"
+                    + " public interface ModelFactory<M extends Model> { M create(); List<M> createList(int capacity); }"},
+            {"com/microsoft/appcenter/ingestion/models/json/JSONUtils", "package com.microsoft.appcenter.ingestion.models.json;"
+                    + " import android.util.JsonReader; import com.microsoft.appcenter.ingestion.models.Model; import org.json.*; import java.util.*;"
+                    + " public class JSONUtils {"
+                    + " public static Integer readInteger(JSONObject object, String name) { return null; }"
+                    + " public static Long readLong(JSONObject object, String name) { return null; }"
+                    + " public static Boolean readBoolean(JSONObject object, String name) { return null; }"
+                    + " public static Double readDouble(JSONObject object, String name) { return null; }"
+                    + " public static String readString(JsonReader reader) { return null; }"
+                    + " public static String readPooledString(JsonReader reader) { return null; }"
+                    + " public static Integer readInteger(JsonReader reader) { return null; }"
+                    + " public static Long readLong(JsonReader reader) { return null; }"
+                    + " public static Boolean readBoolean(JsonReader reader) { return null; }"
+                    + " public static Double readDouble(JsonReader reader) { return null; }"
+                    + " public static Map<String, String> readMap(JSONObject object, String key) { return null; }"
+                    + " public static Map<String, String> readMap(JsonReader reader) { return null; }"
+                    + " public static <M extends Model> List<M> readArray(JSONObject object, String key, ModelFactory<M> factory) { return null; }"
+                    + " public static <M extends Model> List<M> readArray(JsonReader reader, ModelFactory<M> factory) { return null; }"
+                    + " public static List<String> readStringArray(JSONObject object, String key) { return null; }"
+                    + " public static List<String> readStringArray(JsonReader reader) { return null; }"
+                    + " public static byte[] decodeBase64(String value) throws JSONException { return null; }"
+                    + " public static String encodeBase64(byte[] value) { return null; }"
+                    + " public static void checkRequired(String name, Object value) throws JSONException {}"
+                    + " public static void write(JSONStringer writer, String key, Object value) throws JSONException {}"
+                    + " public static void writeMap(JSONStringer writer, String key, Map<String, String> value) throws JSONException {}"
+                    + " public static void writeArray(JSONStringer writer, String key, List<? extends Model> value) throws JSONException {}"
+                    + " public static void writeStringArray(JSONStringer writer, String key, List<String> value) throws JSONException {} }"},
+            {"com/microsoft/appcenter/ingestion/models/json/JSONDateUtils", "package com.microsoft.appcenter.ingestion.models.json;"
+                    + " import java.util.Date; import org.json.JSONException;"
+                    + " public class JSONDateUtils {"
+                    + " public static Date toDate(String value) throws JSONException { return null; }"
+                    + " public static String toString(Date date) throws JSONException { return null; } }"},
+            {"test/Nested", "package test; import android.util.JsonReader; import org.json.*;"
+                    + " public class Nested implements com.microsoft.appcenter.ingestion.models.Model {"
+                    + " public void read(JSONObject object) {} public void read(JsonReader reader) {} public void write(JSONStringer writer) {} }"},
+            {"test/json/NestedFactory", "package test.json; import com.microsoft.appcenter.ingestion.models.json.ModelFactory; import test.Nested;"
+                    + " public class NestedFactory { public static ModelFactory<Nested> getInstance() { return null; } }"},
+            {"test/Other", "package test; import android.util.JsonReader; import org.json.*;"
+                    + " public class Other implements com.microsoft.appcenter.ingestion.models.Model {"
+                    + " public void read(JSONObject object) {} public void read(JsonReader reader) {} public void write(JSONStringer writer) {} }"}
+    };
+
+    private static JavaFileObject source(String path, final String code) {
+        return new SimpleJavaFileObject(URI.create("string:///" + path + ".java"), JavaFileObject.Kind.SOURCE) {
+
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return code;
+            }
+        };
+    }
+
+    private static String model(String annotation, String fields) {
+        return "package test;\n"
+                + "import com.microsoft.appcenter.codegen.*;\n"
+                + "import java.util.*;\n"
+                + annotation + "\n"
+                + "public class Model {\n"
+                + fields + "\n"
+                + "}\n";
+    }
+
+    private static String accessors(String type, String name) {
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        return "public " + type + " get" + capitalized + "() { return " + name + "; }\n"
+                + "public void set" + capitalized + "(" + type + " value) { " + name + " = value; }\n";
+    }
+
+    /**
+     * Compile a model with the processor.
+     *
+     * @param model          model source.
+     * @param generated      receives the generated serializer source, if any.
+     * @param errorsReceiver receives the error messages.
+     */
+    private static void compile(String model, StringBuilder generated, List<String> errorsReceiver) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        File sourceOutput = Files.createTempDirectory("codegen").toFile();
+        File classOutput = Files.createTempDirectory("codegen").toFile();
+        List<JavaFileObject> sources = new ArrayList<>();
+        for (String[] stub : STUBS) {
+            sources.add(source(stub[0], stub[1]));
+        }
+        sources.add(source("test/Model", model));
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = Arrays.asList("-d", classOutput.getPath(), "-s", sourceOutput.getPath(), "-classpath", System.getProperty("java.class.path"));
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, sources);
+        task.setProcessors(Collections.singletonList(new ModelProcessor()));
+        task.call();
+        for (Diagnostic<? extends JavaFileObject> diagnostic : diagnostics.getDiagnostics()) {
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                errorsReceiver.add(diagnostic.getMessage(null));
+            }
+        }
+        File serializer = new File(sourceOutput, "test/Model" + ModelProcessor.SERIALIZER_SUFFIX + ".java");
+        if (serializer.exists()) {
+            generated.append(new String(Files.readAllBytes(serializer.toPath()), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    public void generateSerializer() throws IOException {
+        String model = model("@JsonModel",
+                "@JsonField(value = \"name\", required = true, pooled = true) private String name;\n"
+                        + accessors("String", "name")
+                        + "@JsonField(\"count\") private Integer count;\n"
+                        + accessors("Integer", "count")
+                        + "@JsonField(\"seq\") private Long seq;\n"
+                        + accessors("Long", "seq")
+                        + "@JsonField(\"flag\") private Boolean flag;\n"
+                        + accessors("Boolean", "flag")
+                        + "@JsonField(\"ratio\") private Double ratio;\n"
+                        + accessors("Double", "ratio")
+                        + "@JsonField(value = \"timestamp\", required = true) private Date timestamp;\n"
+                        + accessors("Date", "timestamp")
+                        + "@JsonField(\"id\") private UUID id;\n"
+                        + accessors("UUID", "id")
+                        + "private String other;\n");
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        compile(model, generated, errors);
+
+        /* Generated code compiles against the stubs. */
+        assertEquals(new ArrayList<String>(), errors);
+        String code = generated.toString();
+
+        /* Fields are read with the same helpers as hand-written models. */
+        assertTrue(code, code.contains("model.setName(object.getString(\"name\"));"));
+        assertTrue(code, code.contains("model.setCount(JSONUtils.readInteger(object, \"count\"));"));
+        assertTrue(code, code.contains("model.setName(JSONUtils.readPooledString(reader));"));
+        assertTrue(code, code.contains("model.setSeq(JSONUtils.readLong(reader));"));
+        assertTrue(code, code.contains("model.setTimestamp(JSONDateUtils.toDate(object.getString(\"timestamp\")));"));
+
+        /* Required fields are checked and written as is, optional ones only when set. */
+        assertTrue(code, code.contains("JSONUtils.checkRequired(\"name\", model.getName());"));
+        assertTrue(code, code.contains("JSONUtils.checkRequired(\"timestamp\", model.getTimestamp());"));
+        assertFalse(code, code.contains("JSONUtils.checkRequired(\"count\""));
+        assertTrue(code, code.contains("writer.key(\"name\").value(model.getName());"));
+        assertTrue(code, code.contains("JSONUtils.write(writer, \"ratio\", model.getRatio());"));
+        assertTrue(code, code.contains("writer.key(\"id\").value(model.getId().toString());"));
+
+        /* Fields without annotation are left to the model. */
+        assertFalse(code, code.contains("other"));
+        assertTrue(code, code.contains("static boolean equals(Model a, Model b)"));
+        assertTrue(code, code.contains("static int hashCode(Model model)"));
+    }
+
+    @Test
+    public void generateNestedAndCollectionFields() throws IOException {
+        String model = model("@JsonModel",
+                "@JsonField(\"nested\") private Nested nested;\n"
+                        + accessors("Nested", "nested")
+                        + "@JsonField(value = \"nestedList\", required = true) private List<Nested> nestedList;\n"
+                        + accessors("List<Nested>", "nestedList")
+                        + "@JsonField(\"names\") private List<String> names;\n"
+                        + accessors("List<String>", "names")
+                        + "@JsonField(\"properties\") private Map<String, String> properties;\n"
+                        + accessors("Map<String, String>", "properties")
+                        + "@JsonField(value = \"data\", required = true) private byte[] data;\n"
+                        + accessors("byte[]", "data"));
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        compile(model, generated, errors);
+        assertEquals(new ArrayList<String>(), errors);
+        String code = generated.toString();
+
+        /* Nested models are read only when present and written as objects. */
+        assertTrue(code, code.contains("if (object.has(\"nested\")) {"));
+        assertTrue(code, code.contains("test.Nested value = new test.Nested();"));
+        assertTrue(code, code.contains("writer.key(\"nested\").object();"));
+
+        /* Model lists use the factory next to the element model. */
+        assertTrue(code, code.contains("model.setNestedList(JSONUtils.readArray(reader, test.json.NestedFactory.getInstance()));"));
+        assertTrue(code, code.contains("JSONUtils.checkRequired(\"nestedList\", model.getNestedList());"));
+        assertTrue(code, code.contains("JSONUtils.writeArray(writer, \"nestedList\", model.getNestedList());"));
+
+        /* String collections and Base64 bytes use the JSON utilities. */
+        assertTrue(code, code.contains("model.setNames(JSONUtils.readStringArray(object, \"names\"));"));
+        assertTrue(code, code.contains("JSONUtils.writeMap(writer, \"properties\", model.getProperties());"));
+        assertTrue(code, code.contains("model.setData(JSONUtils.decodeBase64(object.getString(\"data\")));"));
+        assertTrue(code, code.contains("writer.key(\"data\").value(JSONUtils.encodeBase64(model.getData()));"));
+
+        /* Arrays are compared by content. */
+        assertTrue(code, code.contains("if (!Arrays.equals(a.getData(), b.getData())) {"));
+        assertTrue(code, code.contains("result = 31 * result + Arrays.hashCode(model.getData());"));
+    }
+
+    @Test
+    public void missingListFactory() throws IOException {
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        compile(model("@JsonModel", "@JsonField(\"others\") private List<Other> others;\n" + accessors("List<Other>", "others")), generated, errors);
+        assertEquals(Arrays.asList("@JsonField needs test.json.OtherFactory to read Other lists"), errors);
+        assertEquals(0, generated.length());
+    }
+
+    @Test
+    public void abstractNestedModel() throws IOException {
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        String type = "com.microsoft.appcenter.ingestion.models.Model";
+        compile(model("@JsonModel", "@JsonField(\"nested\") private " + type + " nested;\n" + accessors(type, "nested")), generated, errors);
+        assertEquals(Arrays.asList("Nested models cannot be abstract: " + type), errors);
+        assertEquals(0, generated.length());
+    }
+
+    @Test
+    public void fieldsInDeclarationOrder() throws IOException {
+        String model = model("@JsonModel",
+                "@JsonField(\"b\") private String b;\n"
+                        + accessors("String", "b")
+                        + "@JsonField(\"a\") private String a;\n"
+                        + accessors("String", "a"));
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        compile(model, generated, errors);
+        assertEquals(new ArrayList<String>(), errors);
+        String code = generated.toString();
+        assertTrue(code, code.indexOf("JSONUtils.write(writer, \"b\"") < code.indexOf("JSONUtils.write(writer, \"a\""));
+    }
+
+    @Test
+    public void unsupportedType() throws IOException {
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        compile(model("@JsonModel", "@JsonField(\"map\") private Map<String, Object> map;\n" + accessors("Map<String, Object>", "map")), generated, errors);
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0), errors.get(0).startsWith("Unsupported @JsonField type"));
+        assertEquals(0, generated.length());
+    }
+
+    @Test
+    public void pooledNonString() throws IOException {
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        compile(model("@JsonModel", "@JsonField(value = \"count\", pooled = true) private Integer count;\n" + accessors("Integer", "count")), generated, errors);
+        assertEquals(Arrays.asList("Only String fields can be pooled"), errors);
+        assertEquals(0, generated.length());
+    }
+
+    @Test
+    public void missingAccessors() throws IOException {
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        compile(model("@JsonModel", "@JsonField(\"name\") private String name;\npublic String getName() { return name; }\n"), generated, errors);
+        assertEquals(Arrays.asList("@JsonField needs getName() and setName(value) methods"), errors);
+        assertEquals(0, generated.length());
+    }
+
+    @Test
+    public void classesOnly() throws IOException {
+        StringBuilder generated = new StringBuilder();
+        List<String> errors = new ArrayList<>();
+        String model = "package test;\n"
+                + "import com.microsoft.appcenter.codegen.*;\n"
+                + "@JsonModel\n"
+                + "public interface Model {\n"
+                + "}\n";
+        compile(model, generated, errors);
+        assertEquals(Arrays.asList("@JsonModel can only be used on classes"), errors);
+        assertEquals(0, generated.length());
+    }
+}
@@ -138,5 +138,45 @@ public class AnalyticsSerializerTest {
         android.util.Log.v(TAG, payload);
         LogContainer actualContainer = serializer.deserializeContainer(payload, null);
         Assert.assertEquals(expectedContainer, actualContainer);
+
+        /* Streaming each log gives the same result. */
+        for (Log log : logs) {
+            Assert.assertEquals(log, serializer.deserializeLog(serializer.serializeLog(log), null));
+        }
+    }
+
+    @Test
+    public void typedPropertiesInAnyOrder() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(EventLog.TYPE, new EventLogFactory());
+        EventLog eventLog = (EventLog) serializer.deserializeLog("{" +
+                "\"typedProperties\": [" +
+                "{\"name\": \"n1\", \"value\": 42, \"type\": \"long\"}," +
+                "{\"type\": \"string\", \"name\": \"n2\", \"value\": \"value\"}" +
+                "]," +
+                "\"name\": \"event\"," +
+                "\"id\": \"" + UUID.randomUUID() + "\"," +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"type\": \"event\"" +
+                "}", null);
+        List<TypedProperty> properties = eventLog.getTypedProperties();
+        Assert.assertEquals(2, properties.size());
+        Assert.assertEquals("n1", properties.get(0).getName());
+        Assert.assertEquals(42L, ((LongTypedProperty) properties.get(0)).getValue());
+        Assert.assertEquals("n2", properties.get(1).getName());
+        Assert.assertEquals("value", ((StringTypedProperty) properties.get(1)).getValue());
+    }
+
+    @Test(expected = JSONException.class)
+    public void typedPropertyWithoutValue() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(EventLog.TYPE, new EventLogFactory());
+        serializer.deserializeLog("{" +
+                "\"type\": \"event\"," +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"id\": \"" + UUID.randomUUID() + "\"," +
+                "\"name\": \"event\"," +
+                "\"typedProperties\": [{\"type\": \"boolean\", \"name\": \"n1\"}]" +
+                "}", null);
     }
 }
\ No newline at end of file
@@ -16,6 +16,7 @@ import com.microsoft.appcenter.AbstractAppCenterService;
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.analytics.channel.AnalyticsBackpressureListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
@@ -27,6 +28,8 @@ import com.microsoft.appcenter.analytics.ingestion.models.json.PageLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaEventLogFactory;
+import com.microsoft.appcenter.channel.AbstractChannelListener;
+import com.microsoft.appcenter.channel.BackpressurePolicy;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogFactory;
@@ -38,7 +41,8 @@ import com.microsoft.appcenter.utils.async.DefaultAppCenterFuture;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.lang.ref.WeakReference;
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -94,6 +98,18 @@ public class Analytics extends AbstractAppCenterService {
     @VisibleForTesting
     static final int MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS = 24 * 60 * 60;
 
+    /**
+     * Default backpressure policy.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_BACKPRESSURE_POLICY = BackpressurePolicy.DROP_OLDEST;
+
+    /**
+     * Default number of logs waiting to be sent from which the backpressure policy is applied.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_MAX_QUEUE_DEPTH = 1000;
+
     /**
      * Log factories managed by this service.
      */
@@ -145,6 +161,27 @@ public class Analytics extends AbstractAppCenterService {
      */
     private AnalyticsListener mAnalyticsListener;
 
+    /**
+     * Custom backpressure listener.
+     */
+    private AnalyticsBackpressureListener mAnalyticsBackpressureListener;
+
+    /**
+     * Channel listener forwarding backpressure events of the analytics group.
+     */
+    private Channel.Listener mBackpressureChannelListener;
+
+    /**
+     * Backpressure policy.
+     */
+    @BackpressurePolicy
+    private int mBackpressurePolicy = DEFAULT_BACKPRESSURE_POLICY;
+
+    /**
+     * Number of logs waiting to be sent from which the backpressure policy is applied.
+     */
+    private int mMaxQueueDepth = DEFAULT_MAX_QUEUE_DEPTH;
+
     /**
      * Transmission interval in milliseconds.
      */
@@ -220,6 +257,29 @@ public class Analytics extends AbstractAppCenterService {
         return getInstance().setInstanceTransmissionInterval(seconds);
     }
 
+    /**
+     * Set the policy applied to new events when too many logs are waiting to be sent, for example while offline.
+     * Events sent with {@link Flags#CRITICAL} are never discarded by the policy.
+     * The default policy is {@link BackpressurePolicy#DROP_OLDEST} from 1000 logs.
+     * Should be called before the service is started.
+     *
+     * @param policy        the backpressure policy, {@link BackpressurePolicy#NONE} to keep all logs until storage is full.
+     * @param maxQueueDepth the number of logs waiting to be sent from which the policy is applied.
+     * @return <code>true</code> if the policy is set, <code>false</code> otherwise.
+     */
+    public static boolean setBackpressurePolicy(@BackpressurePolicy int policy, int maxQueueDepth) {
+        return getInstance().setInstanceBackpressurePolicy(policy, maxQueueDepth);
+    }
+
+    /**
+     * Set a listener notified when the backpressure policy is applied to a new log.
+     *
+     * @param listener The custom backpressure listener, null to remove it.
+     */
+    public static void setBackpressureListener(AnalyticsBackpressureListener listener) {
+        getInstance().setInstanceBackpressureListener(listener);
+    }
+
     /**
      * Pauses log transmission. This API cannot be used if the service is disabled.
      * Transmission is resumed:
@@ -483,8 +543,8 @@ public class Analytics extends AbstractAppCenterService {
             return null;
         }
 
-        /* Make a copy to avoid concurrent modifications after trackEvent. */
-        return new ArrayList<>(properties.getProperties().values());
+        /* Take a snapshot to avoid concurrent modifications after trackEvent. */
+        return properties.toList();
     }
 
     /**
@@ -497,14 +557,16 @@ public class Analytics extends AbstractAppCenterService {
         if (properties == null) {
             return null;
         }
-        List<TypedProperty> typedProperties = new ArrayList<>(properties.size());
+        TypedProperty[] typedProperties = new TypedProperty[properties.size()];
+        int i = 0;
         for (Map.Entry<String, String> property : properties.entrySet()) {
             StringTypedProperty typedProperty = new StringTypedProperty();
-            typedProperty.setName(property.getKey());
+            String key = property.getKey();
+            typedProperty.setName(key != null ? EventProperties.internKey(key) : null);
             typedProperty.setValue(property.getValue());
-            typedProperties.add(typedProperty);
+            typedProperties[i++] = typedProperty;
         }
-        return typedProperties;
+        return Collections.unmodifiableList(Arrays.asList(typedProperties));
     }
 
     /**
@@ -702,6 +764,20 @@ public class Analytics extends AbstractAppCenterService {
         if (enabled) {
             mChannel.addGroup(ANALYTICS_CRITICAL_GROUP, getTriggerCount(), Constants.DEFAULT_TRIGGER_INTERVAL, getTriggerMaxParallelRequests(), null, getChannelListener());
 
+            /* Apply backpressure on the normal group only, critical logs are never discarded. */
+            mChannel.setBackpressurePolicy(ANALYTICS_GROUP, mBackpressurePolicy, mMaxQueueDepth);
+            mBackpressureChannelListener = new AbstractChannelListener() {
+
+                @Override
+                public void onBackpressure(@NonNull String groupName, @NonNull Log log, int queueDepth, int policy) {
+                    AnalyticsBackpressureListener listener = mAnalyticsBackpressureListener;
+                    if (ANALYTICS_GROUP.equals(groupName) && listener != null) {
+                        listener.onBackpressure(log, queueDepth, policy);
+                    }
+                }
+            };
+            mChannel.addListener(mBackpressureChannelListener);
+
             /* Check if service started at application level and enable corresponding features. */
             startAppLevelFeatures();
         }
@@ -711,6 +787,10 @@ public class Analytics extends AbstractAppCenterService {
             mChannel.removeGroup(ANALYTICS_CRITICAL_GROUP);
 
             /* Cleanup resources. */
+            if (mBackpressureChannelListener != null) {
+                mChannel.removeListener(mBackpressureChannelListener);
+                mBackpressureChannelListener = null;
+            }
             if (mAnalyticsValidator != null) {
                 mChannel.removeListener(mAnalyticsValidator);
                 mAnalyticsValidator = null;
@@ -857,6 +937,13 @@ public class Analytics extends AbstractAppCenterService {
         mAnalyticsListener = listener;
     }
 
+    /**
+     * Implements {@link #setBackpressureListener(AnalyticsBackpressureListener)}.
+     */
+    private synchronized void setInstanceBackpressureListener(AnalyticsBackpressureListener listener) {
+        mAnalyticsBackpressureListener = listener;
+    }
+
     /**
      * Implements {@link #pause()}}.
      */
@@ -939,6 +1026,31 @@ public class Analytics extends AbstractAppCenterService {
         return true;
     }
 
+    /**
+     * Implements {@link #setBackpressurePolicy(int, int)}.
+     *
+     * @param policy        the backpressure policy.
+     * @param maxQueueDepth the number of logs waiting to be sent from which the policy is applied.
+     * @return <code>true</code> if the policy is set, <code>false</code> otherwise.
+     */
+    private synchronized boolean setInstanceBackpressurePolicy(@BackpressurePolicy int policy, int maxQueueDepth) {
+        if (mChannel != null) {
+            AppCenterLog.error(LOG_TAG, "Backpressure policy should be set before the service is started.");
+            return false;
+        }
+        if (policy < BackpressurePolicy.NONE || policy > BackpressurePolicy.COALESCE) {
+            AppCenterLog.error(LOG_TAG, "Invalid backpressure policy: " + policy);
+            return false;
+        }
+        if (policy != BackpressurePolicy.NONE && maxQueueDepth < 1) {
+            AppCenterLog.error(LOG_TAG, "The maximum queue depth should be at least 1.");
+            return false;
+        }
+        mBackpressurePolicy = policy;
+        mMaxQueueDepth = maxQueueDepth;
+        return true;
+    }
+
     /**
      * Post a command.
      *
@@ -259,14 +259,14 @@ public class AnalyticsTransmissionTarget {
 
         /* Override with parameter. */
         if (properties != null) {
-            mergedProperties.getProperties().putAll(properties.getProperties());
+            mergedProperties.putAll(properties);
         }
 
         /*
          * If we passed null as parameter and no common properties set,
          * keep null for consistency with Analytics class regarding null vs empty.
          */
-        else if (mergedProperties.getProperties().isEmpty()) {
+        else if (mergedProperties.size() == 0) {
             mergedProperties = null;
         }
 
@@ -5,6 +5,7 @@
 
 package com.microsoft.appcenter.analytics;
 
+import com.microsoft.appcenter.ingestion.models.json.StringPool;
 import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
@@ -13,9 +14,10 @@ import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
 import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
 
@@ -27,15 +29,115 @@ public class EventProperties {
     private static final String VALUE_NULL_ERROR_MESSAGE = "Property value cannot be null";
 
     /**
-     * Properties key/value pairs.
-     * Using a concurrent map to avoid concurrent modification exception when doing the traversal copy.
-     * We also need to traverse a snapshot of properties when doing property inheritance between targets.
-     * There is no need to block in a more global way than the snapshot traversal.
+     * Initial capacity of the properties array, events rarely have more properties.
      */
-    private final Map<String, TypedProperty> mProperties = new ConcurrentHashMap<>();
+    private static final int INITIAL_CAPACITY = 8;
 
-    Map<String, TypedProperty> getProperties() {
-        return mProperties;
+    /**
+     * Maximum number of property keys shared between events.
+     */
+    private static final int MAX_POOLED_KEYS = 256;
+
+    /**
+     * Property keys shared between events, as most events reuse the same few keys.
+     */
+    private static final StringPool sKeys = new StringPool(MAX_POOLED_KEYS);
+
+    /**
+     * Properties in insertion order, key is the property name. Lookups are linear as there are few properties.
+     * Methods are synchronized: properties can be set while they are copied for tracking or for property inheritance.
+     */
+    private TypedProperty[] mProperties = new TypedProperty[INITIAL_CAPACITY];
+
+    /**
+     * Number of properties.
+     */
+    private int mSize;
+
+    /**
+     * Get the shared instance of a property key.
+     *
+     * @param key property key.
+     * @return shared instance equal to the key.
+     */
+    static String internKey(String key) {
+        return sKeys.intern(key);
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < mSize; i++) {
+            if (mProperties[i].getName().equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Add a property or replace the one with the same key.
+     *
+     * @param property property.
+     */
+    synchronized void put(TypedProperty property) {
+        int index = indexOf(property.getName());
+        if (index >= 0) {
+            mProperties[index] = property;
+            return;
+        }
+        if (mSize == mProperties.length) {
+            mProperties = Arrays.copyOf(mProperties, mSize * 2);
+        }
+        mProperties[mSize++] = property;
+    }
+
+    /**
+     * Add a property unless there is already one with the same key.
+     *
+     * @param property property.
+     */
+    synchronized void putIfAbsent(TypedProperty property) {
+        if (indexOf(property.getName()) < 0) {
+            put(property);
+        }
+    }
+
+    /**
+     * Add or replace all the properties of another instance.
+     *
+     * @param properties properties to copy.
+     */
+    void putAll(EventProperties properties) {
+
+        /* Take the snapshot first to not hold both locks at once. */
+        for (TypedProperty property : properties.toList()) {
+            put(property);
+        }
+    }
+
+    synchronized TypedProperty get(String key) {
+        int index = indexOf(key);
+        return index >= 0 ? mProperties[index] : null;
+    }
+
+    synchronized void remove(String key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            System.arraycopy(mProperties, index + 1, mProperties, index, mSize - index - 1);
+            mProperties[--mSize] = null;
+        }
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Get an immutable snapshot of the properties in insertion order.
+     *
+     * @return properties.
+     */
+    synchronized List<TypedProperty> toList() {
+        return Collections.unmodifiableList(Arrays.asList(Arrays.copyOf(mProperties, mSize)));
     }
 
     /**
@@ -50,9 +152,9 @@ public class EventProperties {
     public EventProperties set(String key, boolean value) {
         if (isValidKey(key)) {
             BooleanTypedProperty property = new BooleanTypedProperty();
-            property.setName(key);
+            property.setName(internKey(key));
             property.setValue(value);
-            mProperties.put(key, property);
+            put(property);
         }
         return this;
     }
@@ -69,9 +171,9 @@ public class EventProperties {
     public EventProperties set(String key, Date value) {
         if (isValidKey(key) && isValidValue(value)) {
             DateTimeTypedProperty property = new DateTimeTypedProperty();
-            property.setName(key);
+            property.setName(internKey(key));
             property.setValue(value);
-            mProperties.put(key, property);
+            put(property);
         }
         return this;
     }
@@ -91,9 +193,9 @@ public class EventProperties {
                 AppCenterLog.error(LOG_TAG, "Double property value cannot be NaN or infinite.");
             } else {
                 DoubleTypedProperty property = new DoubleTypedProperty();
-                property.setName(key);
+                property.setName(internKey(key));
                 property.setValue(value);
-                mProperties.put(key, property);
+                put(property);
             }
         }
         return this;
@@ -111,9 +213,9 @@ public class EventProperties {
     public EventProperties set(String key, long value) {
         if (isValidKey(key)) {
             LongTypedProperty property = new LongTypedProperty();
-            property.setName(key);
+            property.setName(internKey(key));
             property.setValue(value);
-            mProperties.put(key, property);
+            put(property);
         }
         return this;
     }
@@ -130,9 +232,9 @@ public class EventProperties {
     public EventProperties set(String key, String value) {
         if (isValidKey(key) && isValidValue(value)) {
             StringTypedProperty property = new StringTypedProperty();
-            property.setName(key);
+            property.setName(internKey(key));
             property.setValue(value);
-            mProperties.put(key, property);
+            put(property);
         }
         return this;
     }
@@ -145,7 +247,7 @@ public class EventProperties {
             AppCenterLog.error(LOG_TAG, "Property key must not be null");
             return false;
         }
-        if (mProperties.containsKey(key)) {
+        if (get(key) != null) {
             AppCenterLog.warn(LOG_TAG, "Property \"" + key + "\" is already set and will be overridden.");
         }
         return true;
@@ -13,13 +13,11 @@ import com.microsoft.appcenter.channel.AbstractChannelListener;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.one.AppExtension;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
-import com.microsoft.appcenter.ingestion.models.one.DeviceExtension;
-import com.microsoft.appcenter.ingestion.models.one.UserExtension;
+import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.util.Date;
-import java.util.Map;
 
 import static com.microsoft.appcenter.Constants.COMMON_SCHEMA_PREFIX_SEPARATOR;
 
@@ -86,60 +84,48 @@ public class PropertyConfigurator extends AbstractChannelListener {
     @Override
     public void onPreparingLog(@NonNull Log log, @NonNull String groupName) {
         if (shouldOverridePartAProperties(log)) {
-            AppExtension app = ((CommonSchemaLog) log).getExt().getApp();
-            UserExtension user = ((CommonSchemaLog) log).getExt().getUser();
-            DeviceExtension device = ((CommonSchemaLog) log).getExt().getDevice();
-
-            /* Override app name if not null, else use the name of the nearest parent. */
-            if (mAppName != null) {
-                app.setName(mAppName);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppName = target.getPropertyConfigurator().getAppName();
-                    if (parentAppName != null) {
-                        app.setName(parentAppName);
-                        break;
-                    }
+            CommonSchemaLog csLog = (CommonSchemaLog) log;
+
+            /* Part A extensions can be shared between logs, copy them only if there is something to override. */
+            String appName = mAppName;
+            String appVersion = mAppVersion;
+            String appLocale = mAppLocale;
+            String userId = mUserId;
+
+            /* Use the values of the nearest parent for the ones not set. */
+            for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
+                PropertyConfigurator parent = target.getPropertyConfigurator();
+                if (appName == null) {
+                    appName = parent.getAppName();
                 }
-            }
-
-            /* Override app version if not null, else use the version of the nearest parent. */
-            if (mAppVersion != null) {
-                app.setVer(mAppVersion);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppVersion = target.getPropertyConfigurator().getAppVersion();
-                    if (parentAppVersion != null) {
-                        app.setVer(parentAppVersion);
-                        break;
-                    }
+                if (appVersion == null) {
+                    appVersion = parent.getAppVersion();
+                }
+                if (appLocale == null) {
+                    appLocale = parent.getAppLocale();
+                }
+                if (userId == null) {
+                    userId = parent.getUserId();
                 }
             }
 
-            /* Override app locale if not null, else use the locale of the nearest parent. */
-            if (mAppLocale != null) {
-                app.setLocale(mAppLocale);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentAppLocale = target.getPropertyConfigurator().getAppLocale();
-                    if (parentAppLocale != null) {
-                        app.setLocale(parentAppLocale);
-                        break;
-                    }
+            /* Override app properties. */
+            if (appName != null || appVersion != null || appLocale != null) {
+                AppExtension app = PartAUtils.getWritableApp(csLog);
+                if (appName != null) {
+                    app.setName(appName);
+                }
+                if (appVersion != null) {
+                    app.setVer(appVersion);
+                }
+                if (appLocale != null) {
+                    app.setLocale(appLocale);
                 }
             }
 
-            /* Override userId if not null, else use the userId of the nearest parent. */
-            if (mUserId != null) {
-                user.setLocalId(mUserId);
-            } else {
-                for (AnalyticsTransmissionTarget target = mTransmissionTarget.mParentTarget; target != null; target = target.mParentTarget) {
-                    String parentUserId = target.getPropertyConfigurator().getUserId();
-                    if (parentUserId != null) {
-                        user.setLocalId(parentUserId);
-                        break;
-                    }
-                }
+            /* Override userId. */
+            if (userId != null) {
+                PartAUtils.getWritableUser(csLog).setLocalId(userId);
             }
 
             /* Fill out the device id if it has been collected. */
@@ -148,7 +134,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
                 /* Get device identifier, Secure class already has an in memory cache. */
                 @SuppressLint("HardwareIds")
                 String androidId = Secure.getString(mTransmissionTarget.mContext.getContentResolver(), Secure.ANDROID_ID);
-                device.setLocalId(ANDROID_DEVICE_ID_PREFIX + androidId);
+                PartAUtils.getWritableDevice(csLog).setLocalId(ANDROID_DEVICE_ID_PREFIX + androidId);
             }
         }
     }
@@ -326,7 +312,7 @@ public class PropertyConfigurator extends AbstractChannelListener {
      * @param key The property key to be removed.
      */
     public synchronized void removeEventProperty(String key) {
-        mEventProperties.getProperties().remove(key);
+        mEventProperties.remove(key);
     }
 
     /**
@@ -348,11 +334,8 @@ public class PropertyConfigurator extends AbstractChannelListener {
      * Nesting synchronize between parent/child could lead to deadlocks.
      */
     synchronized void mergeEventProperties(EventProperties mergedProperties) {
-        for (Map.Entry<String, TypedProperty> property : mEventProperties.getProperties().entrySet()) {
-            String key = property.getKey();
-            if (!mergedProperties.getProperties().containsKey(key)) {
-                mergedProperties.getProperties().put(key, property.getValue());
-            }
+        for (TypedProperty property : mEventProperties.toList()) {
+            mergedProperties.putIfAbsent(property);
         }
     }
 }
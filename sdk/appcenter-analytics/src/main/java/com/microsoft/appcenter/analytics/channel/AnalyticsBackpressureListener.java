@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.analytics.channel;
+
+import com.microsoft.appcenter.channel.BackpressurePolicy;
+import com.microsoft.appcenter.ingestion.models.Log;
+
+/**
+ * Listener notified when too many analytics logs are waiting to be sent.
+ */
+public interface AnalyticsBackpressureListener {
+
+    /**
+     * Called in background when the backpressure policy is applied to a new log.
+     * Can be used to produce fewer events while logs cannot be sent fast enough.
+     * Logs discarded by the policy are also reported as failed to {@link AnalyticsListener}.
+     *
+     * @param log        The new log the policy was applied to.
+     * @param queueDepth The number of logs waiting to be sent.
+     * @param policy     The applied policy.
+     */
+    void onBackpressure(Log log, int queueDepth, @BackpressurePolicy int policy);
+}
@@ -21,9 +21,9 @@ import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 
 import static com.microsoft.appcenter.analytics.Analytics.LOG_TAG;
@@ -76,7 +76,7 @@ public class AnalyticsValidator extends AbstractChannelListener {
         if (name == null) {
             return false;
         }
-        validateProperties(log.getTypedProperties());
+        log.setTypedProperties(validateProperties(log.getTypedProperties()));
         log.setName(name);
         return true;
     }
@@ -149,67 +149,88 @@ public class AnalyticsValidator extends AbstractChannelListener {
 
     /**
      * Validates typed properties.
+     * Properties may be shared with {@link com.microsoft.appcenter.analytics.EventProperties} or be immutable,
+     * so they are never modified: the list and the properties are copied only if something changes.
      *
      * @param properties Typed properties collection to validate.
+     * @return the same list if all properties are valid, otherwise a new list with the valid properties.
      */
-    private static void validateProperties(List<TypedProperty> properties) {
+    private static List<TypedProperty> validateProperties(List<TypedProperty> properties) {
         if (properties == null) {
-            return;
+            return null;
         }
+        List<TypedProperty> result = null;
         int count = 0;
         boolean maxCountReached = false;
-        String message;
-        for (ListIterator<TypedProperty> iterator = properties.listIterator(); iterator.hasNext(); ) {
-            boolean copyNeededOnModification = true;
-            TypedProperty property = iterator.next();
-            String key = property.getName();
+        int size = properties.size();
+        for (int i = 0; i < size; i++) {
+            TypedProperty property = properties.get(i);
+            TypedProperty validProperty;
             if (count >= MAX_PROPERTY_COUNT) {
                 if (!maxCountReached) {
-                    message = String.format("Typed properties cannot contain more than %s items. Skipping other properties.", MAX_PROPERTY_COUNT);
+                    String message = String.format("Typed properties cannot contain more than %s items. Skipping other properties.", MAX_PROPERTY_COUNT);
                     AppCenterLog.warn(LOG_TAG, message);
                     maxCountReached = true;
                 }
-                iterator.remove();
-                continue;
+                validProperty = null;
+            } else {
+                validProperty = validateProperty(property);
             }
-            if (key == null || key.isEmpty()) {
-                AppCenterLog.warn(LOG_TAG, "A typed property key cannot be null or empty. Property will be skipped.");
-                iterator.remove();
-                continue;
+            if (validProperty != property && result == null) {
+                result = new ArrayList<>(properties.subList(0, i));
             }
-            if (key.length() > MAX_PROPERTY_ITEM_LENGTH) {
-                message = String.format("Typed property '%s' : property key length cannot be longer than %s characters. Property key will be truncated.", key, MAX_PROPERTY_ITEM_LENGTH);
+            if (validProperty != null) {
+                count++;
+                if (result != null) {
+                    result.add(validProperty);
+                }
+            }
+        }
+        return result != null ? result : properties;
+    }
+
+    /**
+     * Validates a typed property.
+     *
+     * @param property Typed property to validate.
+     * @return the same property if valid, a copy if truncated or null if the property must be skipped.
+     */
+    private static TypedProperty validateProperty(TypedProperty property) {
+        String message;
+        boolean copied = false;
+        String key = property.getName();
+        if (key == null || key.isEmpty()) {
+            AppCenterLog.warn(LOG_TAG, "A typed property key cannot be null or empty. Property will be skipped.");
+            return null;
+        }
+        if (key.length() > MAX_PROPERTY_ITEM_LENGTH) {
+            message = String.format("Typed property '%s' : property key length cannot be longer than %s characters. Property key will be truncated.", key, MAX_PROPERTY_ITEM_LENGTH);
+            AppCenterLog.warn(LOG_TAG, message);
+            key = key.substring(0, MAX_PROPERTY_ITEM_LENGTH);
+            property = copyProperty(property, key);
+            copied = true;
+        }
+        if (property instanceof StringTypedProperty) {
+            StringTypedProperty stringTypedProperty = (StringTypedProperty) property;
+            String value = stringTypedProperty.getValue();
+            if (value == null) {
+                message = String.format("Typed property '%s' : property value cannot be null. Property '%s' will be skipped.", key, key);
                 AppCenterLog.warn(LOG_TAG, message);
-                key = key.substring(0, MAX_PROPERTY_ITEM_LENGTH);
-                property = copyProperty(property, key);
-                iterator.set(property);
-                copyNeededOnModification = false;
+                return null;
             }
-            if (property instanceof StringTypedProperty) {
-                StringTypedProperty stringTypedProperty = (StringTypedProperty) property;
-                String value = stringTypedProperty.getValue();
-                if (value == null) {
-                    message = String.format("Typed property '%s' : property value cannot be null. Property '%s' will be skipped.", key, key);
-                    AppCenterLog.warn(LOG_TAG, message);
-                    iterator.remove();
-                    continue;
-                }
-                if (value.length() > MAX_PROPERTY_ITEM_LENGTH) {
-                    message = String.format("A String property '%s' : property value cannot be longer than %s characters. Property value will be truncated.", key, MAX_PROPERTY_ITEM_LENGTH);
-                    AppCenterLog.warn(LOG_TAG, message);
-                    value = value.substring(0, MAX_PROPERTY_ITEM_LENGTH);
-                    if (copyNeededOnModification) {
-                        stringTypedProperty = new StringTypedProperty();
-                        stringTypedProperty.setName(key);
-                        stringTypedProperty.setValue(value);
-                        iterator.set(stringTypedProperty);
-                    } else {
-                        stringTypedProperty.setValue(value);
-                    }
+            if (value.length() > MAX_PROPERTY_ITEM_LENGTH) {
+                message = String.format("A String property '%s' : property value cannot be longer than %s characters. Property value will be truncated.", key, MAX_PROPERTY_ITEM_LENGTH);
+                AppCenterLog.warn(LOG_TAG, message);
+                value = value.substring(0, MAX_PROPERTY_ITEM_LENGTH);
+                if (!copied) {
+                    stringTypedProperty = new StringTypedProperty();
+                    stringTypedProperty.setName(key);
                 }
+                stringTypedProperty.setValue(value);
+                return stringTypedProperty;
             }
-            count++;
         }
+        return property;
     }
 
     private static TypedProperty copyProperty(TypedProperty property, String newKey) {
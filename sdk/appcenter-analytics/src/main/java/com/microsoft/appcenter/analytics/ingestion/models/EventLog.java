@@ -5,6 +5,10 @@
 
 package com.microsoft.appcenter.analytics.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.TypedPropertyUtils;
@@ -13,15 +17,16 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 import java.util.UUID;
 
-import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPED_PROPERTIES;
 
 /**
  * Event log.
  */
+@JsonModel
 public class EventLog extends LogWithNameAndProperties {
 
     public static final String TYPE = "event";
@@ -29,6 +34,7 @@ public class EventLog extends LogWithNameAndProperties {
     /**
      * Unique identifier for this event.
      */
+    @JsonField(value = "id", required = true)
     private UUID id;
 
     /**
@@ -81,34 +87,50 @@ public class EventLog extends LogWithNameAndProperties {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setId(UUID.fromString(object.getString(ID)));
+        EventLogSerializer.read(this, object);
         setTypedProperties(TypedPropertyUtils.read(object));
     }
 
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        EventLogSerializer.checkRequired(this);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        if (TYPED_PROPERTIES.equals(name)) {
+            setTypedProperties(TypedPropertyUtils.read(reader));
+            return true;
+        }
+        return EventLogSerializer.readField(this, reader, name) || super.readField(reader, name);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        writer.key(ID).value(getId());
+        EventLogSerializer.write(this, writer);
         JSONUtils.writeArray(writer, TYPED_PROPERTIES, getTypedProperties());
     }
 
-    @SuppressWarnings("SimplifiableIfStatement")
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        if (!super.equals(o) || !EventLogSerializer.equals(this, (EventLog) o)) {
+            return false;
+        }
         EventLog eventLog = (EventLog) o;
-
-        if (id != null ? !id.equals(eventLog.id) : eventLog.id != null) return false;
         return typedProperties != null ? typedProperties.equals(eventLog.typedProperties) : eventLog.typedProperties == null;
     }
 
     @Override
     public int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + (id != null ? id.hashCode() : 0);
+        int result = 31 * super.hashCode() + EventLogSerializer.hashCode(this);
         result = 31 * result + (typedProperties != null ? typedProperties.hashCode() : 0);
         return result;
     }
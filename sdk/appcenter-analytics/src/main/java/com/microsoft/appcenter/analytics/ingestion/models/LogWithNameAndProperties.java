@@ -5,19 +5,25 @@
 
 package com.microsoft.appcenter.analytics.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
-import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
+import java.io.IOException;
 
+@JsonModel
 public abstract class LogWithNameAndProperties extends LogWithProperties {
 
     /**
      * The name.
      */
+    @JsonField(value = "name", required = true, pooled = true)
     private String name;
 
     /**
@@ -41,13 +47,24 @@ public abstract class LogWithNameAndProperties extends LogWithProperties {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setName(object.getString(NAME));
+        LogWithNameAndPropertiesSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        LogWithNameAndPropertiesSerializer.checkRequired(this);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return LogWithNameAndPropertiesSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        writer.key(NAME).value(getName());
+        LogWithNameAndPropertiesSerializer.write(this, writer);
     }
 
     @Override
@@ -58,17 +75,11 @@ public abstract class LogWithNameAndProperties extends LogWithProperties {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        if (!super.equals(o)) {
-            return false;
-        }
-        LogWithNameAndProperties logWithNameAndProperties = (LogWithNameAndProperties) o;
-        return name != null ? name.equals(logWithNameAndProperties.name) : logWithNameAndProperties.name == null;
+        return super.equals(o) && LogWithNameAndPropertiesSerializer.equals(this, (LogWithNameAndProperties) o);
     }
 
     @Override
     public int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + (name != null ? name.hashCode() : 0);
-        return result;
+        return 31 * super.hashCode() + LogWithNameAndPropertiesSerializer.hashCode(this);
     }
 }
@@ -9,6 +9,7 @@ import android.content.Context;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.analytics.channel.AnalyticsBackpressureListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsListener;
 import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
 import com.microsoft.appcenter.analytics.channel.SessionTracker;
@@ -20,6 +21,7 @@ import com.microsoft.appcenter.analytics.ingestion.models.json.PageLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.json.StartSessionLogFactory;
 import com.microsoft.appcenter.analytics.ingestion.models.one.CommonSchemaEventLog;
 import com.microsoft.appcenter.analytics.ingestion.models.one.json.CommonSchemaEventLogFactory;
+import com.microsoft.appcenter.channel.BackpressurePolicy;
 import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -56,6 +58,8 @@ import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static com.microsoft.appcenter.analytics.Analytics.ANALYTICS_CRITICAL_GROUP;
 import static com.microsoft.appcenter.analytics.Analytics.ANALYTICS_GROUP;
+import static com.microsoft.appcenter.analytics.Analytics.DEFAULT_BACKPRESSURE_POLICY;
+import static com.microsoft.appcenter.analytics.Analytics.DEFAULT_MAX_QUEUE_DEPTH;
 import static com.microsoft.appcenter.analytics.Analytics.MAXIMUM_TRANSMISSION_INTERVAL_IN_SECONDS;
 import static com.microsoft.appcenter.analytics.Analytics.MINIMUM_TRANSMISSION_INTERVAL_IN_SECONDS;
 import static org.junit.Assert.assertEquals;
@@ -73,10 +77,12 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.notNull;
+import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.doAnswer;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -897,6 +903,97 @@ public class AnalyticsTest extends AbstractAnalyticsTest {
         assertFalse(result);
     }
 
+    @Test
+    public void defaultBackpressurePolicy() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        verify(channel).setBackpressurePolicy(ANALYTICS_GROUP, DEFAULT_BACKPRESSURE_POLICY, DEFAULT_MAX_QUEUE_DEPTH);
+        verify(channel, never()).setBackpressurePolicy(eq(ANALYTICS_CRITICAL_GROUP), anyInt(), anyInt());
+    }
+
+    @Test
+    public void setBackpressurePolicy() {
+        assertTrue(Analytics.setBackpressurePolicy(BackpressurePolicy.COALESCE, 50));
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        verify(channel).setBackpressurePolicy(ANALYTICS_GROUP, BackpressurePolicy.COALESCE, 50);
+
+        /* Policy is applied again when re-enabled. */
+        Analytics.setEnabled(false);
+        Analytics.setEnabled(true);
+        verify(channel, times(2)).setBackpressurePolicy(ANALYTICS_GROUP, BackpressurePolicy.COALESCE, 50);
+    }
+
+    @Test
+    public void disableBackpressurePolicy() {
+        assertTrue(Analytics.setBackpressurePolicy(BackpressurePolicy.NONE, 0));
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        verify(channel).setBackpressurePolicy(ANALYTICS_GROUP, BackpressurePolicy.NONE, 0);
+    }
+
+    @Test
+    public void invalidBackpressurePolicy() {
+        assertFalse(Analytics.setBackpressurePolicy(-1, 10));
+        assertFalse(Analytics.setBackpressurePolicy(BackpressurePolicy.COALESCE + 1, 10));
+        assertFalse(Analytics.setBackpressurePolicy(BackpressurePolicy.SAMPLE, 0));
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        verify(channel).setBackpressurePolicy(ANALYTICS_GROUP, DEFAULT_BACKPRESSURE_POLICY, DEFAULT_MAX_QUEUE_DEPTH);
+    }
+
+    @Test
+    public void unableToSetBackpressurePolicyAfterStart() {
+        Analytics analytics = Analytics.getInstance();
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        assertFalse(Analytics.setBackpressurePolicy(BackpressurePolicy.DROP_NEWEST, 10));
+        verify(channel, never()).setBackpressurePolicy(anyString(), eq(BackpressurePolicy.DROP_NEWEST), anyInt());
+    }
+
+    @Test
+    public void backpressureListener() {
+        Analytics analytics = Analytics.getInstance();
+        AnalyticsBackpressureListener listener = mock(AnalyticsBackpressureListener.class);
+        Analytics.setBackpressureListener(listener);
+        Channel channel = mock(Channel.class);
+        analytics.onStarting(mAppCenterHandler);
+        analytics.onStarted(mock(Context.class), channel, "", null, true);
+        ArgumentCaptor<Channel.Listener> captor = ArgumentCaptor.forClass(Channel.Listener.class);
+        verify(channel, atLeastOnce()).addListener(captor.capture());
+
+        /* Simulate the channel applying the policy to every registered listener. */
+        Log log = mock(Log.class);
+        for (Channel.Listener channelListener : captor.getAllValues()) {
+            channelListener.onBackpressure(ANALYTICS_GROUP, log, 1000, BackpressurePolicy.DROP_OLDEST);
+            channelListener.onBackpressure("other", log, 1000, BackpressurePolicy.DROP_OLDEST);
+        }
+        verify(listener).onBackpressure(log, 1000, BackpressurePolicy.DROP_OLDEST);
+        verifyNoMoreInteractions(listener);
+
+        /* Listener can be removed. */
+        Analytics.setBackpressureListener(null);
+        for (Channel.Listener channelListener : captor.getAllValues()) {
+            channelListener.onBackpressure(ANALYTICS_GROUP, log, 1000, BackpressurePolicy.DROP_OLDEST);
+        }
+        verifyNoMoreInteractions(listener);
+
+        /* Channel listener is removed when disabled. */
+        Analytics.setEnabled(false);
+        for (Channel.Listener channelListener : captor.getAllValues()) {
+            verify(channel).removeListener(channelListener);
+        }
+    }
+
     /**
      * Activity with page name automatically resolving to "My" (no "Activity" suffix).
      */
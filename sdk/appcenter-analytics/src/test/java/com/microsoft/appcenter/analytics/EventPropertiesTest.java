@@ -5,11 +5,14 @@
 
 package com.microsoft.appcenter.analytics;
 
+import com.microsoft.appcenter.analytics.channel.AnalyticsValidator;
+import com.microsoft.appcenter.analytics.ingestion.models.EventLog;
 import com.microsoft.appcenter.ingestion.models.properties.BooleanTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.DateTimeTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.DoubleTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.LongTypedProperty;
 import com.microsoft.appcenter.ingestion.models.properties.StringTypedProperty;
+import com.microsoft.appcenter.ingestion.models.properties.TypedProperty;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
 import org.junit.Before;
@@ -18,9 +21,18 @@ import org.junit.Test;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
 
+import static com.microsoft.appcenter.test.TestUtils.generateString;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.never;
@@ -47,7 +59,7 @@ public class EventPropertiesTest {
         properties.set("t3", (long) 0);
         properties.set("t4", 0.1);
         properties.set("t5", false);
-        assertEquals(5, properties.getProperties().size());
+        assertEquals(5, properties.size());
         verifyStatic(never());
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
     }
@@ -60,7 +72,7 @@ public class EventPropertiesTest {
         properties.set(null, (long) 0);
         properties.set(null, 0.1);
         properties.set(null, false);
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
         verifyStatic(times(5));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
     }
@@ -70,7 +82,7 @@ public class EventPropertiesTest {
         EventProperties properties = new EventProperties();
         properties.set("t1", "test");
         properties.set("t1", new Date(0));
-        assertEquals(1, properties.getProperties().size());
+        assertEquals(1, properties.size());
         verifyStatic(never());
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
         verifyStatic();
@@ -81,22 +93,22 @@ public class EventPropertiesTest {
     public void setString() {
         String key = "test";
         EventProperties properties = new EventProperties();
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
 
         /* Null value. */
         properties.set(key, (String) null);
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
         verifyStatic(times(1));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
 
         /* Normal value. */
         String normalValue = "test";
         properties.set(key, normalValue);
-        assertEquals(1, properties.getProperties().size());
+        assertEquals(1, properties.size());
         StringTypedProperty expected = new StringTypedProperty();
         expected.setName(key);
         expected.setValue(normalValue);
-        assertEquals(expected, properties.getProperties().get(key));
+        assertEquals(expected, properties.get(key));
         verifyStatic(times(1));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
     }
@@ -105,22 +117,22 @@ public class EventPropertiesTest {
     public void setDate() {
         String key = "test";
         EventProperties properties = new EventProperties();
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
 
         /* Null value. */
         properties.set(key, (Date) null);
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
         verifyStatic(times(1));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
 
         /* Normal value. */
         Date normalValue = new Date(0);
         properties.set(key, normalValue);
-        assertEquals(1, properties.getProperties().size());
+        assertEquals(1, properties.size());
         DateTimeTypedProperty expected = new DateTimeTypedProperty();
         expected.setName(key);
         expected.setValue(normalValue);
-        assertEquals(expected, properties.getProperties().get(key));
+        assertEquals(expected, properties.get(key));
         verifyStatic(times(1));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
     }
@@ -129,16 +141,16 @@ public class EventPropertiesTest {
     public void setLong() {
         String key = "test";
         EventProperties properties = new EventProperties();
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
 
         /* Normal value. */
         long normalValue = 0;
         properties.set(key, normalValue);
-        assertEquals(1, properties.getProperties().size());
+        assertEquals(1, properties.size());
         LongTypedProperty expected = new LongTypedProperty();
         expected.setName(key);
         expected.setValue(normalValue);
-        assertEquals(expected, properties.getProperties().get(key));
+        assertEquals(expected, properties.get(key));
         verifyStatic(never());
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
     }
@@ -147,13 +159,13 @@ public class EventPropertiesTest {
     public void setDouble() {
         String key = "test";
         EventProperties properties = new EventProperties();
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
 
         /* NaN value. */
         double nanValue = Double.NaN;
         properties = new EventProperties();
         properties.set(key, nanValue);
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
         verifyStatic(times(1));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
 
@@ -161,7 +173,7 @@ public class EventPropertiesTest {
         double positiveInfinityValue = Double.POSITIVE_INFINITY;
         properties = new EventProperties();
         properties.set(key, positiveInfinityValue);
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
         verifyStatic(times(2));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
 
@@ -169,14 +181,14 @@ public class EventPropertiesTest {
         double negativeInfinityValue = Double.NEGATIVE_INFINITY;
         properties = new EventProperties();
         properties.set(key, negativeInfinityValue);
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
         verifyStatic(times(3));
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
 
         /* Normal value. */
         double normalValue = 0.0;
         properties.set(key, normalValue);
-        assertEquals(1, properties.getProperties().size());
+        assertEquals(1, properties.size());
         DoubleTypedProperty expected = new DoubleTypedProperty();
         expected.setName(key);
         expected.setValue(normalValue);
@@ -188,15 +200,163 @@ public class EventPropertiesTest {
     public void setBoolean() {
         String key = "test";
         EventProperties properties = new EventProperties();
-        assertEquals(0, properties.getProperties().size());
+        assertEquals(0, properties.size());
 
         /* Normal value. */
         properties.set(key, false);
-        assertEquals(1, properties.getProperties().size());
+        assertEquals(1, properties.size());
         BooleanTypedProperty expected = new BooleanTypedProperty();
         expected.setName(key);
         expected.setValue(false);
         verifyStatic(never());
         AppCenterLog.error(eq(Analytics.LOG_TAG), anyString());
     }
-}
\ No newline at end of file
+
+    private static List<String> keys(EventProperties properties) {
+        List<String> keys = new ArrayList<>();
+        for (TypedProperty property : properties.toList()) {
+            keys.add(property.getName());
+        }
+        return keys;
+    }
+
+    private static StringTypedProperty stringProperty(String key, String value) {
+        StringTypedProperty property = new StringTypedProperty();
+        property.setName(key);
+        property.setValue(value);
+        return property;
+    }
+
+    @Test
+    public void insertionOrder() {
+        EventProperties properties = new EventProperties();
+        List<String> expected = new ArrayList<>();
+
+        /* More keys than the initial capacity to check the order is kept when growing. */
+        for (int i = 20; i > 0; i--) {
+            properties.set("k" + i, i);
+            expected.add("k" + i);
+        }
+        assertEquals(expected, keys(properties));
+
+        /* Overriding a key keeps its position. */
+        properties.set("k10", "test");
+        assertEquals(expected, keys(properties));
+        assertEquals(stringProperty("k10", "test"), properties.get("k10"));
+        assertEquals(20, properties.size());
+    }
+
+    @Test
+    public void remove() {
+        EventProperties properties = new EventProperties();
+        properties.set("a", 1);
+        properties.set("b", 2);
+        properties.set("c", 3);
+
+        /* Removing from the middle keeps the order of the others. */
+        properties.remove("b");
+        assertEquals(Arrays.asList("a", "c"), keys(properties));
+        assertNull(properties.get("b"));
+
+        /* Missing key is ignored. */
+        properties.remove("missing");
+        assertEquals(2, properties.size());
+
+        /* Adding a removed key again appends it. */
+        properties.set("b", 4);
+        assertEquals(Arrays.asList("a", "c", "b"), keys(properties));
+
+        /* Remove first and last. */
+        properties.remove("a");
+        properties.remove("b");
+        assertEquals(Arrays.asList("c"), keys(properties));
+        properties.remove("c");
+        assertEquals(0, properties.size());
+        assertEquals(0, properties.toList().size());
+    }
+
+    @Test
+    public void putIfAbsentMerging() {
+
+        /* Merge the way targets do: child first, then parent only for missing keys. */
+        EventProperties child = new EventProperties();
+        child.set("a", "child");
+        child.set("b", "child");
+        EventProperties parent = new EventProperties();
+        parent.set("b", "parent");
+        parent.set("c", "parent");
+        EventProperties merged = new EventProperties();
+        for (TypedProperty property : child.toList()) {
+            merged.putIfAbsent(property);
+        }
+        for (TypedProperty property : parent.toList()) {
+            merged.putIfAbsent(property);
+        }
+        assertEquals(Arrays.asList("a", "b", "c"), keys(merged));
+        assertEquals(stringProperty("b", "child"), merged.get("b"));
+        assertEquals(stringProperty("c", "parent"), merged.get("c"));
+
+        /* Event properties then override common ones in place. */
+        EventProperties eventProperties = new EventProperties();
+        eventProperties.set("c", "event");
+        eventProperties.set("d", "event");
+        merged.putAll(eventProperties);
+        assertEquals(Arrays.asList("a", "b", "c", "d"), keys(merged));
+        assertEquals(stringProperty("c", "event"), merged.get("c"));
+
+        /* Sources are not modified. */
+        assertEquals(stringProperty("b", "parent"), parent.get("b"));
+        assertEquals(2, eventProperties.size());
+    }
+
+    @Test
+    public void validationDoesNotModifySharedProperties() {
+        String longKey = generateString(200, 'k');
+        String longValue = generateString(200, 'v');
+        EventProperties properties = new EventProperties();
+        properties.set(longKey, "test");
+        properties.set("longValue", longValue);
+        properties.set(longKey + "2", longValue);
+        properties.set("valid", 1);
+        List<TypedProperty> shared = properties.toList();
+
+        /* Validate an event using the same property instances. */
+        EventLog log = new EventLog();
+        log.setName("event");
+        log.setTypedProperties(shared);
+        assertFalse(new AnalyticsValidator().shouldFilter(log));
+
+        /* Truncated properties are copies. */
+        List<TypedProperty> validated = log.getTypedProperties();
+        assertEquals(4, validated.size());
+        for (int i = 0; i < 3; i++) {
+            assertNotSame(shared.get(i), validated.get(i));
+        }
+        assertTrue(validated.get(0).getName().length() < longKey.length());
+        assertTrue(((StringTypedProperty) validated.get(1)).getValue().length() < longValue.length());
+        assertTrue(validated.get(2).getName().length() < longKey.length());
+        assertTrue(((StringTypedProperty) validated.get(2)).getValue().length() < longValue.length());
+
+        /* Valid properties are reused as is. */
+        assertSame(shared.get(3), validated.get(3));
+
+        /* The shared instances are left untouched. */
+        assertEquals(stringProperty(longKey, "test"), properties.get(longKey));
+        assertEquals(stringProperty("longValue", longValue), properties.get("longValue"));
+        assertEquals(stringProperty(longKey + "2", longValue), properties.get(longKey + "2"));
+        assertEquals(shared, properties.toList());
+    }
+
+    @Test
+    public void validationKeepsListWhenAllValid() {
+        EventProperties properties = new EventProperties();
+        properties.set("a", "test");
+        properties.set("b", true);
+        List<TypedProperty> shared = properties.toList();
+        EventLog log = new EventLog();
+        log.setName("event");
+        log.setTypedProperties(shared);
+        assertFalse(new AnalyticsValidator().shouldFilter(log));
+        assertSame(shared, log.getTypedProperties());
+    }
+}
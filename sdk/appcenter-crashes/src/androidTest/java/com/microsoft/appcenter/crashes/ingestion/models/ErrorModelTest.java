@@ -5,6 +5,8 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.crashes.ingestion.models.json.ErrorAttachmentLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.HandledErrorLogFactory;
 import com.microsoft.appcenter.crashes.ingestion.models.json.ManagedErrorLogFactory;
@@ -18,6 +20,12 @@ import org.json.JSONStringer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
 import java.util.Date;
 import java.util.UUID;
 
@@ -37,6 +45,9 @@ public class ErrorModelTest {
         String payload = serializer.serializeLog(log);
         Log deSerializedLog = serializer.deserializeLog(payload, null);
         checkEquals(log, deSerializedLog);
+
+        /* Streaming and tree parsing give the same log. */
+        checkEquals(deSerializedLog, serializer.deserializeContainer("{\"logs\":[" + payload + "]}", null).getLogs().get(0));
     }
 
     private static void checkSerializationThrowsException(Log log, LogSerializer serializer, Class expectedException) {
@@ -478,6 +489,20 @@ public class ErrorModelTest {
         checkSerialization(errorLog1, serializer);
     }
 
+    @Test
+    public void stackFrameBinary() throws IOException {
+        StackFrame frame = new StackFrame();
+        frame.setClassName("com.example.Class");
+        frame.setMethodName("méthode");
+        frame.setLineNumber(42);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        StackFrameSerializer.write(frame, new DataOutputStream(output));
+        StackFrame readFrame = new StackFrame();
+        readFrame.setFileName("overwritten");
+        StackFrameSerializer.read(readFrame, new DataInputStream(new ByteArrayInputStream(output.toByteArray())));
+        checkEquals(frame, readFrame);
+    }
+
     @Test
     public void handledErrorLog() throws JSONException {
         LogSerializer serializer = new DefaultLogSerializer();
@@ -630,6 +655,43 @@ public class ErrorModelTest {
         }
     }
 
+    @Test
+    public void deserializeInvalidBase64forErrorAttachmentStreaming() throws JSONException {
+        ErrorAttachmentLog log = new ErrorAttachmentLog();
+        log.setTimestamp(new Date());
+        log.setId(UUID.randomUUID());
+        log.setErrorId(UUID.randomUUID());
+        log.setData(new byte[0]);
+        log.setContentType("text/plain");
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ErrorAttachmentLog.TYPE, ErrorAttachmentLogFactory.getInstance());
+        JSONObject json = new JSONObject(serializer.serializeLog(log));
+        json.put(DATA, "a");
+        try {
+            serializer.deserializeLog(json.toString(), null);
+            Assert.fail("Expected json exception here");
+        } catch (JSONException e) {
+            assertEquals("bad base-64", e.getMessage());
+        }
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeThreadWithoutId() throws JSONException, IOException {
+        new Thread().read(new JsonReader(new StringReader("{\"name\": \"main\", \"frames\": []}")));
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeErrorLogWithoutAppLaunchTimestamp() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(ManagedErrorLog.TYPE, ManagedErrorLogFactory.getInstance());
+        serializer.deserializeLog("{" +
+                "\"type\": \"managedError\"," +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"id\": \"" + UUID.randomUUID() + "\"," +
+                "\"fatal\": true" +
+                "}", null);
+    }
+
     private static class MockErrorLog extends AbstractErrorLog {
 
         @Override
@@ -5,14 +5,17 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
-import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.UUID;
 
@@ -21,74 +24,67 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Abstract error log.
  */
+@JsonModel
 public abstract class AbstractErrorLog extends AbstractLog {
 
-    private static final String PROCESS_ID = "processId";
-
-    private static final String PROCESS_NAME = "processName";
-
-    private static final String PARENT_PROCESS_ID = "parentProcessId";
-
-    private static final String PARENT_PROCESS_NAME = "parentProcessName";
-
-    private static final String ERROR_THREAD_ID = "errorThreadId";
-
-    private static final String ERROR_THREAD_NAME = "errorThreadName";
-
-    private static final String FATAL = "fatal";
-
-    private static final String APP_LAUNCH_TIMESTAMP = "appLaunchTimestamp";
-
-    private static final String ARCHITECTURE = "architecture";
-
     /**
      * Error identifier.
      */
+    @JsonField(value = ID, required = true)
     private UUID id;
 
     /**
      * Process identifier.
      */
+    @JsonField("processId")
     private Integer processId;
 
     /**
      * Process name.
      */
+    @JsonField("processName")
     private String processName;
 
     /**
      * Parent's process identifier.
      */
+    @JsonField("parentProcessId")
     private Integer parentProcessId;
 
     /**
      * Parent's process name.
      */
+    @JsonField("parentProcessName")
     private String parentProcessName;
 
     /**
      * Error thread identifier.
      */
+    @JsonField("errorThreadId")
     private Long errorThreadId;
 
     /**
      * Error thread name.
      */
+    @JsonField("errorThreadName")
     private String errorThreadName;
 
     /**
      * If true, this crash report is an application crash.
      */
+    @JsonField("fatal")
     private Boolean fatal;
 
     /**
      * Timestamp when the app was launched.
      */
+    @JsonField(value = "appLaunchTimestamp", required = true)
     private Date appLaunchTimestamp;
 
     /**
      * CPU architecture.
      */
+    @JsonField("architecture")
     private String architecture;
 
     /**
@@ -276,35 +272,27 @@ public abstract class AbstractErrorLog extends AbstractLog {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setId(UUID.fromString(object.getString(ID)));
-        setProcessId(JSONUtils.readInteger(object, PROCESS_ID));
-        setProcessName(object.optString(PROCESS_NAME, null));
-        setParentProcessId(JSONUtils.readInteger(object, PARENT_PROCESS_ID));
-        setParentProcessName(object.optString(PARENT_PROCESS_NAME, null));
-        setErrorThreadId(JSONUtils.readLong(object, ERROR_THREAD_ID));
-        setErrorThreadName(object.optString(ERROR_THREAD_NAME, null));
-        setFatal(JSONUtils.readBoolean(object, FATAL));
-        setAppLaunchTimestamp(JSONDateUtils.toDate(object.getString(APP_LAUNCH_TIMESTAMP)));
-        setArchitecture(object.optString(ARCHITECTURE, null));
+        AbstractErrorLogSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        AbstractErrorLogSerializer.checkRequired(this);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return AbstractErrorLogSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        JSONUtils.write(writer, ID, getId());
-        JSONUtils.write(writer, PROCESS_ID, getProcessId());
-        JSONUtils.write(writer, PROCESS_NAME, getProcessName());
-        JSONUtils.write(writer, PARENT_PROCESS_ID, getParentProcessId());
-        JSONUtils.write(writer, PARENT_PROCESS_NAME, getParentProcessName());
-        JSONUtils.write(writer, ERROR_THREAD_ID, getErrorThreadId());
-        JSONUtils.write(writer, ERROR_THREAD_NAME, getErrorThreadName());
-        JSONUtils.write(writer, FATAL, getFatal());
-        JSONUtils.write(writer, APP_LAUNCH_TIMESTAMP, JSONDateUtils.toString(getAppLaunchTimestamp()));
-        JSONUtils.write(writer, ARCHITECTURE, getArchitecture());
+        AbstractErrorLogSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -315,50 +303,13 @@ public abstract class AbstractErrorLog extends AbstractLog {
         if (!super.equals(o)) {
             return false;
         }
-        AbstractErrorLog that = (AbstractErrorLog) o;
-        if (id != null ? !id.equals(that.id) : that.id != null) {
-            return false;
-        }
-        if (processId != null ? !processId.equals(that.processId) : that.processId != null) {
-            return false;
-        }
-        if (processName != null ? !processName.equals(that.processName) : that.processName != null) {
-            return false;
-        }
-        if (parentProcessId != null ? !parentProcessId.equals(that.parentProcessId) : that.parentProcessId != null) {
-            return false;
-        }
-        if (parentProcessName != null ? !parentProcessName.equals(that.parentProcessName) : that.parentProcessName != null) {
-            return false;
-        }
-        if (errorThreadId != null ? !errorThreadId.equals(that.errorThreadId) : that.errorThreadId != null) {
-            return false;
-        }
-        if (errorThreadName != null ? !errorThreadName.equals(that.errorThreadName) : that.errorThreadName != null) {
-            return false;
-        }
-        if (fatal != null ? !fatal.equals(that.fatal) : that.fatal != null) {
-            return false;
-        }
-        if (appLaunchTimestamp != null ? !appLaunchTimestamp.equals(that.appLaunchTimestamp) : that.appLaunchTimestamp != null) {
-            return false;
-        }
-        return architecture != null ? architecture.equals(that.architecture) : that.architecture == null;
+        return AbstractErrorLogSerializer.equals(this, (AbstractErrorLog) o);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (id != null ? id.hashCode() : 0);
-        result = 31 * result + (processId != null ? processId.hashCode() : 0);
-        result = 31 * result + (processName != null ? processName.hashCode() : 0);
-        result = 31 * result + (parentProcessId != null ? parentProcessId.hashCode() : 0);
-        result = 31 * result + (parentProcessName != null ? parentProcessName.hashCode() : 0);
-        result = 31 * result + (errorThreadId != null ? errorThreadId.hashCode() : 0);
-        result = 31 * result + (errorThreadName != null ? errorThreadName.hashCode() : 0);
-        result = 31 * result + (fatal != null ? fatal.hashCode() : 0);
-        result = 31 * result + (appLaunchTimestamp != null ? appLaunchTimestamp.hashCode() : 0);
-        result = 31 * result + (architecture != null ? architecture.hashCode() : 0);
+        result = 31 * result + AbstractErrorLogSerializer.hashCode(this);
         return result;
     }
 }
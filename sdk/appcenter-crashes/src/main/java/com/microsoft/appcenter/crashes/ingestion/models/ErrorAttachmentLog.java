@@ -6,17 +6,18 @@
 package com.microsoft.appcenter.crashes.ingestion.models;
 
 import android.support.annotation.VisibleForTesting;
-import android.util.Base64;
+import android.util.JsonReader;
 
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.nio.charset.Charset;
-import java.util.Arrays;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
@@ -24,6 +25,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Error attachment log.
  */
+@JsonModel
 public class ErrorAttachmentLog extends AbstractLog {
 
     /**
@@ -34,12 +36,6 @@ public class ErrorAttachmentLog extends AbstractLog {
 
     public static final String TYPE = "errorAttachment";
 
-    private static final String ERROR_ID = "errorId";
-
-    private static final String CONTENT_TYPE = "contentType";
-
-    private static final String FILE_NAME = "fileName";
-
     @VisibleForTesting
     static final Charset CHARSET = Charset.forName("UTF-8");
 
@@ -49,26 +45,31 @@ public class ErrorAttachmentLog extends AbstractLog {
     /**
      * Error attachment identifier.
      */
+    @JsonField(value = ID, required = true)
     private UUID id;
 
     /**
      * Error log identifier to attach this log to.
      */
+    @JsonField(value = "errorId", required = true)
     private UUID errorId;
 
     /**
      * Content type (text/plain for text).
      */
+    @JsonField(value = "contentType", required = true)
     private String contentType;
 
     /**
      * File name.
      */
+    @JsonField("fileName")
     private String fileName;
 
     /**
      * Data encoded as base64 when in JSON.
      */
+    @JsonField(value = DATA, required = true)
     private byte[] data;
 
     /**
@@ -207,32 +208,29 @@ public class ErrorAttachmentLog extends AbstractLog {
         return getId() != null && getErrorId() != null && getContentType() != null && getData() != null;
     }
 
-    @SuppressWarnings("ConstantConditions")
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setId(UUID.fromString(object.getString(ID)));
-        setErrorId(UUID.fromString(object.getString(ERROR_ID)));
-        setContentType(object.getString(CONTENT_TYPE));
-        setFileName(object.optString(FILE_NAME, null));
-        try {
-            setData(Base64.decode(object.getString(DATA), Base64.DEFAULT));
-        } catch (IllegalArgumentException e) {
-            throw new JSONException(e.getMessage());
-        }
+        ErrorAttachmentLogSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        ErrorAttachmentLogSerializer.checkRequired(this);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return ErrorAttachmentLogSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        JSONUtils.write(writer, ID, getId());
-        JSONUtils.write(writer, ERROR_ID, getErrorId());
-        JSONUtils.write(writer, CONTENT_TYPE, getContentType());
-        JSONUtils.write(writer, FILE_NAME, getFileName());
-        JSONUtils.write(writer, DATA, Base64.encodeToString(getData(), Base64.NO_WRAP));
+        ErrorAttachmentLogSerializer.write(this, writer);
     }
 
-    @SuppressWarnings({"SimplifiableIfStatement", "EqualsReplaceableByObjectsCall"})
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -241,34 +239,13 @@ public class ErrorAttachmentLog extends AbstractLog {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        if (!super.equals(o)) {
-            return false;
-        }
-        ErrorAttachmentLog that = (ErrorAttachmentLog) o;
-        if (id != null ? !id.equals(that.id) : that.id != null) {
-            return false;
-        }
-        if (errorId != null ? !errorId.equals(that.errorId) : that.errorId != null) {
-            return false;
-        }
-        if (contentType != null ? !contentType.equals(that.contentType) : that.contentType != null) {
-            return false;
-        }
-        if (fileName != null ? !fileName.equals(that.fileName) : that.fileName != null) {
-            return false;
-        }
-        return Arrays.equals(data, that.data);
-
+        return super.equals(o) && ErrorAttachmentLogSerializer.equals(this, (ErrorAttachmentLog) o);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (id != null ? id.hashCode() : 0);
-        result = 31 * result + (errorId != null ? errorId.hashCode() : 0);
-        result = 31 * result + (contentType != null ? contentType.hashCode() : 0);
-        result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
-        result = 31 * result + Arrays.hashCode(data);
+        result = 31 * result + ErrorAttachmentLogSerializer.hashCode(this);
         return result;
     }
 }
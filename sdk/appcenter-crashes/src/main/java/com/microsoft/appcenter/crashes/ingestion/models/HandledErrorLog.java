@@ -5,12 +5,17 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.LogWithProperties;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
@@ -18,6 +23,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.ID;
 /**
  * Handled Error log for managed platforms (such as Xamarin, Unity, Android Dalvik/ART).
  */
+@JsonModel
 public class HandledErrorLog extends LogWithProperties {
 
     /**
@@ -25,19 +31,16 @@ public class HandledErrorLog extends LogWithProperties {
      */
     public static final String TYPE = "handledError";
 
-    /**
-     * Exception associated to the error.
-     */
-    private static final String EXCEPTION = "exception";
-
     /**
      * Unique identifier for this error.
      */
+    @JsonField(value = ID, required = true)
     private UUID id;
 
     /**
      * Exception associated to the error.
      */
+    @JsonField("exception")
     private Exception exception;
 
     @Override
@@ -85,44 +88,37 @@ public class HandledErrorLog extends LogWithProperties {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setId(UUID.fromString(object.getString(ID)));
-        if (object.has(EXCEPTION)) {
-            JSONObject jException = object.getJSONObject(EXCEPTION);
-            Exception exception = new Exception();
-            exception.read(jException);
-            setException(exception);
-        }
+        HandledErrorLogSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        HandledErrorLogSerializer.checkRequired(this);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return HandledErrorLogSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        writer.key(ID).value(getId());
-        if (getException() != null) {
-            writer.key(EXCEPTION).object();
-            exception.write(writer);
-            writer.endObject();
-        }
+        HandledErrorLogSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
-        if (!super.equals(o)) return false;
-
-        HandledErrorLog errorLog = (HandledErrorLog) o;
-
-        if (id != null ? !id.equals(errorLog.id) : errorLog.id != null) return false;
-        return exception != null ? exception.equals(errorLog.exception) : errorLog.exception == null;
+        return super.equals(o) && HandledErrorLogSerializer.equals(this, (HandledErrorLog) o);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (id != null ? id.hashCode() : 0);
-        result = 31 * result + (exception != null ? exception.hashCode() : 0);
+        result = 31 * result + HandledErrorLogSerializer.hashCode(this);
         return result;
     }
 }
@@ -5,18 +5,22 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
-import com.microsoft.appcenter.crashes.ingestion.models.json.ThreadFactory;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Error log for managed platforms (such as Android Dalvik).
  */
+@JsonModel
 public class ManagedErrorLog extends AbstractErrorLog {
 
     /**
@@ -24,18 +28,16 @@ public class ManagedErrorLog extends AbstractErrorLog {
      */
     public static final String TYPE = "managedError";
 
-    private static final String EXCEPTION = "exception";
-
-    private static final String THREADS = "threads";
-
     /**
      * Exception.
      */
+    @JsonField("exception")
     private Exception exception;
 
     /**
      * Thread stack traces associated to the error.
      */
+    @JsonField("threads")
     private List<Thread> threads;
 
     @Override
@@ -82,28 +84,21 @@ public class ManagedErrorLog extends AbstractErrorLog {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        if (object.has(EXCEPTION)) {
-            JSONObject jException = object.getJSONObject(EXCEPTION);
-            Exception exception = new Exception();
-            exception.read(jException);
-            setException(exception);
-        }
-        setThreads(JSONUtils.readArray(object, THREADS, ThreadFactory.getInstance()));
+        ManagedErrorLogSerializer.read(this, object);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return ManagedErrorLogSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        if (getException() != null) {
-            writer.key(EXCEPTION).object();
-            exception.write(writer);
-            writer.endObject();
-        }
-        JSONUtils.writeArray(writer, THREADS, getThreads());
+        ManagedErrorLogSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -111,21 +106,13 @@ public class ManagedErrorLog extends AbstractErrorLog {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        if (!super.equals(o)) {
-            return false;
-        }
-        ManagedErrorLog that = (ManagedErrorLog) o;
-        if (exception != null ? !exception.equals(that.exception) : that.exception != null) {
-            return false;
-        }
-        return threads != null ? threads.equals(that.threads) : that.threads == null;
+        return super.equals(o) && ManagedErrorLogSerializer.equals(this, (ManagedErrorLog) o);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (exception != null ? exception.hashCode() : 0);
-        result = 31 * result + (threads != null ? threads.hashCode() : 0);
+        result = 31 * result + ManagedErrorLogSerializer.hashCode(this);
         return result;
     }
 }
@@ -5,48 +5,50 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The StackFrame model.
  */
+@JsonModel
 public class StackFrame implements Model {
 
-    private static final String CLASS_NAME = "className";
-
-    private static final String METHOD_NAME = "methodName";
-
-    private static final String LINE_NUMBER = "lineNumber";
-
-    private static final String FILE_NAME = "fileName";
-
     /**
      * The fully qualified name of the Class containing the execution point
      * represented by this stack trace element.
      */
+    @JsonField(value = "className", pooled = true)
     private String className;
 
     /**
      * The name of the method containing the execution point represented by
      * this stack trace element.
      */
+    @JsonField(value = "methodName", pooled = true)
     private String methodName;
 
     /**
      * The line number of the source line containing the execution point
      * represented by this stack trace element.
      */
+    @JsonField("lineNumber")
     private Integer lineNumber;
 
     /**
      * The name of the file containing the execution point represented by this
      * stack trace element.
      */
+    @JsonField(value = "fileName", pooled = true)
     private String fileName;
 
     /**
@@ -123,22 +125,20 @@ public class StackFrame implements Model {
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        setClassName(object.optString(CLASS_NAME, null));
-        setMethodName(object.optString(METHOD_NAME, null));
-        setLineNumber(JSONUtils.readInteger(object, LINE_NUMBER));
-        setFileName(object.optString(FILE_NAME, null));
+        StackFrameSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        StackFrameSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, CLASS_NAME, getClassName());
-        JSONUtils.write(writer, METHOD_NAME, getMethodName());
-        JSONUtils.write(writer, LINE_NUMBER, getLineNumber());
-        JSONUtils.write(writer, FILE_NAME, getFileName());
+        StackFrameSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -146,25 +146,11 @@ public class StackFrame implements Model {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        StackFrame that = (StackFrame) o;
-        if (className != null ? !className.equals(that.className) : that.className != null) {
-            return false;
-        }
-        if (methodName != null ? !methodName.equals(that.methodName) : that.methodName != null) {
-            return false;
-        }
-        if (lineNumber != null ? !lineNumber.equals(that.lineNumber) : that.lineNumber != null) {
-            return false;
-        }
-        return fileName != null ? fileName.equals(that.fileName) : that.fileName == null;
+        return StackFrameSerializer.equals(this, (StackFrame) o);
     }
 
     @Override
     public int hashCode() {
-        int result = className != null ? className.hashCode() : 0;
-        result = 31 * result + (methodName != null ? methodName.hashCode() : 0);
-        result = 31 * result + (lineNumber != null ? lineNumber.hashCode() : 0);
-        result = 31 * result + (fileName != null ? fileName.hashCode() : 0);
-        return result;
+        return StackFrameSerializer.hashCode(this);
     }
 }
@@ -5,7 +5,10 @@
 
 package com.microsoft.appcenter.crashes.ingestion.models;
 
-import com.microsoft.appcenter.crashes.ingestion.models.json.StackFrameFactory;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
@@ -13,6 +16,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.FRAMES;
@@ -22,6 +26,7 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
 /**
  * The Thread model.
  */
+@JsonModel
 public class Thread implements Model {
 
     /**
@@ -32,11 +37,13 @@ public class Thread implements Model {
     /**
      * Thread name.
      */
+    @JsonField(value = NAME, pooled = true)
     private String name;
 
     /**
      * Stack frames.
      */
+    @JsonField(FRAMES)
     private List<StackFrame> frames;
 
     /**
@@ -96,19 +103,33 @@ public class Thread implements Model {
     @Override
     public void read(JSONObject object) throws JSONException {
         setId(object.getLong(ID));
-        setName(object.optString(NAME, null));
-        setFrames(JSONUtils.readArray(object, FRAMES, StackFrameFactory.getInstance()));
+        ThreadSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        Long id = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (ID.equals(name)) {
+                id = reader.nextLong();
+            } else if (!ThreadSerializer.readField(this, reader, name)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        JSONUtils.checkRequired(ID, id);
+        setId(id);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, ID, getId());
-        JSONUtils.write(writer, NAME, getName());
-        JSONUtils.writeArray(writer, FRAMES, getFrames());
+        ThreadSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings("SimplifiableIfStatement")
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -117,20 +138,13 @@ public class Thread implements Model {
             return false;
         }
         Thread that = (Thread) o;
-        if (id != that.id) {
-            return false;
-        }
-        if (name != null ? !name.equals(that.name) : that.name != null) {
-            return false;
-        }
-        return frames != null ? frames.equals(that.frames) : that.frames == null;
+        return id == that.id && ThreadSerializer.equals(this, that);
     }
 
     @Override
     public int hashCode() {
         int result = (int) (id ^ (id >>> 32));
-        result = 31 * result + (name != null ? name.hashCode() : 0);
-        result = 31 * result + (frames != null ? frames.hashCode() : 0);
+        result = 31 * result + ThreadSerializer.hashCode(this);
         return result;
     }
 }
@@ -5,25 +5,30 @@
 
 package com.microsoft.appcenter.push.ingestion.models;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Push installation log.
  */
-
+@JsonModel
 public class PushInstallationLog extends AbstractLog {
 
     public static final String TYPE = "pushInstallation";
 
-    private static final String PUSH_TOKEN = "pushToken";
-
     /**
      * The PNS handle for this installation.
      */
+    @JsonField(value = "pushToken", required = true)
     private String pushToken;
 
     @Override
@@ -52,13 +57,24 @@ public class PushInstallationLog extends AbstractLog {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setPushToken(object.getString(PUSH_TOKEN));
+        PushInstallationLogSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        PushInstallationLogSerializer.checkRequired(this);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return PushInstallationLogSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        writer.key(PUSH_TOKEN).value(getPushToken());
+        PushInstallationLogSerializer.write(this, writer);
     }
 
     @Override
@@ -72,14 +88,13 @@ public class PushInstallationLog extends AbstractLog {
         if (!super.equals(o)) {
             return false;
         }
-        PushInstallationLog pushInstallationLog = (PushInstallationLog) o;
-        return pushToken != null ? pushToken.equals(pushInstallationLog.pushToken) : pushInstallationLog.pushToken == null;
+        return PushInstallationLogSerializer.equals(this, (PushInstallationLog) o);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (pushToken != null ? pushToken.hashCode() : 0);
+        result = 31 * result + PushInstallationLogSerializer.hashCode(this);
         return result;
     }
 }
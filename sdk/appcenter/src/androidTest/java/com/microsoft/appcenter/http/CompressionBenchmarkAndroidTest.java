@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare throughput and allocations of request compression with and without pooling.
+ */
+@SuppressWarnings({"unused", "deprecation"})
+public class CompressionBenchmarkAndroidTest {
+
+    /**
+     * Number of compressed payloads per run.
+     */
+    private static final int ITERATIONS = 200;
+
+    /**
+     * Payload size, about a full batch of logs.
+     */
+    private static final int PAYLOAD_SIZE = 64 * 1024;
+
+    private static byte[] generatePayload() {
+
+        /* Make it JSON like so that it compresses like real logs. */
+        Random random = new Random(42);
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ("{\"type\":\"event\",\"sid\":\"0123456789abcdef\"}".charAt(random.nextInt(40)));
+        }
+        return payload;
+    }
+
+    private static byte[] compressWithoutPool(byte[] payload) throws IOException {
+        ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(payload.length);
+        GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
+        gzipStream.write(payload);
+        gzipStream.close();
+        return gzipBuffer.toByteArray();
+    }
+
+    private static int compressWithPool(HttpBufferPool pool, byte[] payload) throws IOException {
+        HttpBufferPool.PayloadBuffer gzipBuffer = pool.obtainPayloadBuffer();
+        PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(gzipBuffer, pool.obtainDeflater(), pool.obtainByteBuffer());
+        gzipStream.write(payload);
+        gzipStream.close();
+        pool.releasePayloadBuffer(gzipBuffer);
+        return gzipBuffer.size();
+    }
+
+    private static long[] run(HttpBufferPool pool, byte[] payload) throws IOException {
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long startTime = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (pool == null) {
+                compressWithoutPool(payload);
+            } else {
+                compressWithPool(pool, payload);
+            }
+        }
+        long duration = SystemClock.elapsedRealtime() - startTime;
+        Debug.stopAllocCounting();
+        return new long[]{duration, Debug.getThreadAllocSize()};
+    }
+
+    @Test
+    public void pooledCompression() throws IOException {
+        byte[] payload = generatePayload();
+
+        /* Warm up both code paths. */
+        HttpBufferPool pool = new HttpBufferPool();
+        compressWithoutPool(payload);
+        compressWithPool(pool, payload);
+
+        /* Measure. */
+        long[] withoutPool = run(null, payload);
+        long[] withPool = run(pool, payload);
+        long megabytes = (long) ITERATIONS * PAYLOAD_SIZE / (1024 * 1024);
+        Log.i(TAG, "Compression without pool: " + megabytes * 1000 / Math.max(1, withoutPool[0]) + " MB/s, allocated " + withoutPool[1] + " bytes");
+        Log.i(TAG, "Compression with pool: " + megabytes * 1000 / Math.max(1, withPool[0]) + " MB/s, allocated " + withPool[1] + " bytes");
+        assertTrue(withPool[1] < withoutPool[1]);
+
+        /* Show the effect of the compression level. */
+        for (int level = Deflater.BEST_SPEED; level <= Deflater.BEST_COMPRESSION; level += 4) {
+            pool.setCompressionLevel(level);
+            long[] result = run(pool, payload);
+            Log.i(TAG, "Compression level " + level + ": " + megabytes * 1000 / Math.max(1, result[0]) + " MB/s, ratio " + compressWithPool(pool, payload) * 100 / PAYLOAD_SIZE + "%");
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
+import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.one.Data;
+import com.microsoft.appcenter.ingestion.models.one.MockCommonSchemaLog;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+@SuppressWarnings("unused")
+public class BufferedJSONStringerAndroidTest {
+
+    private static void checkSameJson(Model model) throws JSONException {
+        JSONStringer expected = new JSONStringer();
+        expected.object();
+        model.write(expected);
+        expected.endObject();
+        BufferedJSONStringer actual = new BufferedJSONStringer();
+        actual.object();
+        model.write(actual);
+        actual.endObject();
+        assertEquals(expected.toString(), actual.toString());
+    }
+
+    @Test
+    public void mockLog() throws JSONException {
+        MockLog log = AndroidTestUtils.generateMockLog();
+        log.setUserId("a/b \"c\" \\ \n\t\u0001 é ");
+        checkSameJson(log);
+    }
+
+    @Test
+    public void customPropertiesLog() throws JSONException {
+        CustomPropertiesLog log = new CustomPropertiesLog();
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("t1", "</script>");
+        properties.put("t2", new Date(0));
+        properties.put("t3", 0);
+        properties.put("t4", -0d);
+        properties.put("t5", 1.5e300);
+        properties.put("t6", Long.MIN_VALUE);
+        properties.put("t7", true);
+
+        //noinspection ConstantConditions
+        properties.put("t8", null);
+        log.setProperties(properties);
+        log.setTimestamp(new Date());
+        checkSameJson(log);
+    }
+
+    @Test
+    public void commonSchemaData() throws JSONException {
+        MockCommonSchemaLog log = new MockCommonSchemaLog();
+        log.setVer("3.0");
+        log.setName("test");
+        log.setTimestamp(new Date());
+        log.setPopSample(3.1415);
+        log.setFlags(5L);
+        Data data = new Data();
+        JSONObject nested = new JSONObject();
+        nested.put("a", new JSONArray().put(1).put(2.5).put("x").put(JSONObject.NULL).put(new JSONObject()));
+        nested.put("b", 10.0);
+        data.getProperties().put("nested", nested);
+        data.getProperties().put("baseType", "type\u001f");
+        log.setData(data);
+        checkSameJson(log);
+    }
+}
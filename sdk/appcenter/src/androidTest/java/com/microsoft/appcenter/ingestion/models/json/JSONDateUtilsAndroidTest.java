@@ -8,7 +8,11 @@ package com.microsoft.appcenter.ingestion.models.json;
 import org.json.JSONException;
 import org.junit.Test;
 
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 import static org.junit.Assert.assertEquals;
 
@@ -30,6 +34,35 @@ public class JSONDateUtilsAndroidTest {
         assertEquals(date, dateParsed);
     }
 
+    @Test
+    public void formatAndParseTime() throws JSONException {
+        assertEquals("1970-01-01T00:00:00.000Z", JSONDateUtils.toString(0));
+        assertEquals("2017-07-08T00:32:58.123Z", JSONDateUtils.toString(1499473978123L));
+        assertEquals("2000-02-29T23:59:59.999Z", JSONDateUtils.toString(951868799999L));
+        assertEquals("9999-12-31T23:59:59.999Z", JSONDateUtils.toString(253402300799999L));
+        assertEquals(0, JSONDateUtils.toTime("1970-01-01T00:00:00.000Z"));
+        assertEquals(1499473978123L, JSONDateUtils.toTime("2017-07-08T00:32:58.123Z"));
+        assertEquals(951868799999L, JSONDateUtils.toTime("2000-02-29T23:59:59.999Z"));
+        assertEquals(253402300799999L, JSONDateUtils.toTime("9999-12-31T23:59:59.999Z"));
+    }
+
+    @Test
+    public void formatAndParseWithDateFormat() throws JSONException {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US);
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+        /* Dates out of the fixed format range use the date format. */
+        for (long time : new long[]{-1, -12219292800001L, 253402300800000L}) {
+            assertEquals(dateFormat.format(new Date(time)), JSONDateUtils.toString(time));
+            assertEquals(time, JSONDateUtils.toTime(JSONDateUtils.toString(time)));
+        }
+
+        /* Lenient parsing is kept. */
+        for (String date : new String[]{"2017-02-30T00:00:00.000Z", "2017-7-08T00:32:58.123Z", "2017-07-08T00:32:58.123Zignored", "2100-02-29T00:00:00.000Z"}) {
+            assertEquals(date, dateFormat.parse(date, new ParsePosition(0)).getTime(), JSONDateUtils.toTime(date));
+        }
+    }
+
     @SuppressWarnings("ResultOfMethodCallIgnored")
     @Test(expected = JSONException.class)
     public void formatNullDate() throws JSONException {
@@ -45,4 +78,9 @@ public class JSONDateUtilsAndroidTest {
     public void parseInvalidDate() throws JSONException {
         JSONDateUtils.toDate("Fri Jul 07 17:43:56 PDT 2017");
     }
+
+    @Test(expected = JSONException.class)
+    public void parseInvalidDigits() throws JSONException {
+        JSONDateUtils.toTime("2017-07-08T00:3a:58.123Z");
+    }
 }
@@ -43,6 +43,7 @@ public class JSONUtilsAndroidTest {
         JSONUtils.write(writer, "int", 1);
         JSONUtils.write(writer, "long", 1000000000L);
         JSONUtils.write(writer, "boolean", true);
+        JSONUtils.write(writer, "double", 1.5);
         writer.endObject();
 
         /* Convert to string. */
@@ -54,6 +55,7 @@ public class JSONUtilsAndroidTest {
         assertEquals(Integer.valueOf(1), JSONUtils.readInteger(object, "int"));
         assertEquals(Long.valueOf(1000000000L), JSONUtils.readLong(object, "long"));
         assertEquals(true, JSONUtils.readBoolean(object, "boolean"));
+        assertEquals(Double.valueOf(1.5), JSONUtils.readDouble(object, "double"));
     }
 
     @Test
@@ -153,6 +155,7 @@ public class JSONUtilsAndroidTest {
         assertNull(JSONUtils.readInteger(object, "key"));
         assertNull(JSONUtils.readLong(object, "key"));
         assertNull(JSONUtils.readBoolean(object, "key"));
+        assertNull(JSONUtils.readDouble(object, "key"));
         assertNull(JSONUtils.readMap(object, "key"));
         assertNull(JSONUtils.readArray(object, "key", new MockLogFactory()));
     }
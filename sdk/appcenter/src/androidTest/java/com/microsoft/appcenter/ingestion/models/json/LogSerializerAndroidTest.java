@@ -14,6 +14,8 @@ import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 import org.json.JSONException;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
@@ -54,6 +56,34 @@ public class LogSerializerAndroidTest {
         assertEquals(expectedContainer.hashCode(), actualContainer.hashCode());
     }
 
+    @Test
+    public void streamedContainer() throws JSONException, IOException {
+        LogContainer expectedContainer = new LogContainer();
+        List<Log> logs = new ArrayList<>();
+        logs.add(AndroidTestUtils.generateMockLog());
+        logs.add(AndroidTestUtils.generateMockLog());
+        expectedContainer.setLogs(logs);
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        StringWriter writer = new StringWriter();
+        serializer.serializeContainer(expectedContainer, writer);
+        String payload = writer.toString();
+        android.util.Log.v(TAG, payload);
+        assertEquals(serializer.serializeContainer(expectedContainer), payload);
+        assertEquals(expectedContainer, serializer.deserializeContainer(payload, null));
+    }
+
+    @Test
+    public void streamedLog() throws JSONException, IOException {
+        MockLog log = AndroidTestUtils.generateMockLog();
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(MOCK_LOG_TYPE, new MockLogFactory());
+        StringWriter writer = new StringWriter();
+        serializer.serializeLog(log, writer);
+        assertEquals(serializer.serializeLog(log), writer.toString());
+        assertEquals(log, serializer.deserializeLog(writer.toString(), null));
+    }
+
     @Test(expected = JSONException.class)
     public void deserializeUnknownType() throws JSONException {
         MockLog log = AndroidTestUtils.generateMockLog();
@@ -122,6 +152,55 @@ public class LogSerializerAndroidTest {
         assertEquals(log, actualContainer);
     }
 
+    @Test
+    public void deserializeWithTypeNotFirst() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        String payload = "{" +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"unknown\": {\"nested\": [1, \"type\"]}," +
+                "\"services\": [\"FIRST\"]," +
+                "\"type\": \"startService\"" +
+                "}";
+
+        /* Streaming and tree parsing give the same log. */
+        Log log = serializer.deserializeLog(payload, null);
+        assertEquals(serializer.deserializeContainer("{\"logs\":[" + payload + "]}", null).getLogs().get(0), log);
+        assertEquals(Collections.singletonList("FIRST"), ((StartServiceLog) log).getServices());
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeWithoutType() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{\"timestamp\": \"2017-07-08T00:32:58.123Z\"}", null);
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeWithoutTimestamp() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{\"type\": \"startService\"}", null);
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeMalformed() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{\"type\": \"startService\", \"timestamp\": ", StartServiceLog.TYPE);
+    }
+
+    @Test(expected = JSONException.class)
+    public void deserializeWithInvalidSid() throws JSONException {
+        LogSerializer serializer = new DefaultLogSerializer();
+        serializer.addLogFactory(StartServiceLog.TYPE, new StartServiceLogFactory());
+        serializer.deserializeLog("{" +
+                "\"type\": \"startService\"," +
+                "\"timestamp\": \"2017-07-08T00:32:58.123Z\"," +
+                "\"sid\": \"invalid\"" +
+                "}", null);
+    }
+
     @Test(expected = JSONException.class)
     public void deserializeWithoutProperties() throws JSONException {
         LogSerializer serializer = new DefaultLogSerializer();
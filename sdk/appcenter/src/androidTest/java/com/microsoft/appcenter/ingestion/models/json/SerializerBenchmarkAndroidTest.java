@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.microsoft.appcenter.AndroidTestUtils;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.test.TestUtils.TAG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare throughput and allocations of container serialization with {@link JSONStringer} and {@link BufferedJSONStringer}.
+ */
+@SuppressWarnings({"unused", "deprecation"})
+public class SerializerBenchmarkAndroidTest {
+
+    /**
+     * Number of serialized containers per run.
+     */
+    private static final int ITERATIONS = 200;
+
+    /**
+     * Logs per container, the default maximum batch size.
+     */
+    private static final int BATCH_SIZE = 50;
+
+    private static LogContainer generateContainer() {
+
+        /* Logs with device properties and a few custom properties like typical events. */
+        List<com.microsoft.appcenter.ingestion.models.Log> logs = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            MockLog log = AndroidTestUtils.generateMockLog();
+            log.setUserId("user" + i);
+            Map<String, String> properties = new HashMap<>();
+            properties.put("screen", "Settings/Account");
+            properties.put("index", Integer.toString(i));
+            properties.put("label", "Tap \"save\"");
+            log.setProperties(properties);
+            logs.add(log);
+        }
+        LogContainer container = new LogContainer();
+        container.setLogs(logs);
+        return container;
+    }
+
+    private static String serializeWithJSONStringer(LogContainer container) throws JSONException {
+
+        /* Previous implementation of DefaultLogSerializer.serializeContainer. */
+        JSONStringer writer = new JSONStringer();
+        writer.object();
+        writer.key("logs").array();
+        for (com.microsoft.appcenter.ingestion.models.Log log : container.getLogs()) {
+            writer.object();
+            log.write(writer);
+            writer.endObject();
+        }
+        writer.endArray();
+        writer.endObject();
+        return writer.toString();
+    }
+
+    private static long[] run(LogSerializer serializer, LogContainer container) throws JSONException {
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        long startTime = SystemClock.elapsedRealtime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            if (serializer == null) {
+                serializeWithJSONStringer(container);
+            } else {
+                serializer.serializeContainer(container);
+            }
+        }
+        long duration = SystemClock.elapsedRealtime() - startTime;
+        Debug.stopAllocCounting();
+        return new long[]{duration, Debug.getThreadAllocSize()};
+    }
+
+    @Test
+    public void serializeContainer() throws JSONException {
+        LogContainer container = generateContainer();
+        LogSerializer serializer = new DefaultLogSerializer();
+
+        /* Warm up both code paths and check they produce the same JSON. */
+        String payload = serializeWithJSONStringer(container);
+        assertEquals(payload, serializer.serializeContainer(container));
+
+        /* Measure. */
+        long[] stringer = run(null, container);
+        long[] buffered = run(serializer, container);
+        long kilobytes = (long) ITERATIONS * payload.length() / 1024;
+        Log.i(TAG, "Serialization with JSONStringer: " + kilobytes * 1000 / Math.max(1, stringer[0]) + " KB/s, allocated " + stringer[1] + " bytes");
+        Log.i(TAG, "Serialization with BufferedJSONStringer: " + kilobytes * 1000 / Math.max(1, buffered[0]) + " KB/s, allocated " + buffered[1] + " bytes");
+        assertTrue(buffered[1] < stringer[1]);
+    }
+}
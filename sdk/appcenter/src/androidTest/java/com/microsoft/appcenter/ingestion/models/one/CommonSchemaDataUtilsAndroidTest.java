@@ -569,4 +569,51 @@ public class CommonSchemaDataUtilsAndroidTest {
         assertEquals("Some.Type", log.getData().getProperties().optString("baseType"));
         assertNull(log.getExt().getMetadata());
     }
+
+    @Test
+    public void planIsReusedForSameKeysAndTypes() {
+        for (int i = 0; i <= CommonSchemaDataUtils.MAX_CACHED_PLANS; i++) {
+            MockCommonSchemaLog log = new MockCommonSchemaLog();
+            List<TypedProperty> properties = new ArrayList<>();
+            properties.add(typedProperty("key" + i, "value"));
+            CommonSchemaDataUtils.addCommonSchemaData(properties, log);
+            assertEquals("value", log.getData().getProperties().optString("key" + i));
+        }
+        MetadataExtension metadata = null;
+        for (int i = 0; i < 2; i++) {
+            MockCommonSchemaLog log = new MockCommonSchemaLog();
+            List<TypedProperty> properties = new ArrayList<>();
+            properties.add(typedProperty("a.b", "value" + i));
+            LongTypedProperty longTypedProperty = new LongTypedProperty();
+            longTypedProperty.setName("a.c");
+            longTypedProperty.setValue(i);
+            properties.add(longTypedProperty);
+            CommonSchemaDataUtils.addCommonSchemaData(properties, log);
+
+            /* Values are the ones of each event, metadata is shared. */
+            JSONObject a = log.getData().getProperties().optJSONObject("a");
+            assertNotNull(a);
+            assertEquals("value" + i, a.optString("b"));
+            assertEquals(i, a.optLong("c"));
+            assertNotNull(log.getExt().getMetadata());
+            if (metadata != null) {
+                assertSame(metadata, log.getExt().getMetadata());
+            }
+            metadata = log.getExt().getMetadata();
+        }
+
+        /* A null value changes the plan. */
+        MockCommonSchemaLog log = new MockCommonSchemaLog();
+        List<TypedProperty> properties = new ArrayList<>();
+        properties.add(typedProperty("a.b", null));
+        LongTypedProperty longTypedProperty = new LongTypedProperty();
+        longTypedProperty.setName("a.c");
+        longTypedProperty.setValue(2);
+        properties.add(longTypedProperty);
+        CommonSchemaDataUtils.addCommonSchemaData(properties, log);
+        JSONObject a = log.getData().getProperties().optJSONObject("a");
+        assertNotNull(a);
+        assertEquals(1, a.length());
+        assertEquals(2, a.optLong("c"));
+    }
 }
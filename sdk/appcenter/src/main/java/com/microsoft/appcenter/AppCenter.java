@@ -21,6 +21,8 @@ import com.microsoft.appcenter.channel.Channel;
 import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.channel.OneCollectorChannelListener;
 import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpTransportFactory;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.models.CustomPropertiesLog;
 import com.microsoft.appcenter.ingestion.models.StartServiceLog;
 import com.microsoft.appcenter.ingestion.models.WrapperSdk;
@@ -57,6 +59,7 @@ import static com.microsoft.appcenter.Constants.DEFAULT_TRIGGER_COUNT;
 import static com.microsoft.appcenter.Constants.DEFAULT_TRIGGER_INTERVAL;
 import static com.microsoft.appcenter.Constants.DEFAULT_TRIGGER_MAX_PARALLEL_REQUESTS;
 import static com.microsoft.appcenter.http.HttpUtils.createHttpClient;
+import static com.microsoft.appcenter.http.HttpUtils.preconnect;
 import static com.microsoft.appcenter.utils.AppCenterLog.NONE;
 
 public class AppCenter {
@@ -135,6 +138,11 @@ public class AppCenter {
      */
     private String mLogUrl;
 
+    /**
+     * Transport of the SDK HTTP client, null for the default one.
+     */
+    private HttpTransportFactory mHttpTransportFactory;
+
     /**
      * Application context.
      */
@@ -285,6 +293,17 @@ public class AppCenter {
         getInstance().setInstanceLogUrl(logUrl);
     }
 
+    /**
+     * Select the transport of the HTTP client used to send logs, such as {@link com.microsoft.appcenter.http.NioHttpClient#FACTORY}.
+     * This should only be called before App Center is configured.
+     *
+     * @param transportFactory transport factory, or null to use the default transport.
+     * @return <code>true</code> if the transport is applied, <code>false</code> if App Center is already configured.
+     */
+    public static boolean setHttpTransportFactory(HttpTransportFactory transportFactory) {
+        return getInstance().setInstanceHttpTransportFactory(transportFactory);
+    }
+
     /**
      * Get the current version of App Center SDK.
      *
@@ -551,6 +570,21 @@ public class AppCenter {
         }
     }
 
+    /**
+     * {@link #setHttpTransportFactory(HttpTransportFactory)} implementation at instance level.
+     *
+     * @param transportFactory transport factory.
+     * @return true if applied.
+     */
+    private synchronized boolean setInstanceHttpTransportFactory(HttpTransportFactory transportFactory) {
+        if (isInstanceConfigured()) {
+            AppCenterLog.error(LOG_TAG, "setHttpTransportFactory may not be called after App Center has been configured.");
+            return false;
+        }
+        mHttpTransportFactory = transportFactory;
+        return true;
+    }
+
     /**
      * {@link #setCustomProperties(CustomProperties)} implementation at instance level.
      *
@@ -796,7 +830,7 @@ public class AppCenter {
         /* Instantiate HTTP client if it doesn't exist as a dependency. */
         HttpClient httpClient = DependencyConfiguration.getHttpClient();
         if (httpClient == null) {
-            httpClient = createHttpClient(mApplication);
+            httpClient = createHttpClient(mApplication, true, mHandler, mHttpTransportFactory);
         }
 
         /* Init channel. */
@@ -836,6 +870,14 @@ public class AppCenter {
         mUncaughtExceptionHandler = new UncaughtExceptionHandler(mHandler, mChannel);
         if (enabled) {
             mUncaughtExceptionHandler.register();
+
+            /* Warm up the connections so that the first logs are sent without waiting for DNS and handshakes. */
+            if (mAppSecret != null) {
+                preconnect(httpClient, mLogUrl != null ? mLogUrl : AppCenterIngestion.DEFAULT_LOG_URL);
+            }
+            if (mTransmissionTargetToken != null) {
+                mOneCollectorChannelListener.preconnect();
+            }
         }
         AppCenterLog.debug(LOG_TAG, "App Center initialized.");
     }
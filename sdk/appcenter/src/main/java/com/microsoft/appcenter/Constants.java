@@ -22,6 +22,11 @@ public class Constants {
      */
     public static final String APP_SECRET = "App-Secret";
 
+    /**
+     * Idempotency key HTTP Header, the same for every attempt to send the same logs together.
+     */
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     /**
      * Number of metrics queue items which will trigger synchronization.
      */
@@ -51,4 +51,8 @@ public class AbstractChannelListener implements Channel.Listener {
     @Override
     public void onResumed(@NonNull String groupName, String targetToken) {
     }
+
+    @Override
+    public void onBackpressure(@NonNull String groupName, @NonNull Log log, int queueDepth, int policy) {
+    }
 }
@@ -0,0 +1,16 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+/**
+ * Thrown when a log is discarded by the {@link BackpressurePolicy} of its group.
+ */
+public class BackpressureException extends Exception {
+
+    public BackpressureException(String detailMessage) {
+        super(detailMessage);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Policy applied by the channel to new logs when the queue depth of a group reaches its limit.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@IntDef({
+        BackpressurePolicy.NONE,
+        BackpressurePolicy.SAMPLE,
+        BackpressurePolicy.DROP_NEWEST,
+        BackpressurePolicy.DROP_OLDEST,
+        BackpressurePolicy.COALESCE
+})
+public @interface BackpressurePolicy {
+
+    /**
+     * Keep persisting every log, storage evicts the oldest logs when full.
+     */
+    int NONE = 0;
+
+    /**
+     * Keep only one new log out of a fixed sampling interval.
+     */
+    int SAMPLE = 1;
+
+    /**
+     * Discard new logs.
+     */
+    int DROP_NEWEST = 2;
+
+    /**
+     * Delete the oldest stored log that is not being sent to make room for each new log.
+     */
+    int DROP_OLDEST = 3;
+
+    /**
+     * Discard new logs identical to a log already enqueued since the limit was reached.
+     */
+    int COALESCE = 4;
+}
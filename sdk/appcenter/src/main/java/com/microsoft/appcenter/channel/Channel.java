@@ -11,6 +11,8 @@ import android.support.annotation.NonNull;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Log;
 
+import java.util.Collection;
+
 import static com.microsoft.appcenter.Flags.CRITICAL;
 import static com.microsoft.appcenter.Flags.NORMAL;
 
@@ -81,6 +83,35 @@ public interface Channel {
                  @NonNull String groupName,
                  @IntRange(from = NORMAL, to = CRITICAL) int flags);
 
+    /**
+     * Add several logs to queue to be persisted in a single transaction and sent.
+     * Listeners are called for each log as in {@link #enqueue}, but ingestion is scheduled only once.
+     *
+     * @param logs      the logs to be enqueued.
+     * @param groupName the group to use.
+     * @param flags     the flags for these logs.
+     */
+    void enqueueAll(@NonNull Collection<Log> logs,
+                    @NonNull String groupName,
+                    @IntRange(from = NORMAL, to = CRITICAL) int flags);
+
+    /**
+     * Set the policy applied to new logs of a group when its queue depth reaches a limit.
+     *
+     * @param groupName     the group name.
+     * @param policy        the backpressure policy, {@link BackpressurePolicy#NONE} to disable it.
+     * @param maxQueueDepth the queue depth from which the policy is applied.
+     */
+    void setBackpressurePolicy(@NonNull String groupName, @BackpressurePolicy int policy, @IntRange(from = 1) int maxQueueDepth);
+
+    /**
+     * Get the number of logs of a group that are stored and not yet acknowledged by ingestion.
+     *
+     * @param groupName the group name.
+     * @return the queue depth, 0 if the group is not registered.
+     */
+    int getQueueDepth(@NonNull String groupName);
+
     /**
      * Check whether channel is enabled or disabled.
      *
@@ -212,6 +243,17 @@ public interface Channel {
          * @param targetToken The target token is resumed, or null when the entire group is resumed.
          */
         void onResumed(@NonNull String groupName, String targetToken);
+
+        /**
+         * Called when the backpressure policy of a group is applied to a new log.
+         * Can be used to throttle log production while the channel is behind.
+         *
+         * @param groupName  The group name.
+         * @param log        The new log the policy was applied to.
+         * @param queueDepth The queue depth of the group before the log was enqueued.
+         * @param policy     The applied policy.
+         */
+        void onBackpressure(@NonNull String groupName, @NonNull Log log, int queueDepth, @BackpressurePolicy int policy);
     }
 
     /**
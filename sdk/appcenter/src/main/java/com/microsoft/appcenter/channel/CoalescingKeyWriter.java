@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.support.annotation.NonNull;
+
+import com.microsoft.appcenter.ingestion.models.json.BufferedJSONStringer;
+
+import org.json.JSONException;
+import org.json.JSONStringer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Writer used to compute coalescing keys: it skips fields that differ between duplicate logs
+ * and hashes the remaining JSON instead of keeping it.
+ */
+class CoalescingKeyWriter extends BufferedJSONStringer {
+
+    /**
+     * FNV-1a 64 bits offset basis.
+     */
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a 64 bits prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Dot separated paths of the fields to skip, from the root object.
+     */
+    private final Collection<String> mIgnoredPaths;
+
+    /**
+     * Path prefix of each open object, null for arrays and objects nested in arrays.
+     */
+    private final List<String> mPrefixes = new ArrayList<>();
+
+    /**
+     * Path of the field whose value is expected next, null if none.
+     */
+    private String mPath;
+
+    /**
+     * 0 when writing, 1 when the next value is skipped, more when inside a skipped value.
+     */
+    private int mSkipDepth;
+
+    /**
+     * Init.
+     *
+     * @param ignoredPaths dot separated paths of the fields to skip, e.g. "ext.sdk.seq".
+     */
+    CoalescingKeyWriter(@NonNull Collection<String> ignoredPaths) {
+        mIgnoredPaths = ignoredPaths;
+    }
+
+    private String getPrefix() {
+        return mPrefixes.isEmpty() ? null : mPrefixes.get(mPrefixes.size() - 1);
+    }
+
+    /**
+     * Consume a value while skipping.
+     *
+     * @return true if the value is skipped.
+     */
+    private boolean skipValue() {
+        if (mSkipDepth == 0) {
+            mPath = null;
+            return false;
+        }
+        if (mSkipDepth == 1) {
+            mSkipDepth = 0;
+        }
+        return true;
+    }
+
+    private boolean skipOpen() {
+        if (mSkipDepth > 0) {
+            mSkipDepth++;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean skipClose() {
+        if (mSkipDepth > 0) {
+            if (--mSkipDepth == 1) {
+                mSkipDepth = 0;
+            }
+            return true;
+        }
+        mPrefixes.remove(mPrefixes.size() - 1);
+        return false;
+    }
+
+    @Override
+    public JSONStringer object() throws JSONException {
+        if (skipOpen()) {
+            return this;
+        }
+        mPrefixes.add(mPath != null ? mPath + "." : mPrefixes.isEmpty() ? "" : null);
+        mPath = null;
+        return super.object();
+    }
+
+    @Override
+    public JSONStringer endObject() throws JSONException {
+        return skipClose() ? this : super.endObject();
+    }
+
+    @Override
+    public JSONStringer array() throws JSONException {
+        if (skipOpen()) {
+            return this;
+        }
+        mPrefixes.add(null);
+        mPath = null;
+        return super.array();
+    }
+
+    @Override
+    public JSONStringer endArray() throws JSONException {
+        return skipClose() ? this : super.endArray();
+    }
+
+    @Override
+    public JSONStringer key(String name) throws JSONException {
+        if (mSkipDepth > 0) {
+            return this;
+        }
+        String prefix = getPrefix();
+        String path = prefix != null && name != null ? prefix + name : null;
+        if (path != null && mIgnoredPaths.contains(path)) {
+            mSkipDepth = 1;
+            return this;
+        }
+        mPath = path;
+        return super.key(name);
+    }
+
+    @Override
+    public JSONStringer value(Object value) throws JSONException {
+        return skipValue() ? this : super.value(value);
+    }
+
+    @Override
+    public JSONStringer value(boolean value) throws JSONException {
+        return skipValue() ? this : super.value(value);
+    }
+
+    @Override
+    public JSONStringer value(double value) throws JSONException {
+        return skipValue() ? this : super.value(value);
+    }
+
+    @Override
+    public JSONStringer value(long value) throws JSONException {
+        return skipValue() ? this : super.value(value);
+    }
+
+    /**
+     * Hash the JSON written so far.
+     *
+     * @return 64 bits FNV-1a hash of the JSON characters.
+     */
+    long hash() {
+        HashingWriter writer = new HashingWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException ignored) {
+
+            /* Cannot happen, hashing does not do I/O. */
+        }
+        return writer.mHash;
+    }
+
+    /**
+     * Writer hashing characters instead of storing them.
+     */
+    private static class HashingWriter extends Writer {
+
+        /**
+         * Hash of the characters written so far.
+         */
+        private long mHash = FNV_OFFSET_BASIS;
+
+        @Override
+        public void write(@NonNull char[] buffer, int offset, int length) {
+            long hash = mHash;
+            for (int i = offset; i < offset + length; i++) {
+                hash ^= buffer[i];
+                hash *= FNV_PRIME;
+            }
+            mHash = hash;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
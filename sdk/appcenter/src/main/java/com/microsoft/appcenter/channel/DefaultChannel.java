@@ -16,29 +16,37 @@ import com.microsoft.appcenter.CancellationException;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.HttpUtils;
-import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
+import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
 import com.microsoft.appcenter.ingestion.models.one.PartAUtils;
 import com.microsoft.appcenter.persistence.DatabasePersistence;
 import com.microsoft.appcenter.persistence.Persistence;
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkLinkType;
+import com.microsoft.appcenter.utils.NetworkQuality;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
+import org.json.JSONException;
+
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -66,6 +74,70 @@ public class DefaultChannel implements Channel {
      */
     private static final long MINIMUM_TRANSMISSION_INTERVAL = 3000;
 
+    /**
+     * With {@link BackpressurePolicy#SAMPLE}, only one new log out of this number is kept once the limit is reached.
+     */
+    @VisibleForTesting
+    static final int BACKPRESSURE_SAMPLING_INTERVAL = 10;
+
+    /**
+     * App Center log fields ignored when comparing logs with {@link BackpressurePolicy#COALESCE}.
+     */
+    private static final Collection<String> COALESCING_IGNORED_FIELDS = Arrays.asList("id", "timestamp", "sid");
+
+    /**
+     * Common Schema log fields ignored when comparing logs with {@link BackpressurePolicy#COALESCE}.
+     */
+    private static final Collection<String> COALESCING_IGNORED_COMMON_SCHEMA_FIELDS = Arrays.asList("time", "ext.sdk.seq");
+
+    /**
+     * Maximum number of coalescing keys remembered per group, older keys are forgotten first.
+     */
+    @VisibleForTesting
+    static final int MAX_COALESCING_KEYS = 1024;
+
+    /**
+     * Circuit breaker state: batches are sent normally.
+     */
+    @VisibleForTesting
+    static final int CIRCUIT_CLOSED = 0;
+
+    /**
+     * Circuit breaker state: no batch is sent until the open duration expires.
+     */
+    @VisibleForTesting
+    static final int CIRCUIT_OPEN = 1;
+
+    /**
+     * Circuit breaker state: a single probe batch is sent to check if ingestion recovered.
+     */
+    @VisibleForTesting
+    static final int CIRCUIT_HALF_OPEN = 2;
+
+    /**
+     * Time a circuit breaker stays open after the first recoverable failure, in ms.
+     */
+    @VisibleForTesting
+    static final long CIRCUIT_BREAKER_INITIAL_OPEN_DURATION = 60 * 1000;
+
+    /**
+     * Maximum time a circuit breaker stays open, in ms. Open duration doubles after each failed probe.
+     */
+    @VisibleForTesting
+    static final long CIRCUIT_BREAKER_MAX_OPEN_DURATION = 30 * 60 * 1000;
+
+    /**
+     * Batch size multiplier on unmetered networks.
+     */
+    @VisibleForTesting
+    static final int UNMETERED_BATCH_SIZE_MULTIPLIER = 2;
+
+    /**
+     * Maximum log count per batch on constrained networks, high priority logs being sent first.
+     */
+    @VisibleForTesting
+    static final int CONSTRAINED_MAX_LOGS_PER_BATCH = 10;
+
     /**
      * Application context.
      */
@@ -106,11 +178,21 @@ public class DefaultChannel implements Channel {
      */
     private final Set<Ingestion> mIngestions;
 
+    /**
+     * Circuit breakers of ingestion objects that recently failed with a recoverable error.
+     */
+    private final Map<Ingestion, CircuitBreaker> mCircuitBreakers;
+
     /**
      * App Center core handler.
      */
     private final Handler mAppCenterHandler;
 
+    /**
+     * Network state helper to adapt batches to the network quality.
+     */
+    private final NetworkStateHelper mNetworkStateHelper;
+
     /**
      * Is channel enabled?
      */
@@ -166,7 +248,9 @@ public class DefaultChannel implements Channel {
         mIngestion = ingestion;
         mIngestions = new HashSet<>();
         mIngestions.add(mIngestion);
+        mCircuitBreakers = new HashMap<>();
         mAppCenterHandler = appCenterHandler;
+        mNetworkStateHelper = NetworkStateHelper.getSharedInstance(context);
         mEnabled = true;
     }
 
@@ -321,8 +405,8 @@ public class DefaultChannel implements Channel {
 
     /**
      * Set the enabled flag. If false, the channel will continue to persist data but not forward any item to ingestion.
-     * The most common use-case would be to set it to false and enable sending again after the channel has disabled itself after receiving
-     * a recoverable error (most likely related to a server issue).
+     * Recoverable errors (most likely related to a server issue) do not disable the channel,
+     * they only stop the failing ingestion for a while, see {@link CircuitBreaker}.
      *
      * @param enabled flag to enable or disable the channel.
      */
@@ -390,6 +474,7 @@ public class DefaultChannel implements Channel {
         mEnabled = false;
         mDiscardLogs = deleteLogs;
         mCurrentState++;
+        resetCircuitBreakers();
         for (GroupState groupState : mGroupStates.values()) {
             cancelTimer(groupState);
 
@@ -423,6 +508,16 @@ public class DefaultChannel implements Channel {
         }
     }
 
+    /**
+     * Cancel circuit breaker timers and close all circuit breakers.
+     */
+    private void resetCircuitBreakers() {
+        for (CircuitBreaker circuitBreaker : mCircuitBreakers.values()) {
+            mAppCenterHandler.removeCallbacks(circuitBreaker.mRunnable);
+        }
+        mCircuitBreakers.clear();
+    }
+
     private void deleteLogsOnSuspended(final GroupState groupState) {
         final List<Log> logs = new ArrayList<>();
         mPersistence.getLogs(groupState.mName, Collections.<String>emptyList(), CLEAR_BATCH_SIZE, logs);
@@ -461,13 +556,23 @@ public class DefaultChannel implements Channel {
             return;
         }
         int pendingLogCount = groupState.mPendingLogCount;
-        int maxFetch = Math.min(pendingLogCount, groupState.mMaxLogsPerBatch);
-        AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + pendingLogCount);
+        NetworkQuality networkQuality = mNetworkStateHelper.getNetworkQuality();
+        int linkType = networkQuality.getLinkType();
+        int maxFetch = Math.min(pendingLogCount, getMaxLogsPerBatch(groupState, linkType));
+        AppCenterLog.debug(LOG_TAG, "triggerIngestion(" + groupState.mName + ") pendingLogCount=" + pendingLogCount + " " + networkQuality);
         cancelTimer(groupState);
 
         /* Check if we have reached the maximum number of pending batches, log to LogCat and don't trigger another sending. */
-        if (groupState.mSendingBatches.size() == groupState.mMaxParallelBatches) {
-            AppCenterLog.debug(LOG_TAG, "Already sending " + groupState.mMaxParallelBatches + " batches of analytics data to the server.");
+        int maxParallelBatches = linkType == NetworkLinkType.CONSTRAINED ? 1 : groupState.mMaxParallelBatches;
+        if (groupState.mSendingBatches.size() >= maxParallelBatches) {
+            AppCenterLog.debug(LOG_TAG, "Already sending " + maxParallelBatches + " batches of analytics data to the server.");
+            return;
+        }
+
+        /* Check if ingestion is stopped by its circuit breaker, logs stay pending until it closes. */
+        CircuitBreaker circuitBreaker = mCircuitBreakers.get(groupState.mIngestion);
+        if (circuitBreaker != null && (circuitBreaker.mState == CIRCUIT_OPEN || circuitBreaker.mProbeBatchId != null)) {
+            AppCenterLog.debug(LOG_TAG, "Circuit breaker is open for " + groupState.mName + " ingestion, not sending logs.");
             return;
         }
 
@@ -484,6 +589,12 @@ public class DefaultChannel implements Channel {
         }
         AppCenterLog.debug(LOG_TAG, "ingestLogs(" + groupState.mName + "," + batchId + ") pendingLogCount=" + groupState.mPendingLogCount);
 
+        /* Only this batch goes through a half open circuit breaker. */
+        if (circuitBreaker != null) {
+            AppCenterLog.debug(LOG_TAG, "Sending probe batch " + batchId + " for " + groupState.mName + " ingestion.");
+            circuitBreaker.mProbeBatchId = batchId;
+        }
+
         /* Call group listener before sending logs to ingestion service. */
         if (groupState.mListener != null) {
             for (Log log : batch) {
@@ -496,6 +607,24 @@ public class DefaultChannel implements Channel {
         sendLogs(groupState, mCurrentState, batch, batchId);
     }
 
+    /**
+     * Get the batch size adapted to the network: larger on unmetered networks, small on constrained ones.
+     *
+     * @param groupState the group state.
+     * @param linkType   network link type.
+     * @return maximum log count for the next batch.
+     */
+    private static int getMaxLogsPerBatch(@NonNull GroupState groupState, @NetworkLinkType int linkType) {
+        switch (linkType) {
+            case NetworkLinkType.UNMETERED:
+                return groupState.mMaxLogsPerBatch * UNMETERED_BATCH_SIZE_MULTIPLIER;
+            case NetworkLinkType.CONSTRAINED:
+                return Math.min(groupState.mMaxLogsPerBatch, CONSTRAINED_MAX_LOGS_PER_BATCH);
+            default:
+                return groupState.mMaxLogsPerBatch;
+        }
+    }
+
     /**
      * Send logs.
      *
@@ -507,10 +636,33 @@ public class DefaultChannel implements Channel {
     @MainThread
     private void sendLogs(final GroupState groupState, final int currentState, List<Log> batch, final String batchId) {
 
-        /* Send logs. */
+        /* Send a copy of the batch, logs are removed from the batch as its parts are sent. */
         LogContainer logContainer = new LogContainer();
-        logContainer.setLogs(batch);
-        groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new ServiceCallback() {
+        logContainer.setLogs(new ArrayList<>(batch));
+        logContainer.setLogKeys(mPersistence.getLogKeys(groupState.mName, batchId));
+        groupState.mIngestion.sendAsync(mAppSecret, mInstallId, logContainer, new Ingestion.PartCallback() {
+
+            @Override
+            public void onPartSucceeded(final LogContainer logContainer, HttpResponse httpResponse) {
+                mAppCenterHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        handlePartSendingResult(groupState, batchId, logContainer, null);
+                    }
+                });
+            }
+
+            @Override
+            public void onPartFailed(final LogContainer logContainer, final Exception e) {
+                mAppCenterHandler.post(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        handlePartSendingResult(groupState, batchId, logContainer, e);
+                    }
+                });
+            }
 
             @Override
             public void onCallSucceeded(HttpResponse httpResponse) {
@@ -567,14 +719,71 @@ public class DefaultChannel implements Channel {
                     groupListener.onSuccess(log);
                 }
             }
+
+            closeCircuitBreaker(groupState);
+        }
+    }
+
+    /**
+     * React to a part of a batch sent separately: its logs are deleted and no longer part of the batch,
+     * so that the result of the batch only applies to the other logs.
+     *
+     * @param groupState   The group state.
+     * @param batchId      The batch ID.
+     * @param logContainer The logs of the part.
+     * @param e            The exception if the part failed, null if it was sent.
+     */
+    private void handlePartSendingResult(@NonNull GroupState groupState, @NonNull String batchId, @NonNull LogContainer logContainer, Exception e) {
+        List<Log> batch = groupState.mSendingBatches.get(batchId);
+        if (batch == null) {
+            return;
+        }
+        if (e != null) {
+            AppCenterLog.error(LOG_TAG, "Sending " + logContainer.getLogs().size() + " log(s) of groupName=" + groupState.mName + " id=" + batchId + " failed", e);
+        }
+        mPersistence.deleteLogs(groupState.mName, batchId, logContainer.getLogKeys());
+        GroupListener groupListener = groupState.mListener;
+        for (Log log : logContainer.getLogs()) {
+
+            /* Remove by identity, equal logs can be in the same batch. */
+            for (Iterator<Log> iterator = batch.iterator(); iterator.hasNext(); ) {
+                if (iterator.next() == log) {
+                    iterator.remove();
+                    break;
+                }
+            }
+            if (groupListener != null) {
+                if (e == null) {
+                    groupListener.onSuccess(log);
+                } else {
+                    groupListener.onFailure(log, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ingestion works again: close its circuit breaker and resume all groups using it.
+     *
+     * @param groupState the group state that got a response from the ingestion.
+     */
+    private void closeCircuitBreaker(@NonNull GroupState groupState) {
+        CircuitBreaker circuitBreaker = mCircuitBreakers.remove(groupState.mIngestion);
+        if (circuitBreaker != null) {
+            AppCenterLog.info(LOG_TAG, "Ingestion recovered, closing circuit breaker.");
+            mAppCenterHandler.removeCallbacks(circuitBreaker.mRunnable);
+            checkPendingLogsForIngestion(groupState.mIngestion);
+        } else {
             checkPendingLogs(groupState);
         }
     }
 
     /**
      * The actual implementation to react to not being able to send a batch to the server.
-     * Will disable the sender in case of a recoverable error.
-     * Will delete batch of data in case of a non-recoverable error.
+     * Will open the circuit breaker of the group ingestion in case of a recoverable error,
+     * batch of data is kept to be sent again once the circuit breaker is half open.
+     * Will only delete the batch of data if the ingestion rejected it as too large even after splitting it.
+     * Will disable the sender and delete batch of data in case of a non-recoverable error.
      *
      * @param groupState the group state
      * @param batchId    the batch ID
@@ -585,9 +794,21 @@ public class DefaultChannel implements Channel {
         List<Log> removedLogsForBatchId = groupState.mSendingBatches.remove(batchId);
         if (removedLogsForBatchId != null) {
             AppCenterLog.error(LOG_TAG, "Sending logs groupName=" + groupName + " id=" + batchId + " failed", e);
-            boolean recoverableError = HttpUtils.isRecoverableError(e);
-            if (recoverableError) {
+            if (HttpUtils.isRecoverableError(e)) {
                 groupState.mPendingLogCount += removedLogsForBatchId.size();
+                mPersistence.clearPendingLogState(groupName, batchId);
+                openCircuitBreaker(groupState.mIngestion, batchId);
+            } else if (HttpUtils.isPayloadTooLarge(e)) {
+
+                /* The ingestion works: only this batch is discarded, sending continues. */
+                mPersistence.deleteLogs(groupName, batchId);
+                GroupListener groupListener = groupState.mListener;
+                if (groupListener != null) {
+                    for (Log log : removedLogsForBatchId) {
+                        groupListener.onFailure(log, e);
+                    }
+                }
+                closeCircuitBreaker(groupState);
             } else {
                 GroupListener groupListener = groupState.mListener;
                 if (groupListener != null) {
@@ -595,11 +816,53 @@ public class DefaultChannel implements Channel {
                         groupListener.onFailure(log, e);
                     }
                 }
+                suspend(true, e);
             }
-            suspend(!recoverableError, e);
         }
     }
 
+    /**
+     * Open or re-open the circuit breaker of an ingestion after a recoverable failure.
+     * Failures of batches sent before the circuit breaker was opened do not extend the open duration.
+     *
+     * @param ingestion the failing ingestion.
+     * @param batchId   the failed batch ID.
+     */
+    private void openCircuitBreaker(@NonNull Ingestion ingestion, @NonNull String batchId) {
+        CircuitBreaker circuitBreaker = mCircuitBreakers.get(ingestion);
+        if (circuitBreaker == null) {
+            circuitBreaker = new CircuitBreaker(ingestion);
+            mCircuitBreakers.put(ingestion, circuitBreaker);
+        } else if (!batchId.equals(circuitBreaker.mProbeBatchId)) {
+            return;
+        }
+        long openDuration = CIRCUIT_BREAKER_INITIAL_OPEN_DURATION << Math.min(circuitBreaker.mFailureCount, 5);
+        openDuration = Math.min(openDuration, CIRCUIT_BREAKER_MAX_OPEN_DURATION);
+        circuitBreaker.mFailureCount++;
+        circuitBreaker.mState = CIRCUIT_OPEN;
+        circuitBreaker.mProbeBatchId = null;
+        AppCenterLog.warn(LOG_TAG, "Opening circuit breaker for " + openDuration + "ms after " + circuitBreaker.mFailureCount + " failure(s).");
+        mAppCenterHandler.postDelayed(circuitBreaker.mRunnable, openDuration);
+    }
+
+    /**
+     * Check pending logs of every group sending to the given ingestion.
+     *
+     * @param ingestion the ingestion.
+     */
+    private void checkPendingLogsForIngestion(@NonNull Ingestion ingestion) {
+        for (GroupState groupState : mGroupStates.values()) {
+            if (groupState.mIngestion == ingestion) {
+                checkPendingLogs(groupState);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    CircuitBreaker getCircuitBreaker(@NonNull Ingestion ingestion) {
+        return mCircuitBreakers.get(ingestion);
+    }
+
     @Override
     public void enqueue(@NonNull Log log, @NonNull final String groupName, int flags) {
 
@@ -613,13 +876,263 @@ public class DefaultChannel implements Channel {
         /* Check if disabled with discarding logs. */
         if (mDiscardLogs) {
             AppCenterLog.warn(LOG_TAG, "Channel is disabled, the log is discarded.");
+            notifyDiscardedLog(groupState, log);
+            return;
+        }
+
+        /* Call listeners, attach device properties and check filtering. */
+        if (!prepareLog(log, groupName, flags)) {
+            return;
+        }
+        if (mAppSecret == null && groupState.mIngestion == mIngestion) {
+
+            /* Log was not filtered out but no app secret has been provided. Do nothing in this case. */
+            AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
+            return;
+        }
+        if (!applyBackpressurePolicy(groupState, log, 0)) {
+            return;
+        }
+        try {
+
+            /* Persist log. */
+            mPersistence.putLog(log, groupName, flags);
+        } catch (Persistence.PersistenceException e) {
+            AppCenterLog.error(LOG_TAG, "Error persisting log", e);
             if (groupState.mListener != null) {
                 groupState.mListener.onBeforeSending(log);
-                groupState.mListener.onFailure(log, new CancellationException());
+                groupState.mListener.onFailure(log, e);
+            }
+            return;
+        }
+
+        /* Increment counters and schedule ingestion if we are enabled. */
+        if (countPersistedLog(groupState, log)) {
+            AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
+            scheduleIngestionAfterEnqueue(groupState);
+        }
+    }
+
+    @Override
+    public void enqueueAll(@NonNull Collection<Log> logs, @NonNull final String groupName, int flags) {
+
+        /* Check group name is registered. */
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
+            AppCenterLog.error(LOG_TAG, "Invalid group name:" + groupName);
+            return;
+        }
+
+        /* Check if disabled with discarding logs. */
+        if (mDiscardLogs) {
+            AppCenterLog.warn(LOG_TAG, "Channel is disabled, " + logs.size() + " logs are discarded.");
+            for (Log log : logs) {
+                notifyDiscardedLog(groupState, log);
             }
             return;
         }
 
+        /* Prepare all logs before touching storage. */
+        List<Log> preparedLogs = new ArrayList<>(logs.size());
+        for (Log log : logs) {
+            if (prepareLog(log, groupName, flags)) {
+                preparedLogs.add(log);
+            }
+        }
+        if (preparedLogs.isEmpty()) {
+            return;
+        }
+        if (mAppSecret == null && groupState.mIngestion == mIngestion) {
+            AppCenterLog.debug(LOG_TAG, preparedLogs.size() + " logs were not filtered out by listener(s) but no app secret was provided. Not persisting/sending the logs.");
+            return;
+        }
+
+        /* Apply backpressure policy, accounting for logs accepted in this call. */
+        if (groupState.mBackpressurePolicy != BackpressurePolicy.NONE) {
+            List<Log> acceptedLogs = new ArrayList<>(preparedLogs.size());
+            for (Log log : preparedLogs) {
+                if (applyBackpressurePolicy(groupState, log, acceptedLogs.size())) {
+                    acceptedLogs.add(log);
+                }
+            }
+            preparedLogs = acceptedLogs;
+            if (preparedLogs.isEmpty()) {
+                return;
+            }
+        }
+
+        /* Persist logs in a single transaction. */
+        Map<Log, Persistence.PersistenceException> failedLogs = new IdentityHashMap<>();
+        mPersistence.putLogs(preparedLogs, groupName, flags, failedLogs);
+
+        /* Report failures and count persisted logs. */
+        int countedLogs = 0;
+        for (Log log : preparedLogs) {
+            Persistence.PersistenceException e = failedLogs.get(log);
+            if (e != null) {
+                AppCenterLog.error(LOG_TAG, "Error persisting log", e);
+                if (groupState.mListener != null) {
+                    groupState.mListener.onBeforeSending(log);
+                    groupState.mListener.onFailure(log, e);
+                }
+            } else if (countPersistedLog(groupState, log)) {
+                countedLogs++;
+            }
+        }
+
+        /* Schedule ingestion once for the whole collection. */
+        if (countedLogs > 0) {
+            AppCenterLog.debug(LOG_TAG, "enqueueAll(" + groupState.mName + ") count=" + countedLogs + " pendingLogCount=" + groupState.mPendingLogCount);
+            scheduleIngestionAfterEnqueue(groupState);
+        }
+    }
+
+    @Override
+    public void setBackpressurePolicy(@NonNull String groupName, @BackpressurePolicy int policy, int maxQueueDepth) {
+        GroupState groupState = mGroupStates.get(groupName);
+        if (groupState == null) {
+            AppCenterLog.error(LOG_TAG, "Invalid group name:" + groupName);
+            return;
+        }
+        if (policy != BackpressurePolicy.NONE && maxQueueDepth < 1) {
+            AppCenterLog.error(LOG_TAG, "Invalid maximum queue depth: " + maxQueueDepth);
+            return;
+        }
+        AppCenterLog.debug(LOG_TAG, "setBackpressurePolicy(" + groupName + ") policy=" + policy + " maxQueueDepth=" + maxQueueDepth);
+        groupState.mBackpressurePolicy = policy;
+        groupState.mMaxQueueDepth = maxQueueDepth;
+        resetBackpressureState(groupState);
+    }
+
+    @Override
+    public int getQueueDepth(@NonNull String groupName) {
+        GroupState groupState = mGroupStates.get(groupName);
+        return groupState == null ? 0 : getQueueDepth(groupState);
+    }
+
+    /**
+     * Count logs that are waiting for a batch or being sent.
+     *
+     * @param groupState the group state.
+     * @return the queue depth.
+     */
+    private int getQueueDepth(@NonNull GroupState groupState) {
+        int queueDepth = groupState.mPendingLogCount;
+        for (List<Log> batch : groupState.mSendingBatches.values()) {
+            queueDepth += batch.size();
+        }
+        return queueDepth;
+    }
+
+    /**
+     * Apply the backpressure policy of a group to a new log before it is persisted.
+     *
+     * @param groupState    the group state.
+     * @param log           the new log.
+     * @param acceptedCount logs already accepted but not yet counted in the queue depth.
+     * @return true if the log must be persisted, false if it was discarded.
+     */
+    private boolean applyBackpressurePolicy(@NonNull GroupState groupState, @NonNull Log log, int acceptedCount) {
+        int policy = groupState.mBackpressurePolicy;
+        if (policy == BackpressurePolicy.NONE) {
+            return true;
+        }
+        int queueDepth = getQueueDepth(groupState) + acceptedCount;
+        if (queueDepth < groupState.mMaxQueueDepth) {
+            resetBackpressureState(groupState);
+            return true;
+        }
+        boolean accepted;
+        switch (policy) {
+            case BackpressurePolicy.SAMPLE:
+                accepted = groupState.mSampledLogCount++ % BACKPRESSURE_SAMPLING_INTERVAL == 0;
+                break;
+
+            case BackpressurePolicy.DROP_OLDEST:
+                accepted = true;
+
+                /* Logs of paused targets are not counted as pending, they are not deleted either. */
+                if (mPersistence.deleteOldestLog(groupState.mName, groupState.mPausedTargetKeys) && groupState.mPendingLogCount > 0) {
+                    groupState.mPendingLogCount--;
+                }
+                break;
+
+            case BackpressurePolicy.COALESCE:
+                Long coalescingKey = getCoalescingKey(log);
+                accepted = coalescingKey == null || groupState.mCoalescingKeys.add(coalescingKey);
+                break;
+
+            default:
+                accepted = false;
+        }
+
+        /* Notify listeners so that they can throttle themselves. */
+        for (Listener listener : mListeners) {
+            listener.onBackpressure(groupState.mName, log, queueDepth, policy);
+        }
+        if (!accepted) {
+            AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was discarded by backpressure policy=" + policy + " queueDepth=" + queueDepth);
+            if (groupState.mListener != null) {
+                groupState.mListener.onBeforeSending(log);
+                groupState.mListener.onFailure(log, new BackpressureException("Log discarded because queue depth " + queueDepth + " reached the limit of " + groupState.mMaxQueueDepth + "."));
+            }
+        }
+        return accepted;
+    }
+
+    /**
+     * Reset sampling and coalescing state once the queue depth is back under the limit.
+     *
+     * @param groupState the group state.
+     */
+    private static void resetBackpressureState(@NonNull GroupState groupState) {
+        groupState.mSampledLogCount = 0;
+        groupState.mCoalescingKeys.clear();
+    }
+
+    /**
+     * Get a key identifying a log regardless of its identifier, timestamp, session or sequence number.
+     *
+     * @param log the log.
+     * @return the hash of the log fields or null if the log cannot be serialized.
+     */
+    @VisibleForTesting
+    Long getCoalescingKey(@NonNull Log log) {
+        try {
+            CoalescingKeyWriter writer = new CoalescingKeyWriter(log instanceof CommonSchemaLog ? COALESCING_IGNORED_COMMON_SCHEMA_FIELDS : COALESCING_IGNORED_FIELDS);
+            writer.object();
+            log.write(writer);
+            writer.endObject();
+            return writer.hash();
+        } catch (JSONException e) {
+            AppCenterLog.error(LOG_TAG, "Cannot compute coalescing key", e);
+            return null;
+        }
+    }
+
+    /**
+     * Notify group listener that a log is discarded because the channel is disabled.
+     *
+     * @param groupState the group state.
+     * @param log        the discarded log.
+     */
+    private void notifyDiscardedLog(@NonNull GroupState groupState, @NonNull Log log) {
+        if (groupState.mListener != null) {
+            groupState.mListener.onBeforeSending(log);
+            groupState.mListener.onFailure(log, new CancellationException());
+        }
+    }
+
+    /**
+     * Call listeners to decorate the log, attach device properties and timestamp, then check filtering.
+     *
+     * @param log       the log to prepare.
+     * @param groupName the group of the log.
+     * @param flags     the flags for this log.
+     * @return true if the log should be persisted, false if it was filtered out or could not be prepared.
+     */
+    private boolean prepareLog(@NonNull Log log, @NonNull String groupName, int flags) {
+
         /* Call listeners so that they can decorate the log. */
         for (Listener listener : mListeners) {
             listener.onPreparingLog(log, groupName);
@@ -634,7 +1147,7 @@ public class DefaultChannel implements Channel {
                     mDevice = DeviceInfoHelper.getDeviceInfo(mContext);
                 } catch (DeviceInfoHelper.DeviceInfoException e) {
                     AppCenterLog.error(LOG_TAG, "Device log cannot be generated", e);
-                    return;
+                    return false;
                 }
             }
 
@@ -661,42 +1174,40 @@ public class DefaultChannel implements Channel {
         /* If filtered out, nothing more to do. */
         if (filteredOut) {
             AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was filtered out by listener(s)");
-        } else {
-            if (mAppSecret == null && groupState.mIngestion == mIngestion) {
-
-                /* Log was not filtered out but no app secret has been provided. Do nothing in this case. */
-                AppCenterLog.debug(LOG_TAG, "Log of type '" + log.getType() + "' was not filtered out by listener(s) but no app secret was provided. Not persisting/sending the log.");
-                return;
-            }
-            try {
-
-                /* Persist log. */
-                mPersistence.putLog(log, groupName, flags);
-            } catch (Persistence.PersistenceException e) {
-                AppCenterLog.error(LOG_TAG, "Error persisting log", e);
-                if (groupState.mListener != null) {
-                    groupState.mListener.onBeforeSending(log);
-                    groupState.mListener.onFailure(log, e);
-                }
-                return;
-            }
+        }
+        return !filteredOut;
+    }
 
-            /* Nothing more to do if the log is from a paused transmission target. */
-            Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
-            String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
-            if (groupState.mPausedTargetKeys.contains(targetKey)) {
-                AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
-                return;
-            }
+    /**
+     * Increment pending log counter for a persisted log unless its transmission target is paused.
+     *
+     * @param groupState the group state.
+     * @param log        the persisted log.
+     * @return true if the log was counted, false if it's from a paused transmission target.
+     */
+    private boolean countPersistedLog(@NonNull GroupState groupState, @NonNull Log log) {
+
+        /* Nothing more to do if the log is from a paused transmission target. */
+        Iterator<String> targetKeys = log.getTransmissionTargetTokens().iterator();
+        String targetKey = targetKeys.hasNext() ? PartAUtils.getTargetKey(targetKeys.next()) : null;
+        if (groupState.mPausedTargetKeys.contains(targetKey)) {
+            AppCenterLog.debug(LOG_TAG, "Transmission target ikey=" + targetKey + " is paused.");
+            return false;
+        }
+        groupState.mPendingLogCount++;
+        return true;
+    }
 
-            /* Increment counters and schedule ingestion if we are enabled. */
-            groupState.mPendingLogCount++;
-            AppCenterLog.debug(LOG_TAG, "enqueue(" + groupState.mName + ") pendingLogCount=" + groupState.mPendingLogCount);
-            if (mEnabled) {
-                checkPendingLogs(groupState);
-            } else {
-                AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
-            }
+    /**
+     * Schedule ingestion if we are enabled after new logs have been counted.
+     *
+     * @param groupState the group state.
+     */
+    private void scheduleIngestionAfterEnqueue(@NonNull GroupState groupState) {
+        if (mEnabled) {
+            checkPendingLogs(groupState);
+        } else {
+            AppCenterLog.debug(LOG_TAG, "Channel is temporarily disabled, log was saved to disk.");
         }
     }
 
@@ -798,6 +1309,58 @@ public class DefaultChannel implements Channel {
         suspend(false, new CancellationException());
     }
 
+    /**
+     * Circuit breaker state for an ingestion. When open, groups using the ingestion keep their logs pending.
+     * When the open duration expires, the circuit breaker is half open and a single probe batch is sent:
+     * it closes on success or opens again for a longer duration on recoverable failure.
+     */
+    @VisibleForTesting
+    class CircuitBreaker {
+
+        /**
+         * Ingestion protected by this circuit breaker.
+         */
+        final Ingestion mIngestion;
+
+        /**
+         * Current state, {@link #CIRCUIT_OPEN} or {@link #CIRCUIT_HALF_OPEN}.
+         * Closed circuit breakers are removed.
+         */
+        int mState = CIRCUIT_CLOSED;
+
+        /**
+         * Number of consecutive recoverable failures.
+         */
+        int mFailureCount;
+
+        /**
+         * Batch ID of the probe currently being sent while half open.
+         */
+        String mProbeBatchId;
+
+        /**
+         * Runnable that switches to half open state once the open duration expires.
+         */
+        final Runnable mRunnable = new Runnable() {
+
+            @Override
+            public void run() {
+                mState = CIRCUIT_HALF_OPEN;
+                AppCenterLog.debug(LOG_TAG, "Circuit breaker is half open, probing ingestion.");
+                checkPendingLogsForIngestion(mIngestion);
+            }
+        };
+
+        /**
+         * Init.
+         *
+         * @param ingestion ingestion protected by this circuit breaker.
+         */
+        CircuitBreaker(Ingestion ingestion) {
+            mIngestion = ingestion;
+        }
+    }
+
     /**
      * State for a specific log group.
      */
@@ -859,6 +1422,33 @@ public class DefaultChannel implements Channel {
          */
         final Collection<String> mPausedTargetKeys = new HashSet<>();
 
+        /**
+         * Policy applied to new logs when queue depth reaches {@link #mMaxQueueDepth}.
+         */
+        @BackpressurePolicy
+        int mBackpressurePolicy = BackpressurePolicy.NONE;
+
+        /**
+         * Queue depth from which the backpressure policy is applied.
+         */
+        int mMaxQueueDepth;
+
+        /**
+         * Number of logs seen by sampling since the limit was reached.
+         */
+        int mSampledLogCount;
+
+        /**
+         * Keys of the last logs accepted by coalescing since the limit was reached.
+         */
+        final Set<Long> mCoalescingKeys = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                return size() > MAX_COALESCING_KEYS;
+            }
+        });
+
         /**
          * Runnable that triggers ingestion of this group data
          * and triggers itself in {@link #mBatchTimeInterval} ms.
@@ -9,7 +9,6 @@ import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.http.HttpClient;
-import com.microsoft.appcenter.ingestion.Ingestion;
 import com.microsoft.appcenter.ingestion.OneCollectorIngestion;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
@@ -65,7 +64,7 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
     /**
      * Ingestion instance.
      */
-    private final Ingestion mIngestion;
+    private final OneCollectorIngestion mIngestion;
 
     /**
      * Epochs and sequences grouped by iKey.
@@ -101,6 +100,13 @@ public class OneCollectorChannelListener extends AbstractChannelListener {
         mIngestion.setLogUrl(logUrl);
     }
 
+    /**
+     * Warm up the connection to the log URL.
+     */
+    public void preconnect() {
+        mIngestion.preconnect();
+    }
+
     @Override
     public void onGroupAdded(@NonNull String groupName, Channel.GroupListener groupListener, long batchTimeInterval) {
         if (isOneCollectorGroup(groupName)) {
@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+/**
+ * Snapshot of connection reuse statistics of a {@link DefaultHttpClient}.
+ */
+public class ConnectionPoolStats {
+
+    /**
+     * Number of HTTP calls that obtained a connection.
+     */
+    private final int mRequestCount;
+
+    /**
+     * Number of connections that required a new TLS handshake.
+     */
+    private final int mNewConnectionCount;
+
+    /**
+     * Number of HTTP calls that reused a kept alive connection.
+     */
+    private final int mReusedConnectionCount;
+
+    /**
+     * Number of connections released to the pool after the response was consumed.
+     */
+    private final int mReleasedConnectionCount;
+
+    /**
+     * Init.
+     *
+     * @param requestCount            number of HTTP calls that obtained a connection.
+     * @param newConnectionCount      number of connections that required a new TLS handshake.
+     * @param reusedConnectionCount   number of HTTP calls that reused a kept alive connection.
+     * @param releasedConnectionCount number of connections released to the pool.
+     */
+    ConnectionPoolStats(int requestCount, int newConnectionCount, int reusedConnectionCount, int releasedConnectionCount) {
+        mRequestCount = requestCount;
+        mNewConnectionCount = newConnectionCount;
+        mReusedConnectionCount = reusedConnectionCount;
+        mReleasedConnectionCount = releasedConnectionCount;
+    }
+
+    /**
+     * Get the number of HTTP calls that obtained a connection.
+     *
+     * @return request count.
+     */
+    public int getRequestCount() {
+        return mRequestCount;
+    }
+
+    /**
+     * Get the number of connections that required a new TLS handshake.
+     *
+     * @return new connection count.
+     */
+    public int getNewConnectionCount() {
+        return mNewConnectionCount;
+    }
+
+    /**
+     * Get the number of HTTP calls that reused a kept alive connection.
+     *
+     * @return reused connection count.
+     */
+    public int getReusedConnectionCount() {
+        return mReusedConnectionCount;
+    }
+
+    /**
+     * Get the number of connections released to the pool after the response was consumed.
+     *
+     * @return released connection count.
+     */
+    public int getReleasedConnectionCount() {
+        return mReleasedConnectionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPoolStats{" +
+                "requests=" + mRequestCount +
+                ", newConnections=" + mNewConnectionCount +
+                ", reusedConnections=" + mReusedConnectionCount +
+                ", releasedConnections=" + mReleasedConnectionCount +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Hostname verifier that records on the calling thread whether a TLS handshake happened,
+ * which is the case only when the connection was not taken from the pool.
+ * A single instance must be shared by all connections as the platform pools connections per verifier.
+ */
+class ConnectionTrackingHostnameVerifier implements HostnameVerifier {
+
+    /**
+     * Shared instance.
+     */
+    private static ConnectionTrackingHostnameVerifier sInstance;
+
+    /**
+     * Whether a handshake happened on the current thread since {@link #startTracking()}.
+     */
+    private final ThreadLocal<Boolean> mHandshake = new ThreadLocal<>();
+
+    /**
+     * Platform verifier.
+     */
+    private final HostnameVerifier mDelegate;
+
+    private ConnectionTrackingHostnameVerifier(HostnameVerifier delegate) {
+        mDelegate = delegate;
+    }
+
+    /**
+     * Get shared instance.
+     *
+     * @return shared instance.
+     */
+    static synchronized ConnectionTrackingHostnameVerifier getInstance() {
+        if (sInstance == null) {
+            sInstance = new ConnectionTrackingHostnameVerifier(HttpsURLConnection.getDefaultHostnameVerifier());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Start tracking handshakes on the current thread, to call before connecting.
+     */
+    void startTracking() {
+        mHandshake.set(false);
+    }
+
+    /**
+     * Check if a handshake happened on the current thread since {@link #startTracking()}.
+     *
+     * @return true if a new connection was established, false if a pooled connection was reused.
+     */
+    boolean isNewConnection() {
+        return Boolean.TRUE.equals(mHandshake.get());
+    }
+
+    @Override
+    public boolean verify(String hostname, SSLSession session) {
+        mHandshake.set(true);
+        return mDelegate.verify(hostname, session);
+    }
+}
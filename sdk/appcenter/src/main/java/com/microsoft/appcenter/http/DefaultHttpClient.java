@@ -5,23 +5,40 @@
 
 package com.microsoft.appcenter.http;
 
-import android.os.AsyncTask;
+import android.net.TrafficStats;
+import android.os.Handler;
+import android.os.Process;
+import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.HandlerUtils;
 
+import java.io.IOException;
+import java.net.URL;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+import javax.net.ssl.HttpsURLConnection;
 
 import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.http.HttpUtils.THREAD_STATS_TAG;
+import static com.microsoft.appcenter.http.HttpUtils.createHttpsConnection;
 
 /**
  * Default HTTP client without the additional behaviors.
  */
-public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.Tracker {
+public class DefaultHttpClient implements HttpClient, HttpClient.Preconnectable, DefaultHttpClientCallTask.Tracker {
 
     /**
      * HTTP GET method.
@@ -68,6 +85,29 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
      */
     static final String CONTENT_ENCODING_VALUE = "gzip";
 
+    /**
+     * Default maximum number of concurrent HTTP calls.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_THREAD_COUNT = 3;
+
+    /**
+     * Default maximum number of HTTP calls waiting for a thread.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_QUEUE_CAPACITY = 64;
+
+    /**
+     * Time idle threads are kept, in seconds.
+     */
+    private static final long THREAD_KEEP_ALIVE_TIME = 30;
+
+    /**
+     * HTTP thread name prefix.
+     */
+    @VisibleForTesting
+    static final String THREAD_NAME_PREFIX = "AppCenter.Http-";
+
     /**
      * List of ongoing call tasks.
      */
@@ -78,12 +118,129 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
      */
     private final boolean mCompressionEnabled;
 
+    /**
+     * Indicates whether connections are kept alive to be reused by next calls.
+     */
+    private final boolean mConnectionReuseEnabled;
+
+    /**
+     * Executor running HTTP calls.
+     */
+    private final Executor mExecutor;
+
+    /**
+     * Handler to deliver call results on, or null for the main thread.
+     */
+    private final Handler mCallbackHandler;
+
+    /**
+     * Deflaters and buffers reused across calls.
+     */
+    private final HttpBufferPool mBufferPool = new HttpBufferPool();
+
+    /**
+     * Number of calls that obtained a connection.
+     */
+    private int mRequestCount;
+
+    /**
+     * Number of calls that required a new connection.
+     */
+    private int mNewConnectionCount;
+
+    /**
+     * Number of connections released to the pool.
+     */
+    private int mReleasedConnectionCount;
+
     public DefaultHttpClient() {
         this(true);
     }
 
     public DefaultHttpClient(boolean compressionEnabled) {
+        this(compressionEnabled, false);
+    }
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled     whether large payloads are compressed.
+     * @param connectionReuseEnabled whether connections are released to the platform pool after a call
+     *                               instead of being disconnected, so that next calls to the same host skip
+     *                               TCP and TLS handshakes.
+     */
+    public DefaultHttpClient(boolean compressionEnabled, boolean connectionReuseEnabled) {
+        this(compressionEnabled, connectionReuseEnabled, null);
+    }
+
+    /**
+     * Init with a default executor.
+     *
+     * @param compressionEnabled     whether large payloads are compressed.
+     * @param connectionReuseEnabled whether connections are kept alive to be reused.
+     * @param callbackHandler        handler to deliver call results on, or null for the main thread.
+     */
+    public DefaultHttpClient(boolean compressionEnabled, boolean connectionReuseEnabled, Handler callbackHandler) {
+        this(compressionEnabled, connectionReuseEnabled, createExecutor(DEFAULT_THREAD_COUNT, DEFAULT_QUEUE_CAPACITY, Process.THREAD_PRIORITY_BACKGROUND), callbackHandler);
+    }
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled     whether large payloads are compressed.
+     * @param connectionReuseEnabled whether connections are kept alive to be reused.
+     * @param executor               executor running HTTP calls, see {@link #createExecutor(int, int, int)}.
+     * @param callbackHandler        handler to deliver call results on, or null for the main thread.
+     */
+    public DefaultHttpClient(boolean compressionEnabled, boolean connectionReuseEnabled, @NonNull Executor executor, Handler callbackHandler) {
         mCompressionEnabled = compressionEnabled;
+        mConnectionReuseEnabled = connectionReuseEnabled;
+        mExecutor = executor;
+        mCallbackHandler = callbackHandler;
+    }
+
+    /**
+     * Create an executor for HTTP calls that does not share threads with the application.
+     * Calls are rejected, thus retried later by {@link HttpClientRetryer}, when the queue is full.
+     *
+     * @param threadCount    maximum number of concurrent calls.
+     * @param queueCapacity  maximum number of calls waiting for a thread.
+     * @param threadPriority Linux thread priority of the threads, such as {@link Process#THREAD_PRIORITY_BACKGROUND}.
+     * @return executor.
+     */
+    public static ExecutorService createExecutor(int threadCount, int queueCapacity, final int threadPriority) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, THREAD_KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(queueCapacity), new ThreadFactory() {
+
+            private final AtomicInteger mThreadCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NonNull final Runnable runnable) {
+                return new Thread(new Runnable() {
+
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(threadPriority);
+                        runnable.run();
+                    }
+                }, THREAD_NAME_PREFIX + mThreadCount.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Run a callback on the given handler, or on the main thread if the handler is null.
+     *
+     * @param callbackHandler handler or null.
+     * @param runnable        callback.
+     */
+    static void runOnCallbackThread(Handler callbackHandler, Runnable runnable) {
+        if (callbackHandler != null) {
+            callbackHandler.post(runnable);
+        } else {
+            HandlerUtils.runOnUiThread(runnable);
+        }
     }
 
     @VisibleForTesting
@@ -93,18 +250,19 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
 
     @Override
     public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, final ServiceCallback serviceCallback) {
-        final DefaultHttpClientCallTask task = new DefaultHttpClientCallTask(url, method, headers, callTemplate, serviceCallback, this, mCompressionEnabled);
+        final DefaultHttpClientCallTask task = new DefaultHttpClientCallTask(url, method, headers, callTemplate, serviceCallback, this, mCompressionEnabled, mConnectionReuseEnabled, mCallbackHandler, mBufferPool);
         try {
-            task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            task.executeOnExecutor(mExecutor);
         } catch (final RejectedExecutionException e) {
 
             /*
-             * When executor saturated (shared with app), we should use the retry mechanism
+             * When executor saturated, we should use the retry mechanism
              * rather than creating more threads to avoid putting too much pressure on the hosting app.
              * Also we need to return the method before calling the listener,
              * so we post the callback on handler to make sure of that.
              */
-            HandlerUtils.runOnUiThread(new Runnable() {
+            onFinish(task);
+            runOnCallbackThread(mCallbackHandler, new Runnable() {
 
                 @Override
                 public void run() {
@@ -117,12 +275,83 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
             @Override
             public void cancel() {
 
-                /* This doesn't kill the AsyncTask, so we should check the state manually. */
-                task.cancel(true);
+                /* This doesn't interrupt the call, so the task checks the state manually. */
+                task.cancel();
             }
         };
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * No request is sent: an HTTPS connection created like the ones of the calls is connected then disconnected,
+     * so that the next connection finds the address in the DNS cache and resumes the TLS session.
+     * {@link HttpsURLConnection} only pools a connection once a response is read, so the socket itself is not reused.
+     */
+    @Override
+    public void preconnect(final String url) {
+        try {
+            mExecutor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+
+                    /* Do tag socket to avoid strict mode issue. */
+                    TrafficStats.setThreadStatsTag(THREAD_STATS_TAG);
+                    try {
+                        connect(new URL(url));
+                        AppCenterLog.verbose(LOG_TAG, "Preconnected to " + url);
+                    } catch (IOException e) {
+                        AppCenterLog.verbose(LOG_TAG, "Failed to preconnect to " + url, e);
+                    } finally {
+                        TrafficStats.clearThreadStatsTag();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+
+            /* The next call will connect. */
+        }
+    }
+
+    /**
+     * Connect to a host, make a TLS handshake and disconnect.
+     *
+     * @param url URL of the host.
+     * @throws IOException if the host cannot be resolved or the handshake fails.
+     */
+    private static void connect(URL url) throws IOException {
+        HttpsURLConnection httpsURLConnection = createHttpsConnection(url);
+        try {
+            httpsURLConnection.connect();
+        } finally {
+            httpsURLConnection.disconnect();
+        }
+    }
+
+    /**
+     * Get the gzip compression level of request payloads.
+     *
+     * @return compression level.
+     */
+    public int getCompressionLevel() {
+        return mBufferPool.getCompressionLevel();
+    }
+
+    /**
+     * Set the gzip compression level of request payloads, applied from the next call.
+     * Lower levels use less CPU at the cost of larger payloads.
+     *
+     * @param compressionLevel {@link Deflater#DEFAULT_COMPRESSION} or between {@link Deflater#BEST_SPEED} and {@link Deflater#BEST_COMPRESSION}.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < Deflater.BEST_SPEED || compressionLevel > Deflater.BEST_COMPRESSION)) {
+            AppCenterLog.error(LOG_TAG, "Invalid compression level: " + compressionLevel);
+            return;
+        }
+        mBufferPool.setCompressionLevel(compressionLevel);
+    }
+
     @Override
     public synchronized void onStart(DefaultHttpClientCallTask task) {
         mTasks.add(task);
@@ -133,12 +362,32 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
         mTasks.remove(task);
     }
 
+    @Override
+    public synchronized void onConnectionUsed(boolean newConnection, boolean released) {
+        mRequestCount++;
+        if (newConnection) {
+            mNewConnectionCount++;
+        }
+        if (released) {
+            mReleasedConnectionCount++;
+        }
+    }
+
+    /**
+     * Get connection reuse statistics since this client was created.
+     *
+     * @return statistics snapshot.
+     */
+    public synchronized ConnectionPoolStats getConnectionPoolStats() {
+        return new ConnectionPoolStats(mRequestCount, mNewConnectionCount, mRequestCount - mNewConnectionCount, mReleasedConnectionCount);
+    }
+
     @Override
     public synchronized void close() {
         if (mTasks.size() > 0) {
             AppCenterLog.debug(LOG_TAG, "Cancelling " + mTasks.size() + " network call(s).");
             for (DefaultHttpClientCallTask task : mTasks) {
-                task.cancel(true);
+                task.cancel();
             }
             mTasks.clear();
         }
@@ -154,4 +403,9 @@ public class DefaultHttpClient implements HttpClient, DefaultHttpClientCallTask.
     boolean isCompressionEnabled() {
         return mCompressionEnabled;
     }
+
+    @VisibleForTesting
+    boolean isConnectionReuseEnabled() {
+        return mConnectionReuseEnabled;
+    }
 }
@@ -6,25 +6,28 @@
 package com.microsoft.appcenter.http;
 
 import android.net.TrafficStats;
-import android.os.AsyncTask;
+import android.os.Handler;
+import android.support.annotation.VisibleForTesting;
 import android.util.Log;
 
 import com.microsoft.appcenter.utils.AppCenterLog;
 
 import org.json.JSONObject;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
-import java.util.zip.GZIPOutputStream;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -35,17 +38,18 @@ import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_ENCODING_VA
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
-import static com.microsoft.appcenter.http.HttpUtils.READ_BUFFER_SIZE;
 import static com.microsoft.appcenter.http.HttpUtils.THREAD_STATS_TAG;
 import static com.microsoft.appcenter.http.HttpUtils.WRITE_BUFFER_SIZE;
 import static com.microsoft.appcenter.http.HttpUtils.createHttpsConnection;
+import static com.microsoft.appcenter.http.HttpUtils.getResponseMode;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
 /**
- * Async task for default HTTP client.
+ * Async task for default HTTP client, executed on the client executor.
+ * The result is delivered on the client callback handler.
  */
-class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
+class DefaultHttpClientCallTask implements Runnable {
 
     /**
      * Default string builder capacity.
@@ -55,13 +59,19 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
     /**
      * Minimum payload length in bytes to use gzip.
      */
-    private static final int MIN_GZIP_LENGTH = 1400;
+    static final int MIN_GZIP_LENGTH = 1400;
 
     /**
      * Maximum payload length to use prettify for logging.
      */
     private static final int MAX_PRETTIFY_LOG_LENGTH = 4 * 1024;
 
+    /**
+     * Chunk length in bytes when streaming the payload with chunked transfer encoding.
+     */
+    @VisibleForTesting
+    static final int STREAMING_CHUNK_LENGTH = 4 * WRITE_BUFFER_SIZE;
+
     /**
      * Pattern used to replace token in url encoded parameters.
      */
@@ -91,7 +101,31 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
 
     private final boolean mCompressionEnabled;
 
-    DefaultHttpClientCallTask(String url, String method, Map<String, String> headers, HttpClient.CallTemplate callTemplate, ServiceCallback serviceCallback, Tracker tracker, boolean compressionEnabled) {
+    private final boolean mConnectionReuseEnabled;
+
+    /**
+     * Handler to deliver the result on, or null for the main thread.
+     */
+    private final Handler mCallbackHandler;
+
+    /**
+     * Deflaters and buffers of the client.
+     */
+    private final HttpBufferPool mBufferPool;
+
+    private volatile boolean mCancelled;
+
+    /**
+     * Thread running the call, interrupted on cancel. Guarded by this.
+     */
+    private Thread mThread;
+
+    /**
+     * Connection of the call, disconnected on cancel to abort blocking I/O. Guarded by this.
+     */
+    private HttpsURLConnection mConnection;
+
+    DefaultHttpClientCallTask(String url, String method, Map<String, String> headers, HttpClient.CallTemplate callTemplate, ServiceCallback serviceCallback, Tracker tracker, boolean compressionEnabled, boolean connectionReuseEnabled, Handler callbackHandler, HttpBufferPool bufferPool) {
         mUrl = url;
         mMethod = method;
         mHeaders = headers;
@@ -99,6 +133,9 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         mServiceCallback = serviceCallback;
         mTracker = tracker;
         mCompressionEnabled = compressionEnabled;
+        mConnectionReuseEnabled = connectionReuseEnabled;
+        mCallbackHandler = callbackHandler;
+        mBufferPool = bufferPool;
     }
 
     private static InputStream getInputStream(HttpsURLConnection httpsURLConnection) throws IOException {
@@ -113,15 +150,32 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
     /**
      * Write payload to output stream.
      */
-    private void writePayload(OutputStream out, byte[] payload) throws IOException {
-        for (int i = 0; i < payload.length; i += WRITE_BUFFER_SIZE) {
-            out.write(payload, i, min(payload.length - i, WRITE_BUFFER_SIZE));
+    private void writePayload(OutputStream out, byte[] payload, int length) throws IOException {
+        for (int i = 0; i < length; i += WRITE_BUFFER_SIZE) {
+            out.write(payload, i, min(length - i, WRITE_BUFFER_SIZE));
             if (isCancelled()) {
                 break;
             }
         }
     }
 
+    /**
+     * Write payload through gzip while the call template serializes it.
+     */
+    private void writeStreamingPayload(OutputStream out, HttpClient.StreamingCallTemplate callTemplate) throws Exception {
+        OutputStream gzipStream = new PooledGzipOutputStream(out, mBufferPool);
+        Writer writer = new OutputStreamWriter(gzipStream, CHARSET_NAME);
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            callTemplate.writeRequestBody(writer);
+        } finally {
+
+            /* Closing the writer finishes the gzip stream and closes the connection stream. */
+            writer.close();
+        }
+    }
+
     /**
      * Dump response stream to a string.
      */
@@ -138,7 +192,7 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         //noinspection TryFinallyCanBeTryWithResources
         try {
             Reader reader = new InputStreamReader(stream, CHARSET_NAME);
-            char[] buffer = new char[READ_BUFFER_SIZE];
+            char[] buffer = mBufferPool.obtainCharBuffer();
             int len;
             while ((len = reader.read(buffer)) > 0) {
                 builder.append(buffer, 0, len);
@@ -152,12 +206,63 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         }
     }
 
+    /**
+     * Pass a successful response stream to the call template.
+     */
+    private void streamResponse(HttpsURLConnection httpsURLConnection, HttpClient.StreamingResponseCallTemplate callTemplate) throws Exception {
+        InputStream stream = httpsURLConnection.getInputStream();
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            callTemplate.readResponseBody(new InputStreamReader(stream, CHARSET_NAME));
+
+            /* The template may not read the whole body, the rest is needed to reuse the connection. */
+            skipResponse(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Read a successful response stream without decoding it.
+     */
+    private void discardResponse(HttpsURLConnection httpsURLConnection) throws IOException {
+        InputStream stream = httpsURLConnection.getInputStream();
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            skipResponse(stream);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private void skipResponse(InputStream stream) throws IOException {
+        byte[] buffer = mBufferPool.obtainByteBuffer();
+        while (stream.read(buffer) > 0) {
+            if (isCancelled()) {
+                break;
+            }
+        }
+    }
+
     /**
      * Do http call.
      */
     private HttpResponse doHttpCall() throws Exception {
         URL url = new URL(mUrl);
         HttpsURLConnection httpsURLConnection = createHttpsConnection(url);
+        if (!setConnection(httpsURLConnection)) {
+            return null;
+        }
+        ConnectionTrackingHostnameVerifier hostnameVerifier = null;
+        if (mConnectionReuseEnabled) {
+            hostnameVerifier = ConnectionTrackingHostnameVerifier.getInstance();
+            hostnameVerifier.startTracking();
+            httpsURLConnection.setHostnameVerifier(hostnameVerifier);
+        }
+        boolean connected = false;
+        boolean responseConsumed = false;
         try {
 
             /* Build payload now if POST. */
@@ -166,12 +271,23 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             byte[] binaryPayload = null;
             boolean shouldCompress = false;
             boolean isPost = mMethod.equals(METHOD_POST);
+            boolean streaming = false;
             if (isPost && mCallTemplate != null) {
 
-                /* Get bytes, check if large enough to compress. */
-                payload = mCallTemplate.buildRequestBody();
-                binaryPayload = payload.getBytes(CHARSET_NAME);
-                shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                /*
+                 * Stream the payload if possible, size is unknown until written so always compress.
+                 * Payload is built in memory when verbose logging as we need to log it.
+                 */
+                streaming = mCompressionEnabled && mCallTemplate instanceof HttpClient.StreamingCallTemplate && AppCenterLog.getLogLevel() > Log.VERBOSE;
+                if (streaming) {
+                    shouldCompress = true;
+                } else {
+
+                    /* Get bytes, check if large enough to compress. */
+                    payload = mCallTemplate.buildRequestBody();
+                    binaryPayload = payload.getBytes(CHARSET_NAME);
+                    shouldCompress = mCompressionEnabled && binaryPayload.length >= MIN_GZIP_LENGTH;
+                }
 
                 /* If no content type specified, assume json. */
                 if (!mHeaders.containsKey(CONTENT_TYPE_KEY)) {
@@ -198,7 +314,11 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             }
 
             /* Send payload. */
-            if (binaryPayload != null) {
+            if (streaming) {
+                httpsURLConnection.setDoOutput(true);
+                httpsURLConnection.setChunkedStreamingMode(STREAMING_CHUNK_LENGTH);
+                writeStreamingPayload(httpsURLConnection.getOutputStream(), (HttpClient.StreamingCallTemplate) mCallTemplate);
+            } else if (binaryPayload != null) {
 
                 /* Log payload. */
                 if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
@@ -212,24 +332,35 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 }
 
                 /* Compress payload if large enough to be worth it. */
+                HttpBufferPool.PayloadBuffer gzipBuffer = null;
+                int payloadLength = binaryPayload.length;
                 if (shouldCompress) {
-                    ByteArrayOutputStream gzipBuffer = new ByteArrayOutputStream(binaryPayload.length);
-                    GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBuffer);
-                    gzipStream.write(binaryPayload);
-                    gzipStream.close();
-                    binaryPayload = gzipBuffer.toByteArray();
+                    gzipBuffer = mBufferPool.obtainPayloadBuffer();
+                    PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(gzipBuffer, mBufferPool);
+
+                    //noinspection TryFinallyCanBeTryWithResources
+                    try {
+                        gzipStream.write(binaryPayload);
+                    } finally {
+                        gzipStream.close();
+                    }
+                    binaryPayload = gzipBuffer.getBuffer();
+                    payloadLength = gzipBuffer.size();
                 }
 
                 /* Send payload on the wire. */
                 httpsURLConnection.setDoOutput(true);
-                httpsURLConnection.setFixedLengthStreamingMode(binaryPayload.length);
+                httpsURLConnection.setFixedLengthStreamingMode(payloadLength);
                 OutputStream out = httpsURLConnection.getOutputStream();
 
                 //noinspection TryFinallyCanBeTryWithResources
                 try {
-                    writePayload(out, binaryPayload);
+                    writePayload(out, binaryPayload, payloadLength);
                 } finally {
                     out.close();
+                    if (gzipBuffer != null) {
+                        mBufferPool.releasePayloadBuffer(gzipBuffer);
+                    }
                 }
             }
             if (isCancelled()) {
@@ -238,8 +369,21 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
 
             /* Read response. */
             int status = httpsURLConnection.getResponseCode();
-            String response = readResponse(httpsURLConnection);
-            if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
+            connected = true;
+            boolean success = status >= 200 && status < 300;
+            int responseMode = success ? getResponseMode(mCallTemplate) : ResponseMode.BODY;
+            String response = "";
+            if (responseMode == ResponseMode.BODY) {
+                response = readResponse(httpsURLConnection);
+            } else if (responseMode == ResponseMode.STREAM) {
+                streamResponse(httpsURLConnection, (HttpClient.StreamingResponseCallTemplate) mCallTemplate);
+            } else {
+                discardResponse(httpsURLConnection);
+            }
+            responseConsumed = !isCancelled();
+            if (responseMode != ResponseMode.BODY) {
+                AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status);
+            } else if (AppCenterLog.getLogLevel() <= Log.VERBOSE) {
                 String contentType = httpsURLConnection.getHeaderField(CONTENT_TYPE_KEY);
                 String logPayload;
                 if (contentType == null || contentType.startsWith("text/") || contentType.startsWith("application/")) {
@@ -250,14 +394,19 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
                 }
                 AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status + " payload=" + logPayload);
             }
-            Map<String, String> responseHeaders = new HashMap<>();
-            for (Map.Entry<String, List<String>> header : httpsURLConnection.getHeaderFields().entrySet()) {
-                responseHeaders.put(header.getKey(), header.getValue().iterator().next());
+            Map<String, String> responseHeaders;
+            if (responseMode == ResponseMode.STATUS) {
+                responseHeaders = Collections.emptyMap();
+            } else {
+                responseHeaders = new HashMap<>();
+                for (Map.Entry<String, List<String>> header : httpsURLConnection.getHeaderFields().entrySet()) {
+                    responseHeaders.put(header.getKey(), header.getValue().iterator().next());
+                }
             }
             HttpResponse httpResponse = new HttpResponse(status, response, responseHeaders);
 
             /* Accept all 2xx codes. */
-            if (status >= 200 && status < 300) {
+            if (success) {
                 return httpResponse;
             }
 
@@ -265,13 +414,93 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
             throw new HttpException(httpResponse);
         } finally {
 
-            /* Release connection. */
-            httpsURLConnection.disconnect();
+            /*
+             * A connection can go back to the pool only if the response was fully read.
+             * Disconnecting closes the socket otherwise.
+             */
+            setConnection(null);
+            boolean release = mConnectionReuseEnabled && responseConsumed;
+            if (!release) {
+                httpsURLConnection.disconnect();
+            }
+            if (hostnameVerifier != null && connected) {
+                mTracker.onConnectionUsed(hostnameVerifier.isNewConnection(), release);
+            }
         }
     }
 
+    /**
+     * Track the task and submit it to the executor.
+     *
+     * @param executor executor.
+     * @return this task.
+     * @throws java.util.concurrent.RejectedExecutionException if the executor is saturated.
+     */
+    DefaultHttpClientCallTask executeOnExecutor(Executor executor) {
+        onPreExecute();
+        executor.execute(this);
+        return this;
+    }
+
+    /**
+     * Cancel the call. Response is ignored unless already received.
+     * In-flight I/O is aborted by disconnecting the connection and interrupting the thread running the call.
+     */
+    synchronized void cancel() {
+        mCancelled = true;
+        if (mConnection != null) {
+            mConnection.disconnect();
+        }
+        if (mThread != null) {
+            mThread.interrupt();
+        }
+    }
+
+    /**
+     * Set the connection to disconnect on cancel.
+     *
+     * @param connection connection or null when it must no longer be disconnected by cancel.
+     * @return false if the call is already cancelled.
+     */
+    private synchronized boolean setConnection(HttpsURLConnection connection) {
+        mConnection = connection;
+        return !mCancelled;
+    }
+
+    boolean isCancelled() {
+        return mCancelled;
+    }
+
     @Override
-    protected Object doInBackground(Void... params) {
+    public void run() {
+        synchronized (this) {
+            mThread = Thread.currentThread();
+        }
+        final Object result;
+        try {
+            result = isCancelled() ? null : doInBackground();
+        } finally {
+            synchronized (this) {
+                mThread = null;
+
+                /* Clear interruption so that the executor thread can be reused. */
+                Thread.interrupted();
+            }
+        }
+        DefaultHttpClient.runOnCallbackThread(mCallbackHandler, new Runnable() {
+
+            @Override
+            public void run() {
+                if (isCancelled()) {
+                    onCancelled(result);
+                } else {
+                    onPostExecute(result);
+                }
+            }
+        });
+    }
+
+    Object doInBackground() {
 
         /* Do tag socket to avoid strict mode issue. */
         TrafficStats.setThreadStatsTag(THREAD_STATS_TAG);
@@ -284,13 +513,11 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         }
     }
 
-    @Override
-    protected void onPreExecute() {
+    void onPreExecute() {
         mTracker.onStart(this);
     }
 
-    @Override
-    protected void onPostExecute(Object result) {
+    void onPostExecute(Object result) {
         mTracker.onFinish(this);
         if (result instanceof Exception) {
             mServiceCallback.onCallFailed((Exception) result);
@@ -300,8 +527,7 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
         }
     }
 
-    @Override
-    protected void onCancelled(Object result) {
+    void onCancelled(Object result) {
 
         /* Handle the result even if it was cancelled. */
         if (result instanceof HttpResponse || result instanceof HttpException) {
@@ -329,5 +555,13 @@ class DefaultHttpClientCallTask extends AsyncTask<Void, Void, Object> {
          * @param task The http call.
          */
         void onFinish(DefaultHttpClientCallTask task);
+
+        /**
+         * Called from the background thread when a pooled call got a response.
+         *
+         * @param newConnection true if a new connection was established, false if a kept alive one was reused.
+         * @param released      true if the connection was released to the pool, false if it was disconnected.
+         */
+        void onConnectionUsed(boolean newConnection, boolean released);
     }
 }
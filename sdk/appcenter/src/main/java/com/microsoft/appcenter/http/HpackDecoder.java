@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.microsoft.appcenter.http.HpackTable.CHARSET_NAME;
+
+/**
+ * HPACK header block decoder, see RFC 7541.
+ */
+class HpackDecoder {
+
+    private final HpackTable mTable = new HpackTable();
+
+    /**
+     * Header block being decoded.
+     */
+    private byte[] mBlock;
+
+    /**
+     * Position in the header block.
+     */
+    private int mPosition;
+
+    /**
+     * End of the header block.
+     */
+    private int mEnd;
+
+    /**
+     * Decode a header block. Every block received on a connection must be decoded in order
+     * to keep the dynamic table in sync with the peer encoder.
+     *
+     * @param block  header block.
+     * @param length header block length.
+     * @return header names and values.
+     * @throws IOException if the header block is invalid.
+     */
+    List<String[]> decode(byte[] block, int length) throws IOException {
+        return decode(block, length, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Decode a header block, discarding the headers if the list is too large.
+     * The block is still fully decoded to keep the dynamic table in sync with the peer encoder.
+     *
+     * @param block       header block.
+     * @param length      header block length.
+     * @param maxListSize maximum header list size, as defined by SETTINGS_MAX_HEADER_LIST_SIZE:
+     *                    name and value lengths plus 32 for each header.
+     * @return header names and values, null if the header list is larger than the maximum size.
+     * @throws IOException if the header block is invalid.
+     */
+    List<String[]> decode(byte[] block, int length, int maxListSize) throws IOException {
+        mBlock = block;
+        mPosition = 0;
+        mEnd = length;
+        List<String[]> headers = new ArrayList<>();
+        long listSize = 0;
+        boolean firstHeader = true;
+        try {
+            while (mPosition < mEnd) {
+                int first = mBlock[mPosition] & 0xff;
+                String[] header;
+                if ((first & 0x80) != 0) {
+
+                    /* Indexed header field. */
+                    header = getEntry(readInteger(7));
+                } else if ((first & 0x40) != 0) {
+
+                    /* Literal header field with incremental indexing. */
+                    header = readLiteral(6);
+                    mTable.add(header[0], header[1]);
+                } else if ((first & 0x20) != 0) {
+
+                    /* Dynamic table size update, only allowed before the first header. */
+                    int maxSize = readInteger(5);
+                    if (!firstHeader || maxSize > HpackTable.DEFAULT_MAX_SIZE) {
+                        throw new ProtocolException("Invalid HPACK table size update: " + maxSize);
+                    }
+                    mTable.setMaxSize(maxSize);
+                    continue;
+                } else {
+
+                    /* Literal header field without indexing or never indexed. */
+                    header = readLiteral(4);
+                }
+                firstHeader = false;
+
+                /* Keep decoding without keeping headers once over the limit. */
+                listSize += header[0].length() + header[1].length() + HpackTable.ENTRY_OVERHEAD;
+                if (listSize > maxListSize) {
+                    headers = null;
+                } else if (headers != null) {
+                    headers.add(header);
+                }
+            }
+        } finally {
+            mBlock = null;
+        }
+        return headers;
+    }
+
+    private String[] getEntry(int index) throws ProtocolException {
+        String[] entry = mTable.get(index);
+        if (entry == null) {
+            throw new ProtocolException("Invalid HPACK index: " + index);
+        }
+        return entry;
+    }
+
+    private String[] readLiteral(int prefixLength) throws IOException {
+        int nameIndex = readInteger(prefixLength);
+        String name = nameIndex == 0 ? readString() : getEntry(nameIndex)[0];
+        return new String[]{name, readString()};
+    }
+
+    /**
+     * Read an integer with a prefix, see RFC 7541 section 5.1.
+     */
+    private int readInteger(int prefixLength) throws ProtocolException {
+        int maxPrefix = (1 << prefixLength) - 1;
+        int value = mBlock[mPosition++] & maxPrefix;
+        if (value < maxPrefix) {
+            return value;
+        }
+        int shift = 0;
+        while (true) {
+            if (mPosition >= mEnd || shift > 28) {
+                throw new ProtocolException("Invalid HPACK integer");
+            }
+            int b = mBlock[mPosition++] & 0xff;
+            value += (b & 0x7f) << shift;
+            if (value < 0) {
+                throw new ProtocolException("Invalid HPACK integer");
+            }
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    private String readString() throws IOException {
+        if (mPosition >= mEnd) {
+            throw new ProtocolException("Truncated HPACK string");
+        }
+        boolean huffman = (mBlock[mPosition] & 0x80) != 0;
+        int length = readInteger(7);
+        if (length > mEnd - mPosition) {
+            throw new ProtocolException("Truncated HPACK string");
+        }
+        String value;
+        if (huffman) {
+            value = new String(HpackHuffman.decode(mBlock, mPosition, length), CHARSET_NAME);
+        } else {
+            value = new String(mBlock, mPosition, length, CHARSET_NAME);
+        }
+        mPosition += length;
+        return value;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.microsoft.appcenter.http.HpackTable.CHARSET_NAME;
+import static java.lang.Math.min;
+
+/**
+ * HPACK header block encoder, see RFC 7541.
+ * Headers repeated on every request, like the install identifier,
+ * are added to the dynamic table once and then sent as a single index byte.
+ * Secrets are never indexed.
+ */
+class HpackEncoder {
+
+    /**
+     * Indexed header field representation.
+     */
+    private static final int INDEXED = 0x80;
+
+    /**
+     * Literal header field with incremental indexing representation.
+     */
+    private static final int LITERAL_INDEXED = 0x40;
+
+    /**
+     * Literal header field without indexing representation.
+     */
+    private static final int LITERAL_NOT_INDEXED = 0x00;
+
+    /**
+     * Literal header field never indexed representation.
+     */
+    @VisibleForTesting
+    static final int LITERAL_NEVER_INDEXED = 0x10;
+
+    /**
+     * Dynamic table size update representation.
+     */
+    private static final int TABLE_SIZE_UPDATE = 0x20;
+
+    /**
+     * Huffman encoded string flag.
+     */
+    private static final int HUFFMAN = 0x80;
+
+    /**
+     * Headers carrying secrets, in lower case. They are never indexed so that neither this connection
+     * nor an intermediary can make them guessable by compression, see RFC 7541 section 7.1.3.
+     */
+    @VisibleForTesting
+    static final Set<String> SENSITIVE_HEADERS = new HashSet<>(Arrays.asList("app-secret", "apikey", "tickets", "authorization"));
+
+    private final HpackTable mTable = new HpackTable();
+
+    /**
+     * Last value sent for each header name. A header sent again with a different value,
+     * like a length or a time, changes on every request: it is not indexed to avoid evicting useful entries.
+     */
+    private final Map<String, String> mLastValues = new HashMap<>();
+
+    /**
+     * Smallest table size to announce at the start of the next header block, -1 if no update is needed.
+     */
+    private int mMinPendingMaxSize = -1;
+
+    /**
+     * Update the table size after the peer changed its header table size setting.
+     *
+     * @param peerMaxSize maximum table size of the peer decoder.
+     */
+    void setMaxTableSize(int peerMaxSize) {
+        int maxSize = min(peerMaxSize, HpackTable.DEFAULT_MAX_SIZE);
+        if (maxSize != mTable.getMaxSize()) {
+            mMinPendingMaxSize = mMinPendingMaxSize < 0 ? maxSize : min(mMinPendingMaxSize, maxSize);
+            mTable.setMaxSize(maxSize);
+        }
+    }
+
+    /**
+     * Encode a header block.
+     *
+     * @param headers header names and values, names must be in lower case.
+     * @param out     output.
+     */
+    void encode(List<String[]> headers, ByteArrayOutputStream out) {
+        if (mMinPendingMaxSize >= 0) {
+            writeInteger(out, TABLE_SIZE_UPDATE, 5, mMinPendingMaxSize);
+            if (mMinPendingMaxSize != mTable.getMaxSize()) {
+                writeInteger(out, TABLE_SIZE_UPDATE, 5, mTable.getMaxSize());
+            }
+            mMinPendingMaxSize = -1;
+        }
+        for (String[] header : headers) {
+            String name = header[0];
+            String value = header[1];
+            if (SENSITIVE_HEADERS.contains(name)) {
+                int nameIndex = Math.abs(mTable.find(name, value));
+                writeInteger(out, LITERAL_NEVER_INDEXED, 4, nameIndex);
+                if (nameIndex == 0) {
+                    writeString(out, name);
+                }
+                writeString(out, value);
+                continue;
+            }
+            int index = mTable.find(name, value);
+            String lastValue = mLastValues.put(name, value);
+            if (index > 0) {
+                writeInteger(out, INDEXED, 7, index);
+                continue;
+            }
+            boolean indexed = lastValue == null || lastValue.equals(value);
+            if (indexed) {
+                writeInteger(out, LITERAL_INDEXED, 6, -index);
+                mTable.add(name, value);
+            } else {
+                writeInteger(out, LITERAL_NOT_INDEXED, 4, -index);
+            }
+            if (index == 0) {
+                writeString(out, name);
+            }
+            writeString(out, value);
+        }
+    }
+
+    /**
+     * Write an integer with a prefix, see RFC 7541 section 5.1.
+     */
+    private static void writeInteger(ByteArrayOutputStream out, int flags, int prefixLength, int value) {
+        int maxPrefix = (1 << prefixLength) - 1;
+        if (value < maxPrefix) {
+            out.write(flags | value);
+            return;
+        }
+        out.write(flags | maxPrefix);
+        value -= maxPrefix;
+        while (value >= 0x80) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    /**
+     * Write a string literal, Huffman encoded if shorter.
+     */
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] data;
+        try {
+            data = value.getBytes(CHARSET_NAME);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        int huffmanLength = HpackHuffman.getEncodedLength(data);
+        if (huffmanLength < data.length) {
+            writeInteger(out, HUFFMAN, 7, huffmanLength);
+            HpackHuffman.encode(data, out);
+        } else {
+            writeInteger(out, 0, 7, data.length);
+            out.write(data, 0, data.length);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+
+/**
+ * Huffman code of HPACK header strings, see RFC 7541 Appendix B.
+ * The code is canonical: codes are assigned by increasing length then by symbol,
+ * so it is fully described by the length of each code.
+ */
+class HpackHuffman {
+
+    /**
+     * End of string symbol, its code prefix is used as padding.
+     */
+    private static final int EOS = 256;
+
+    /**
+     * Longest code length.
+     */
+    private static final int MAX_LENGTH = 30;
+
+    /**
+     * Code length in bits of each symbol, the last one is EOS.
+     */
+    private static final byte[] LENGTHS = {
+            13, 23, 28, 28, 28, 28, 28, 28, 28, 24, 30, 28, 28, 30, 28, 28,
+            28, 28, 28, 28, 28, 28, 30, 28, 28, 28, 28, 28, 28, 28, 28, 28,
+            6, 10, 10, 12, 13, 6, 8, 11, 10, 10, 8, 11, 8, 6, 6, 6,
+            5, 5, 5, 6, 6, 6, 6, 6, 6, 6, 7, 8, 15, 6, 12, 10,
+            13, 6, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7, 7,
+            7, 7, 7, 7, 7, 7, 7, 7, 8, 7, 8, 13, 19, 13, 14, 6,
+            15, 5, 6, 5, 6, 5, 6, 6, 6, 5, 7, 7, 6, 6, 6, 5,
+            6, 7, 6, 5, 5, 6, 7, 7, 7, 7, 7, 15, 11, 14, 13, 28,
+            20, 22, 20, 20, 22, 22, 22, 23, 22, 23, 23, 23, 23, 23, 24, 23,
+            24, 24, 22, 23, 24, 23, 23, 23, 23, 21, 22, 23, 22, 23, 23, 24,
+            22, 21, 20, 22, 22, 23, 23, 21, 23, 22, 22, 24, 21, 22, 23, 23,
+            21, 21, 22, 21, 23, 22, 23, 23, 20, 22, 22, 22, 23, 22, 22, 23,
+            26, 26, 20, 19, 22, 23, 22, 25, 26, 26, 26, 27, 27, 26, 24, 25,
+            19, 21, 26, 27, 27, 26, 27, 24, 21, 21, 26, 26, 28, 27, 27, 27,
+            20, 24, 20, 21, 22, 21, 21, 23, 22, 22, 25, 25, 24, 24, 26, 23,
+            26, 27, 26, 26, 27, 27, 27, 27, 27, 28, 27, 27, 27, 27, 27, 26,
+            30
+    };
+
+    /**
+     * Code of each symbol, right aligned.
+     */
+    private static final int[] CODES = new int[LENGTHS.length];
+
+    /**
+     * Symbols sorted by code.
+     */
+    private static final int[] SORTED_SYMBOLS = new int[LENGTHS.length];
+
+    /**
+     * First code of each length.
+     */
+    private static final int[] FIRST_CODES = new int[MAX_LENGTH + 1];
+
+    /**
+     * Index in {@link #SORTED_SYMBOLS} of the first symbol of each length.
+     */
+    private static final int[] FIRST_INDEXES = new int[MAX_LENGTH + 1];
+
+    /**
+     * Number of codes of each length.
+     */
+    private static final int[] COUNTS = new int[MAX_LENGTH + 1];
+
+    static {
+        int index = 0;
+        int code = 0;
+        for (int length = 1; length <= MAX_LENGTH; length++) {
+            FIRST_CODES[length] = code;
+            FIRST_INDEXES[length] = index;
+            for (int symbol = 0; symbol < LENGTHS.length; symbol++) {
+                if (LENGTHS[symbol] == length) {
+                    CODES[symbol] = code++;
+                    SORTED_SYMBOLS[index++] = symbol;
+                }
+            }
+            COUNTS[length] = index - FIRST_INDEXES[length];
+            code <<= 1;
+        }
+    }
+
+    /**
+     * Get the Huffman encoded length of a string.
+     *
+     * @param data string bytes.
+     * @return encoded length in bytes.
+     */
+    static int getEncodedLength(byte[] data) {
+        long bits = 0;
+        for (byte b : data) {
+            bits += LENGTHS[b & 0xff];
+        }
+        return (int) ((bits + 7) >> 3);
+    }
+
+    /**
+     * Huffman encode a string.
+     *
+     * @param data string bytes.
+     * @param out  output.
+     */
+    static void encode(byte[] data, ByteArrayOutputStream out) {
+        long current = 0;
+        int bitCount = 0;
+        for (byte b : data) {
+            int symbol = b & 0xff;
+            current = (current << LENGTHS[symbol]) | CODES[symbol];
+            bitCount += LENGTHS[symbol];
+            while (bitCount >= 8) {
+                bitCount -= 8;
+                out.write((int) (current >> bitCount));
+            }
+        }
+
+        /* Pad with the most significant bits of EOS, which are all ones. */
+        if (bitCount > 0) {
+            out.write((int) ((current << (8 - bitCount)) | (0xff >>> bitCount)));
+        }
+    }
+
+    /**
+     * Decode a Huffman encoded string.
+     *
+     * @param data   encoded bytes.
+     * @param offset offset of the string.
+     * @param length encoded length.
+     * @return decoded bytes.
+     * @throws IOException if the string is not a valid encoding.
+     */
+    static byte[] decode(byte[] data, int offset, int length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length * 8 / 5);
+        int code = 0;
+        int codeLength = 0;
+        boolean padding = true;
+        for (int i = offset; i < offset + length; i++) {
+            for (int bit = 7; bit >= 0; bit--) {
+                int value = (data[i] >> bit) & 1;
+                code = (code << 1) | value;
+                codeLength++;
+                padding &= value == 1;
+                int position = code - FIRST_CODES[codeLength];
+                if (position < COUNTS[codeLength]) {
+                    int symbol = SORTED_SYMBOLS[FIRST_INDEXES[codeLength] + position];
+                    if (symbol == EOS) {
+                        throw new ProtocolException("Invalid Huffman string: EOS");
+                    }
+                    out.write(symbol);
+                    code = 0;
+                    codeLength = 0;
+                    padding = true;
+                } else if (codeLength == MAX_LENGTH) {
+                    throw new ProtocolException("Invalid Huffman code");
+                }
+            }
+        }
+        if (codeLength > 7 || !padding) {
+            throw new ProtocolException("Invalid Huffman string padding");
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+/**
+ * HPACK indexing table: the static table followed by a dynamic table, see RFC 7541 section 2.3.
+ * Encoder and decoder each keep their own instance, updated the same way on both sides of a connection.
+ */
+class HpackTable {
+
+    /**
+     * Header strings are octets, mapped one to one to characters.
+     */
+    static final String CHARSET_NAME = "ISO-8859-1";
+
+    /**
+     * Default maximum size of the dynamic table.
+     */
+    static final int DEFAULT_MAX_SIZE = 4096;
+
+    /**
+     * Overhead of each dynamic table entry in the table size, also counted for each header in a header list size.
+     */
+    static final int ENTRY_OVERHEAD = 32;
+
+    /**
+     * Static table, index 1 is the first entry.
+     */
+    private static final String[][] STATIC_TABLE = {
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""}
+    };
+
+    /**
+     * Dynamic table entries, the most recent first.
+     */
+    private final Deque<String[]> mEntries = new ArrayDeque<>();
+
+    /**
+     * Current size of the dynamic table.
+     */
+    private int mSize;
+
+    /**
+     * Maximum size of the dynamic table.
+     */
+    private int mMaxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * Get the size of an entry.
+     *
+     * @param name  header name.
+     * @param value header value.
+     * @return entry size.
+     */
+    static int getEntrySize(String name, String value) {
+        return name.length() + value.length() + ENTRY_OVERHEAD;
+    }
+
+    /**
+     * Get the number of entries in both tables.
+     *
+     * @return last valid index.
+     */
+    int getLength() {
+        return STATIC_TABLE.length + mEntries.size();
+    }
+
+    int getSize() {
+        return mSize;
+    }
+
+    int getMaxSize() {
+        return mMaxSize;
+    }
+
+    /**
+     * Get an entry.
+     *
+     * @param index index, starting at 1.
+     * @return name and value, or null if the index is invalid.
+     */
+    String[] get(int index) {
+        if (index <= 0 || index > getLength()) {
+            return null;
+        }
+        if (index <= STATIC_TABLE.length) {
+            return STATIC_TABLE[index - 1];
+        }
+        int dynamicIndex = index - STATIC_TABLE.length - 1;
+        Iterator<String[]> iterator = mEntries.iterator();
+        String[] entry = iterator.next();
+        for (int i = 0; i < dynamicIndex; i++) {
+            entry = iterator.next();
+        }
+        return entry;
+    }
+
+    /**
+     * Find an entry.
+     *
+     * @param name  header name.
+     * @param value header value.
+     * @return index of the entry with the same name and value if positive,
+     * opposite of the index of an entry with the same name if negative, 0 if not found.
+     */
+    int find(String name, String value) {
+        int nameIndex = 0;
+        for (int i = 0; i < STATIC_TABLE.length; i++) {
+            if (STATIC_TABLE[i][0].equals(name)) {
+                if (STATIC_TABLE[i][1].equals(value)) {
+                    return i + 1;
+                }
+                if (nameIndex == 0) {
+                    nameIndex = -(i + 1);
+                }
+            }
+        }
+        int index = STATIC_TABLE.length + 1;
+        for (String[] entry : mEntries) {
+            if (entry[0].equals(name)) {
+                if (entry[1].equals(value)) {
+                    return index;
+                }
+                if (nameIndex == 0) {
+                    nameIndex = -index;
+                }
+            }
+            index++;
+        }
+        return nameIndex;
+    }
+
+    /**
+     * Add an entry to the dynamic table, evicting the oldest ones as needed.
+     *
+     * @param name  header name.
+     * @param value header value.
+     */
+    void add(String name, String value) {
+        int size = getEntrySize(name, value);
+        evict(mMaxSize - size);
+
+        /* An entry larger than the table empties it without being added. */
+        if (size <= mMaxSize) {
+            mEntries.addFirst(new String[]{name, value});
+            mSize += size;
+        }
+    }
+
+    /**
+     * Change the maximum size of the dynamic table.
+     *
+     * @param maxSize new maximum size.
+     */
+    void setMaxSize(int maxSize) {
+        mMaxSize = maxSize;
+        evict(maxSize);
+    }
+
+    private void evict(int targetSize) {
+        while (mSize > targetSize && !mEntries.isEmpty()) {
+            String[] entry = mEntries.removeLast();
+            mSize -= getEntrySize(entry[0], entry[1]);
+        }
+    }
+}
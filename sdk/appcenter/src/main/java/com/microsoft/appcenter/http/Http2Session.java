@@ -0,0 +1,854 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.http.DefaultHttpClient.CHARSET_NAME;
+import static com.microsoft.appcenter.http.HttpResponseParser.MAX_BODY_SIZE;
+import static java.lang.Math.min;
+
+/**
+ * HTTP/2 framing of a {@link NioHttpConnection}, see RFC 7540.
+ * Requests are multiplexed as streams of a single connection. This class only transforms bytes:
+ * the connection feeds it the received bytes and sends its output.
+ */
+class Http2Session {
+
+    /**
+     * HTTP/2 protocol identifier for ALPN.
+     */
+    static final String PROTOCOL = "h2";
+
+    /**
+     * Bytes a client starts the connection with.
+     */
+    private static final byte[] CONNECTION_PREFACE = {
+            'P', 'R', 'I', ' ', '*', ' ', 'H', 'T', 'T', 'P', '/', '2', '.', '0', '\r', '\n',
+            '\r', '\n', 'S', 'M', '\r', '\n', '\r', '\n'
+    };
+
+    @VisibleForTesting
+    static final int FRAME_HEADER_LENGTH = 9;
+
+    @VisibleForTesting
+    static final int TYPE_DATA = 0x0;
+
+    @VisibleForTesting
+    static final int TYPE_HEADERS = 0x1;
+
+    @VisibleForTesting
+    static final int TYPE_RST_STREAM = 0x3;
+
+    @VisibleForTesting
+    static final int TYPE_SETTINGS = 0x4;
+
+    @VisibleForTesting
+    static final int TYPE_PUSH_PROMISE = 0x5;
+
+    @VisibleForTesting
+    static final int TYPE_PING = 0x6;
+
+    @VisibleForTesting
+    static final int TYPE_GOAWAY = 0x7;
+
+    @VisibleForTesting
+    static final int TYPE_WINDOW_UPDATE = 0x8;
+
+    @VisibleForTesting
+    static final int TYPE_CONTINUATION = 0x9;
+
+    @VisibleForTesting
+    static final int FLAG_END_STREAM = 0x1;
+
+    @VisibleForTesting
+    static final int FLAG_ACK = 0x1;
+
+    @VisibleForTesting
+    static final int FLAG_END_HEADERS = 0x4;
+
+    @VisibleForTesting
+    static final int FLAG_PADDED = 0x8;
+
+    @VisibleForTesting
+    static final int FLAG_PRIORITY = 0x20;
+
+    @VisibleForTesting
+    static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+
+    @VisibleForTesting
+    static final int SETTINGS_ENABLE_PUSH = 0x2;
+
+    @VisibleForTesting
+    static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+
+    @VisibleForTesting
+    static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+
+    @VisibleForTesting
+    static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+
+    @VisibleForTesting
+    static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    @VisibleForTesting
+    static final int ERROR_NO_ERROR = 0x0;
+
+    @VisibleForTesting
+    static final int ERROR_REFUSED_STREAM = 0x7;
+
+    @VisibleForTesting
+    static final int ERROR_CANCEL = 0x8;
+
+    /**
+     * Initial flow control window of streams and connection.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_WINDOW_SIZE = 65535;
+
+    /**
+     * Initial maximum frame payload size, also the one we accept.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+
+    /**
+     * Maximum size of a response header list we accept, also the maximum size of its encoded header block.
+     * Responses are expected to have a few short headers.
+     */
+    @VisibleForTesting
+    static final int MAX_HEADER_LIST_SIZE = 16 * 1024;
+
+    /**
+     * Largest frame payload size a peer can ask for.
+     */
+    private static final int MAX_FRAME_SIZE = 16777215;
+
+    /**
+     * Stream limit used until the peer sends its settings.
+     */
+    @VisibleForTesting
+    static final int DEFAULT_MAX_CONCURRENT_STREAMS = 100;
+
+    /**
+     * Output size above which request bodies wait for the output to be sent.
+     */
+    @VisibleForTesting
+    static final int MAX_BUFFERED_OUTPUT = 64 * 1024;
+
+    private final HpackEncoder mEncoder = new HpackEncoder();
+
+    private final HpackDecoder mDecoder = new HpackDecoder();
+
+    /**
+     * Open streams by identifier, in creation order.
+     */
+    private final Map<Integer, Stream> mStreams = new LinkedHashMap<>();
+
+    /**
+     * Streams finished and not yet polled.
+     */
+    private final List<Stream> mFinishedStreams = new ArrayList<>();
+
+    /**
+     * Bytes to send, in write mode.
+     */
+    private ByteBuffer mOutput = ByteBuffer.allocate(DEFAULT_MAX_FRAME_SIZE + FRAME_HEADER_LENGTH);
+
+    /**
+     * Received bytes not yet parsed, in write mode.
+     */
+    private ByteBuffer mInput = ByteBuffer.allocate(DEFAULT_MAX_FRAME_SIZE + FRAME_HEADER_LENGTH);
+
+    /**
+     * Header block being received in several frames.
+     */
+    private final ByteArrayOutputStream mHeaderBlock = new ByteArrayOutputStream();
+
+    /**
+     * Stream of the header block being received, 0 if none.
+     */
+    private int mHeaderBlockStreamId;
+
+    /**
+     * Whether the header block being received ends its stream.
+     */
+    private boolean mHeaderBlockEndStream;
+
+    /**
+     * Identifier of the next stream, negative when exhausted.
+     */
+    private int mNextStreamId = 1;
+
+    /**
+     * Connection flow control window for sending.
+     */
+    private long mSendWindow = DEFAULT_WINDOW_SIZE;
+
+    private int mPeerInitialWindowSize = DEFAULT_WINDOW_SIZE;
+
+    private int mPeerMaxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+
+    private long mPeerMaxConcurrentStreams = DEFAULT_MAX_CONCURRENT_STREAMS;
+
+    /**
+     * Whether the peer sent GOAWAY, no more stream can be opened.
+     */
+    private boolean mGoAway;
+
+    /**
+     * Number of streams that received a complete response.
+     */
+    private int mCompletedStreamCount;
+
+    /**
+     * Init and queue the connection preface.
+     */
+    Http2Session() {
+        mOutput.put(CONNECTION_PREFACE);
+        writeFrameHeader(12, TYPE_SETTINGS, 0, 0);
+        mOutput.putShort((short) SETTINGS_ENABLE_PUSH);
+        mOutput.putInt(0);
+        mOutput.putShort((short) SETTINGS_MAX_HEADER_LIST_SIZE);
+        mOutput.putInt(MAX_HEADER_LIST_SIZE);
+    }
+
+    /**
+     * Check whether new streams can be opened later on this connection.
+     *
+     * @return false after GOAWAY or when stream identifiers are exhausted.
+     */
+    boolean isAcceptingStreams() {
+        return !mGoAway && mNextStreamId > 0;
+    }
+
+    /**
+     * Check whether a stream can be opened now.
+     *
+     * @return true if accepting streams and below the peer concurrent stream limit.
+     */
+    boolean canOpenStream() {
+        return isAcceptingStreams() && mStreams.size() < mPeerMaxConcurrentStreams;
+    }
+
+    int getStreamCount() {
+        return mStreams.size();
+    }
+
+    Collection<Stream> getStreams() {
+        return mStreams.values();
+    }
+
+    int getCompletedStreamCount() {
+        return mCompletedStreamCount;
+    }
+
+    /**
+     * Get the bytes to send.
+     *
+     * @return output buffer in write mode, callers flip, consume and compact it.
+     */
+    ByteBuffer getOutput() {
+        return mOutput;
+    }
+
+    /**
+     * Open a stream and queue its headers, the body is sent by {@link #fillOutput()}.
+     *
+     * @param headers    header names and values, pseudo headers first, names in lower case.
+     * @param body       request body, or null.
+     * @param bodyLength request body length.
+     * @param tag        object to attach to the stream.
+     * @return stream.
+     */
+    Stream openStream(List<String[]> headers, byte[] body, int bodyLength, Object tag) {
+        Stream stream = new Stream(mNextStreamId, tag);
+        mNextStreamId += 2;
+        stream.mSendWindow = mPeerInitialWindowSize;
+        boolean hasBody = body != null && bodyLength > 0;
+        if (hasBody) {
+            stream.mBody = body;
+            stream.mBodyEnd = bodyLength;
+        }
+        mStreams.put(stream.mId, stream);
+
+        /* Send header block, in several frames if needed. */
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        mEncoder.encode(headers, block);
+        byte[] blockBytes = block.toByteArray();
+        int offset = 0;
+        int type = TYPE_HEADERS;
+        do {
+            int length = min(blockBytes.length - offset, mPeerMaxFrameSize);
+            int flags = offset + length == blockBytes.length ? FLAG_END_HEADERS : 0;
+            if (type == TYPE_HEADERS && !hasBody) {
+                flags |= FLAG_END_STREAM;
+            }
+            ensureOutput(FRAME_HEADER_LENGTH + length);
+            writeFrameHeader(length, type, flags, stream.mId);
+            mOutput.put(blockBytes, offset, length);
+            offset += length;
+            type = TYPE_CONTINUATION;
+        } while (offset < blockBytes.length);
+        return stream;
+    }
+
+    /**
+     * Cancel a stream, the peer is notified and the stream is not reported as finished.
+     *
+     * @param stream stream to cancel.
+     */
+    void cancelStream(Stream stream) {
+        if (mStreams.remove(stream.mId) != null) {
+            writeRstStream(stream.mId, ERROR_CANCEL);
+        }
+    }
+
+    /**
+     * Check whether request bodies can make progress.
+     *
+     * @return true if a stream has body bytes to send within flow control windows.
+     */
+    boolean hasPendingData() {
+        if (mSendWindow <= 0) {
+            return false;
+        }
+        for (Stream stream : mStreams.values()) {
+            if (stream.hasDataToSend()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queue request body frames, interleaving streams, within flow control windows
+     * and until the output holds {@link #MAX_BUFFERED_OUTPUT} bytes.
+     */
+    void fillOutput() {
+        boolean progress = true;
+        while (progress) {
+            progress = false;
+            for (Stream stream : mStreams.values()) {
+                if (mSendWindow <= 0 || mOutput.position() >= MAX_BUFFERED_OUTPUT) {
+                    return;
+                }
+                if (stream.hasDataToSend()) {
+                    int length = (int) min(min(stream.mBodyEnd - stream.mBodyOffset, mPeerMaxFrameSize), min(stream.mSendWindow, mSendWindow));
+                    boolean last = stream.mBodyOffset + length == stream.mBodyEnd;
+                    ensureOutput(FRAME_HEADER_LENGTH + length);
+                    writeFrameHeader(length, TYPE_DATA, last ? FLAG_END_STREAM : 0, stream.mId);
+                    mOutput.put(stream.mBody, stream.mBodyOffset, length);
+                    stream.mBodyOffset += length;
+                    stream.mSendWindow -= length;
+                    mSendWindow -= length;
+                    if (last) {
+                        stream.mBody = null;
+                    }
+                    progress = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the streams finished since the last call.
+     *
+     * @return streams with a complete response or an error.
+     */
+    List<Stream> pollFinishedStreams() {
+        List<Stream> streams = new ArrayList<>(mFinishedStreams);
+        mFinishedStreams.clear();
+        return streams;
+    }
+
+    /**
+     * Parse received bytes.
+     *
+     * @param buffer received bytes, in read mode, fully consumed.
+     * @throws IOException on a connection error.
+     */
+    void feed(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (!mInput.hasRemaining()) {
+                throw new ProtocolException("HTTP/2 frame too large");
+            }
+            int length = min(buffer.remaining(), mInput.remaining());
+            int limit = buffer.limit();
+            buffer.limit(buffer.position() + length);
+            mInput.put(buffer);
+            buffer.limit(limit);
+            mInput.flip();
+            try {
+                while (mInput.remaining() >= FRAME_HEADER_LENGTH) {
+                    int start = mInput.position();
+                    int frameLength = (mInput.get(start) & 0xff) << 16 | (mInput.get(start + 1) & 0xff) << 8 | (mInput.get(start + 2) & 0xff);
+                    if (frameLength > DEFAULT_MAX_FRAME_SIZE) {
+                        throw new ProtocolException("HTTP/2 frame too large: " + frameLength);
+                    }
+                    if (mInput.remaining() < FRAME_HEADER_LENGTH + frameLength) {
+                        break;
+                    }
+                    int type = mInput.get(start + 3) & 0xff;
+                    int flags = mInput.get(start + 4) & 0xff;
+                    int streamId = mInput.getInt(start + 5) & 0x7fffffff;
+                    ByteBuffer payload = mInput.duplicate();
+                    payload.position(start + FRAME_HEADER_LENGTH);
+                    payload.limit(start + FRAME_HEADER_LENGTH + frameLength);
+                    mInput.position(start + FRAME_HEADER_LENGTH + frameLength);
+                    onFrame(type, flags, streamId, payload.slice());
+                }
+            } finally {
+                mInput.compact();
+            }
+        }
+    }
+
+    private void onFrame(int type, int flags, int streamId, ByteBuffer payload) throws IOException {
+        if (mHeaderBlockStreamId != 0 && type != TYPE_CONTINUATION) {
+            throw new ProtocolException("HTTP/2 header block interrupted");
+        }
+        switch (type) {
+            case TYPE_DATA:
+                onData(flags, streamId, payload);
+                break;
+
+            case TYPE_HEADERS:
+                onHeaders(flags, streamId, payload);
+                break;
+
+            case TYPE_RST_STREAM:
+                checkLength(payload, 4);
+                int errorCode = payload.getInt();
+                Stream stream = mStreams.remove(streamId);
+                if (stream != null) {
+                    stream.mRefused = errorCode == ERROR_REFUSED_STREAM;
+                    stream.mError = new IOException("HTTP/2 stream reset with error code " + errorCode);
+                    mFinishedStreams.add(stream);
+                }
+                break;
+
+            case TYPE_SETTINGS:
+                onSettings(flags, payload);
+                break;
+
+            case TYPE_PUSH_PROMISE:
+                throw new ProtocolException("HTTP/2 push promise received while disabled");
+
+            case TYPE_PING:
+                checkLength(payload, 8);
+                if ((flags & FLAG_ACK) == 0) {
+                    ensureOutput(FRAME_HEADER_LENGTH + 8);
+                    writeFrameHeader(8, TYPE_PING, FLAG_ACK, 0);
+                    mOutput.put(payload);
+                }
+                break;
+
+            case TYPE_GOAWAY:
+                onGoAway(payload);
+                break;
+
+            case TYPE_WINDOW_UPDATE:
+                onWindowUpdate(streamId, payload);
+                break;
+
+            case TYPE_CONTINUATION:
+                if (streamId != mHeaderBlockStreamId) {
+                    throw new ProtocolException("Unexpected HTTP/2 continuation frame");
+                }
+                appendHeaderBlock(payload);
+                if ((flags & FLAG_END_HEADERS) != 0) {
+                    mHeaderBlockStreamId = 0;
+                    onHeaderBlock(streamId, mHeaderBlockEndStream);
+                }
+                break;
+
+            default:
+
+                /* Priority and unknown frames are ignored. */
+                break;
+        }
+    }
+
+    private void onData(int flags, int streamId, ByteBuffer payload) throws ProtocolException {
+        int frameLength = payload.remaining();
+        skipPadding(flags, payload);
+        Stream stream = mStreams.get(streamId);
+        if (stream != null) {
+            stream.mStarted = true;
+            if (stream.mBodyPipe != null) {
+                stream.mBodyPipe.feed(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            } else if (stream.mResponseBody.size() + payload.remaining() > MAX_BODY_SIZE) {
+
+                /* Only this stream fails. */
+                failStream(stream, new ProtocolException("HTTP/2 response body larger than " + MAX_BODY_SIZE + " bytes"));
+                stream = null;
+            } else {
+                stream.mResponseBody.write(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+            }
+        }
+
+        /* Give back the flow control credit right away, responses are small. */
+        if (frameLength > 0) {
+            writeWindowUpdate(0, frameLength);
+            if (stream != null && (flags & FLAG_END_STREAM) == 0) {
+                writeWindowUpdate(streamId, frameLength);
+            }
+        }
+        if (stream != null && (flags & FLAG_END_STREAM) != 0) {
+            completeStream(stream);
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, ByteBuffer payload) throws IOException {
+        skipPadding(flags, payload);
+        if ((flags & FLAG_PRIORITY) != 0) {
+            if (payload.remaining() < 5) {
+                throw new ProtocolException("Invalid HTTP/2 headers frame");
+            }
+            payload.position(payload.position() + 5);
+        }
+        mHeaderBlock.reset();
+        appendHeaderBlock(payload);
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            onHeaderBlock(streamId, endStream);
+        } else {
+            mHeaderBlockStreamId = streamId;
+            mHeaderBlockEndStream = endStream;
+        }
+    }
+
+    /**
+     * Append a fragment to the header block being received.
+     * A block that large cannot be buffered, it cannot be skipped either without breaking the HPACK state: this is a connection error.
+     */
+    private void appendHeaderBlock(ByteBuffer fragment) throws ProtocolException {
+        if (mHeaderBlock.size() + fragment.remaining() > MAX_HEADER_LIST_SIZE) {
+            throw new ProtocolException("HTTP/2 header block larger than " + MAX_HEADER_LIST_SIZE + " bytes");
+        }
+        mHeaderBlock.write(fragment.array(), fragment.arrayOffset() + fragment.position(), fragment.remaining());
+    }
+
+    private void onHeaderBlock(int streamId, boolean endStream) throws IOException {
+
+        /* Always decode to keep the table in sync, even for a cancelled stream. */
+        List<String[]> headers = mDecoder.decode(mHeaderBlock.toByteArray(), mHeaderBlock.size(), MAX_HEADER_LIST_SIZE);
+        Stream stream = mStreams.get(streamId);
+        if (stream == null) {
+            return;
+        }
+        stream.mStarted = true;
+
+        /* Header list too large once decoded: only this stream fails. */
+        if (headers == null) {
+            failStream(stream, new ProtocolException("HTTP/2 header list larger than " + MAX_HEADER_LIST_SIZE + " bytes"));
+            return;
+        }
+        int status = 0;
+        for (String[] header : headers) {
+            if (":status".equals(header[0])) {
+                try {
+                    status = Integer.parseInt(header[1]);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Invalid HTTP/2 status: " + header[1]);
+                }
+            }
+        }
+
+        /* Skip informational responses and trailers. */
+        if (stream.mStatusCode == 0 && status >= 200) {
+            stream.mStatusCode = status;
+            for (String[] header : headers) {
+                if (!header[0].startsWith(":") && !stream.mHeaders.containsKey(header[0])) {
+                    stream.mHeaders.put(header[0], header[1]);
+                }
+            }
+        }
+        if (endStream) {
+            if (stream.mStatusCode == 0) {
+                throw new ProtocolException("HTTP/2 stream ended without response");
+            }
+            completeStream(stream);
+        }
+    }
+
+    private void onSettings(int flags, ByteBuffer payload) throws ProtocolException {
+        if ((flags & FLAG_ACK) != 0) {
+            return;
+        }
+        if (payload.remaining() % 6 != 0) {
+            throw new ProtocolException("Invalid HTTP/2 settings frame");
+        }
+        while (payload.hasRemaining()) {
+            int identifier = payload.getShort() & 0xffff;
+            long value = payload.getInt() & 0xffffffffL;
+            switch (identifier) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    mEncoder.setMaxTableSize((int) min(value, Integer.MAX_VALUE));
+                    break;
+
+                case SETTINGS_MAX_CONCURRENT_STREAMS:
+                    mPeerMaxConcurrentStreams = value;
+                    break;
+
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value > Integer.MAX_VALUE) {
+                        throw new ProtocolException("Invalid HTTP/2 initial window size: " + value);
+                    }
+                    int delta = (int) value - mPeerInitialWindowSize;
+                    mPeerInitialWindowSize = (int) value;
+                    for (Stream stream : mStreams.values()) {
+                        stream.mSendWindow += delta;
+                    }
+                    break;
+
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_FRAME_SIZE) {
+                        throw new ProtocolException("Invalid HTTP/2 max frame size: " + value);
+                    }
+                    mPeerMaxFrameSize = (int) value;
+                    break;
+            }
+        }
+        ensureOutput(FRAME_HEADER_LENGTH);
+        writeFrameHeader(0, TYPE_SETTINGS, FLAG_ACK, 0);
+    }
+
+    private void onGoAway(ByteBuffer payload) throws ProtocolException {
+        if (payload.remaining() < 8) {
+            throw new ProtocolException("Invalid HTTP/2 goaway frame");
+        }
+        int lastStreamId = payload.getInt() & 0x7fffffff;
+        int errorCode = payload.getInt();
+        mGoAway = true;
+
+        /* Streams not processed by the server can be retried on another connection. */
+        for (Iterator<Stream> iterator = mStreams.values().iterator(); iterator.hasNext(); ) {
+            Stream stream = iterator.next();
+            if (stream.mId > lastStreamId) {
+                iterator.remove();
+                stream.mRefused = true;
+                stream.mError = new IOException("HTTP/2 connection going away with error code " + errorCode);
+                mFinishedStreams.add(stream);
+            }
+        }
+    }
+
+    private void onWindowUpdate(int streamId, ByteBuffer payload) throws ProtocolException {
+        checkLength(payload, 4);
+        int increment = payload.getInt() & 0x7fffffff;
+        if (increment == 0) {
+            throw new ProtocolException("Invalid HTTP/2 window update");
+        }
+        if (streamId == 0) {
+            mSendWindow += increment;
+            if (mSendWindow > Integer.MAX_VALUE) {
+                throw new ProtocolException("HTTP/2 connection window overflow");
+            }
+        } else {
+            Stream stream = mStreams.get(streamId);
+            if (stream != null) {
+                stream.mSendWindow += increment;
+            }
+        }
+    }
+
+    private void completeStream(Stream stream) {
+        mStreams.remove(stream.mId);
+        mCompletedStreamCount++;
+
+        /* The server answered before the whole body was sent: stop sending it, the response is complete. */
+        if (stream.mBody != null) {
+            stream.mBody = null;
+            writeRstStream(stream.mId, ERROR_NO_ERROR);
+        }
+        mFinishedStreams.add(stream);
+    }
+
+    /**
+     * Abandon a stream whose response we cannot accept, the peer is notified and the stream is reported as finished with an error.
+     */
+    private void failStream(Stream stream, IOException error) {
+        mStreams.remove(stream.mId);
+        writeRstStream(stream.mId, ERROR_CANCEL);
+        stream.mBody = null;
+        stream.mError = error;
+        mFinishedStreams.add(stream);
+    }
+
+    private static void checkLength(ByteBuffer payload, int length) throws ProtocolException {
+        if (payload.remaining() != length) {
+            throw new ProtocolException("Invalid HTTP/2 frame length");
+        }
+    }
+
+    private static void skipPadding(int flags, ByteBuffer payload) throws ProtocolException {
+        if ((flags & FLAG_PADDED) != 0) {
+            if (!payload.hasRemaining()) {
+                throw new ProtocolException("Invalid HTTP/2 padding");
+            }
+            int padding = payload.get() & 0xff;
+            if (padding > payload.remaining()) {
+                throw new ProtocolException("Invalid HTTP/2 padding");
+            }
+            payload.limit(payload.limit() - padding);
+        }
+    }
+
+    private void writeRstStream(int streamId, int errorCode) {
+        ensureOutput(FRAME_HEADER_LENGTH + 4);
+        writeFrameHeader(4, TYPE_RST_STREAM, 0, streamId);
+        mOutput.putInt(errorCode);
+    }
+
+    private void writeWindowUpdate(int streamId, int increment) {
+        ensureOutput(FRAME_HEADER_LENGTH + 4);
+        writeFrameHeader(4, TYPE_WINDOW_UPDATE, 0, streamId);
+        mOutput.putInt(increment);
+    }
+
+    private void writeFrameHeader(int length, int type, int flags, int streamId) {
+        mOutput.put((byte) (length >>> 16));
+        mOutput.put((byte) (length >>> 8));
+        mOutput.put((byte) length);
+        mOutput.put((byte) type);
+        mOutput.put((byte) flags);
+        mOutput.putInt(streamId);
+    }
+
+    private void ensureOutput(int length) {
+        if (mOutput.remaining() < length) {
+            ByteBuffer output = ByteBuffer.allocate(Math.max(mOutput.capacity() * 2, mOutput.position() + length));
+            mOutput.flip();
+            output.put(mOutput);
+            mOutput = output;
+        }
+    }
+
+    /**
+     * HTTP/2 stream carrying one request and its response.
+     */
+    static class Stream {
+
+        private final int mId;
+
+        private final Object mTag;
+
+        /**
+         * Request body left to send, null when fully sent.
+         */
+        private byte[] mBody;
+
+        private int mBodyOffset;
+
+        private int mBodyEnd;
+
+        /**
+         * Stream flow control window for sending.
+         */
+        private long mSendWindow;
+
+        private int mStatusCode;
+
+        /**
+         * Response headers, only the first value of each header is kept.
+         */
+        private final Map<String, String> mHeaders = new LinkedHashMap<>();
+
+        private final ByteArrayOutputStream mResponseBody = new ByteArrayOutputStream();
+
+        /**
+         * Pipe the response body is passed to instead of being buffered, null if none.
+         */
+        private ResponseBodyPipe mBodyPipe;
+
+        /**
+         * Whether any response frame was received.
+         */
+        private boolean mStarted;
+
+        /**
+         * Whether the server did not process the stream, so it is safe to retry.
+         */
+        private boolean mRefused;
+
+        private IOException mError;
+
+        Stream(int id, Object tag) {
+            mId = id;
+            mTag = tag;
+        }
+
+        private boolean hasDataToSend() {
+            return mBody != null && mSendWindow > 0;
+        }
+
+        int getId() {
+            return mId;
+        }
+
+        Object getTag() {
+            return mTag;
+        }
+
+        int getStatusCode() {
+            return mStatusCode;
+        }
+
+        Map<String, String> getHeaders() {
+            return mHeaders;
+        }
+
+        String getBody() throws UnsupportedEncodingException {
+            return mResponseBody.toString(CHARSET_NAME);
+        }
+
+        ByteArrayOutputStream getBodyBuffer() {
+            return mResponseBody;
+        }
+
+        /**
+         * Pass the response body to a pipe from now on, starting with the bytes already buffered.
+         *
+         * @param bodyPipe pipe.
+         */
+        void setBodyPipe(ResponseBodyPipe bodyPipe) {
+            bodyPipe.feed(mResponseBody.toByteArray(), 0, mResponseBody.size());
+            mResponseBody.reset();
+            mBodyPipe = bodyPipe;
+        }
+
+        boolean isStarted() {
+            return mStarted;
+        }
+
+        boolean isRefused() {
+            return mRefused;
+        }
+
+        /**
+         * Get the stream error.
+         *
+         * @return error, null if the response is complete.
+         */
+        IOException getError() {
+            return mError;
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Deflater;
+
+import static com.microsoft.appcenter.http.HttpUtils.READ_BUFFER_SIZE;
+import static com.microsoft.appcenter.http.HttpUtils.WRITE_BUFFER_SIZE;
+
+/**
+ * Deflaters and buffers reused by the calls of an HTTP client.
+ * Buffers are per thread: calls run one at a time on each thread of the client executor, so no buffer is shared between calls in progress.
+ * Deflaters hold native memory and are shared by all threads instead, so that they outlive executor threads timing out.
+ */
+class HttpBufferPool {
+
+    /**
+     * Payload buffers growing larger than this are not kept after the call.
+     */
+    @VisibleForTesting
+    static final int MAX_RETAINED_PAYLOAD_BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * Maximum number of idle deflaters kept, one per default executor thread plus one.
+     */
+    @VisibleForTesting
+    static final int MAX_POOLED_DEFLATERS = DefaultHttpClient.DEFAULT_THREAD_COUNT + 1;
+
+    /**
+     * Idle deflaters producing raw deflate data (the gzip wrapping is written by {@link PooledGzipOutputStream}). Guarded by itself.
+     */
+    private final Deque<Deflater> mDeflaters = new ArrayDeque<>();
+
+    /**
+     * Compression output buffer of each thread.
+     */
+    private final ThreadLocal<byte[]> mByteBuffers = new ThreadLocal<>();
+
+    /**
+     * Response read buffer of each thread.
+     */
+    private final ThreadLocal<char[]> mCharBuffers = new ThreadLocal<>();
+
+    /**
+     * Compressed payload buffer of each thread.
+     */
+    private final ThreadLocal<PayloadBuffer> mPayloadBuffers = new ThreadLocal<>();
+
+    /**
+     * Compression level applied to deflaters.
+     */
+    private volatile int mCompressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    int getCompressionLevel() {
+        return mCompressionLevel;
+    }
+
+    void setCompressionLevel(int compressionLevel) {
+        mCompressionLevel = compressionLevel;
+    }
+
+    /**
+     * Get an idle deflater, reset and using the current compression level.
+     * It must be passed to {@link #releaseDeflater(Deflater)} once the compression is done.
+     *
+     * @return deflater.
+     */
+    Deflater obtainDeflater() {
+        Deflater deflater;
+        synchronized (mDeflaters) {
+            deflater = mDeflaters.pollFirst();
+        }
+        if (deflater == null) {
+            return new Deflater(mCompressionLevel, true);
+        }
+        deflater.reset();
+        deflater.setLevel(mCompressionLevel);
+        return deflater;
+    }
+
+    /**
+     * Give back a deflater, ending it if enough deflaters are already idle.
+     *
+     * @param deflater deflater obtained with {@link #obtainDeflater()}.
+     */
+    void releaseDeflater(Deflater deflater) {
+        synchronized (mDeflaters) {
+            if (mDeflaters.size() < MAX_POOLED_DEFLATERS) {
+                mDeflaters.addFirst(deflater);
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    /**
+     * Get the compression output buffer of the current thread.
+     *
+     * @return buffer of {@link HttpUtils#WRITE_BUFFER_SIZE} bytes.
+     */
+    byte[] obtainByteBuffer() {
+        byte[] buffer = mByteBuffers.get();
+        if (buffer == null) {
+            buffer = new byte[WRITE_BUFFER_SIZE];
+            mByteBuffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Get the response read buffer of the current thread.
+     *
+     * @return buffer of {@link HttpUtils#READ_BUFFER_SIZE} characters.
+     */
+    char[] obtainCharBuffer() {
+        char[] buffer = mCharBuffers.get();
+        if (buffer == null) {
+            buffer = new char[READ_BUFFER_SIZE];
+            mCharBuffers.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Get the empty payload buffer of the current thread.
+     * It must be passed to {@link #releasePayloadBuffer(PayloadBuffer)} once the payload is sent.
+     *
+     * @return payload buffer.
+     */
+    PayloadBuffer obtainPayloadBuffer() {
+        PayloadBuffer buffer = mPayloadBuffers.get();
+        if (buffer == null) {
+            buffer = new PayloadBuffer();
+            mPayloadBuffers.set(buffer);
+        }
+        buffer.reset();
+        return buffer;
+    }
+
+    /**
+     * Release a payload buffer, dropping it if it grew too large to be worth keeping.
+     *
+     * @param buffer payload buffer.
+     */
+    void releasePayloadBuffer(PayloadBuffer buffer) {
+        if (buffer.getCapacity() > MAX_RETAINED_PAYLOAD_BUFFER_SIZE) {
+            mPayloadBuffers.remove();
+        }
+    }
+
+    /**
+     * Byte array output stream exposing its buffer to avoid copying it.
+     */
+    static class PayloadBuffer extends ByteArrayOutputStream {
+
+        PayloadBuffer() {
+            super(WRITE_BUFFER_SIZE);
+        }
+
+        /**
+         * Get the internal buffer, valid up to {@link #size()}.
+         *
+         * @return internal buffer.
+         */
+        byte[] getBuffer() {
+            return buf;
+        }
+
+        int getCapacity() {
+            return buf.length;
+        }
+    }
+}
@@ -8,6 +8,9 @@ package com.microsoft.appcenter.http;
 import org.json.JSONException;
 
 import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
 import java.util.Map;
 
@@ -50,8 +53,73 @@ public interface HttpClient extends Closeable {
         void onBeforeCalling(URL url, Map<String, String> headers);
     }
 
+    /**
+     * Call callbacks that can also write the request body directly to the connection.
+     * When supported by the client, the body is compressed and sent while being written,
+     * so it is never held in memory as a whole.
+     */
+    interface StreamingCallTemplate extends CallTemplate {
+
+        /**
+         * Called when the method is POST to write the request body.
+         * This can be called instead of {@link #buildRequestBody()}, and more than once if the call is retried.
+         *
+         * @param writer writer to the connection.
+         * @throws JSONException callback can throw this to make the call fail if a JSON error occurs.
+         * @throws IOException   if writing to the connection fails.
+         */
+        void writeRequestBody(Writer writer) throws JSONException, IOException;
+    }
+
+    /**
+     * Call callbacks that declare what they need from a successful response,
+     * so that the client does not buffer and decode what is not used.
+     */
+    interface ResponseCallTemplate extends CallTemplate {
+
+        /**
+         * Get what is needed from a successful response.
+         *
+         * @return response mode.
+         */
+        @ResponseMode
+        int getResponseMode();
+    }
+
+    /**
+     * Call callbacks that read the body of a successful response while it is received.
+     * {@link ResponseMode#STREAM} is only honored for these templates, others get {@link ResponseMode#BODY} instead.
+     */
+    interface StreamingResponseCallTemplate extends ResponseCallTemplate {
+
+        /**
+         * Called on the network thread with the body of a successful response when the mode is {@link ResponseMode#STREAM},
+         * before the service callback is notified. The body is not available in {@link HttpResponse#getPayload()}.
+         *
+         * @param reader reader of the response body, closed by the client.
+         * @throws JSONException callback can throw this to make the call fail if a JSON error occurs.
+         * @throws IOException   if reading the response fails.
+         */
+        void readResponseBody(Reader reader) throws JSONException, IOException;
+    }
+
     /**
      * Make this client active again after closing.
      */
     void reopen();
+
+    /**
+     * Client that can prepare a connection before the first call to a host, so that this call
+     * does not wait for DNS resolution, TCP connection and TLS handshake.
+     */
+    interface Preconnectable {
+
+        /**
+         * Resolve the host of a URL and open a connection to it in the background, if not already connected.
+         * No request is sent. Failures are ignored: the next call to the host connects normally.
+         *
+         * @param url URL of the host.
+         */
+        void preconnect(String url);
+    }
 }
@@ -9,7 +9,7 @@ import android.support.annotation.VisibleForTesting;
 
 import java.io.IOException;
 
-public abstract class HttpClientDecorator implements HttpClient {
+public abstract class HttpClientDecorator implements HttpClient, HttpClient.Preconnectable {
 
     final HttpClient mDecoratedApi;
 
@@ -27,6 +27,13 @@ public abstract class HttpClientDecorator implements HttpClient {
         mDecoratedApi.reopen();
     }
 
+    @Override
+    public void preconnect(String url) {
+        if (mDecoratedApi instanceof Preconnectable) {
+            ((Preconnectable) mDecoratedApi).preconnect(url);
+        }
+    }
+
     @VisibleForTesting
     HttpClient getDecoratedApi() {
         return mDecoratedApi;
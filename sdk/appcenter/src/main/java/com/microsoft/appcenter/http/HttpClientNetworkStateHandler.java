@@ -10,6 +10,7 @@ import com.microsoft.appcenter.utils.NetworkStateHelper;
 
 import java.io.IOException;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -30,6 +31,11 @@ public class HttpClientNetworkStateHandler extends HttpClientDecorator implement
      */
     private final Set<Call> mCalls = new HashSet<>();
 
+    /**
+     * URLs to preconnect to once network is available.
+     */
+    private final Set<String> mPreconnectUrls = new LinkedHashSet<>();
+
     /**
      * Init.
      *
@@ -54,10 +60,20 @@ public class HttpClientNetworkStateHandler extends HttpClientDecorator implement
         return call;
     }
 
+    @Override
+    public synchronized void preconnect(String url) {
+        if (mNetworkStateHelper.isNetworkConnected()) {
+            super.preconnect(url);
+        } else {
+            mPreconnectUrls.add(url);
+        }
+    }
+
     @Override
     public synchronized void close() throws IOException {
         mNetworkStateHelper.removeListener(this);
         mCalls.clear();
+        mPreconnectUrls.clear();
         super.close();
     }
 
@@ -69,6 +85,12 @@ public class HttpClientNetworkStateHandler extends HttpClientDecorator implement
 
     @Override
     public synchronized void onNetworkStateUpdated(boolean connected) {
+        if (connected && mPreconnectUrls.size() > 0) {
+            for (String url : mPreconnectUrls) {
+                super.preconnect(url);
+            }
+            mPreconnectUrls.clear();
+        }
         if (connected && mCalls.size() > 0) {
             AppCenterLog.debug(LOG_TAG, "Network is available. " + mCalls.size() + " pending call(s) to submit now.");
             for (Call call : mCalls) {
@@ -6,36 +6,112 @@
 package com.microsoft.appcenter.http;
 
 import android.os.Handler;
-import android.os.Looper;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.AppCenter;
 import com.microsoft.appcenter.utils.AppCenterLog;
 
+import java.net.MalformedURLException;
+import java.net.URL;
 import java.net.UnknownHostException;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Random;
+import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
 
 /**
  * Decorator managing retries.
+ * Retries use exponential backoff with full jitter so that calls failing together do not retry together,
+ * and all calls to the same host share a retry budget so that an outage does not multiply the traffic.
  */
 public class HttpClientRetryer extends HttpClientDecorator {
 
     /**
-     * Retry intervals to use, array index is to use the value for each retry. When we used all the array values, we give up and forward the last error.
+     * Maximum number of retries for a call. When all retries failed, we give up and forward the last error.
      */
     @VisibleForTesting
-    static final long[] RETRY_INTERVALS = new long[]{
-            TimeUnit.SECONDS.toMillis(10),
-            TimeUnit.MINUTES.toMillis(5),
-            TimeUnit.MINUTES.toMillis(20)
+    static final int MAX_RETRY_COUNT = 3;
+
+    /**
+     * Upper bound of the first retry interval.
+     */
+    @VisibleForTesting
+    static final long INITIAL_RETRY_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+
+    /**
+     * Growth of the retry interval upper bound after each retry.
+     */
+    @VisibleForTesting
+    static final int RETRY_INTERVAL_MULTIPLIER = 10;
+
+    /**
+     * Maximum retry interval upper bound.
+     */
+    @VisibleForTesting
+    static final long MAX_RETRY_INTERVAL = TimeUnit.MINUTES.toMillis(20);
+
+    /**
+     * Standard retry after header, delay in seconds or HTTP date.
+     */
+    @VisibleForTesting
+    static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    /**
+     * Number of tokens in a full retry budget.
+     */
+    @VisibleForTesting
+    static final int RETRY_BUDGET_CAPACITY = 100;
+
+    /**
+     * Number of tokens a retry withdraws from the budget of its host.
+     */
+    @VisibleForTesting
+    static final int RETRY_TOKEN_COST = 10;
+
+    /**
+     * Number of tokens a successful call gives back to the budget of its host.
+     */
+    @VisibleForTesting
+    static final int SUCCESS_TOKEN_REFILL = 2;
+
+    /**
+     * Time for the budget of a host to regain a token, up to its capacity,
+     * so that a budget drained during an outage recovers even without successful calls.
+     */
+    @VisibleForTesting
+    static final long RETRY_TOKEN_REFILL_INTERVAL = TimeUnit.SECONDS.toMillis(6);
+
+    /**
+     * HTTP date format used by the retry after header.
+     */
+    private static final ThreadLocal<DateFormat> HTTP_DATE_FORMAT = new ThreadLocal<DateFormat>() {
+
+        @Override
+        protected DateFormat initialValue() {
+            DateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+            dateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+            return dateFormat;
+        }
     };
 
     /**
-     * Android "timer" using the main thread loop.
+     * Handler shared by all retryers to run timed retries on a background thread.
+     */
+    private static Handler sRetryHandler;
+
+    /**
+     * Android "timer" for timed retries.
      */
     private final Handler mHandler;
 
@@ -44,13 +120,18 @@ public class HttpClientRetryer extends HttpClientDecorator {
      */
     private final Random mRandom = new Random();
 
+    /**
+     * Retry budgets by host, hosts with a full budget are not in the map.
+     */
+    private final Map<String, RetryBudget> mRetryBudgets = new HashMap<>();
+
     /**
      * Init with default retry policy.
      *
      * @param decoratedApi API to decorate.
      */
     HttpClientRetryer(HttpClient decoratedApi) {
-        this(decoratedApi, new Handler(Looper.getMainLooper()));
+        this(decoratedApi, getRetryHandler());
     }
 
     /**
@@ -65,6 +146,166 @@ public class HttpClientRetryer extends HttpClientDecorator {
         mHandler = handler;
     }
 
+    /**
+     * Get the handler of the background thread running timed retries, starting it if needed.
+     */
+    private static synchronized Handler getRetryHandler() {
+        if (sRetryHandler == null) {
+            HandlerThread handlerThread = new HandlerThread("AppCenter.HttpRetry", Process.THREAD_PRIORITY_BACKGROUND);
+            handlerThread.start();
+            sRetryHandler = new Handler(handlerThread.getLooper());
+        }
+        return sRetryHandler;
+    }
+
+    /**
+     * Get the upper bound of the interval before a retry.
+     *
+     * @param retryCount number of retries already done.
+     * @return interval upper bound in milliseconds.
+     */
+    @VisibleForTesting
+    static long getMaxRetryInterval(int retryCount) {
+        long interval = INITIAL_RETRY_INTERVAL;
+        for (int i = 0; i < retryCount && interval < MAX_RETRY_INTERVAL; i++) {
+            interval *= RETRY_INTERVAL_MULTIPLIER;
+        }
+        return Math.min(interval, MAX_RETRY_INTERVAL);
+    }
+
+    /**
+     * Get the delay requested by the server before retrying.
+     * A delay that is not positive, such as 0 or a past date, is not honored as is:
+     * calls failing together would retry together, so the jittered interval is used instead.
+     *
+     * @param headers response headers.
+     * @return delay in milliseconds, at most {@link #MAX_RETRY_INTERVAL},
+     * or -1 if the response does not specify any positive delay.
+     */
+    @VisibleForTesting
+    static long getRetryAfter(Map<String, String> headers) {
+        String retryAfterMs = null;
+        String retryAfter = null;
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            if (X_MS_RETRY_AFTER_MS_HEADER.equalsIgnoreCase(header.getKey())) {
+                retryAfterMs = header.getValue();
+            } else if (RETRY_AFTER_HEADER.equalsIgnoreCase(header.getKey())) {
+                retryAfter = header.getValue();
+            }
+        }
+        long delay = -1;
+        try {
+            if (retryAfterMs != null) {
+                delay = Long.parseLong(retryAfterMs.trim());
+            } else if (retryAfter != null) {
+                retryAfter = retryAfter.trim();
+                if (!retryAfter.isEmpty() && Character.isDigit(retryAfter.charAt(0))) {
+                    delay = TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+                } else {
+                    Date date = HTTP_DATE_FORMAT.get().parse(retryAfter);
+                    delay = date.getTime() - System.currentTimeMillis();
+                }
+            }
+        } catch (NumberFormatException | ParseException e) {
+            AppCenterLog.warn(AppCenter.LOG_TAG, "Ignoring invalid retry after header value.", e);
+        }
+        if (delay <= 0) {
+            return -1;
+        }
+        return Math.min(delay, MAX_RETRY_INTERVAL);
+    }
+
+    /**
+     * Get the retry budget key of a URL.
+     */
+    private static String getHost(String url) {
+        try {
+            return new URL(url).getHost();
+        } catch (MalformedURLException e) {
+            return String.valueOf(url);
+        }
+    }
+
+    /**
+     * Get the current time used to replenish retry budgets.
+     *
+     * @return time in milliseconds, not affected by clock changes.
+     */
+    @VisibleForTesting
+    long getCurrentTime() {
+        return SystemClock.elapsedRealtime();
+    }
+
+    /**
+     * Get the remaining tokens of a host, including the ones regained since the last update.
+     *
+     * @param host host.
+     * @param now  current time.
+     * @return remaining tokens.
+     */
+    private int getRetryTokens(String host, long now) {
+        RetryBudget budget = mRetryBudgets.get(host);
+        if (budget == null) {
+            return RETRY_BUDGET_CAPACITY;
+        }
+        long regained = (now - budget.mUpdateTime) / RETRY_TOKEN_REFILL_INTERVAL;
+        if (regained > 0) {
+            budget.mTokens += (int) Math.min(regained, RETRY_BUDGET_CAPACITY);
+            budget.mUpdateTime += regained * RETRY_TOKEN_REFILL_INTERVAL;
+        }
+        if (budget.mTokens >= RETRY_BUDGET_CAPACITY) {
+            mRetryBudgets.remove(host);
+            return RETRY_BUDGET_CAPACITY;
+        }
+        return budget.mTokens;
+    }
+
+    /**
+     * Set the remaining tokens of a host.
+     *
+     * @param host   host.
+     * @param tokens remaining tokens.
+     * @param now    current time.
+     */
+    private void setRetryTokens(String host, int tokens, long now) {
+        if (tokens >= RETRY_BUDGET_CAPACITY) {
+            mRetryBudgets.remove(host);
+            return;
+        }
+        RetryBudget budget = mRetryBudgets.get(host);
+        if (budget == null) {
+            budget = new RetryBudget(now);
+            mRetryBudgets.put(host, budget);
+        }
+        budget.mTokens = tokens;
+    }
+
+    /**
+     * Withdraw a retry from the budget of a host.
+     *
+     * @param host host.
+     * @return true if the call can be retried, false if too many calls to this host failed recently.
+     */
+    private synchronized boolean withdrawRetry(String host) {
+        long now = getCurrentTime();
+        int remaining = getRetryTokens(host, now);
+        if (remaining <= RETRY_BUDGET_CAPACITY / 2) {
+            return false;
+        }
+        setRetryTokens(host, remaining - RETRY_TOKEN_COST, now);
+        return true;
+    }
+
+    /**
+     * Refill the budget of a host after a successful call.
+     *
+     * @param host host.
+     */
+    private synchronized void refillRetryBudget(String host) {
+        long now = getCurrentTime();
+        setRetryTokens(host, getRetryTokens(host, now) + SUCCESS_TOKEN_REFILL, now);
+    }
+
     @Override
     public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
 
@@ -79,6 +320,11 @@ public class HttpClientRetryer extends HttpClientDecorator {
      */
     private class RetryableCall extends HttpClientCallDecorator {
 
+        /**
+         * Retry budget key.
+         */
+        private final String mHost;
+
         /**
          * Current retry counter. 0 means its the first try.
          */
@@ -86,6 +332,7 @@ public class HttpClientRetryer extends HttpClientDecorator {
 
         RetryableCall(HttpClient decoratedApi, String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
             super(decoratedApi, url, method, headers, callTemplate, serviceCallback);
+            mHost = getHost(url);
         }
 
         @Override
@@ -94,21 +341,31 @@ public class HttpClientRetryer extends HttpClientDecorator {
             super.cancel();
         }
 
+        @Override
+        public void onCallSucceeded(HttpResponse httpResponse) {
+            refillRetryBudget(mHost);
+            super.onCallSucceeded(httpResponse);
+        }
+
         @Override
         public void onCallFailed(Exception e) {
-            if (mRetryCount < RETRY_INTERVALS.length && HttpUtils.isRecoverableError(e)) {
-                long delay = 0;
+            if (mRetryCount < MAX_RETRY_COUNT && HttpUtils.isRecoverableError(e)) {
+                if (!withdrawRetry(mHost)) {
+                    AppCenterLog.warn(AppCenter.LOG_TAG, "Try #" + (mRetryCount + 1) + " failed and retry budget for " + mHost + " is exhausted, not retrying.", e);
+                    mServiceCallback.onCallFailed(e);
+                    return;
+                }
+                long delay = -1;
                 if (e instanceof HttpException) {
                     HttpException httpException = (HttpException) e;
-                    String retryAfterMs = httpException.getHttpResponse().getHeaders().get(X_MS_RETRY_AFTER_MS_HEADER);
-                    if (retryAfterMs != null) {
-                        delay = Long.parseLong(retryAfterMs);
-                    }
+                    delay = getRetryAfter(httpException.getHttpResponse().getHeaders());
                 }
-                if (delay == 0) {
-                    delay = RETRY_INTERVALS[mRetryCount++] / 2;
-                    delay += mRandom.nextInt((int) delay);
+
+                /* Full jitter: any delay up to the exponential bound, unless the server asked for a delay. */
+                if (delay < 0) {
+                    delay = (long) (mRandom.nextDouble() * getMaxRetryInterval(mRetryCount));
                 }
+                mRetryCount++;
                 String message = "Try #" + mRetryCount + " failed and will be retried in " + delay + " ms";
                 if (e instanceof UnknownHostException) {
                     message += " (UnknownHostException)";
@@ -120,4 +377,24 @@ public class HttpClientRetryer extends HttpClientDecorator {
             }
         }
     }
+
+    /**
+     * Retry tokens of a host.
+     */
+    private static class RetryBudget {
+
+        /**
+         * Remaining tokens.
+         */
+        private int mTokens;
+
+        /**
+         * Time the regained tokens were last added.
+         */
+        private long mUpdateTime;
+
+        RetryBudget(long updateTime) {
+            mUpdateTime = updateTime;
+        }
+    }
 }
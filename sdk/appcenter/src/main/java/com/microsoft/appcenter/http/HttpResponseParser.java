@@ -0,0 +1,342 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import static com.microsoft.appcenter.http.DefaultHttpClient.CHARSET_NAME;
+import static java.lang.Math.min;
+
+/**
+ * Incremental HTTP/1.1 response parser, fed with the bytes received so far.
+ */
+class HttpResponseParser {
+
+    /**
+     * Maximum length of the status line, a header line or a chunk size line.
+     */
+    private static final int MAX_LINE_LENGTH = 16 * 1024;
+
+    /**
+     * Maximum size of a response body kept in memory, also used for HTTP/2 streams.
+     * Responses are expected to be small, a streamed body is not limited since it is not kept.
+     */
+    @VisibleForTesting
+    static final int MAX_BODY_SIZE = 1024 * 1024;
+
+    private static final int STATE_STATUS_LINE = 0;
+
+    private static final int STATE_HEADERS = 1;
+
+    private static final int STATE_BODY = 2;
+
+    private static final int STATE_CHUNK_SIZE = 3;
+
+    private static final int STATE_CHUNK_DATA = 4;
+
+    private static final int STATE_CHUNK_DATA_END = 5;
+
+    private static final int STATE_TRAILERS = 6;
+
+    private static final int STATE_COMPLETE = 7;
+
+    /**
+     * Line being read.
+     */
+    private final StringBuilder mLine = new StringBuilder();
+
+    /**
+     * Response headers, only the first value of each header is kept.
+     */
+    private final Map<String, String> mHeaders = new LinkedHashMap<>();
+
+    /**
+     * Response body.
+     */
+    private final ByteArrayOutputStream mBody = new ByteArrayOutputStream();
+
+    /**
+     * Pipe the body is passed to instead of being buffered, null if none.
+     */
+    private ResponseBodyPipe mBodyPipe;
+
+    private int mState = STATE_STATUS_LINE;
+
+    private int mStatusCode;
+
+    /**
+     * Whether the server keeps the connection open after this response.
+     */
+    private boolean mKeepAlive;
+
+    private boolean mChunked;
+
+    /**
+     * Remaining body or chunk bytes, -1 when the body ends with the connection.
+     */
+    private long mRemaining;
+
+    /**
+     * Whether any response byte was received.
+     */
+    private boolean mStarted;
+
+    /**
+     * Parse received bytes.
+     *
+     * @param buffer received bytes, consumed up to the end of the response.
+     * @return true if the response is complete.
+     * @throws IOException if the response is malformed.
+     */
+    boolean feed(ByteBuffer buffer) throws IOException {
+        mStarted |= buffer.hasRemaining();
+        while (buffer.hasRemaining() && mState != STATE_COMPLETE) {
+            switch (mState) {
+                case STATE_STATUS_LINE:
+                    if (readLine(buffer)) {
+                        parseStatusLine();
+                    }
+                    break;
+
+                case STATE_HEADERS:
+                    if (readLine(buffer)) {
+                        if (mLine.length() == 0) {
+                            onHeadersEnd();
+                        } else {
+                            parseHeader();
+                        }
+                    }
+                    break;
+
+                case STATE_BODY:
+                case STATE_CHUNK_DATA:
+                    readBody(buffer);
+                    break;
+
+                case STATE_CHUNK_SIZE:
+                    if (readLine(buffer)) {
+                        parseChunkSize();
+                    }
+                    break;
+
+                case STATE_CHUNK_DATA_END:
+                    if (readLine(buffer)) {
+                        if (mLine.length() > 0) {
+                            throw new ProtocolException("Invalid chunk end");
+                        }
+                        mState = STATE_CHUNK_SIZE;
+                    }
+                    break;
+
+                case STATE_TRAILERS:
+                    if (readLine(buffer) && mLine.length() == 0) {
+                        mState = STATE_COMPLETE;
+                    }
+                    break;
+            }
+        }
+        return isComplete();
+    }
+
+    /**
+     * Handle the end of the connection stream.
+     *
+     * @return true if the response is complete.
+     * @throws EOFException if the response is truncated.
+     */
+    boolean onEndOfStream() throws EOFException {
+        if (mState == STATE_BODY && mRemaining < 0) {
+            mState = STATE_COMPLETE;
+        }
+        if (!isComplete()) {
+            throw new EOFException("Unexpected end of HTTP response");
+        }
+        return true;
+    }
+
+    boolean isComplete() {
+        return mState == STATE_COMPLETE;
+    }
+
+    boolean isStarted() {
+        return mStarted;
+    }
+
+    boolean isKeepAlive() {
+        return mKeepAlive;
+    }
+
+    int getStatusCode() {
+        return mStatusCode;
+    }
+
+    Map<String, String> getHeaders() {
+        return mHeaders;
+    }
+
+    String getBody() throws UnsupportedEncodingException {
+        return mBody.toString(CHARSET_NAME);
+    }
+
+    ByteArrayOutputStream getBodyBuffer() {
+        return mBody;
+    }
+
+    /**
+     * Check whether the headers of the final response are parsed and the body is being received.
+     *
+     * @return true if the body is not complete yet.
+     */
+    boolean isReceivingBody() {
+        return mState >= STATE_BODY && mState < STATE_COMPLETE;
+    }
+
+    /**
+     * Pass the body to a pipe from now on, starting with the bytes already buffered.
+     *
+     * @param bodyPipe pipe.
+     */
+    void setBodyPipe(ResponseBodyPipe bodyPipe) {
+        bodyPipe.feed(mBody.toByteArray(), 0, mBody.size());
+        mBody.reset();
+        mBodyPipe = bodyPipe;
+    }
+
+    private boolean readLine(ByteBuffer buffer) throws ProtocolException {
+        while (buffer.hasRemaining()) {
+            byte b = buffer.get();
+            if (b == '\n') {
+                return true;
+            }
+            if (b != '\r') {
+                if (mLine.length() >= MAX_LINE_LENGTH) {
+                    throw new ProtocolException("HTTP response line too long");
+                }
+                mLine.append((char) (b & 0xff));
+            }
+        }
+        return false;
+    }
+
+    private void parseStatusLine() throws ProtocolException {
+        String line = mLine.toString();
+        mLine.setLength(0);
+        int codeStart = line.indexOf(' ') + 1;
+        if (!line.startsWith("HTTP/1.") || codeStart == 0 || line.length() < codeStart + 3) {
+            throw new ProtocolException("Invalid HTTP status line: " + line);
+        }
+        try {
+            mStatusCode = Integer.parseInt(line.substring(codeStart, codeStart + 3));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Invalid HTTP status line: " + line);
+        }
+        mKeepAlive = !line.startsWith("HTTP/1.0");
+        mChunked = false;
+        mRemaining = -1;
+        mHeaders.clear();
+        mState = STATE_HEADERS;
+    }
+
+    private void parseHeader() throws ProtocolException {
+        String line = mLine.toString();
+        mLine.setLength(0);
+        int separator = line.indexOf(':');
+        if (separator <= 0) {
+            throw new ProtocolException("Invalid HTTP header: " + line);
+        }
+        String name = line.substring(0, separator).trim();
+        String value = line.substring(separator + 1).trim();
+        if (!mHeaders.containsKey(name)) {
+            mHeaders.put(name, value);
+        }
+        String lowerCaseName = name.toLowerCase(Locale.US);
+        String lowerCaseValue = value.toLowerCase(Locale.US);
+        switch (lowerCaseName) {
+            case "content-length":
+                try {
+                    mRemaining = Long.parseLong(value);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Invalid Content-Length: " + value);
+                }
+                break;
+
+            case "transfer-encoding":
+                mChunked = lowerCaseValue.contains("chunked");
+                break;
+
+            case "connection":
+                if (lowerCaseValue.contains("close")) {
+                    mKeepAlive = false;
+                }
+                break;
+        }
+    }
+
+    private void onHeadersEnd() {
+
+        /* Skip informational responses, the final one follows. */
+        if (mStatusCode >= 100 && mStatusCode < 200) {
+            mState = STATE_STATUS_LINE;
+        } else if (mStatusCode == 204 || mStatusCode == 304) {
+            mState = STATE_COMPLETE;
+        } else if (mChunked) {
+            mState = STATE_CHUNK_SIZE;
+        } else if (mRemaining == 0) {
+            mState = STATE_COMPLETE;
+        } else {
+
+            /* Without length, the body ends when the server closes the connection. */
+            if (mRemaining < 0) {
+                mKeepAlive = false;
+            }
+            mState = STATE_BODY;
+        }
+    }
+
+    private void parseChunkSize() throws ProtocolException {
+        String line = mLine.toString();
+        mLine.setLength(0);
+        int extension = line.indexOf(';');
+        if (extension >= 0) {
+            line = line.substring(0, extension);
+        }
+        try {
+            mRemaining = Long.parseLong(line.trim(), 16);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Invalid chunk size: " + line);
+        }
+        mState = mRemaining == 0 ? STATE_TRAILERS : STATE_CHUNK_DATA;
+    }
+
+    private void readBody(ByteBuffer buffer) throws ProtocolException {
+        int length = mRemaining < 0 ? buffer.remaining() : (int) min(mRemaining, buffer.remaining());
+        if (mBodyPipe == null && mBody.size() + length > MAX_BODY_SIZE) {
+            throw new ProtocolException("HTTP response body larger than " + MAX_BODY_SIZE + " bytes");
+        }
+        if (mBodyPipe != null) {
+            mBodyPipe.feed(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        } else {
+            mBody.write(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+        }
+        buffer.position(buffer.position() + length);
+        if (mRemaining >= 0) {
+            mRemaining -= length;
+            if (mRemaining == 0) {
+                mState = mState == STATE_CHUNK_DATA ? STATE_CHUNK_DATA_END : STATE_COMPLETE;
+            }
+        }
+    }
+}
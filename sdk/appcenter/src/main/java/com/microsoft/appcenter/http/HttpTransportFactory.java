@@ -0,0 +1,25 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.os.Handler;
+
+/**
+ * Creates the HTTP client that performs network calls, see {@link com.microsoft.appcenter.AppCenter#setHttpTransportFactory(HttpTransportFactory)}.
+ * The transport is wrapped by {@link HttpUtils#createHttpClient} to handle network state and retries,
+ * so it only has to make a single attempt of each call.
+ */
+public interface HttpTransportFactory {
+
+    /**
+     * Create a transport.
+     *
+     * @param compressionEnabled whether large payloads should be compressed.
+     * @param callbackHandler    handler to deliver call results on, or null for the main thread.
+     * @return HTTP client doing the network calls.
+     */
+    HttpClient createTransport(boolean compressionEnabled, Handler callbackHandler);
+}
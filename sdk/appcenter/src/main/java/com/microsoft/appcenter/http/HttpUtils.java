@@ -7,9 +7,11 @@ package com.microsoft.appcenter.http;
 
 import android.content.Context;
 import android.os.Build;
+import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.support.annotation.VisibleForTesting;
 
+import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.NetworkStateHelper;
 
 import java.io.EOFException;
@@ -27,6 +29,9 @@ import java.util.regex.Pattern;
 
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSocketFactory;
+
+import static com.microsoft.appcenter.utils.AppCenterLog.LOG_TAG;
 
 /**
  * HTTP utilities.
@@ -58,6 +63,11 @@ public class HttpUtils {
      */
     public static final int READ_TIMEOUT = 10000;
 
+    /**
+     * HTTP status code of a request payload too large for the server.
+     */
+    public static final int HTTP_PAYLOAD_TOO_LARGE = 413;
+
     /**
      * Maximum characters to be displayed in a log for application secret.
      */
@@ -89,10 +99,26 @@ public class HttpUtils {
      */
     private static final Pattern API_KEY_PATTERN = Pattern.compile("-[^,]+(,|$)");
 
+    /**
+     * Shared TLS 1.2 socket factory. The platform pools connections and caches TLS sessions per socket factory,
+     * so a new factory per connection would prevent any reuse.
+     */
+    private static SSLSocketFactory sTls1_2SocketFactory;
+
     @VisibleForTesting
     HttpUtils() {
     }
 
+    /**
+     * Check whether an exception is the server rejecting a request payload as too large.
+     *
+     * @param t exception or error.
+     * @return true if the request can be sent again with a smaller payload.
+     */
+    public static boolean isPayloadTooLarge(Throwable t) {
+        return t instanceof HttpException && ((HttpException) t).getHttpResponse().getStatusCode() == HTTP_PAYLOAD_TOO_LARGE;
+    }
+
     /**
      * Check whether an exception/error describes a recoverable error or not.
      *
@@ -193,18 +219,88 @@ public class HttpUtils {
     }
 
     public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled) {
+        return createHttpClient(context, compressionEnabled, null);
+    }
+
+    /**
+     * Create HTTP client.
+     *
+     * @param context            context.
+     * @param compressionEnabled whether large payloads are compressed.
+     * @param callbackHandler    handler to deliver call results on, or null for the main thread.
+     * @return HTTP client with retries and network state management.
+     */
+    public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled, Handler callbackHandler) {
 
         /* Retryer should be applied last to avoid retries in offline. */
-        return new HttpClientRetryer(createHttpClientWithoutRetryer(context, compressionEnabled));
+        return new HttpClientRetryer(createHttpClientWithoutRetryer(context, compressionEnabled, callbackHandler));
     }
 
     public static HttpClient createHttpClientWithoutRetryer(@NonNull Context context, boolean compressionEnabled) {
-        HttpClient httpClient = new DefaultHttpClient(compressionEnabled);
+        return createHttpClientWithoutRetryer(context, compressionEnabled, null);
+    }
+
+    public static HttpClient createHttpClientWithoutRetryer(@NonNull Context context, boolean compressionEnabled, Handler callbackHandler) {
+        return createHttpClientWithoutRetryer(context, compressionEnabled, callbackHandler, null);
+    }
+
+    /**
+     * Create HTTP client with a specific transport.
+     *
+     * @param context            context.
+     * @param compressionEnabled whether large payloads are compressed.
+     * @param callbackHandler    handler to deliver call results on, or null for the main thread.
+     * @param transportFactory   transport factory, or null for {@link DefaultHttpClient}.
+     * @return HTTP client with retries and network state management.
+     */
+    public static HttpClient createHttpClient(@NonNull Context context, boolean compressionEnabled, Handler callbackHandler, HttpTransportFactory transportFactory) {
+        return new HttpClientRetryer(createHttpClientWithoutRetryer(context, compressionEnabled, callbackHandler, transportFactory));
+    }
+
+    public static HttpClient createHttpClientWithoutRetryer(@NonNull Context context, boolean compressionEnabled, Handler callbackHandler, HttpTransportFactory transportFactory) {
+        HttpClient httpClient;
+        if (transportFactory != null) {
+            httpClient = transportFactory.createTransport(compressionEnabled, callbackHandler);
+        } else {
+            httpClient = new DefaultHttpClient(compressionEnabled, true, callbackHandler);
+        }
         NetworkStateHelper networkStateHelper = NetworkStateHelper.getSharedInstance(context);
         httpClient = new HttpClientNetworkStateHandler(httpClient, networkStateHelper);
         return httpClient;
     }
 
+    /**
+     * Prepare a connection to a host in the background if the HTTP client supports it,
+     * so that the first call to this host is faster.
+     *
+     * @param httpClient HTTP client.
+     * @param url        URL of the host.
+     */
+    public static void preconnect(@NonNull HttpClient httpClient, @NonNull String url) {
+        if (httpClient instanceof HttpClient.Preconnectable) {
+            AppCenterLog.debug(LOG_TAG, "Preconnecting to " + url);
+            ((HttpClient.Preconnectable) httpClient).preconnect(url);
+        }
+    }
+
+    /**
+     * Get what a call needs from a successful response.
+     *
+     * @param callTemplate call template, can be null.
+     * @return response mode, {@link ResponseMode#BODY} unless the template declares another one
+     * it can handle: {@link ResponseMode#STREAM} requires a {@link HttpClient.StreamingResponseCallTemplate}.
+     */
+    @ResponseMode
+    static int getResponseMode(HttpClient.CallTemplate callTemplate) {
+        if (callTemplate instanceof HttpClient.ResponseCallTemplate) {
+            int responseMode = ((HttpClient.ResponseCallTemplate) callTemplate).getResponseMode();
+            if (responseMode != ResponseMode.STREAM || callTemplate instanceof HttpClient.StreamingResponseCallTemplate) {
+                return responseMode;
+            }
+        }
+        return ResponseMode.BODY;
+    }
+
     /**
      * Create HTTPS connection.
      *
@@ -239,7 +335,7 @@ public class HttpUtils {
          * See https://github.com/square/okhttp/issues/2372#issuecomment-244807676
          */
         if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP) {
-            httpsURLConnection.setSSLSocketFactory(new TLS1_2SocketFactory());
+            httpsURLConnection.setSSLSocketFactory(getTls1_2SocketFactory());
         }
 
         /* Configure connection timeouts. */
@@ -247,4 +343,11 @@ public class HttpUtils {
         httpsURLConnection.setReadTimeout(READ_TIMEOUT);
         return httpsURLConnection;
     }
+
+    private static synchronized SSLSocketFactory getTls1_2SocketFactory() {
+        if (sTls1_2SocketFactory == null) {
+            sTls1_2SocketFactory = new TLS1_2SocketFactory();
+        }
+        return sTls1_2SocketFactory;
+    }
 }
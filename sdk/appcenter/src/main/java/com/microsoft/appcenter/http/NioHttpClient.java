@@ -0,0 +1,1353 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.net.TrafficStats;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Process;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+import static com.microsoft.appcenter.http.DefaultHttpClient.CHARSET_NAME;
+import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_ENCODING_KEY;
+import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_ENCODING_VALUE;
+import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
+import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
+import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
+import static com.microsoft.appcenter.http.DefaultHttpClientCallTask.MIN_GZIP_LENGTH;
+import static com.microsoft.appcenter.http.HttpUtils.CONNECT_TIMEOUT;
+import static com.microsoft.appcenter.http.HttpUtils.READ_TIMEOUT;
+import static com.microsoft.appcenter.http.HttpUtils.THREAD_STATS_TAG;
+import static com.microsoft.appcenter.http.HttpUtils.getResponseMode;
+
+/**
+ * HTTP client using non blocking sockets: a single selector thread runs all the calls,
+ * instead of blocking a thread per call, and keeps connections alive to reuse them.
+ * Request bodies are built and host names resolved beforehand on a worker thread, so that they never block the selector.
+ * When HTTP/2 is enabled and the server negotiates it, all the calls to a host share one multiplexed connection.
+ */
+public class NioHttpClient implements HttpClient, HttpClient.Preconnectable {
+
+    /**
+     * Factory to select this transport with {@link HttpUtils#createHttpClient}.
+     */
+    public static final HttpTransportFactory FACTORY = new HttpTransportFactory() {
+
+        @Override
+        public HttpClient createTransport(boolean compressionEnabled, Handler callbackHandler) {
+            return new NioHttpClient(compressionEnabled, callbackHandler);
+        }
+    };
+
+    /**
+     * Factory to select this transport with HTTP/2 enabled.
+     */
+    public static final HttpTransportFactory HTTP2_FACTORY = new HttpTransportFactory() {
+
+        @Override
+        public HttpClient createTransport(boolean compressionEnabled, Handler callbackHandler) {
+            return new NioHttpClient(compressionEnabled, callbackHandler, true);
+        }
+    };
+
+    /**
+     * Selector thread name.
+     */
+    @VisibleForTesting
+    static final String THREAD_NAME = "AppCenter.NioHttp";
+
+    /**
+     * Maximum number of connections to the same host, next calls wait for a connection to be released.
+     */
+    @VisibleForTesting
+    static final int MAX_CONNECTIONS_PER_HOST = 4;
+
+    /**
+     * Time an idle connection is kept in milliseconds.
+     */
+    @VisibleForTesting
+    static final long KEEP_ALIVE_TIMEOUT = 30 * 1000;
+
+    /**
+     * Maximum time between timeout checks in milliseconds.
+     */
+    private static final long MAX_SELECT_TIMEOUT = 1000;
+
+    /**
+     * TLS 1.2 protocol name.
+     */
+    private static final String TLS1_2_PROTOCOL = "TLSv1.2";
+
+    /**
+     * HTTP/1.1 protocol identifier for ALPN.
+     */
+    private static final String HTTP1_1_PROTOCOL = "http/1.1";
+
+    /**
+     * Headers specific to HTTP/1.1 connections, not sent with HTTP/2.
+     */
+    private static final Set<String> CONNECTION_HEADERS = new HashSet<>(Arrays.asList("connection", "host", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade"));
+
+    /**
+     * Indicates whether compression is enabled.
+     */
+    private final boolean mCompressionEnabled;
+
+    /**
+     * Handler to deliver call results on, or null for the main thread.
+     */
+    private final Handler mCallbackHandler;
+
+    /**
+     * TLS context, null to use the platform default.
+     */
+    private SSLContext mSslContext;
+
+    private final HostnameVerifier mHostnameVerifier;
+
+    /**
+     * Whether http URLs are accepted.
+     */
+    private final boolean mCleartextAllowed;
+
+    /**
+     * Whether HTTP/2 is used with servers supporting it.
+     */
+    private final boolean mHttp2Enabled;
+
+    /**
+     * Deflaters and buffers, only used on the preparation thread.
+     */
+    private final HttpBufferPool mBufferPool = new HttpBufferPool();
+
+    /**
+     * Executor preparing calls, created on first call.
+     */
+    private Executor mPreparationExecutor;
+
+    /**
+     * Executor reading streamed response bodies, created on first use.
+     */
+    private Executor mResponseExecutor;
+
+    /**
+     * Calls that are not finished yet.
+     */
+    private final Set<Call> mCalls = new HashSet<>();
+
+    /**
+     * Calls not yet seen by the selector thread.
+     */
+    private final Queue<Call> mSubmittedCalls = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Current selector, null when the selector thread is not running.
+     */
+    private Selector mSelector;
+
+    /**
+     * Whether idle connections must be closed by the selector thread.
+     */
+    private volatile boolean mCloseIdleConnections;
+
+    /*
+     * The following fields are only accessed from the selector thread.
+     */
+
+    /**
+     * Calls waiting for a connection, in order.
+     */
+    private final LinkedList<Call> mWaitingCalls = new LinkedList<>();
+
+    /**
+     * Calls in progress by connection.
+     */
+    private final Map<NioHttpConnection, Call> mActiveCalls = new HashMap<>();
+
+    /**
+     * Idle connections by host key, the most recently used last.
+     */
+    private final Map<String, Deque<NioHttpConnection>> mIdleConnections = new HashMap<>();
+
+    /**
+     * Number of open connections by host key.
+     */
+    private final Map<String, Integer> mConnectionCounts = new HashMap<>();
+
+    private int mIdleConnectionCount;
+
+    /**
+     * HTTP/2 connections and connections negotiating the protocol, with or without streams.
+     */
+    private final Set<NioHttpConnection> mMultiplexedConnections = new HashSet<>();
+
+    /**
+     * Connection new streams are opened on by host key, or connection still negotiating the protocol.
+     */
+    private final Map<String, NioHttpConnection> mHttp2Connections = new HashMap<>();
+
+    /**
+     * Host keys of servers that did not negotiate HTTP/2.
+     */
+    private final Set<String> mHttp1Hosts = new HashSet<>();
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled whether large payloads are compressed.
+     * @param callbackHandler    handler to deliver call results on, or null for the main thread.
+     */
+    public NioHttpClient(boolean compressionEnabled, Handler callbackHandler) {
+        this(compressionEnabled, callbackHandler, false);
+    }
+
+    /**
+     * Init.
+     *
+     * @param compressionEnabled whether large payloads are compressed.
+     * @param callbackHandler    handler to deliver call results on, or null for the main thread.
+     * @param http2Enabled       whether to use HTTP/2 with servers supporting it.
+     *                           It is negotiated with ALPN, which requires Android 10, older versions use HTTP/1.1.
+     */
+    public NioHttpClient(boolean compressionEnabled, Handler callbackHandler, boolean http2Enabled) {
+        this(compressionEnabled, callbackHandler, null, HttpsURLConnection.getDefaultHostnameVerifier(), false, http2Enabled);
+    }
+
+    /**
+     * Init for tests. With cleartext, HTTP/2 is used without negotiation when enabled.
+     */
+    @VisibleForTesting
+    NioHttpClient(boolean compressionEnabled, Handler callbackHandler, SSLContext sslContext, HostnameVerifier hostnameVerifier, boolean cleartextAllowed, boolean http2Enabled) {
+        mCompressionEnabled = compressionEnabled;
+        mCallbackHandler = callbackHandler;
+        mSslContext = sslContext;
+        mHostnameVerifier = hostnameVerifier;
+        mCleartextAllowed = cleartextAllowed;
+        mHttp2Enabled = http2Enabled;
+    }
+
+    /**
+     * Get the key of a host for connection reuse.
+     *
+     * @param scheme URL scheme.
+     * @param host   host name.
+     * @param port   port.
+     * @return host key.
+     */
+    static String getHostKey(String scheme, String host, int port) {
+        return scheme + "://" + host + ":" + port;
+    }
+
+    @Override
+    public ServiceCall callAsync(String url, String method, Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+        final Call call = new Call(url, method, headers, callTemplate, serviceCallback);
+        submit(call);
+        return new ServiceCall() {
+
+            @Override
+            public void cancel() {
+                cancelCall(call);
+            }
+        };
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * No request is sent: the connection is put in the idle pool once connected, or negotiates HTTP/2.
+     * A call made while the connection is being opened takes it over.
+     */
+    @Override
+    public void preconnect(final String url) {
+        Call call = new Call(url, null, new HashMap<String, String>(), null, new ServiceCallback() {
+
+            @Override
+            public void onCallSucceeded(HttpResponse httpResponse) {
+
+                /* Not delivered for preconnections. */
+            }
+
+            @Override
+            public void onCallFailed(Exception e) {
+                AppCenterLog.verbose(LOG_TAG, "Preconnection to " + url + " failed.", e);
+            }
+        });
+        call.mPreconnect = true;
+        submit(call);
+    }
+
+    /**
+     * Prepare a call on the preparation thread, then pass it to the selector thread.
+     */
+    private void submit(final Call call) {
+        Executor executor;
+        synchronized (this) {
+            mCalls.add(call);
+            if (mPreparationExecutor == null) {
+                mPreparationExecutor = DefaultHttpClient.createExecutor(1, DefaultHttpClient.DEFAULT_QUEUE_CAPACITY, Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            executor = mPreparationExecutor;
+        }
+        try {
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (call.mCancelled) {
+                        finish(call);
+                        return;
+                    }
+                    try {
+                        prepareRequest(call);
+                    } catch (Exception e) {
+                        deliver(call, e);
+                        return;
+                    }
+                    dispatch(call);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            deliver(call, e);
+        }
+    }
+
+    /**
+     * Pass a prepared call to the selector thread.
+     */
+    private synchronized void dispatch(Call call) {
+
+        /* The call may have failed with the selector thread while being prepared. */
+        if (!mCalls.contains(call)) {
+            return;
+        }
+        try {
+            if (mSelector == null) {
+                startSelectorThread();
+            }
+            mSubmittedCalls.add(call);
+            mSelector.wakeup();
+        } catch (IOException e) {
+            deliver(call, e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (mCalls.size() > 0) {
+            AppCenterLog.debug(LOG_TAG, "Cancelling " + mCalls.size() + " network call(s).");
+            for (Call call : mCalls) {
+                call.mCancelled = true;
+            }
+        }
+        if (mSelector != null) {
+            mCloseIdleConnections = true;
+            mSelector.wakeup();
+        }
+    }
+
+    @Override
+    public void reopen() {
+
+        /* Nothing to do. */
+    }
+
+    @VisibleForTesting
+    synchronized boolean isSelectorThreadRunning() {
+        return mSelector != null;
+    }
+
+    private synchronized void cancelCall(Call call) {
+
+        /* The selector thread closes the connection, the response is ignored unless already received. */
+        call.mCancelled = true;
+        if (mSelector != null) {
+            mSelector.wakeup();
+        }
+    }
+
+    private void startSelectorThread() throws IOException {
+        final Selector selector = Selector.open();
+        mSelector = selector;
+        mCloseIdleConnections = false;
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+                /* Do tag socket to avoid strict mode issue. */
+                TrafficStats.setThreadStatsTag(THREAD_STATS_TAG);
+                try {
+                    runSelector(selector);
+                } finally {
+                    TrafficStats.clearThreadStatsTag();
+                }
+            }
+        }, THREAD_NAME).start();
+    }
+
+    /**
+     * Selector loop, ends when there is no more call and no idle connection.
+     */
+    private void runSelector(Selector selector) {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (mCalls.isEmpty() && mSubmittedCalls.isEmpty() && mActiveCalls.isEmpty() && mIdleConnectionCount == 0 && mMultiplexedConnections.isEmpty()) {
+                        mSelector = null;
+                        break;
+                    }
+                }
+                selector.select(MAX_SELECT_TIMEOUT);
+                Call submittedCall;
+                while ((submittedCall = mSubmittedCalls.poll()) != null) {
+                    mWaitingCalls.add(submittedCall);
+                }
+                Set<SelectionKey> selectedKeys = selector.selectedKeys();
+                for (SelectionKey key : selectedKeys) {
+                    processKey(key);
+                }
+                selectedKeys.clear();
+                handleCancellations();
+                dispatchWaitingCalls(selector);
+                checkTimeouts(System.currentTimeMillis());
+            }
+        } catch (IOException e) {
+            AppCenterLog.error(LOG_TAG, "HTTP selector failed.", e);
+            synchronized (this) {
+                mSelector = null;
+            }
+            failAll(e);
+        } finally {
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+
+                /* Nothing to do. */
+            }
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        NioHttpConnection connection = (NioHttpConnection) key.attachment();
+        if (!key.isValid()) {
+            return;
+        }
+        if (mMultiplexedConnections.contains(connection)) {
+            processMultiplexed(connection);
+            return;
+        }
+        Call call = mActiveCalls.get(connection);
+        if (call == null) {
+
+            /* An idle connection is readable when the server closes it, or sends TLS records such as session tickets. */
+            if (!connection.checkIdle()) {
+                removeIdleConnection(connection);
+                closeConnection(connection);
+            }
+            return;
+        }
+        if (call.mPreconnect) {
+            processPreconnection(call, connection);
+            return;
+        }
+        try {
+            if (connection.process()) {
+                completeCall(call, connection);
+            } else {
+                HttpResponseParser parser = connection.getParser();
+                if (parser.isReceivingBody() && isStreamed(call, parser.getStatusCode())) {
+                    parser.setBodyPipe(startStreaming(call, parser.getStatusCode(), parser.getHeaders()));
+                }
+            }
+        } catch (Exception e) {
+            failCall(call, connection, e);
+        }
+    }
+
+    private void handleCancellations() {
+        for (Iterator<Call> iterator = mWaitingCalls.iterator(); iterator.hasNext(); ) {
+            Call call = iterator.next();
+            if (call.mCancelled) {
+                iterator.remove();
+                finish(call);
+            }
+        }
+        for (Map.Entry<NioHttpConnection, Call> entry : new ArrayList<>(mActiveCalls.entrySet())) {
+            Call call = entry.getValue();
+            if (call.mCancelled) {
+                mActiveCalls.remove(entry.getKey());
+                closeConnection(entry.getKey());
+                failBodyPipe(call, new IOException("Call cancelled"));
+                finish(call);
+            }
+        }
+        for (NioHttpConnection connection : new ArrayList<>(mMultiplexedConnections)) {
+            Http2Session session = connection.getHttp2Session();
+            if (session == null) {
+                continue;
+            }
+            boolean cancelled = false;
+            for (Http2Session.Stream stream : new ArrayList<>(session.getStreams())) {
+                Call call = (Call) stream.getTag();
+                if (call.mCancelled) {
+                    session.cancelStream(stream);
+                    failBodyPipe(call, new IOException("Call cancelled"));
+                    finish(call);
+                    cancelled = true;
+                }
+            }
+            if (cancelled) {
+                processMultiplexed(connection);
+            }
+        }
+        if (mCloseIdleConnections) {
+            mCloseIdleConnections = false;
+            for (NioHttpConnection connection : new ArrayList<>(mMultiplexedConnections)) {
+                Http2Session session = connection.getHttp2Session();
+                if (session == null || session.getStreamCount() == 0) {
+                    closeMultiplexed(connection);
+                }
+            }
+            for (Deque<NioHttpConnection> connections : mIdleConnections.values()) {
+                for (NioHttpConnection connection : connections) {
+                    closeConnection(connection);
+                }
+            }
+            mIdleConnections.clear();
+            mIdleConnectionCount = 0;
+        }
+    }
+
+    private void dispatchWaitingCalls(Selector selector) {
+        List<Call> calls = new ArrayList<>(mWaitingCalls);
+        mWaitingCalls.clear();
+        Set<NioHttpConnection> multiplexedConnections = new HashSet<>();
+        for (Call call : calls) {
+            NioHttpConnection connection = null;
+            try {
+                if (call.mPreconnect) {
+                    NioHttpConnection multiplexedConnection = preconnect(selector, call);
+                    if (multiplexedConnection != null) {
+                        multiplexedConnections.add(multiplexedConnection);
+                    }
+                    continue;
+                }
+                if (isHttp2Possible(call)) {
+                    multiplexedConnections.add(dispatchHttp2(selector, call));
+                    continue;
+                }
+                if (call.mRequest == null) {
+                    call.mRequest = buildHttp1Request(call);
+                }
+                connection = takeIdleConnection(call.mHostKey);
+                if (connection == null) {
+                    connection = takePreconnection(call.mHostKey);
+                }
+                if (connection == null) {
+                    if (getConnectionCount(call.mHostKey) >= MAX_CONNECTIONS_PER_HOST) {
+                        mWaitingCalls.add(call);
+                        continue;
+                    }
+                    connection = openConnection(selector, call, false);
+                }
+                mActiveCalls.put(connection, call);
+                for (ByteBuffer buffer : call.mRequest) {
+                    buffer.rewind();
+                }
+                if (connection.send(call.mRequest)) {
+                    completeCall(call, connection);
+                }
+            } catch (Exception e) {
+                if (connection != null) {
+                    failCall(call, connection, e);
+                } else {
+                    deliver(call, e);
+                }
+            }
+        }
+
+        /* Send the new streams and start the new connections. */
+        for (NioHttpConnection connection : multiplexedConnections) {
+            processMultiplexed(connection);
+        }
+    }
+
+    /**
+     * Open a connection for a preconnection call, unless the host already has one.
+     *
+     * @return HTTP/2 connection to process once all the calls are dispatched, null otherwise.
+     */
+    private NioHttpConnection preconnect(Selector selector, Call call) throws IOException {
+        if (isHttp2Possible(call)) {
+            NioHttpConnection connection = mHttp2Connections.get(call.mHostKey);
+            if (connection == null) {
+                connection = openConnection(selector, call, true);
+                mHttp2Connections.put(call.mHostKey, connection);
+                mMultiplexedConnections.add(connection);
+            }
+            finish(call);
+            return connection;
+        }
+        if (getConnectionCount(call.mHostKey) > 0) {
+            finish(call);
+            return null;
+        }
+        NioHttpConnection connection = openConnection(selector, call, false);
+        mActiveCalls.put(connection, call);
+        processPreconnection(call, connection);
+        return null;
+    }
+
+    /**
+     * Make progress on a preconnection, and put the connection in the idle pool once ready.
+     */
+    private void processPreconnection(Call call, NioHttpConnection connection) {
+        try {
+            connection.process();
+            if (connection.isReady()) {
+                mActiveCalls.remove(connection);
+                releaseConnection(connection);
+                finish(call);
+            }
+        } catch (IOException e) {
+            failCall(call, connection, e);
+        }
+    }
+
+    /**
+     * Take over a connection still being opened by a preconnection call.
+     *
+     * @return connection or null if none.
+     */
+    private NioHttpConnection takePreconnection(String hostKey) {
+        NioHttpConnection connection = null;
+        for (Map.Entry<NioHttpConnection, Call> entry : mActiveCalls.entrySet()) {
+            Call call = entry.getValue();
+            if (call.mPreconnect && hostKey.equals(call.mHostKey)) {
+                connection = entry.getKey();
+                break;
+            }
+        }
+        if (connection != null) {
+            finish(mActiveCalls.remove(connection));
+        }
+        return connection;
+    }
+
+    private boolean isHttp2Possible(Call call) {
+        return mHttp2Enabled && !mHttp1Hosts.contains(call.mHostKey) && (!call.mHttps || Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q);
+    }
+
+    /**
+     * Open a stream for a call, or open a connection to negotiate HTTP/2 and wait for it.
+     *
+     * @return connection of the host, to process once all the calls are dispatched.
+     */
+    private NioHttpConnection dispatchHttp2(Selector selector, Call call) throws IOException {
+        NioHttpConnection connection = mHttp2Connections.get(call.mHostKey);
+        if (connection == null || (connection.getHttp2Session() != null && !connection.getHttp2Session().isAcceptingStreams())) {
+            connection = openConnection(selector, call, true);
+            mHttp2Connections.put(call.mHostKey, connection);
+            mMultiplexedConnections.add(connection);
+        }
+        Http2Session session = connection.getHttp2Session();
+        if (session == null || !session.canOpenStream()) {
+
+            /* Wait for the protocol negotiation or for a stream to finish. */
+            mWaitingCalls.add(call);
+        } else {
+            session.openStream(buildHttp2Headers(call), call.mPayload, call.mPayloadLength, call);
+        }
+        return connection;
+    }
+
+    private void checkTimeouts(long now) {
+        for (Map.Entry<NioHttpConnection, Call> entry : new ArrayList<>(mActiveCalls.entrySet())) {
+            NioHttpConnection connection = entry.getKey();
+            long timeout = connection.isConnected() ? READ_TIMEOUT : CONNECT_TIMEOUT;
+            if (now - connection.getLastActivityTime() > timeout) {
+                failCall(entry.getValue(), connection, new SocketTimeoutException((connection.isConnected() ? "Read" : "Connect") + " timed out"));
+            }
+        }
+        for (Deque<NioHttpConnection> connections : mIdleConnections.values()) {
+            for (Iterator<NioHttpConnection> iterator = connections.iterator(); iterator.hasNext(); ) {
+                NioHttpConnection connection = iterator.next();
+                if (now - connection.getLastActivityTime() > KEEP_ALIVE_TIMEOUT) {
+                    iterator.remove();
+                    mIdleConnectionCount--;
+                    closeConnection(connection);
+                }
+            }
+        }
+        for (NioHttpConnection connection : new ArrayList<>(mMultiplexedConnections)) {
+            Http2Session session = connection.getHttp2Session();
+            long elapsed = now - connection.getLastActivityTime();
+            if (session != null && session.getStreamCount() == 0) {
+                if (elapsed > KEEP_ALIVE_TIMEOUT) {
+                    closeMultiplexed(connection);
+                }
+            } else {
+                long timeout = connection.isConnected() ? READ_TIMEOUT : CONNECT_TIMEOUT;
+                if (elapsed > timeout) {
+                    failMultiplexed(connection, new SocketTimeoutException((connection.isConnected() ? "Read" : "Connect") + " timed out"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolve the target and build the payload, compressed if needed. Called on the preparation thread.
+     */
+    private void prepareRequest(Call call) throws Exception {
+        URL url = new URL(call.mUrl);
+        String scheme = url.getProtocol();
+        if (!"https".equals(scheme) && !(mCleartextAllowed && "http".equals(scheme))) {
+            throw new IOException("App Center support only HTTPS connection.");
+        }
+        call.mHttps = "https".equals(scheme);
+        call.mHost = url.getHost();
+        call.mPort = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+        String path = url.getFile();
+        call.mPath = path.isEmpty() ? "/" : path;
+        call.mAuthority = call.mHost;
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            call.mAuthority += ":" + url.getPort();
+        }
+
+        /* Resolve the host name here, a lookup can take seconds. */
+        call.mAddress = new InetSocketAddress(InetAddress.getByName(call.mHost), call.mPort);
+
+        /* Build payload now if POST. */
+        Map<String, String> headers = call.mHeaders;
+        if (METHOD_POST.equals(call.mMethod) && call.mCallTemplate != null) {
+            if (!headers.containsKey(CONTENT_TYPE_KEY)) {
+                headers.put(CONTENT_TYPE_KEY, CONTENT_TYPE_VALUE);
+            }
+
+            /* The compressed payload is handed over to the selector thread: use a buffer per call instead of a pooled one. */
+            HttpBufferPool.PayloadBuffer gzipBuffer = null;
+            if (mCompressionEnabled && call.mCallTemplate instanceof HttpClient.StreamingCallTemplate) {
+
+                /* Serialize directly through gzip. */
+                gzipBuffer = new HttpBufferPool.PayloadBuffer();
+                OutputStream gzipStream = new PooledGzipOutputStream(gzipBuffer, mBufferPool);
+                Writer writer = new OutputStreamWriter(gzipStream, CHARSET_NAME);
+
+                //noinspection TryFinallyCanBeTryWithResources
+                try {
+                    ((HttpClient.StreamingCallTemplate) call.mCallTemplate).writeRequestBody(writer);
+                } finally {
+                    writer.close();
+                }
+            } else {
+                byte[] payload = call.mCallTemplate.buildRequestBody().getBytes(CHARSET_NAME);
+                if (mCompressionEnabled && payload.length >= MIN_GZIP_LENGTH) {
+                    gzipBuffer = new HttpBufferPool.PayloadBuffer();
+                    PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(gzipBuffer, mBufferPool);
+
+                    //noinspection TryFinallyCanBeTryWithResources
+                    try {
+                        gzipStream.write(payload);
+                    } finally {
+                        gzipStream.close();
+                    }
+                } else {
+                    call.mPayload = payload;
+                    call.mPayloadLength = payload.length;
+                }
+            }
+            if (gzipBuffer != null) {
+                headers.put(CONTENT_ENCODING_KEY, CONTENT_ENCODING_VALUE);
+                call.mPayload = gzipBuffer.getBuffer();
+                call.mPayloadLength = gzipBuffer.size();
+            }
+        }
+
+        /* Call back before the payload is sent. */
+        if (call.mCallTemplate != null) {
+            call.mCallTemplate.onBeforeCalling(url, headers);
+        }
+        call.mHostKey = getHostKey(scheme, call.mHost, call.mPort);
+    }
+
+    /**
+     * Build the HTTP/1.1 request: head bytes, then the payload without copying it.
+     */
+    private static ByteBuffer[] buildHttp1Request(Call call) throws IOException {
+        StringBuilder head = new StringBuilder();
+        head.append(call.mMethod).append(' ').append(call.mPath).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(call.mAuthority).append("\r\n");
+        for (Map.Entry<String, String> header : call.mHeaders.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (call.mPayload != null) {
+            head.append("Content-Length: ").append(call.mPayloadLength).append("\r\n");
+        }
+        head.append("\r\n");
+        ByteBuffer headBuffer = ByteBuffer.wrap(head.toString().getBytes(CHARSET_NAME));
+        if (call.mPayload == null) {
+            return new ByteBuffer[]{headBuffer};
+        }
+        ByteBuffer body = ByteBuffer.wrap(call.mPayload, 0, call.mPayloadLength);
+
+        /* The payload is now only referenced by the request. */
+        call.mPayload = null;
+        return new ByteBuffer[]{headBuffer, body};
+    }
+
+    /**
+     * Build the HTTP/2 headers: pseudo headers first then lower case names.
+     */
+    private static List<String[]> buildHttp2Headers(Call call) {
+        List<String[]> headers = new ArrayList<>(call.mHeaders.size() + 5);
+        headers.add(new String[]{":method", call.mMethod});
+        headers.add(new String[]{":scheme", call.mHttps ? "https" : "http"});
+        headers.add(new String[]{":authority", call.mAuthority});
+        headers.add(new String[]{":path", call.mPath});
+        for (Map.Entry<String, String> header : call.mHeaders.entrySet()) {
+            String name = header.getKey().toLowerCase(Locale.US);
+            if (!CONNECTION_HEADERS.contains(name)) {
+                headers.add(new String[]{name, header.getValue()});
+            }
+        }
+        if (call.mPayload != null) {
+            headers.add(new String[]{"content-length", String.valueOf(call.mPayloadLength)});
+        }
+        return headers;
+    }
+
+    private NioHttpConnection openConnection(Selector selector, Call call, boolean http2) throws IOException {
+        SSLEngine engine = null;
+        if (call.mHttps) {
+            engine = getSslContext().createSSLEngine(call.mHost, call.mPort);
+            engine.setUseClientMode(true);
+
+            /* Same reason as in HttpUtils.createHttpsConnection. */
+            if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP && Arrays.asList(engine.getSupportedProtocols()).contains(TLS1_2_PROTOCOL)) {
+                engine.setEnabledProtocols(new String[]{TLS1_2_PROTOCOL});
+            }
+
+            /* Offer HTTP/2, the server may still choose HTTP/1.1. */
+            if (http2 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                SSLParameters parameters = engine.getSSLParameters();
+                parameters.setApplicationProtocols(new String[]{Http2Session.PROTOCOL, HTTP1_1_PROTOCOL});
+                engine.setSSLParameters(parameters);
+            }
+        }
+        NioHttpConnection connection = new NioHttpConnection(selector, call.mHostKey, call.mHost, call.mAddress, engine, mHostnameVerifier, http2);
+        mConnectionCounts.put(call.mHostKey, getConnectionCount(call.mHostKey) + 1);
+        return connection;
+    }
+
+    private SSLContext getSslContext() throws SSLException {
+        if (mSslContext == null) {
+            try {
+                if (Build.VERSION.SDK_INT <= Build.VERSION_CODES.LOLLIPOP) {
+                    mSslContext = SSLContext.getInstance(TLS1_2_PROTOCOL);
+                    mSslContext.init(null, null, null);
+                } else {
+                    mSslContext = SSLContext.getDefault();
+                }
+            } catch (GeneralSecurityException e) {
+                throw new SSLException(e);
+            }
+        }
+        return mSslContext;
+    }
+
+    private int getConnectionCount(String hostKey) {
+        Integer count = mConnectionCounts.get(hostKey);
+        return count == null ? 0 : count;
+    }
+
+    private NioHttpConnection takeIdleConnection(String hostKey) {
+        Deque<NioHttpConnection> connections = mIdleConnections.get(hostKey);
+        if (connections == null) {
+            return null;
+        }
+        NioHttpConnection connection;
+        while ((connection = connections.pollLast()) != null) {
+            mIdleConnectionCount--;
+            if (connection.checkIdle()) {
+                return connection;
+            }
+            closeConnection(connection);
+        }
+        return null;
+    }
+
+    private void releaseConnection(NioHttpConnection connection) {
+        Deque<NioHttpConnection> connections = mIdleConnections.get(connection.getHostKey());
+        if (connections == null) {
+            connections = new ArrayDeque<>();
+            mIdleConnections.put(connection.getHostKey(), connections);
+        }
+        connections.addLast(connection);
+        mIdleConnectionCount++;
+        connection.onIdle();
+    }
+
+    private void removeIdleConnection(NioHttpConnection connection) {
+        Deque<NioHttpConnection> connections = mIdleConnections.get(connection.getHostKey());
+        if (connections != null && connections.remove(connection)) {
+            mIdleConnectionCount--;
+        }
+    }
+
+    private void closeConnection(NioHttpConnection connection) {
+        connection.close();
+        mConnectionCounts.put(connection.getHostKey(), getConnectionCount(connection.getHostKey()) - 1);
+    }
+
+    private void completeCall(Call call, NioHttpConnection connection) throws IOException {
+        mActiveCalls.remove(connection);
+        HttpResponseParser parser = connection.getParser();
+
+        /* The body may have been received at once. */
+        if (isStreamed(call, parser.getStatusCode())) {
+            parser.setBodyPipe(startStreaming(call, parser.getStatusCode(), parser.getHeaders()));
+        }
+        if (parser.isKeepAlive() && !call.mCancelled) {
+            releaseConnection(connection);
+        } else {
+            closeConnection(connection);
+        }
+        if (call.mBodyPipe != null) {
+            call.mBodyPipe.end();
+        } else {
+            deliverResponse(call, parser.getStatusCode(), parser.getBodyBuffer(), parser.getHeaders());
+        }
+    }
+
+    /**
+     * Check whether the body of a response must be streamed to the call template, see {@link ResponseMode#STREAM}.
+     *
+     * @param call   call.
+     * @param status response status, 0 if not received yet.
+     * @return true if the body is not streamed yet and must be.
+     */
+    private static boolean isStreamed(Call call, int status) {
+        return call.mBodyPipe == null && status >= 200 && status < 300 && getResponseMode(call.mCallTemplate) == ResponseMode.STREAM;
+    }
+
+    /**
+     * Read a successful response body on the response thread while the selector thread receives it.
+     * The result is delivered once the body is read and fully received.
+     *
+     * @return pipe to pass the body to.
+     * @throws RejectedExecutionException if the response thread cannot take the body.
+     */
+    private ResponseBodyPipe startStreaming(final Call call, final int status, final Map<String, String> headers) {
+        final ResponseBodyPipe bodyPipe = new ResponseBodyPipe();
+        Executor executor;
+        synchronized (this) {
+            if (mResponseExecutor == null) {
+                mResponseExecutor = DefaultHttpClient.createExecutor(1, DefaultHttpClient.DEFAULT_QUEUE_CAPACITY, Process.THREAD_PRIORITY_BACKGROUND);
+            }
+            executor = mResponseExecutor;
+        }
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status);
+                Exception error = null;
+                try {
+                    ((HttpClient.StreamingResponseCallTemplate) call.mCallTemplate).readResponseBody(new InputStreamReader(bodyPipe, CHARSET_NAME));
+                } catch (Exception e) {
+                    error = e;
+                }
+
+                /* A transport error is also the cause of a reading error. */
+                try {
+                    bodyPipe.awaitEnd();
+                } catch (IOException e) {
+                    error = e;
+                }
+                if (error != null) {
+                    deliver(call, error);
+                } else {
+                    deliver(call, new HttpResponse(status, "", headers));
+                }
+            }
+        });
+        call.mBodyPipe = bodyPipe;
+        return bodyPipe;
+    }
+
+    /**
+     * Fail the body of a streamed response, the response thread then delivers the error.
+     *
+     * @return true if the response is streamed, false if the caller has to deliver the error.
+     */
+    private static boolean failBodyPipe(Call call, Exception e) {
+        if (call.mBodyPipe == null) {
+            return false;
+        }
+        call.mBodyPipe.fail(e instanceof IOException ? (IOException) e : new IOException(e));
+        return true;
+    }
+
+    /**
+     * Deliver a buffered response with what the call needs, see {@link ResponseMode}.
+     * Streamed responses are delivered by {@link #startStreaming}.
+     */
+    private void deliverResponse(Call call, int status, ByteArrayOutputStream body, Map<String, String> headers) throws IOException {
+        AppCenterLog.verbose(LOG_TAG, "HTTP response status=" + status);
+        boolean success = status >= 200 && status < 300;
+        int responseMode = success ? getResponseMode(call.mCallTemplate) : ResponseMode.BODY;
+        String payload = "";
+        if (responseMode == ResponseMode.STATUS) {
+            headers = Collections.emptyMap();
+        } else {
+            payload = body.toString(CHARSET_NAME);
+        }
+        HttpResponse httpResponse = new HttpResponse(status, payload, headers);
+
+        /* Accept all 2xx codes. */
+        if (success) {
+            deliver(call, httpResponse);
+        } else {
+            deliver(call, new HttpException(httpResponse));
+        }
+    }
+
+    private void failCall(Call call, NioHttpConnection connection, Exception e) {
+        mActiveCalls.remove(connection);
+        closeConnection(connection);
+        if (failBodyPipe(call, e)) {
+            return;
+        }
+
+        /*
+         * The server may have closed a kept alive connection before we noticed:
+         * retry once on a new connection if nothing was received.
+         */
+        HttpResponseParser parser = connection.getParser();
+        boolean reused = connection.getRequestCount() > 1;
+        if (reused && !call.mRetried && !call.mCancelled && (parser == null || !parser.isStarted()) && e instanceof IOException) {
+            retry(call);
+            return;
+        }
+        deliver(call, e);
+    }
+
+    private void retry(Call call) {
+        call.mRetried = true;
+        mWaitingCalls.addFirst(call);
+        synchronized (this) {
+            if (mSelector != null) {
+                mSelector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Exchange frames on an HTTP/2 connection or make progress on the protocol negotiation,
+     * then deliver the calls of finished streams.
+     */
+    private void processMultiplexed(NioHttpConnection connection) {
+        Http2Session session = connection.getHttp2Session();
+        try {
+            connection.process();
+            if (session == null) {
+                session = connection.getHttp2Session();
+                if (session == null) {
+                    if (connection.isReady()) {
+
+                        /* HTTP/2 not negotiated: use the connection and the next ones for HTTP/1.1. */
+                        AppCenterLog.debug(LOG_TAG, "HTTP/2 is not supported by " + connection.getHostKey());
+                        mMultiplexedConnections.remove(connection);
+                        mHttp2Connections.remove(connection.getHostKey());
+                        mHttp1Hosts.add(connection.getHostKey());
+                        releaseConnection(connection);
+                    }
+                    return;
+                }
+
+                /* Negotiation just succeeded, open the streams of the waiting calls. */
+                synchronized (this) {
+                    if (mSelector != null) {
+                        mSelector.wakeup();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            failMultiplexed(connection, e);
+            return;
+        }
+        streamBodies(session);
+        deliverFinishedStreams(session);
+        if (session.getStreamCount() == 0 && !session.isAcceptingStreams()) {
+            closeMultiplexed(connection);
+        }
+    }
+
+    private void deliverFinishedStreams(Http2Session session) {
+        for (Http2Session.Stream stream : session.pollFinishedStreams()) {
+            Call call = (Call) stream.getTag();
+            IOException error = stream.getError();
+            if (error == null) {
+                try {
+
+                    /* The body may have been received at once. */
+                    if (isStreamed(call, stream.getStatusCode())) {
+                        stream.setBodyPipe(startStreaming(call, stream.getStatusCode(), stream.getHeaders()));
+                    }
+                    if (call.mBodyPipe != null) {
+                        call.mBodyPipe.end();
+                    } else {
+                        deliverResponse(call, stream.getStatusCode(), stream.getBodyBuffer(), stream.getHeaders());
+                    }
+                } catch (IOException | RejectedExecutionException e) {
+                    deliver(call, e);
+                }
+            } else {
+                failStream(call, stream, session, error);
+            }
+        }
+    }
+
+    /**
+     * Pass the bodies being received to the streams of the calls that read them, see {@link ResponseMode#STREAM}.
+     */
+    private void streamBodies(Http2Session session) {
+        for (Http2Session.Stream stream : new ArrayList<>(session.getStreams())) {
+            Call call = (Call) stream.getTag();
+            if (isStreamed(call, stream.getStatusCode())) {
+                try {
+                    stream.setBodyPipe(startStreaming(call, stream.getStatusCode(), stream.getHeaders()));
+                } catch (RejectedExecutionException e) {
+                    session.cancelStream(stream);
+                    deliver(call, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Fail a stream, retrying once if the server did not process it.
+     */
+    private void failStream(Call call, Http2Session.Stream stream, Http2Session session, Exception e) {
+        if (failBodyPipe(call, e)) {
+            return;
+        }
+        boolean reused = session.getCompletedStreamCount() > 0;
+        boolean unprocessed = stream.isRefused() || (reused && !stream.isStarted() && e instanceof IOException);
+        if (unprocessed && !call.mRetried && !call.mCancelled) {
+            retry(call);
+        } else {
+            deliver(call, e);
+        }
+    }
+
+    /**
+     * Close a multiplexed connection after an error, failing its streams.
+     * If the protocol negotiation failed, the calls waiting for it fail too.
+     */
+    private void failMultiplexed(NioHttpConnection connection, Exception e) {
+        closeMultiplexed(connection);
+        Http2Session session = connection.getHttp2Session();
+        if (session != null) {
+
+            /* Frames parsed before the error are still valid. */
+            deliverFinishedStreams(session);
+            for (Http2Session.Stream stream : new ArrayList<>(session.getStreams())) {
+                failStream((Call) stream.getTag(), stream, session, e);
+            }
+        } else {
+            for (Iterator<Call> iterator = mWaitingCalls.iterator(); iterator.hasNext(); ) {
+                Call call = iterator.next();
+                if (connection.getHostKey().equals(call.mHostKey)) {
+                    iterator.remove();
+                    deliver(call, e);
+                }
+            }
+        }
+    }
+
+    private void closeMultiplexed(NioHttpConnection connection) {
+        mMultiplexedConnections.remove(connection);
+        if (mHttp2Connections.get(connection.getHostKey()) == connection) {
+            mHttp2Connections.remove(connection.getHostKey());
+        }
+        closeConnection(connection);
+    }
+
+    private void failAll(Exception e) {
+        List<Call> calls;
+        synchronized (this) {
+            calls = new ArrayList<>(mCalls);
+        }
+        for (NioHttpConnection connection : mActiveCalls.keySet()) {
+            connection.close();
+        }
+        for (NioHttpConnection connection : mMultiplexedConnections) {
+            connection.close();
+        }
+        mMultiplexedConnections.clear();
+        mHttp2Connections.clear();
+        for (Deque<NioHttpConnection> connections : mIdleConnections.values()) {
+            for (NioHttpConnection connection : connections) {
+                connection.close();
+            }
+        }
+        mActiveCalls.clear();
+        mIdleConnections.clear();
+        mConnectionCounts.clear();
+        mIdleConnectionCount = 0;
+        mWaitingCalls.clear();
+        mSubmittedCalls.clear();
+        for (Call call : calls) {
+            if (!failBodyPipe(call, e)) {
+                deliver(call, e);
+            }
+        }
+    }
+
+    private synchronized void finish(Call call) {
+        mCalls.remove(call);
+    }
+
+    /**
+     * Deliver the result of a call on the callback thread.
+     * Like {@link DefaultHttpClient}, a response is delivered even if the call was cancelled.
+     */
+    private void deliver(final Call call, final Object result) {
+        finish(call);
+        DefaultHttpClient.runOnCallbackThread(mCallbackHandler, new Runnable() {
+
+            @Override
+            public void run() {
+                if (result instanceof HttpResponse) {
+                    call.mServiceCallback.onCallSucceeded((HttpResponse) result);
+                } else if (result instanceof HttpException || !call.mCancelled) {
+                    call.mServiceCallback.onCallFailed((Exception) result);
+                }
+            }
+        });
+    }
+
+    /**
+     * State of a call.
+     */
+    private static class Call {
+
+        private final String mUrl;
+
+        private final String mMethod;
+
+        private final Map<String, String> mHeaders;
+
+        private final CallTemplate mCallTemplate;
+
+        private final ServiceCallback mServiceCallback;
+
+        private volatile boolean mCancelled;
+
+        private boolean mHttps;
+
+        private String mHost;
+
+        private int mPort;
+
+        /**
+         * Host key, set once the call is prepared.
+         */
+        private String mHostKey;
+
+        /**
+         * Host and port if not the default one.
+         */
+        private String mAuthority;
+
+        private String mPath;
+
+        /**
+         * Resolved address of the host.
+         */
+        private InetSocketAddress mAddress;
+
+        /**
+         * Request body, possibly compressed, null if none.
+         */
+        private byte[] mPayload;
+
+        private int mPayloadLength;
+
+        /**
+         * HTTP/1.1 request head and body, kept to retry on a new connection.
+         */
+        private ByteBuffer[] mRequest;
+
+        /**
+         * Whether the call was already retried after a kept alive connection failed.
+         */
+        private boolean mRetried;
+
+        /**
+         * Whether the call only opens a connection, without any request.
+         */
+        private boolean mPreconnect;
+
+        /**
+         * Pipe of a response body read while it is received, null if the body is buffered.
+         */
+        private ResponseBodyPipe mBodyPipe;
+
+        Call(String url, String method, @NonNull Map<String, String> headers, CallTemplate callTemplate, ServiceCallback serviceCallback) {
+            mUrl = url;
+            mMethod = method;
+            mHeaders = headers;
+            mCallTemplate = callTemplate;
+            mServiceCallback = serviceCallback;
+        }
+    }
+}
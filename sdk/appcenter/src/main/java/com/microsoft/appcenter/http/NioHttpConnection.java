@@ -0,0 +1,571 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.os.Build;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+/**
+ * Non blocking HTTP connection used by {@link NioHttpClient}, only accessed from its selector thread.
+ * With HTTP/1.1, requests are sent one at a time and the connection can be reused once the response is complete.
+ * With HTTP/2, requests are multiplexed by an {@link Http2Session}.
+ */
+class NioHttpConnection {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /**
+     * Key of the target host, see {@link NioHttpClient#getHostKey(String, String, int)}.
+     */
+    private final String mHostKey;
+
+    private final String mHost;
+
+    private final SocketChannel mChannel;
+
+    /**
+     * TLS engine, null for cleartext.
+     */
+    private final SSLEngine mEngine;
+
+    private final HostnameVerifier mHostnameVerifier;
+
+    private final SelectionKey mKey;
+
+    /**
+     * Encrypted bytes received and not yet decrypted, in write mode.
+     */
+    private ByteBuffer mNetIn;
+
+    /**
+     * Encrypted bytes to send, in read mode.
+     */
+    private ByteBuffer mNetOut;
+
+    /**
+     * Decrypted bytes received, in write mode.
+     */
+    private ByteBuffer mAppIn;
+
+    /**
+     * Request being sent: head then body if any, in read mode.
+     */
+    private ByteBuffer[] mRequest;
+
+    private HttpResponseParser mParser;
+
+    /**
+     * Whether HTTP/2 is offered with ALPN, or used with prior knowledge for cleartext.
+     */
+    private final boolean mHttp2Requested;
+
+    /**
+     * HTTP/2 framing, null for HTTP/1.1 or while the protocol is negotiated.
+     */
+    private Http2Session mHttp2;
+
+    private boolean mConnected;
+
+    private boolean mHandshakeDone;
+
+    /**
+     * Number of requests started on this connection.
+     */
+    private int mRequestCount;
+
+    /**
+     * Time of the last network activity, in milliseconds from {@link System#currentTimeMillis()}.
+     */
+    private long mLastActivityTime;
+
+    /**
+     * Open a connection and start connecting.
+     *
+     * @param selector         selector to register the channel with.
+     * @param hostKey          host key.
+     * @param host             host name.
+     * @param address          resolved address of the host.
+     * @param engine           TLS engine in client mode, or null for cleartext.
+     * @param hostnameVerifier verifier used after the TLS handshake, ignored if engine is null.
+     * @param http2            whether HTTP/2 was offered with ALPN on the engine, or to use it directly for cleartext.
+     * @throws IOException if the connection cannot be started.
+     */
+    NioHttpConnection(Selector selector, String hostKey, String host, InetSocketAddress address, SSLEngine engine, HostnameVerifier hostnameVerifier, boolean http2) throws IOException {
+        mHostKey = hostKey;
+        mHost = host;
+        mEngine = engine;
+        mHostnameVerifier = hostnameVerifier;
+        mHttp2Requested = http2;
+        if (http2 && engine == null) {
+            mHttp2 = new Http2Session();
+        }
+        mChannel = SocketChannel.open();
+        try {
+            mChannel.configureBlocking(false);
+            mChannel.socket().setTcpNoDelay(true);
+            mConnected = mChannel.connect(address);
+            mKey = mChannel.register(selector, mConnected ? 0 : SelectionKey.OP_CONNECT, this);
+            if (mConnected && engine != null) {
+                engine.beginHandshake();
+            }
+        } catch (IOException e) {
+            mChannel.close();
+            throw e;
+        }
+        int applicationBufferSize = HttpUtils.READ_BUFFER_SIZE * 16;
+        if (engine != null) {
+            int packetBufferSize = engine.getSession().getPacketBufferSize();
+            applicationBufferSize = Math.max(applicationBufferSize, engine.getSession().getApplicationBufferSize());
+            mNetIn = ByteBuffer.allocate(packetBufferSize);
+            mNetOut = ByteBuffer.allocate(packetBufferSize);
+            mNetOut.flip();
+        }
+        mAppIn = ByteBuffer.allocate(applicationBufferSize);
+        mLastActivityTime = System.currentTimeMillis();
+    }
+
+    String getHostKey() {
+        return mHostKey;
+    }
+
+    int getRequestCount() {
+        return mRequestCount;
+    }
+
+    long getLastActivityTime() {
+        return mLastActivityTime;
+    }
+
+    boolean isConnected() {
+        return mConnected;
+    }
+
+    /**
+     * Check whether the connection can carry requests.
+     *
+     * @return true once connected and, for TLS, after the handshake.
+     */
+    boolean isReady() {
+        return mConnected && (mEngine == null || mHandshakeDone);
+    }
+
+    /**
+     * Get the HTTP/2 framing.
+     *
+     * @return HTTP/2 session, null for HTTP/1.1 or while the protocol is negotiated.
+     */
+    Http2Session getHttp2Session() {
+        return mHttp2;
+    }
+
+    /**
+     * Get the response parser of the current request.
+     *
+     * @return response parser, null if no request was sent.
+     */
+    HttpResponseParser getParser() {
+        return mParser;
+    }
+
+    /**
+     * Start sending a request.
+     *
+     * @param request request head then body if any, sent without being copied.
+     * @return true if the response is already complete.
+     * @throws IOException if sending fails.
+     */
+    boolean send(ByteBuffer... request) throws IOException {
+        mRequest = request;
+        mParser = new HttpResponseParser();
+        mRequestCount++;
+        mLastActivityTime = System.currentTimeMillis();
+        return mConnected && process();
+    }
+
+    /**
+     * Make progress after the selector reported the channel ready, or after opening HTTP/2 streams.
+     *
+     * @return true if the response of the current HTTP/1.1 request is complete,
+     * always false for HTTP/2: see {@link Http2Session#pollFinishedStreams()}.
+     * @throws IOException if the connection or the response fails.
+     */
+    boolean process() throws IOException {
+        if (!mConnected) {
+            if (!mChannel.finishConnect()) {
+                return false;
+            }
+            mConnected = true;
+            mLastActivityTime = System.currentTimeMillis();
+            if (mEngine != null) {
+                mEngine.beginHandshake();
+            }
+        }
+        if (mEngine != null && !mHandshakeDone && !handshake()) {
+            return false;
+        }
+        if (mHttp2 != null) {
+            processHttp2();
+            return false;
+        }
+        if (mRequest == null) {
+            mKey.interestOps(0);
+            return false;
+        }
+        if (!writeRequest()) {
+            mKey.interestOps(SelectionKey.OP_WRITE);
+            return false;
+        }
+        if (readResponse()) {
+            mRequest = null;
+            mKey.interestOps(0);
+            return true;
+        }
+        mKey.interestOps(SelectionKey.OP_READ);
+        return false;
+    }
+
+    /**
+     * Watch the connection while idle in the pool, the server may close it.
+     */
+    void onIdle() {
+        mKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Check an idle connection when it becomes readable or before reusing it.
+     * With TLS, the server may send records after the handshake, such as TLS 1.3 session tickets:
+     * they are passed to the engine and keep the connection usable.
+     *
+     * @return false if the server closed the connection or sent unexpected data, true if it's still usable.
+     */
+    boolean checkIdle() {
+        try {
+            mAppIn.clear();
+            if (mEngine == null) {
+                return mChannel.read(mAppIn) == 0;
+            }
+            if (mChannel.read(mNetIn) < 0) {
+                return false;
+            }
+
+            /* A close_notify alert makes unwrap fail, a partial record stays buffered. */
+            while (mNetIn.position() > 0 && unwrap()) {
+                if (mAppIn.position() > 0) {
+                    return false;
+                }
+                if (mEngine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    if (!flushNetOut()) {
+                        return false;
+                    }
+                    wrap(EMPTY);
+                }
+            }
+            return flushNetOut() && mAppIn.position() == 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    void close() {
+        mKey.cancel();
+        try {
+            if (mEngine != null) {
+                mEngine.closeOutbound();
+            }
+            mChannel.close();
+        } catch (IOException ignored) {
+
+            /* Nothing to do. */
+        }
+    }
+
+    private boolean handshake() throws IOException {
+        while (true) {
+            switch (mEngine.getHandshakeStatus()) {
+                case NEED_TASK:
+                    runDelegatedTasks();
+                    break;
+
+                case NEED_WRAP:
+                    if (!flushNetOut()) {
+                        mKey.interestOps(SelectionKey.OP_WRITE);
+                        return false;
+                    }
+                    wrap(EMPTY);
+                    break;
+
+                case NEED_UNWRAP:
+                    if (!flushNetOut()) {
+                        mKey.interestOps(SelectionKey.OP_WRITE);
+                        return false;
+                    }
+                    if (!unwrap()) {
+                        if (!readNetwork()) {
+                            mKey.interestOps(SelectionKey.OP_READ);
+                            return false;
+                        }
+                    }
+                    break;
+
+                default:
+                    if (!flushNetOut()) {
+                        mKey.interestOps(SelectionKey.OP_WRITE);
+                        return false;
+                    }
+                    if (!mHostnameVerifier.verify(mHost, mEngine.getSession())) {
+                        throw new SSLPeerUnverifiedException("Hostname " + mHost + " not verified");
+                    }
+                    mHandshakeDone = true;
+                    if (mHttp2Requested && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && Http2Session.PROTOCOL.equals(mEngine.getApplicationProtocol())) {
+                        mHttp2 = new Http2Session();
+                    }
+                    return true;
+            }
+        }
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = mEngine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Encrypt application bytes into the network output buffer, which must be empty.
+     */
+    private void wrap(ByteBuffer source) throws SSLException {
+        mNetOut.clear();
+        SSLEngineResult result = mEngine.wrap(source, mNetOut);
+        mNetOut.flip();
+        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+            throw new SSLException("Connection closed during TLS wrap");
+        }
+        if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+            runDelegatedTasks();
+        }
+    }
+
+    /**
+     * Decrypt received bytes into the application input buffer.
+     *
+     * @return false if more network bytes are needed.
+     */
+    private boolean unwrap() throws IOException {
+        mNetIn.flip();
+        try {
+            while (true) {
+                SSLEngineResult result = mEngine.unwrap(mNetIn, mAppIn);
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    runDelegatedTasks();
+                }
+                switch (result.getStatus()) {
+                    case BUFFER_UNDERFLOW:
+                        if (mNetIn.limit() == mNetIn.capacity()) {
+                            mNetIn = enlarge(mNetIn, mEngine.getSession().getPacketBufferSize(), true);
+                        }
+                        return false;
+
+                    case BUFFER_OVERFLOW:
+                        mAppIn = enlarge(mAppIn, mEngine.getSession().getApplicationBufferSize(), false);
+                        break;
+
+                    case CLOSED:
+                        throw new EOFException("TLS connection closed");
+
+                    default:
+                        return true;
+                }
+            }
+        } finally {
+            mNetIn.compact();
+        }
+    }
+
+    private static ByteBuffer enlarge(ByteBuffer buffer, int minimumCapacity, boolean readMode) {
+        ByteBuffer enlarged = ByteBuffer.allocate(Math.max(minimumCapacity, buffer.capacity() * 2));
+        if (!readMode) {
+            buffer.flip();
+        }
+        enlarged.put(buffer);
+        if (readMode) {
+            enlarged.flip();
+        }
+        return enlarged;
+    }
+
+    /**
+     * Read network bytes.
+     *
+     * @return false if no bytes are available yet.
+     */
+    private boolean readNetwork() throws IOException {
+        int length = mChannel.read(mEngine != null ? mNetIn : mAppIn);
+        if (length < 0) {
+            throw new EOFException("Connection closed by server");
+        }
+        if (length > 0) {
+            mLastActivityTime = System.currentTimeMillis();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Send pending encrypted bytes.
+     *
+     * @return true if everything was sent.
+     */
+    private boolean flushNetOut() throws IOException {
+        if (mNetOut.hasRemaining() && mChannel.write(mNetOut) > 0) {
+            mLastActivityTime = System.currentTimeMillis();
+        }
+        return !mNetOut.hasRemaining();
+    }
+
+    /**
+     * Send the request.
+     *
+     * @return true if the request was fully sent.
+     */
+    private boolean writeRequest() throws IOException {
+        for (ByteBuffer buffer : mRequest) {
+            if (!write(buffer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send bytes.
+     *
+     * @param source bytes to send, in read mode.
+     * @return true if all bytes were sent.
+     */
+    private boolean write(ByteBuffer source) throws IOException {
+        if (mEngine == null) {
+            if (source.hasRemaining() && mChannel.write(source) > 0) {
+                mLastActivityTime = System.currentTimeMillis();
+            }
+            return !source.hasRemaining();
+        }
+        while (true) {
+            if (!flushNetOut()) {
+                return false;
+            }
+            if (!source.hasRemaining()) {
+                return true;
+            }
+            wrap(source);
+        }
+    }
+
+    /**
+     * Exchange HTTP/2 frames: parse what was received then send queued frames and request bodies.
+     */
+    private void processHttp2() throws IOException {
+        readHttp2();
+        ByteBuffer output;
+        do {
+            mHttp2.fillOutput();
+            output = mHttp2.getOutput();
+            output.flip();
+            boolean sent = write(output);
+            output.compact();
+            if (!sent) {
+                mKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            }
+        } while (mHttp2.hasPendingData());
+        mKey.interestOps(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Read and parse all the HTTP/2 frames available.
+     */
+    private void readHttp2() throws IOException {
+        feedHttp2();
+        while (true) {
+            if (mEngine != null) {
+                while (mNetIn.position() > 0 && unwrap()) {
+                    feedHttp2();
+                }
+            }
+            int length = mChannel.read(mEngine != null ? mNetIn : mAppIn);
+            if (length < 0) {
+                throw new EOFException("Connection closed by server");
+            }
+            if (length == 0) {
+                return;
+            }
+            mLastActivityTime = System.currentTimeMillis();
+            if (mEngine == null) {
+                feedHttp2();
+            }
+        }
+    }
+
+    private void feedHttp2() throws IOException {
+        mAppIn.flip();
+        mHttp2.feed(mAppIn);
+        mAppIn.clear();
+    }
+
+    /**
+     * Read the response.
+     *
+     * @return true if the response is complete.
+     */
+    private boolean readResponse() throws IOException {
+        while (true) {
+            if (mEngine != null) {
+
+                /* Decrypt what we already have before reading more. */
+                while (mNetIn.position() > 0 && unwrap()) {
+                    if (feedParser()) {
+                        return true;
+                    }
+                }
+            }
+            int length = mChannel.read(mEngine != null ? mNetIn : mAppIn);
+            if (length < 0) {
+                if (mEngine == null) {
+                    feedParser();
+                }
+                mParser.onEndOfStream();
+                return true;
+            }
+            if (length == 0) {
+                return false;
+            }
+            mLastActivityTime = System.currentTimeMillis();
+            if (mEngine == null && feedParser()) {
+                return true;
+            }
+        }
+    }
+
+    private boolean feedParser() throws IOException {
+        mAppIn.flip();
+        boolean complete = mParser.feed(mAppIn);
+        mAppIn.clear();
+        return complete;
+    }
+}
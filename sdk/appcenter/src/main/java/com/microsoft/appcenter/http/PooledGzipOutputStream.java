@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Gzip output stream using a deflater and a buffer provided by the caller,
+ * unlike {@link java.util.zip.GZIPOutputStream} that allocates and releases a native deflater each time.
+ * The deflater must produce raw deflate data and is not ended when the stream is closed,
+ * it's given back to its pool if it was obtained from one.
+ */
+class PooledGzipOutputStream extends FilterOutputStream {
+
+    /**
+     * Gzip header: magic number, deflate method, no flags, no modification time, no extra flags and unknown OS.
+     */
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    /**
+     * Gzip trailer length in bytes.
+     */
+    private static final int TRAILER_LENGTH = 8;
+
+    private final Deflater mDeflater;
+
+    /**
+     * Pool to give the deflater back to on close, or null.
+     */
+    private HttpBufferPool mPool;
+
+    private final byte[] mBuffer;
+
+    private final CRC32 mCrc = new CRC32();
+
+    private final byte[] mSingleByte = new byte[1];
+
+    private boolean mFinished;
+
+    /**
+     * Init and write the gzip header.
+     *
+     * @param out      stream to write compressed data to.
+     * @param deflater reset deflater producing raw deflate data.
+     * @param buffer   compression output buffer, at least {@value #TRAILER_LENGTH} bytes.
+     * @throws IOException if writing the header fails.
+     */
+    PooledGzipOutputStream(OutputStream out, Deflater deflater, byte[] buffer) throws IOException {
+        super(out);
+        mDeflater = deflater;
+        mBuffer = buffer;
+        out.write(HEADER);
+    }
+
+    /**
+     * Init with a deflater and a buffer from a pool and write the gzip header.
+     *
+     * @param out  stream to write compressed data to.
+     * @param pool pool to obtain the deflater and buffer from, the deflater is given back on close.
+     * @throws IOException if writing the header fails.
+     */
+    PooledGzipOutputStream(OutputStream out, HttpBufferPool pool) throws IOException {
+        this(out, pool.obtainDeflater(), pool.obtainByteBuffer());
+        mPool = pool;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        mSingleByte[0] = (byte) b;
+        write(mSingleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (mFinished) {
+            throw new IOException("write beyond end of stream");
+        }
+        if (len == 0) {
+            return;
+        }
+        mCrc.update(b, off, len);
+        mDeflater.setInput(b, off, len);
+        while (!mDeflater.needsInput()) {
+            deflate();
+        }
+    }
+
+    /**
+     * Finish compressed data and write the gzip trailer without closing the underlying stream.
+     *
+     * @throws IOException if writing fails.
+     */
+    void finish() throws IOException {
+        if (!mFinished) {
+            mDeflater.finish();
+            while (!mDeflater.finished()) {
+                deflate();
+            }
+            writeIntLittleEndian((int) mCrc.getValue(), 0);
+            writeIntLittleEndian((int) mDeflater.getBytesRead(), 4);
+            out.write(mBuffer, 0, TRAILER_LENGTH);
+            mFinished = true;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        //noinspection TryFinallyCanBeTryWithResources
+        try {
+            finish();
+        } finally {
+            if (mPool != null) {
+                mPool.releaseDeflater(mDeflater);
+                mPool = null;
+            }
+            out.close();
+        }
+    }
+
+    private void deflate() throws IOException {
+        int length = mDeflater.deflate(mBuffer, 0, mBuffer.length);
+        if (length > 0) {
+            out.write(mBuffer, 0, length);
+        }
+    }
+
+    private void writeIntLittleEndian(int value, int offset) {
+        mBuffer[offset] = (byte) value;
+        mBuffer[offset + 1] = (byte) (value >> 8);
+        mBuffer[offset + 2] = (byte) (value >> 16);
+        mBuffer[offset + 3] = (byte) (value >> 24);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import static java.lang.Math.min;
+
+/**
+ * Response body passed from the selector thread to a reader thread as it is received.
+ * Feeding never blocks: the selector thread must not wait for the reader.
+ */
+class ResponseBodyPipe extends InputStream {
+
+    /**
+     * Received chunks not read yet.
+     */
+    private final LinkedList<byte[]> mChunks = new LinkedList<>();
+
+    /**
+     * Chunk being read, null if none.
+     */
+    private byte[] mChunk;
+
+    private int mChunkOffset;
+
+    /**
+     * Number of bytes received and not read yet.
+     */
+    private int mAvailable;
+
+    /**
+     * Whether the body is complete or failed.
+     */
+    private boolean mEnded;
+
+    /**
+     * Error that ended the body, null if none.
+     */
+    private IOException mError;
+
+    /**
+     * Whether the reader closed the stream, the next chunks are discarded.
+     */
+    private boolean mClosed;
+
+    /**
+     * Append received bytes. Called on the selector thread.
+     *
+     * @param buffer bytes, copied.
+     * @param offset offset in buffer.
+     * @param length number of bytes.
+     */
+    synchronized void feed(byte[] buffer, int offset, int length) {
+        if (length > 0 && !mEnded && !mClosed) {
+            mChunks.add(Arrays.copyOfRange(buffer, offset, offset + length));
+            mAvailable += length;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Signal the body is complete. Called on the selector thread.
+     */
+    synchronized void end() {
+        mEnded = true;
+        notifyAll();
+    }
+
+    /**
+     * Signal the body could not be received. Called on the selector thread.
+     *
+     * @param error cause.
+     */
+    synchronized void fail(IOException error) {
+        if (!mEnded) {
+            mEnded = true;
+            mError = error;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Discard what is left to read and wait for the end of the body.
+     *
+     * @throws IOException if the body could not be received.
+     */
+    synchronized void awaitEnd() throws IOException {
+        close();
+        while (!mEnded) {
+            waitForChunk();
+        }
+        if (mError != null) {
+            throw mError;
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] buffer = new byte[1];
+        return read(buffer, 0, 1) == -1 ? -1 : buffer[0] & 0xff;
+    }
+
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        while (mChunk == null) {
+            mChunk = mChunks.poll();
+            mChunkOffset = 0;
+            if (mChunk == null) {
+                if (mError != null) {
+                    throw mError;
+                }
+                if (mEnded) {
+                    return -1;
+                }
+                if (mClosed) {
+                    throw new IOException("Response body closed");
+                }
+                waitForChunk();
+            }
+        }
+        int count = min(length, mChunk.length - mChunkOffset);
+        System.arraycopy(mChunk, mChunkOffset, buffer, offset, count);
+        mChunkOffset += count;
+        mAvailable -= count;
+        if (mChunkOffset == mChunk.length) {
+            mChunk = null;
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int available() {
+        return mAvailable;
+    }
+
+    @Override
+    public synchronized void close() {
+        mClosed = true;
+        mChunks.clear();
+        mChunk = null;
+        mAvailable = 0;
+    }
+
+    private void waitForChunk() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+}
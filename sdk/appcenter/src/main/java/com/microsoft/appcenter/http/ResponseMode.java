@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * What a call needs from a successful response, see {@link HttpClient.ResponseCallTemplate}.
+ * Error responses are always read with headers and body.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@IntDef({
+        ResponseMode.BODY,
+        ResponseMode.STATUS,
+        ResponseMode.HEADERS,
+        ResponseMode.STREAM
+})
+public @interface ResponseMode {
+
+    /**
+     * Headers and body decoded as a string, the default.
+     */
+    int BODY = 0;
+
+    /**
+     * Only the status code: headers are not copied and the body is discarded without being decoded.
+     */
+    int STATUS = 1;
+
+    /**
+     * Status code and headers: the body is discarded without being decoded.
+     */
+    int HEADERS = 2;
+
+    /**
+     * Status code and headers, the body is passed to {@link HttpClient.StreamingResponseCallTemplate#readResponseBody}
+     * on the network thread instead of being buffered.
+     */
+    int STREAM = 3;
+}
@@ -10,6 +10,7 @@ import android.support.annotation.VisibleForTesting;
 
 import com.microsoft.appcenter.http.AbstractAppCallTemplate;
 import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.ResponseMode;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
@@ -18,11 +19,13 @@ import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 import org.json.JSONException;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.Constants.APP_SECRET;
+import static com.microsoft.appcenter.Constants.IDEMPOTENCY_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 
 public class AppCenterIngestion implements Ingestion {
@@ -60,6 +63,11 @@ public class AppCenterIngestion implements Ingestion {
      */
     private String mLogUrl;
 
+    /**
+     * Splits batches too large for the endpoint.
+     */
+    private final BatchSizeLimiter mBatchSizeLimiter = new BatchSizeLimiter();
+
     /**
      * Init.
      *
@@ -84,12 +92,30 @@ public class AppCenterIngestion implements Ingestion {
     }
 
     @Override
-    public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, final ServiceCallback serviceCallback) throws IllegalArgumentException {
+    public ServiceCall sendAsync(final String appSecret, final UUID installId, LogContainer logContainer, final ServiceCallback serviceCallback) throws IllegalArgumentException {
+        final String url = mLogUrl + API_PATH;
+        return mBatchSizeLimiter.sendAsync(url, logContainer, serviceCallback, new BatchSizeLimiter.Sender() {
+
+            @Override
+            public ServiceCall send(LogContainer logContainer, ServiceCallback serviceCallback) {
+                return sendAsync(url, appSecret, installId, logContainer, serviceCallback);
+            }
+        });
+    }
+
+    /**
+     * Send a log container in a single call.
+     */
+    private ServiceCall sendAsync(String url, String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) {
         Map<String, String> headers = new HashMap<>();
         headers.put(INSTALL_ID, installId.toString());
         headers.put(APP_SECRET, appSecret);
+        String idempotencyKey = logContainer.getIdempotencyKey();
+        if (idempotencyKey != null) {
+            headers.put(IDEMPOTENCY_KEY, idempotencyKey);
+        }
         HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
-        return mHttpClient.callAsync(mLogUrl + API_PATH, METHOD_POST, headers, callTemplate, serviceCallback);
+        return mHttpClient.callAsync(url, METHOD_POST, headers, callTemplate, serviceCallback);
     }
 
     @Override
@@ -105,7 +131,7 @@ public class AppCenterIngestion implements Ingestion {
     /**
      * Inner class is used to be able to mock System.currentTimeMillis, does not work if using anonymous inner class...
      */
-    private static class IngestionCallTemplate extends AbstractAppCallTemplate {
+    private static class IngestionCallTemplate extends AbstractAppCallTemplate implements HttpClient.StreamingCallTemplate, HttpClient.ResponseCallTemplate {
 
         private final LogSerializer mLogSerializer;
 
@@ -122,5 +148,19 @@ public class AppCenterIngestion implements Ingestion {
             /* Serialize payload. */
             return mLogSerializer.serializeContainer(mLogContainer);
         }
+
+        @Override
+        public void writeRequestBody(Writer writer) throws JSONException, IOException {
+
+            /* Serialize payload to the connection. */
+            mLogSerializer.serializeContainer(mLogContainer, writer);
+        }
+
+        @Override
+        public int getResponseMode() {
+
+            /* Only the status code matters: the acknowledgement body is not decoded. */
+            return ResponseMode.STATUS;
+        }
     }
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion;
+
+import android.support.annotation.VisibleForTesting;
+
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+import static com.microsoft.appcenter.AppCenter.LOG_TAG;
+
+/**
+ * Splits log containers that an endpoint rejects as too large and learns the largest batch each endpoint accepts.
+ * The learned size is a binary search between the largest accepted and the smallest rejected batch,
+ * and larger containers are split before being sent. The learned size is forgotten after a few accepted batches,
+ * so that a few large logs do not limit the batches for good.
+ */
+class BatchSizeLimiter {
+
+    /**
+     * Number of batches an endpoint accepts after its last rejection before its learned batch size is forgotten.
+     */
+    @VisibleForTesting
+    static final int ACCEPTED_BATCHES_BEFORE_RESET = 10;
+
+    /**
+     * Learned batch sizes by endpoint URL, only for endpoints that rejected a batch.
+     */
+    private final Map<String, BatchSizeBounds> mBounds = new HashMap<>();
+
+    /**
+     * Get the maximum number of logs to send in one call to an endpoint.
+     *
+     * @param url endpoint URL.
+     * @return maximum batch size, {@link Integer#MAX_VALUE} if the endpoint never rejected a batch.
+     */
+    @VisibleForTesting
+    synchronized int getMaxBatchSize(String url) {
+        BatchSizeBounds bounds = mBounds.get(url);
+        if (bounds == null) {
+            return Integer.MAX_VALUE;
+        }
+        return Math.max(1, (bounds.mAccepted + bounds.mRejected) / 2);
+    }
+
+    /**
+     * Record a batch accepted by an endpoint.
+     */
+    private synchronized void onBatchAccepted(String url, int batchSize) {
+        BatchSizeBounds bounds = mBounds.get(url);
+        if (bounds == null) {
+            return;
+        }
+        if (batchSize < bounds.mRejected) {
+            bounds.mAccepted = Math.max(bounds.mAccepted, batchSize);
+        }
+        if (++bounds.mAcceptedBatches >= ACCEPTED_BATCHES_BEFORE_RESET) {
+            mBounds.remove(url);
+            AppCenterLog.debug(LOG_TAG, "Batches are accepted by " + url + ", removing the maximum batch size.");
+        }
+    }
+
+    /**
+     * Record a batch of more than one log rejected as too large by an endpoint.
+     * A single log rejected as too large says nothing about batch sizes and must not be recorded.
+     */
+    private synchronized void onBatchRejected(String url, int batchSize) {
+        BatchSizeBounds bounds = mBounds.get(url);
+        if (bounds == null) {
+            bounds = new BatchSizeBounds();
+            bounds.mRejected = batchSize;
+            mBounds.put(url, bounds);
+        } else {
+            bounds.mRejected = Math.min(bounds.mRejected, batchSize);
+        }
+        bounds.mAcceptedBatches = 0;
+
+        /* Logs are not all the same size, keep the bounds consistent. */
+        bounds.mAccepted = Math.min(bounds.mAccepted, bounds.mRejected - 1);
+        AppCenterLog.warn(LOG_TAG, "Batch of " + batchSize + " logs is too large for " + url + ", maximum batch size is now " + getMaxBatchSize(url) + ".");
+    }
+
+    /**
+     * Send a log container, splitting it as needed. Parts are sent one after the other.
+     *
+     * @param url             endpoint URL.
+     * @param logContainer    payload.
+     * @param serviceCallback callback called once all the logs are sent or when a part fails,
+     *                        a {@link Ingestion.PartCallback} is also notified of each part.
+     * @param sender          sends a container that is not split.
+     * @return call to cancel the part in progress and the parts not sent yet.
+     */
+    ServiceCall sendAsync(String url, LogContainer logContainer, ServiceCallback serviceCallback, Sender sender) {
+        BatchCall batchCall = new BatchCall(url, logContainer, serviceCallback, sender);
+        batchCall.start();
+        return batchCall;
+    }
+
+    /**
+     * Sends a single HTTP call for a container.
+     */
+    interface Sender {
+
+        /**
+         * Send a container.
+         *
+         * @param logContainer    payload.
+         * @param serviceCallback callback.
+         * @return the call.
+         */
+        ServiceCall send(LogContainer logContainer, ServiceCallback serviceCallback);
+    }
+
+    /**
+     * Largest accepted and smallest rejected batch sizes of an endpoint.
+     */
+    private static class BatchSizeBounds {
+
+        int mAccepted;
+
+        int mRejected;
+
+        /**
+         * Number of batches accepted since the last rejection.
+         */
+        int mAcceptedBatches;
+    }
+
+    /**
+     * Call for a container, which is either sent as is or split in parts sent one after the other.
+     * A part rejected as too large is split again, a single log rejected as too large fails alone when other parts remain.
+     * Parts are reported to a {@link Ingestion.PartCallback} as they complete and the last part completes the call.
+     * Any other failure fails the logs not reported yet, the remaining parts are not sent.
+     */
+    private class BatchCall implements ServiceCall {
+
+        private final String mUrl;
+
+        private final ServiceCallback mServiceCallback;
+
+        private final Sender mSender;
+
+        /**
+         * Containers not sent yet, the first one is in progress.
+         */
+        private final LinkedList<LogContainer> mParts = new LinkedList<>();
+
+        /**
+         * Callback of the HTTP call in progress, results of other calls are ignored.
+         */
+        private SendCallback mSendCallback;
+
+        /**
+         * HTTP call in progress.
+         */
+        private ServiceCall mServiceCall;
+
+        /**
+         * True once canceled or once the result was reported.
+         */
+        private boolean mCompleted;
+
+        BatchCall(String url, LogContainer logContainer, ServiceCallback serviceCallback, Sender sender) {
+            mUrl = url;
+            mServiceCallback = serviceCallback;
+            mSender = sender;
+            mParts.add(logContainer);
+        }
+
+        void start() {
+            int partCount = getPartCount(mParts.getFirst());
+            if (partCount > 1) {
+                split(partCount);
+            }
+            sendNextPart();
+        }
+
+        /**
+         * Get the number of parts needed to send a container to the endpoint.
+         */
+        private int getPartCount(LogContainer logContainer) {
+            int maxBatchSize = getMaxBatchSize(mUrl);
+            return (logContainer.getLogs().size() + maxBatchSize - 1) / maxBatchSize;
+        }
+
+        /**
+         * Replace the first container to send by parts of the same size.
+         *
+         * @param partCount number of parts.
+         */
+        private synchronized void split(int partCount) {
+            LogContainer logContainer = mParts.removeFirst();
+            List<Log> logs = logContainer.getLogs();
+            List<String> logKeys = logContainer.getLogKeys();
+            List<LogContainer> parts = new ArrayList<>(partCount);
+            int start = 0;
+            for (int i = 0; i < partCount; i++) {
+                int end = start + (logs.size() - start) / (partCount - i);
+                LogContainer partContainer = new LogContainer();
+                partContainer.setLogs(new ArrayList<>(logs.subList(start, end)));
+
+                /* The idempotency key of a part depends only on its own logs. */
+                partContainer.setLogKeys(logKeys == null ? null : new ArrayList<>(logKeys.subList(start, end)));
+                parts.add(partContainer);
+                start = end;
+            }
+            mParts.addAll(0, parts);
+            AppCenterLog.debug(LOG_TAG, "Sending a batch of " + logs.size() + " logs in " + partCount + " parts.");
+        }
+
+        /**
+         * Send the first container not sent yet.
+         */
+        private void sendNextPart() {
+            LogContainer logContainer;
+            SendCallback sendCallback;
+            synchronized (this) {
+                if (mCompleted) {
+                    return;
+                }
+                logContainer = mParts.getFirst();
+                sendCallback = new SendCallback(logContainer);
+                mSendCallback = sendCallback;
+            }
+            ServiceCall serviceCall = mSender.send(logContainer, sendCallback);
+            boolean canceled;
+            synchronized (this) {
+                if (mSendCallback == sendCallback) {
+                    mServiceCall = serviceCall;
+                }
+                canceled = mCompleted;
+            }
+            if (canceled) {
+                serviceCall.cancel();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            ServiceCall serviceCall;
+            synchronized (this) {
+                mCompleted = true;
+                serviceCall = mServiceCall;
+            }
+            if (serviceCall != null) {
+                serviceCall.cancel();
+            }
+        }
+
+        private void onSendSucceeded(SendCallback sendCallback, HttpResponse httpResponse) {
+            LogContainer logContainer = sendCallback.mLogContainer;
+            boolean last;
+            synchronized (this) {
+                if (mCompleted || mSendCallback != sendCallback) {
+                    return;
+                }
+                mSendCallback = null;
+                mServiceCall = null;
+                mParts.removeFirst();
+                last = mParts.isEmpty();
+                mCompleted = last;
+            }
+            onBatchAccepted(mUrl, logContainer.getLogs().size());
+            if (last) {
+                mServiceCallback.onCallSucceeded(httpResponse);
+                return;
+            }
+            if (mServiceCallback instanceof Ingestion.PartCallback) {
+                ((Ingestion.PartCallback) mServiceCallback).onPartSucceeded(logContainer, httpResponse);
+            }
+            sendNextPart();
+        }
+
+        private void onSendFailed(SendCallback sendCallback, Exception e) {
+            LogContainer logContainer = sendCallback.mLogContainer;
+            int batchSize = logContainer.getLogs().size();
+            boolean split = false;
+            boolean failPart = false;
+            synchronized (this) {
+                if (mCompleted || mSendCallback != sendCallback) {
+                    return;
+                }
+                mSendCallback = null;
+                mServiceCall = null;
+                if (HttpUtils.isPayloadTooLarge(e)) {
+                    if (batchSize > 1) {
+                        split = true;
+                    } else if (mParts.size() > 1 && mServiceCallback instanceof Ingestion.PartCallback) {
+                        mParts.removeFirst();
+                        failPart = true;
+                    }
+                }
+                mCompleted = !split && !failPart;
+            }
+            if (split) {
+                onBatchRejected(mUrl, batchSize);
+                split(Math.max(2, getPartCount(logContainer)));
+                sendNextPart();
+            } else if (failPart) {
+                AppCenterLog.warn(LOG_TAG, "A log is too large for " + mUrl + ", sending the other parts.");
+                ((Ingestion.PartCallback) mServiceCallback).onPartFailed(logContainer, e);
+                sendNextPart();
+            } else {
+                mServiceCallback.onCallFailed(e);
+            }
+        }
+
+        /**
+         * Callback of the HTTP call of a container.
+         */
+        private class SendCallback implements ServiceCallback {
+
+            private final LogContainer mLogContainer;
+
+            SendCallback(LogContainer logContainer) {
+                mLogContainer = logContainer;
+            }
+
+            @Override
+            public void onCallSucceeded(HttpResponse httpResponse) {
+                onSendSucceeded(this, httpResponse);
+            }
+
+            @Override
+            public void onCallFailed(Exception e) {
+                onSendFailed(this, e);
+            }
+        }
+    }
+}
@@ -5,6 +5,7 @@
 
 package com.microsoft.appcenter.ingestion;
 
+import com.microsoft.appcenter.http.HttpResponse;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
@@ -23,7 +24,8 @@ public interface Ingestion extends Closeable {
      * @param appSecret       a unique and secret key used to identify the application.
      * @param installId       install identifier.
      * @param logContainer    payload.
-     * @param serviceCallback the async ServiceCallback to handle successful and failed responses.
+     * @param serviceCallback the async ServiceCallback to handle successful and failed responses,
+     *                        a {@link PartCallback} is also notified of each part when the logs are sent in several calls.
      * @return the {@link ServiceCall} object
      * @throws IllegalArgumentException thrown if callback is null.
      */
@@ -40,4 +42,28 @@ public interface Ingestion extends Closeable {
      * Make ingestion active again after closing.
      */
     void reopen();
+
+    /**
+     * Callback notified of each part when logs are sent in several calls, which are made one after the other.
+     * Every part but the last one sent is reported to this callback, then {@link #onCallSucceeded(HttpResponse)}
+     * or {@link #onCallFailed(Exception)} is called for the logs not reported yet.
+     */
+    interface PartCallback extends ServiceCallback {
+
+        /**
+         * Called when a part was sent.
+         *
+         * @param logContainer the logs of the part, with their storage keys.
+         * @param httpResponse the HTTP response.
+         */
+        void onPartSucceeded(LogContainer logContainer, HttpResponse httpResponse);
+
+        /**
+         * Called when a part failed and will not be sent again, sending the other parts continues.
+         *
+         * @param logContainer the logs of the part, with their storage keys.
+         * @param e            the exception.
+         */
+        void onPartFailed(LogContainer logContainer, Exception e);
+    }
 }
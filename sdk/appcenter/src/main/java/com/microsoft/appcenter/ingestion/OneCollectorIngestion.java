@@ -11,6 +11,7 @@ import android.support.annotation.VisibleForTesting;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.HttpUtils;
+import com.microsoft.appcenter.http.ResponseMode;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
 import com.microsoft.appcenter.ingestion.models.Log;
@@ -24,8 +25,10 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.Writer;
 import java.net.URL;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
@@ -99,6 +102,11 @@ public class OneCollectorIngestion implements Ingestion {
      */
     private String mLogUrl;
 
+    /**
+     * Splits batches too large for the endpoint.
+     */
+    private final BatchSizeLimiter mBatchSizeLimiter = new BatchSizeLimiter();
+
     /**
      * Init.
      *
@@ -111,32 +119,45 @@ public class OneCollectorIngestion implements Ingestion {
         mLogUrl = DEFAULT_LOG_URL;
     }
 
+    /**
+     * Warm up the connection to the log URL so that the first call does not wait for it.
+     */
+    public void preconnect() {
+        HttpUtils.preconnect(mHttpClient, mLogUrl);
+    }
+
     @Override
     public ServiceCall sendAsync(String appSecret, UUID installId, LogContainer logContainer, ServiceCallback serviceCallback) throws IllegalArgumentException {
+        final String url = mLogUrl;
+        return mBatchSizeLimiter.sendAsync(url, logContainer, serviceCallback, new BatchSizeLimiter.Sender() {
+
+            @Override
+            public ServiceCall send(LogContainer logContainer, ServiceCallback serviceCallback) {
+                return sendAsync(url, logContainer, serviceCallback);
+            }
+        });
+    }
+
+    /**
+     * Send a log container in a single call.
+     */
+    private ServiceCall sendAsync(String url, LogContainer logContainer, ServiceCallback serviceCallback) {
 
-        /* Gather API keys from logs. */
+        /* Gather API keys and tickets from logs in a single pass. */
         Map<String, String> headers = new HashMap<>();
         Set<String> apiKeys = new LinkedHashSet<>();
+        Set<String> ticketKeys = new HashSet<>();
+        JSONObject tickets = new JSONObject();
         for (Log log : logContainer.getLogs()) {
             apiKeys.addAll(log.getTransmissionTargetTokens());
-        }
-
-        /* Build the header. String.join with iterable is only API level 26+. */
-        StringBuilder apiKey = new StringBuilder();
-        for (String targetToken : apiKeys) {
-            apiKey.append(targetToken).append(",");
-        }
-        if (!apiKeys.isEmpty()) {
-            apiKey.deleteCharAt(apiKey.length() - 1);
-        }
-        headers.put(API_KEY, apiKey.toString());
+            List<String> logTicketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
+            if (logTicketKeys != null) {
+                for (String ticketKey : logTicketKeys) {
 
-        /* Gather tokens from logs. */
-        JSONObject tickets = new JSONObject();
-        for (Log log : logContainer.getLogs()) {
-            List<String> ticketKeys = ((CommonSchemaLog) log).getExt().getProtocol().getTicketKeys();
-            if (ticketKeys != null) {
-                for (String ticketKey : ticketKeys) {
+                    /* Logs of a batch usually share the same ticket, look it up once. */
+                    if (!ticketKeys.add(ticketKey)) {
+                        continue;
+                    }
                     String token = TicketCache.getTicket(ticketKey);
                     if (token != null) {
                         try {
@@ -150,6 +171,16 @@ public class OneCollectorIngestion implements Ingestion {
             }
         }
 
+        /* Build the header. String.join with iterable is only API level 26+. */
+        StringBuilder apiKey = new StringBuilder();
+        for (String targetToken : apiKeys) {
+            if (apiKey.length() > 0) {
+                apiKey.append(",");
+            }
+            apiKey.append(targetToken);
+        }
+        headers.put(API_KEY, apiKey.toString());
+
         /* Pass ticket header if we have at least 1 token. */
         if (tickets.length() > 0) {
             headers.put(TICKETS, tickets.toString());
@@ -170,9 +201,15 @@ public class OneCollectorIngestion implements Ingestion {
         /* Upload time */
         headers.put(UPLOAD_TIME_KEY, String.valueOf(System.currentTimeMillis()));
 
+        /* Same key for every attempt to send the same logs. */
+        String idempotencyKey = logContainer.getIdempotencyKey();
+        if (idempotencyKey != null) {
+            headers.put(Constants.IDEMPOTENCY_KEY, idempotencyKey);
+        }
+
         /* Make the call. */
         HttpClient.CallTemplate callTemplate = new IngestionCallTemplate(mLogSerializer, logContainer);
-        return mHttpClient.callAsync(mLogUrl, METHOD_POST, headers, callTemplate, serviceCallback);
+        return mHttpClient.callAsync(url, METHOD_POST, headers, callTemplate, serviceCallback);
     }
 
     /**
@@ -199,7 +236,7 @@ public class OneCollectorIngestion implements Ingestion {
     /**
      * Call template implementation for One Collector.
      */
-    private static class IngestionCallTemplate implements HttpClient.CallTemplate {
+    private static class IngestionCallTemplate implements HttpClient.StreamingCallTemplate, HttpClient.ResponseCallTemplate {
 
         /**
          * Log serializer.
@@ -233,6 +270,23 @@ public class OneCollectorIngestion implements Ingestion {
             return jsonStream.toString();
         }
 
+        @Override
+        public void writeRequestBody(Writer writer) throws JSONException, IOException {
+
+            /* Serialize payload to the connection, one log at a time, without intermediate strings. */
+            for (Log log : mLogContainer.getLogs()) {
+                mLogSerializer.serializeLog(log, writer);
+                writer.write('\n');
+            }
+        }
+
+        @Override
+        public int getResponseMode() {
+
+            /* Only the status code matters: the acknowledgement body is not decoded. */
+            return ResponseMode.STATUS;
+        }
+
         @Override
         public void onBeforeCalling(URL url, Map<String, String> headers) {
             if (AppCenterLog.getLogLevel() <= VERBOSE) {
@@ -7,14 +7,17 @@ package com.microsoft.appcenter.ingestion.models;
 
 
 import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
 
-import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedHashSet;
@@ -26,28 +29,9 @@ import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
 /**
  * The AbstractLog model.
  */
+@JsonModel
 public abstract class AbstractLog implements Log {
 
-    /**
-     * timestamp property.
-     */
-    private static final String TIMESTAMP = "timestamp";
-
-    /**
-     * Session identifier property.
-     */
-    private static final String SID = "sid";
-
-    /**
-     * Distribution group ID property.
-     */
-    private static final String DISTRIBUTION_GROUP_ID = "distributionGroupId";
-
-    /**
-     * UserID property.
-     */
-    private static final String USER_ID = "userId";
-
     /**
      * device property.
      */
@@ -62,26 +46,31 @@ public abstract class AbstractLog implements Log {
     /**
      * Log timestamp.
      */
+    @JsonField(value = "timestamp", required = true)
     private Date timestamp;
 
     /**
      * The session identifier that was provided when the session was started.
      */
+    @JsonField("sid")
     private UUID sid;
 
     /**
      * Optional distribution group ID value.
      */
+    @JsonField("distributionGroupId")
     private String distributionGroupId;
 
     /**
      * The optional user identifier.
      */
+    @JsonField("userId")
     private String userId;
 
     /**
      * Device characteristics associated to this log.
      */
+    @JsonField(DEVICE)
     private Device device;
 
     /**
@@ -162,15 +151,7 @@ public abstract class AbstractLog implements Log {
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.write(writer, TYPE, getType());
-        writer.key(TIMESTAMP).value(JSONDateUtils.toString(getTimestamp()));
-        JSONUtils.write(writer, SID, getSid());
-        JSONUtils.write(writer, DISTRIBUTION_GROUP_ID, getDistributionGroupId());
-        JSONUtils.write(writer, USER_ID, getUserId());
-        if (getDevice() != null) {
-            writer.key(DEVICE).object();
-            getDevice().write(writer);
-            writer.endObject();
-        }
+        AbstractLogSerializer.write(this, writer);
     }
 
     @Override
@@ -178,17 +159,40 @@ public abstract class AbstractLog implements Log {
         if (!object.getString(TYPE).equals(getType())) {
             throw new JSONException("Invalid type");
         }
-        setTimestamp(JSONDateUtils.toDate(object.getString(TIMESTAMP)));
-        if (object.has(SID)) {
-            setSid(UUID.fromString(object.getString(SID)));
+        AbstractLogSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!readField(reader, reader.nextName())) {
+                reader.skipValue();
+            }
         }
-        setDistributionGroupId(object.optString(DISTRIBUTION_GROUP_ID, null));
-        setUserId(object.optString(USER_ID, null));
-        if (object.has(DEVICE)) {
-            Device device = new Device();
-            device.read(object.getJSONObject(DEVICE));
-            setDevice(device);
+        reader.endObject();
+        AbstractLogSerializer.checkRequired(this);
+    }
+
+    /**
+     * Read a field with a streaming reader.
+     * Sub-classes read their own fields and call this method for the other ones.
+     * Required fields are checked once the whole object is read.
+     *
+     * @param reader reader positioned on the field value.
+     * @param name   field name.
+     * @return true if the field was read, false if it is unknown and must be skipped.
+     * @throws JSONException if the field value is invalid.
+     * @throws IOException   if the JSON is malformed.
+     */
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        if (TYPE.equals(name)) {
+            if (!reader.nextString().equals(getType())) {
+                throw new JSONException("Invalid type");
+            }
+            return true;
         }
+        return AbstractLogSerializer.readField(this, reader, name);
     }
 
     @SuppressWarnings("EqualsReplaceableByObjectsCall")
@@ -200,24 +204,14 @@ public abstract class AbstractLog implements Log {
         AbstractLog that = (AbstractLog) o;
 
         if (!transmissionTargetTokens.equals(that.transmissionTargetTokens)) return false;
-        if (timestamp != null ? !timestamp.equals(that.timestamp) : that.timestamp != null)
-            return false;
-        if (sid != null ? !sid.equals(that.sid) : that.sid != null) return false;
-        if (distributionGroupId != null ? !distributionGroupId.equals(that.distributionGroupId) : that.distributionGroupId != null)
-            return false;
-        if (userId != null ? !userId.equals(that.userId) : that.userId != null) return false;
-        if (device != null ? !device.equals(that.device) : that.device != null) return false;
+        if (!AbstractLogSerializer.equals(this, that)) return false;
         return tag != null ? tag.equals(that.tag) : that.tag == null;
     }
 
     @Override
     public int hashCode() {
         int result = transmissionTargetTokens.hashCode();
-        result = 31 * result + (timestamp != null ? timestamp.hashCode() : 0);
-        result = 31 * result + (sid != null ? sid.hashCode() : 0);
-        result = 31 * result + (distributionGroupId != null ? distributionGroupId.hashCode() : 0);
-        result = 31 * result + (userId != null ? userId.hashCode() : 0);
-        result = 31 * result + (device != null ? device.hashCode() : 0);
+        result = 31 * result + AbstractLogSerializer.hashCode(this);
         result = 31 * result + (tag != null ? tag.hashCode() : 0);
         return result;
     }
@@ -5,6 +5,8 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
@@ -13,6 +15,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
@@ -85,6 +88,58 @@ public class CustomPropertiesLog extends AbstractLog {
         return value;
     }
 
+    private static Map<String, Object> readProperties(JsonReader reader) throws JSONException, IOException {
+        Map<String, Object> properties = new HashMap<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+
+            /* Fields can be in any order, the value is interpreted once the type is known. */
+            String key = null;
+            String type = null;
+            Object value = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case PROPERTY_NAME:
+                        key = reader.nextString();
+                        break;
+
+                    case PROPERTY_TYPE:
+                        type = reader.nextString();
+                        break;
+
+                    case PROPERTY_VALUE:
+                        value = JSONUtils.readValue(reader);
+                        break;
+
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            JSONUtils.checkRequired(PROPERTY_NAME, key);
+            properties.put(key, readPropertyValue(type, value));
+        }
+        reader.endArray();
+        return properties;
+    }
+
+    private static Object readPropertyValue(String type, Object value) throws JSONException {
+        JSONUtils.checkRequired(PROPERTY_TYPE, type);
+        if (type.equals(PROPERTY_TYPE_CLEAR)) {
+            return null;
+        }
+        JSONUtils.checkRequired(PROPERTY_VALUE, value);
+        if (type.equals(PROPERTY_TYPE_BOOLEAN) && value instanceof Boolean
+                || type.equals(PROPERTY_TYPE_NUMBER) && value instanceof Number
+                || type.equals(PROPERTY_TYPE_STRING) && value instanceof String) {
+            return value;
+        } else if (type.equals(PROPERTY_TYPE_DATETIME) && value instanceof String) {
+            return JSONDateUtils.toDate((String) value);
+        }
+        throw new JSONException("Invalid value type");
+    }
+
     private static void writeProperties(JSONStringer writer, Map<String, Object> properties) throws JSONException {
         if (properties != null) {
             writer.key(PROPERTIES).array();
@@ -149,6 +204,21 @@ public class CustomPropertiesLog extends AbstractLog {
         setProperties(readProperties(object));
     }
 
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        JSONUtils.checkRequired(PROPERTIES, getProperties());
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        if (PROPERTIES.equals(name)) {
+            setProperties(readProperties(reader));
+            return true;
+        }
+        return super.readField(reader, name);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
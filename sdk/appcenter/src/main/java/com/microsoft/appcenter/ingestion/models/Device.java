@@ -5,129 +5,119 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Device characteristic log.
  */
+@JsonModel
 public class Device extends WrapperSdk {
 
-    private static final String SDK_NAME = "sdkName";
-
-    private static final String SDK_VERSION = "sdkVersion";
-
-    private static final String MODEL = "model";
-
-    private static final String OEM_NAME = "oemName";
-
-    private static final String OS_NAME = "osName";
-
-    private static final String OS_VERSION = "osVersion";
-
-    private static final String OS_BUILD = "osBuild";
-
-    private static final String OS_API_LEVEL = "osApiLevel";
-
-    private static final String LOCALE = "locale";
-
-    private static final String TIME_ZONE_OFFSET = "timeZoneOffset";
-
-    private static final String SCREEN_SIZE = "screenSize";
-
-    private static final String APP_VERSION = "appVersion";
-
-    private static final String CARRIER_NAME = "carrierName";
-
-    private static final String CARRIER_COUNTRY = "carrierCountry";
-
-    private static final String APP_BUILD = "appBuild";
-
-    private static final String APP_NAMESPACE = "appNamespace";
-
     /**
      * Name of the SDK.
      */
+    @JsonField(value = "sdkName", required = true, pooled = true)
     private String sdkName;
 
     /**
      * Version of the SDK.
      */
+    @JsonField(value = "sdkVersion", required = true, pooled = true)
     private String sdkVersion;
 
     /**
      * Device model (example: iPad2,3).
      */
+    @JsonField(value = "model", required = true, pooled = true)
     private String model;
 
     /**
      * Device manufacturer (example: HTC).
      */
+    @JsonField(value = "oemName", required = true, pooled = true)
     private String oemName;
 
     /**
      * OS name (example: iOS).
      */
+    @JsonField(value = "osName", required = true, pooled = true)
     private String osName;
 
     /**
      * OS version (example: 9.3.0).
      */
+    @JsonField(value = "osVersion", required = true, pooled = true)
     private String osVersion;
 
     /**
      * OS build code (example: LMY47X).
      */
+    @JsonField(value = "osBuild", pooled = true)
     private String osBuild;
 
     /**
      * API level when applicable like in Android (example: 15).
      */
+    @JsonField("osApiLevel")
     private Integer osApiLevel;
 
     /**
      * Language code (example: en_US).
      */
+    @JsonField(value = "locale", required = true, pooled = true)
     private String locale;
 
     /**
      * The offset in minutes from UTC for the device time zone, including
      * daylight savings time.
      */
+    @JsonField(value = "timeZoneOffset", required = true)
     private Integer timeZoneOffset;
 
     /**
      * Screen size of the device in pixels (example: 640x480).
      */
+    @JsonField(value = "screenSize", required = true, pooled = true)
     private String screenSize;
 
     /**
      * Application version name.
      */
+    @JsonField(value = "appVersion", required = true, pooled = true)
     private String appVersion;
 
     /**
      * Carrier name (for mobile devices).
      */
+    @JsonField(value = "carrierName", pooled = true)
     private String carrierName;
 
     /**
      * Carrier country code (for mobile devices).
      */
+    @JsonField(value = "carrierCountry", pooled = true)
     private String carrierCountry;
 
     /**
      * The app's build number, e.g. 42.
      */
+    @JsonField(value = "appBuild", required = true, pooled = true)
     private String appBuild;
 
     /**
      * The bundle identifier, package identifier, or namespace, depending on
      * what the individual platforms use,  .e.g com.microsoft.example.
      */
+    @JsonField(value = "appNamespace", pooled = true)
     private String appNamespace;
 
     /**
@@ -146,6 +136,7 @@ public class Device extends WrapperSdk {
      */
     public void setSdkName(String sdkName) {
         this.sdkName = sdkName;
+        invalidateSerializedFields();
     }
 
     /**
@@ -164,6 +155,7 @@ public class Device extends WrapperSdk {
      */
     public void setSdkVersion(String sdkVersion) {
         this.sdkVersion = sdkVersion;
+        invalidateSerializedFields();
     }
 
     /**
@@ -182,6 +174,7 @@ public class Device extends WrapperSdk {
      */
     public void setModel(String model) {
         this.model = model;
+        invalidateSerializedFields();
     }
 
     /**
@@ -200,6 +193,7 @@ public class Device extends WrapperSdk {
      */
     public void setOemName(String oemName) {
         this.oemName = oemName;
+        invalidateSerializedFields();
     }
 
     /**
@@ -218,6 +212,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsName(String osName) {
         this.osName = osName;
+        invalidateSerializedFields();
     }
 
     /**
@@ -236,6 +231,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsVersion(String osVersion) {
         this.osVersion = osVersion;
+        invalidateSerializedFields();
     }
 
     /**
@@ -254,6 +250,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsBuild(String osBuild) {
         this.osBuild = osBuild;
+        invalidateSerializedFields();
     }
 
     /**
@@ -272,6 +269,7 @@ public class Device extends WrapperSdk {
      */
     public void setOsApiLevel(Integer osApiLevel) {
         this.osApiLevel = osApiLevel;
+        invalidateSerializedFields();
     }
 
     /**
@@ -290,6 +288,7 @@ public class Device extends WrapperSdk {
      */
     public void setLocale(String locale) {
         this.locale = locale;
+        invalidateSerializedFields();
     }
 
     /**
@@ -308,6 +307,7 @@ public class Device extends WrapperSdk {
      */
     public void setTimeZoneOffset(Integer timeZoneOffset) {
         this.timeZoneOffset = timeZoneOffset;
+        invalidateSerializedFields();
     }
 
     /**
@@ -326,6 +326,7 @@ public class Device extends WrapperSdk {
      */
     public void setScreenSize(String screenSize) {
         this.screenSize = screenSize;
+        invalidateSerializedFields();
     }
 
     /**
@@ -344,6 +345,7 @@ public class Device extends WrapperSdk {
      */
     public void setAppVersion(String appVersion) {
         this.appVersion = appVersion;
+        invalidateSerializedFields();
     }
 
     /**
@@ -362,6 +364,7 @@ public class Device extends WrapperSdk {
      */
     public void setCarrierName(String carrierName) {
         this.carrierName = carrierName;
+        invalidateSerializedFields();
     }
 
     /**
@@ -380,6 +383,7 @@ public class Device extends WrapperSdk {
      */
     public void setCarrierCountry(String carrierCountry) {
         this.carrierCountry = carrierCountry;
+        invalidateSerializedFields();
     }
 
     /**
@@ -398,6 +402,7 @@ public class Device extends WrapperSdk {
      */
     public void setAppBuild(String appBuild) {
         this.appBuild = appBuild;
+        invalidateSerializedFields();
     }
 
     /**
@@ -416,52 +421,33 @@ public class Device extends WrapperSdk {
      */
     public void setAppNamespace(String appNamespace) {
         this.appNamespace = appNamespace;
+        invalidateSerializedFields();
     }
 
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setSdkName(object.getString(SDK_NAME));
-        setSdkVersion(object.getString(SDK_VERSION));
-        setModel(object.getString(MODEL));
-        setOemName(object.getString(OEM_NAME));
-        setOsName(object.getString(OS_NAME));
-        setOsVersion(object.getString(OS_VERSION));
-        setOsBuild(object.optString(OS_BUILD, null));
-        setOsApiLevel(JSONUtils.readInteger(object, OS_API_LEVEL));
-        setLocale(object.getString(LOCALE));
-        setTimeZoneOffset(object.getInt(TIME_ZONE_OFFSET));
-        setScreenSize(object.getString(SCREEN_SIZE));
-        setAppVersion(object.getString(APP_VERSION));
-        setCarrierName(object.optString(CARRIER_NAME, null));
-        setCarrierCountry(object.optString(CARRIER_COUNTRY, null));
-        setAppBuild(object.getString(APP_BUILD));
-        setAppNamespace(object.optString(APP_NAMESPACE, null));
+        DeviceSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        DeviceSerializer.checkRequired(this);
     }
 
     @Override
-    public void write(JSONStringer writer) throws JSONException {
-        super.write(writer);
-        writer.key(SDK_NAME).value(getSdkName());
-        writer.key(SDK_VERSION).value(getSdkVersion());
-        writer.key(MODEL).value(getModel());
-        writer.key(OEM_NAME).value(getOemName());
-        writer.key(OS_NAME).value(getOsName());
-        writer.key(OS_VERSION).value(getOsVersion());
-        JSONUtils.write(writer, OS_BUILD, getOsBuild());
-        JSONUtils.write(writer, OS_API_LEVEL, getOsApiLevel());
-        writer.key(LOCALE).value(getLocale());
-        writer.key(TIME_ZONE_OFFSET).value(getTimeZoneOffset());
-        writer.key(SCREEN_SIZE).value(getScreenSize());
-        writer.key(APP_VERSION).value(getAppVersion());
-        JSONUtils.write(writer, CARRIER_NAME, getCarrierName());
-        JSONUtils.write(writer, CARRIER_COUNTRY, getCarrierCountry());
-        writer.key(APP_BUILD).value(getAppBuild());
-        JSONUtils.write(writer, APP_NAMESPACE, getAppNamespace());
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return DeviceSerializer.readField(this, reader, name) || super.readField(reader, name);
+    }
+
+    @Override
+    protected void writeFields(JSONStringer writer) throws JSONException {
+        super.writeFields(writer);
+        DeviceSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings({"SimplifiableIfStatement", "EqualsReplaceableByObjectsCall"})
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -469,77 +455,11 @@ public class Device extends WrapperSdk {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        if (!super.equals(o)) {
-            return false;
-        }
-        Device device = (Device) o;
-        if (sdkName != null ? !sdkName.equals(device.sdkName) : device.sdkName != null) {
-            return false;
-        }
-        if (sdkVersion != null ? !sdkVersion.equals(device.sdkVersion) : device.sdkVersion != null) {
-            return false;
-        }
-        if (model != null ? !model.equals(device.model) : device.model != null) {
-            return false;
-        }
-        if (oemName != null ? !oemName.equals(device.oemName) : device.oemName != null) {
-            return false;
-        }
-        if (osName != null ? !osName.equals(device.osName) : device.osName != null) {
-            return false;
-        }
-        if (osVersion != null ? !osVersion.equals(device.osVersion) : device.osVersion != null) {
-            return false;
-        }
-        if (osBuild != null ? !osBuild.equals(device.osBuild) : device.osBuild != null) {
-            return false;
-        }
-        if (osApiLevel != null ? !osApiLevel.equals(device.osApiLevel) : device.osApiLevel != null) {
-            return false;
-        }
-        if (locale != null ? !locale.equals(device.locale) : device.locale != null) {
-            return false;
-        }
-        if (timeZoneOffset != null ? !timeZoneOffset.equals(device.timeZoneOffset) : device.timeZoneOffset != null) {
-            return false;
-        }
-        if (screenSize != null ? !screenSize.equals(device.screenSize) : device.screenSize != null) {
-            return false;
-        }
-        if (appVersion != null ? !appVersion.equals(device.appVersion) : device.appVersion != null) {
-            return false;
-        }
-        if (carrierName != null ? !carrierName.equals(device.carrierName) : device.carrierName != null) {
-            return false;
-        }
-        if (carrierCountry != null ? !carrierCountry.equals(device.carrierCountry) : device.carrierCountry != null) {
-            return false;
-        }
-        if (appBuild != null ? !appBuild.equals(device.appBuild) : device.appBuild != null) {
-            return false;
-        }
-        return appNamespace != null ? appNamespace.equals(device.appNamespace) : device.appNamespace == null;
+        return super.equals(o) && DeviceSerializer.equals(this, (Device) o);
     }
 
     @Override
     public int hashCode() {
-        int result = super.hashCode();
-        result = 31 * result + (sdkName != null ? sdkName.hashCode() : 0);
-        result = 31 * result + (sdkVersion != null ? sdkVersion.hashCode() : 0);
-        result = 31 * result + (model != null ? model.hashCode() : 0);
-        result = 31 * result + (oemName != null ? oemName.hashCode() : 0);
-        result = 31 * result + (osName != null ? osName.hashCode() : 0);
-        result = 31 * result + (osVersion != null ? osVersion.hashCode() : 0);
-        result = 31 * result + (osBuild != null ? osBuild.hashCode() : 0);
-        result = 31 * result + (osApiLevel != null ? osApiLevel.hashCode() : 0);
-        result = 31 * result + (locale != null ? locale.hashCode() : 0);
-        result = 31 * result + (timeZoneOffset != null ? timeZoneOffset.hashCode() : 0);
-        result = 31 * result + (screenSize != null ? screenSize.hashCode() : 0);
-        result = 31 * result + (appVersion != null ? appVersion.hashCode() : 0);
-        result = 31 * result + (carrierName != null ? carrierName.hashCode() : 0);
-        result = 31 * result + (carrierCountry != null ? carrierCountry.hashCode() : 0);
-        result = 31 * result + (appBuild != null ? appBuild.hashCode() : 0);
-        result = 31 * result + (appNamespace != null ? appNamespace.hashCode() : 0);
-        return result;
+        return 31 * super.hashCode() + DeviceSerializer.hashCode(this);
     }
 }
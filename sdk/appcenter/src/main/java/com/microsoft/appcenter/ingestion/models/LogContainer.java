@@ -5,6 +5,8 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import com.microsoft.appcenter.utils.HashUtils;
+
 import java.util.List;
 
 /**
@@ -17,6 +19,11 @@ public class LogContainer {
      */
     private List<Log> logs;
 
+    /**
+     * The storage keys of the logs, in the same order, not serialized.
+     */
+    private List<String> logKeys;
+
     /**
      * Get the logs value.
      *
@@ -35,6 +42,41 @@ public class LogContainer {
         this.logs = logs;
     }
 
+    /**
+     * Get the storage keys of the logs.
+     *
+     * @return the storage keys, in the same order as the logs, null if not set.
+     */
+    public List<String> getLogKeys() {
+        return logKeys;
+    }
+
+    /**
+     * Set the storage keys of the logs.
+     *
+     * @param logKeys the storage keys to set, in the same order as the logs.
+     */
+    public void setLogKeys(List<String> logKeys) {
+        this.logKeys = logKeys;
+    }
+
+    /**
+     * Get the idempotency key, derived from the storage keys of the logs only:
+     * the same logs sent together get the same key, whichever batch they were read in.
+     *
+     * @return the idempotency key, null if the storage keys are not set.
+     */
+    public String getIdempotencyKey() {
+        if (logKeys == null || logKeys.isEmpty()) {
+            return null;
+        }
+        StringBuilder data = new StringBuilder();
+        for (String logKey : logKeys) {
+            data.append(logKey).append(',');
+        }
+        return HashUtils.sha256(data.toString());
+    }
+
     @SuppressWarnings("EqualsReplaceableByObjectsCall")
     @Override
     public boolean equals(Object o) {
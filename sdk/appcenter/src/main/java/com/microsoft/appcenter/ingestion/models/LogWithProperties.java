@@ -5,24 +5,28 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Map;
 
 /**
  * The LogWithProperties model.
  */
+@JsonModel
 public abstract class LogWithProperties extends AbstractLog {
 
-    private static final String PROPERTIES = "properties";
-
     /**
      * Additional key/value pair parameters.
      */
+    @JsonField("properties")
     private Map<String, String> properties;
 
     /**
@@ -46,16 +50,20 @@ public abstract class LogWithProperties extends AbstractLog {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setProperties(JSONUtils.readMap(object, PROPERTIES));
+        LogWithPropertiesSerializer.read(this, object);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return LogWithPropertiesSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        JSONUtils.writeMap(writer, PROPERTIES, getProperties());
+        LogWithPropertiesSerializer.write(this, writer);
     }
 
-    @SuppressWarnings("EqualsReplaceableByObjectsCall")
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -67,14 +75,13 @@ public abstract class LogWithProperties extends AbstractLog {
         if (!super.equals(o)) {
             return false;
         }
-        LogWithProperties that = (LogWithProperties) o;
-        return properties != null ? properties.equals(that.properties) : that.properties == null;
+        return LogWithPropertiesSerializer.equals(this, (LogWithProperties) o);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (properties != null ? properties.hashCode() : 0);
+        result = 31 * result + LogWithPropertiesSerializer.hashCode(this);
         return result;
     }
 }
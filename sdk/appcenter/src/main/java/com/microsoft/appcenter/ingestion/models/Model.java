@@ -5,13 +5,26 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import android.util.JsonReader;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 public interface Model {
 
     void read(JSONObject object) throws JSONException;
 
+    /**
+     * Read the model from a streaming reader, without building a {@link JSONObject} first.
+     *
+     * @param reader reader positioned on the model object, which is consumed up to its end.
+     * @throws JSONException if the model is invalid, like with {@link #read(JSONObject)}.
+     * @throws IOException   if the JSON is malformed.
+     */
+    void read(JsonReader reader) throws JSONException, IOException;
+
     void write(JSONStringer writer) throws JSONException;
 }
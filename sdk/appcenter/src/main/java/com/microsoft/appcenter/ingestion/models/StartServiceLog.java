@@ -5,18 +5,22 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Describe a AppCenter.start call from the SDK.
  */
-@SuppressWarnings("RedundantSuppression")
+@JsonModel
 public class StartServiceLog extends AbstractLog {
 
     /**
@@ -24,11 +28,10 @@ public class StartServiceLog extends AbstractLog {
      */
     public static final String TYPE = "startService";
 
-    private static final String SERVICES = "services";
-
     /**
      * The list of services of the AppCenter start call.
      */
+    @JsonField("services")
     private List<String> services;
 
     @Override
@@ -57,17 +60,21 @@ public class StartServiceLog extends AbstractLog {
     @Override
     public void read(JSONObject object) throws JSONException {
         super.read(object);
-        setServices(JSONUtils.readStringArray(object, SERVICES));
+        StartServiceLogSerializer.read(this, object);
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return StartServiceLogSerializer.readField(this, reader, name) || super.readField(reader, name);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
-        JSONUtils.writeStringArray(writer, SERVICES, getServices());
+        StartServiceLogSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings({"EqualsReplaceableByObjectsCall", "RedundantSuppression"})
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -78,14 +85,13 @@ public class StartServiceLog extends AbstractLog {
         if (!super.equals(o)) {
             return false;
         }
-        StartServiceLog that = (StartServiceLog) o;
-        return services != null ? services.equals(that.services) : that.services == null;
+        return StartServiceLogSerializer.equals(this, (StartServiceLog) o);
     }
 
     @Override
     public int hashCode() {
         int result = super.hashCode();
-        result = 31 * result + (services != null ? services.hashCode() : 0);
+        result = 31 * result + StartServiceLogSerializer.hashCode(this);
         return result;
     }
 }
@@ -5,52 +5,52 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
+import com.microsoft.appcenter.ingestion.models.json.BufferedJSONStringer;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
-public class WrapperSdk implements Model {
-
-    private static final String WRAPPER_SDK_VERSION = "wrapperSdkVersion";
-
-    private static final String WRAPPER_SDK_NAME = "wrapperSdkName";
-
-    private static final String WRAPPER_RUNTIME_VERSION = "wrapperRuntimeVersion";
+import java.io.IOException;
 
-    private static final String LIVE_UPDATE_RELEASE_LABEL = "liveUpdateReleaseLabel";
-
-    private static final String LIVE_UPDATE_DEPLOYMENT_KEY = "liveUpdateDeploymentKey";
-
-    private static final String LIVE_UPDATE_PACKAGE_HASH = "liveUpdatePackageHash";
+@JsonModel
+public class WrapperSdk implements Model {
 
     /**
      * Version of the wrapper SDK in semver format. When the SDK is embedding another base SDK (for example Xamarin.Android wraps Android),
      * the Xamarin specific version is populated into this field while sdkVersion refers to the original Android SDK.
      */
+    @JsonField(value = "wrapperSdkVersion", pooled = true)
     private String wrapperSdkVersion;
 
     /**
      * Name of the wrapper SDK. Consists of the name of the SDK and the wrapper platform, e.g. "avalanchesdk.xamarin", "hockeysdk.cordova".
      */
+    @JsonField(value = "wrapperSdkName", pooled = true)
     private String wrapperSdkName;
 
     /**
      * Version of the wrapper technology framework (Xamarin runtime version or ReactNative or Cordova etc...).
      */
+    @JsonField(value = "wrapperRuntimeVersion", pooled = true)
     private String wrapperRuntimeVersion;
 
     /**
      * Label that is used to identify application code 'version' released via
      * Live Update beacon running on device.
      */
+    @JsonField(value = "liveUpdateReleaseLabel", pooled = true)
     private String liveUpdateReleaseLabel;
 
     /**
      * Identifier of environment that current application release belongs to,
      * deployment key then maps to environment like Production, Staging.
      */
+    @JsonField(value = "liveUpdateDeploymentKey", pooled = true)
     private String liveUpdateDeploymentKey;
 
     /**
@@ -58,8 +58,15 @@ public class WrapperSdk implements Model {
      * LiveUpdate beacon. Helps identify the Release version on device or
      * need to download updates in future.
      */
+    @JsonField(value = "liveUpdatePackageHash", pooled = true)
     private String liveUpdatePackageHash;
 
+    /**
+     * Fields as last written by a {@link BufferedJSONStringer}, cleared by any setter.
+     * The same instance is written for every log, this avoids escaping the same strings again.
+     */
+    private volatile char[] serializedFields;
+
     /**
      * Get the wrapperSdkVersion value.
      *
@@ -76,6 +83,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperSdkVersion(String wrapperSdkVersion) {
         this.wrapperSdkVersion = wrapperSdkVersion;
+        invalidateSerializedFields();
     }
 
     /**
@@ -94,6 +102,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperSdkName(String wrapperSdkName) {
         this.wrapperSdkName = wrapperSdkName;
+        invalidateSerializedFields();
     }
 
     /**
@@ -112,6 +121,7 @@ public class WrapperSdk implements Model {
      */
     public void setWrapperRuntimeVersion(String wrapperRuntimeVersion) {
         this.wrapperRuntimeVersion = wrapperRuntimeVersion;
+        invalidateSerializedFields();
     }
 
     /**
@@ -130,6 +140,7 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdateReleaseLabel(String liveUpdateReleaseLabel) {
         this.liveUpdateReleaseLabel = liveUpdateReleaseLabel;
+        invalidateSerializedFields();
     }
 
     /**
@@ -148,6 +159,7 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdateDeploymentKey(String liveUpdateDeploymentKey) {
         this.liveUpdateDeploymentKey = liveUpdateDeploymentKey;
+        invalidateSerializedFields();
     }
 
     /**
@@ -166,30 +178,75 @@ public class WrapperSdk implements Model {
      */
     public void setLiveUpdatePackageHash(String liveUpdatePackageHash) {
         this.liveUpdatePackageHash = liveUpdatePackageHash;
+        invalidateSerializedFields();
     }
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        setWrapperSdkVersion(object.optString(WRAPPER_SDK_VERSION, null));
-        setWrapperSdkName(object.optString(WRAPPER_SDK_NAME, null));
-        setWrapperRuntimeVersion(object.optString(WRAPPER_RUNTIME_VERSION, null));
-        setLiveUpdateReleaseLabel(object.optString(LIVE_UPDATE_RELEASE_LABEL, null));
-        setLiveUpdateDeploymentKey(object.optString(LIVE_UPDATE_DEPLOYMENT_KEY, null));
-        setLiveUpdatePackageHash(object.optString(LIVE_UPDATE_PACKAGE_HASH, null));
+        WrapperSdkSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (!readField(reader, reader.nextName())) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    /**
+     * Read a field with a streaming reader.
+     * Sub-classes read their own fields and call this method for the other ones.
+     *
+     * @param reader reader positioned on the field value.
+     * @param name   field name.
+     * @return true if the field was read, false if it is unknown and must be skipped.
+     * @throws JSONException if the field value is invalid.
+     * @throws IOException   if the JSON is malformed.
+     */
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        return WrapperSdkSerializer.readField(this, reader, name);
+    }
+
+    /**
+     * Clear the cached serialized fields, sub-classes call this when one of their fields changes.
+     */
+    protected void invalidateSerializedFields() {
+        serializedFields = null;
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, WRAPPER_SDK_VERSION, getWrapperSdkVersion());
-        JSONUtils.write(writer, WRAPPER_SDK_NAME, getWrapperSdkName());
-        JSONUtils.write(writer, WRAPPER_RUNTIME_VERSION, getWrapperRuntimeVersion());
-        JSONUtils.write(writer, LIVE_UPDATE_RELEASE_LABEL, getLiveUpdateReleaseLabel());
-        JSONUtils.write(writer, LIVE_UPDATE_DEPLOYMENT_KEY, getLiveUpdateDeploymentKey());
-        JSONUtils.write(writer, LIVE_UPDATE_PACKAGE_HASH, getLiveUpdatePackageHash());
+        if (writer instanceof BufferedJSONStringer) {
+            BufferedJSONStringer bufferedWriter = (BufferedJSONStringer) writer;
+            char[] fields = serializedFields;
+            if (fields == null) {
+                int start = bufferedWriter.length();
+                writeFields(writer);
+                serializedFields = bufferedWriter.copyFields(start);
+            } else {
+                bufferedWriter.appendFields(fields);
+            }
+        } else {
+            writeFields(writer);
+        }
+    }
+
+    /**
+     * Write the fields, the result is cached by {@link #write(JSONStringer)}.
+     * Sub-classes write their own fields after calling this method.
+     *
+     * @param writer writer.
+     * @throws JSONException if a value cannot be written.
+     */
+    protected void writeFields(JSONStringer writer) throws JSONException {
+        WrapperSdkSerializer.write(this, writer);
     }
 
     @Override
-    @SuppressWarnings({"SimplifiableIfStatement", "EqualsReplaceableByObjectsCall"})
     public boolean equals(Object o) {
         if (this == o) {
             return true;
@@ -197,33 +254,11 @@ public class WrapperSdk implements Model {
         if (o == null || getClass() != o.getClass()) {
             return false;
         }
-        WrapperSdk that = (WrapperSdk) o;
-        if (wrapperSdkVersion != null ? !wrapperSdkVersion.equals(that.wrapperSdkVersion) : that.wrapperSdkVersion != null) {
-            return false;
-        }
-        if (wrapperSdkName != null ? !wrapperSdkName.equals(that.wrapperSdkName) : that.wrapperSdkName != null) {
-            return false;
-        }
-        if (wrapperRuntimeVersion != null ? !wrapperRuntimeVersion.equals(that.wrapperRuntimeVersion) : that.wrapperRuntimeVersion != null) {
-            return false;
-        }
-        if (liveUpdateReleaseLabel != null ? !liveUpdateReleaseLabel.equals(that.liveUpdateReleaseLabel) : that.liveUpdateReleaseLabel != null) {
-            return false;
-        }
-        if (liveUpdateDeploymentKey != null ? !liveUpdateDeploymentKey.equals(that.liveUpdateDeploymentKey) : that.liveUpdateDeploymentKey != null) {
-            return false;
-        }
-        return liveUpdatePackageHash != null ? liveUpdatePackageHash.equals(that.liveUpdatePackageHash) : that.liveUpdatePackageHash == null;
+        return WrapperSdkSerializer.equals(this, (WrapperSdk) o);
     }
 
     @Override
     public int hashCode() {
-        int result = wrapperSdkVersion != null ? wrapperSdkVersion.hashCode() : 0;
-        result = 31 * result + (wrapperSdkName != null ? wrapperSdkName.hashCode() : 0);
-        result = 31 * result + (wrapperRuntimeVersion != null ? wrapperRuntimeVersion.hashCode() : 0);
-        result = 31 * result + (liveUpdateReleaseLabel != null ? liveUpdateReleaseLabel.hashCode() : 0);
-        result = 31 * result + (liveUpdateDeploymentKey != null ? liveUpdateDeploymentKey.hashCode() : 0);
-        result = 31 * result + (liveUpdatePackageHash != null ? liveUpdatePackageHash.hashCode() : 0);
-        return result;
+        return WrapperSdkSerializer.hashCode(this);
     }
 }
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONStringer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link JSONStringer} writing into a reusable character buffer, producing the same JSON as {@link JSONStringer}.
+ * Models keep writing through the {@link JSONStringer} API while this class skips the nesting state stack,
+ * escapes strings in a single pass and reuses the escaped form of field names.
+ */
+public class BufferedJSONStringer extends JSONStringer {
+
+    /**
+     * Initial buffer size, about one log with device properties.
+     */
+    @VisibleForTesting
+    static final int INITIAL_BUFFER_SIZE = 1024;
+
+    /**
+     * Maximum number of field names with a cached escaped form.
+     * Model field names are constants, the limit only matters for user defined property names.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_KEYS = 512;
+
+    /**
+     * Escaped and quoted field names followed by the name separator, shared by all writers.
+     */
+    private static final Map<String, char[]> sKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Hexadecimal digits for unicode escapes.
+     */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Negative zero, written as "-0" by {@link JSONStringer}.
+     */
+    private static final Double NEGATIVE_ZERO = -0d;
+
+    /**
+     * JSON written so far.
+     */
+    private char[] mBuffer = new char[INITIAL_BUFFER_SIZE];
+
+    /**
+     * Number of characters used in {@link #mBuffer}.
+     */
+    private int mSize;
+
+    /**
+     * Number of objects and arrays not ended yet.
+     */
+    private int mDepth;
+
+    /**
+     * True if the next key or value must be preceded by a separator.
+     */
+    private boolean mNeedsComma;
+
+    private void ensureCapacity(int additional) {
+        if (mSize + additional > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(mBuffer.length * 2, mSize + additional));
+        }
+    }
+
+    private void append(char c) {
+        ensureCapacity(1);
+        mBuffer[mSize++] = c;
+    }
+
+    private void append(char[] chars) {
+        ensureCapacity(chars.length);
+        System.arraycopy(chars, 0, mBuffer, mSize, chars.length);
+        mSize += chars.length;
+    }
+
+    private void append(String string) {
+        int length = string.length();
+        ensureCapacity(length);
+        string.getChars(0, length, mBuffer, mSize);
+        mSize += length;
+    }
+
+    private void append(String string, int start, int end) {
+        ensureCapacity(end - start);
+        string.getChars(start, end, mBuffer, mSize);
+        mSize += end - start;
+    }
+
+    /**
+     * Append a quoted string escaped the same way as {@link JSONStringer}, copying runs of characters that need no escaping at once.
+     */
+    private void appendString(String value) {
+        int length = value.length();
+        append('"');
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '/') {
+                continue;
+            }
+            append(value, start, i);
+
+            /* Longest escape is an unicode escape. */
+            ensureCapacity(6);
+            mBuffer[mSize++] = '\\';
+            switch (c) {
+                case '"':
+                case '\\':
+                case '/':
+                    mBuffer[mSize++] = c;
+                    break;
+
+                case '\t':
+                    mBuffer[mSize++] = 't';
+                    break;
+
+                case '\b':
+                    mBuffer[mSize++] = 'b';
+                    break;
+
+                case '\n':
+                    mBuffer[mSize++] = 'n';
+                    break;
+
+                case '\r':
+                    mBuffer[mSize++] = 'r';
+                    break;
+
+                case '\f':
+                    mBuffer[mSize++] = 'f';
+                    break;
+
+                default:
+                    mBuffer[mSize++] = 'u';
+                    mBuffer[mSize++] = '0';
+                    mBuffer[mSize++] = '0';
+                    mBuffer[mSize++] = HEX_DIGITS[c >> 4];
+                    mBuffer[mSize++] = HEX_DIGITS[c & 0xF];
+            }
+            start = i + 1;
+        }
+        append(value, start, length);
+        append('"');
+    }
+
+    /**
+     * Append a field name with the name separator, escaping it only the first time.
+     */
+    private void appendKey(String name) {
+        char[] key = sKeys.get(name);
+        if (key != null) {
+            append(key);
+            return;
+        }
+        int start = mSize;
+        appendString(name);
+        append(':');
+        if (sKeys.size() < MAX_CACHED_KEYS) {
+            sKeys.put(name, Arrays.copyOfRange(mBuffer, start, mSize));
+        }
+    }
+
+    private void checkNested() throws JSONException {
+        if (mDepth == 0) {
+            throw new JSONException("Nesting problem");
+        }
+    }
+
+    private void beforeValue() {
+        if (mNeedsComma) {
+            append(',');
+        }
+    }
+
+    private void afterValue() {
+        mNeedsComma = true;
+    }
+
+    private BufferedJSONStringer open(char c) throws JSONException {
+
+        /* Only one root value. */
+        if (mDepth == 0 && mSize > 0) {
+            throw new JSONException("Nesting problem");
+        }
+        beforeValue();
+        append(c);
+        mDepth++;
+        mNeedsComma = false;
+        return this;
+    }
+
+    private BufferedJSONStringer close(char c) throws JSONException {
+        checkNested();
+        append(c);
+        mDepth--;
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public JSONStringer array() throws JSONException {
+        return open('[');
+    }
+
+    @Override
+    public JSONStringer endArray() throws JSONException {
+        return close(']');
+    }
+
+    @Override
+    public JSONStringer object() throws JSONException {
+        return open('{');
+    }
+
+    @Override
+    public JSONStringer endObject() throws JSONException {
+        return close('}');
+    }
+
+    @Override
+    public JSONStringer key(String name) throws JSONException {
+        if (name == null) {
+            throw new JSONException("Names must be non-null");
+        }
+        checkNested();
+        if (mNeedsComma) {
+            append(',');
+        }
+        appendKey(name);
+
+        /* The value follows the key without a separator. */
+        mNeedsComma = false;
+        return this;
+    }
+
+    @Override
+    public JSONStringer value(Object value) throws JSONException {
+        checkNested();
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            object();
+            for (Iterator<String> keys = object.keys(); keys.hasNext(); ) {
+                String name = keys.next();
+                key(name).value(object.opt(name));
+            }
+            return endObject();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            array();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            return endArray();
+        }
+        if (value instanceof Number) {
+            return appendNumber((Number) value);
+        }
+        beforeValue();
+        if (value == null || value instanceof Boolean || value == JSONObject.NULL) {
+            append(String.valueOf(value));
+        } else {
+            appendString(value.toString());
+        }
+        afterValue();
+        return this;
+    }
+
+    private JSONStringer appendNumber(Number value) throws JSONException {
+
+        /* Same format as JSONObject.numberToString. */
+        double doubleValue = value.doubleValue();
+        if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+            throw new JSONException("Forbidden numeric value: " + doubleValue);
+        }
+        beforeValue();
+        if (value.equals(NEGATIVE_ZERO)) {
+            append("-0");
+        } else {
+            long longValue = value.longValue();
+            append(doubleValue == (double) longValue ? Long.toString(longValue) : value.toString());
+        }
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public JSONStringer value(boolean value) throws JSONException {
+        checkNested();
+        beforeValue();
+        append(value ? "true" : "false");
+        afterValue();
+        return this;
+    }
+
+    @Override
+    public JSONStringer value(double value) throws JSONException {
+        checkNested();
+        return appendNumber(value);
+    }
+
+    @Override
+    public JSONStringer value(long value) throws JSONException {
+        checkNested();
+        beforeValue();
+        append(Long.toString(value));
+        afterValue();
+        return this;
+    }
+
+    /**
+     * Write the JSON to a writer without copying it to a string.
+     *
+     * @param writer writer.
+     * @throws IOException if the writer fails.
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writer.write(mBuffer, 0, mSize);
+    }
+
+    /**
+     * Copy the fields written since a given length, to append them later with {@link #appendFields(char[])}.
+     *
+     * @param start length before writing the first field, as returned by {@link #length()}.
+     * @return fields without a leading separator.
+     */
+    public char[] copyFields(int start) {
+        if (start < mSize && mBuffer[start] == ',') {
+            start++;
+        }
+        return Arrays.copyOfRange(mBuffer, start, mSize);
+    }
+
+    /**
+     * Append fields copied with {@link #copyFields(int)} to the current object.
+     *
+     * @param fields fields.
+     * @throws JSONException if not inside an object.
+     */
+    public void appendFields(char[] fields) throws JSONException {
+        checkNested();
+        if (fields.length > 0) {
+            beforeValue();
+            append(fields);
+            afterValue();
+        }
+    }
+
+    /**
+     * Get the number of characters written.
+     *
+     * @return number of characters written.
+     */
+    public int length() {
+        return mSize;
+    }
+
+    /**
+     * Get the buffer capacity, to decide whether the writer is worth keeping.
+     *
+     * @return buffer capacity in characters.
+     */
+    int getCapacity() {
+        return mBuffer.length;
+    }
+
+    /**
+     * Clear the JSON written so far to write another value, keeping the buffer.
+     */
+    public void reset() {
+        mSize = 0;
+        mDepth = 0;
+        mNeedsComma = false;
+    }
+
+    @Override
+    public String toString() {
+        return mSize == 0 ? null : new String(mBuffer, 0, mSize);
+    }
+}
@@ -6,7 +6,10 @@
 package com.microsoft.appcenter.ingestion.models.json;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+import android.util.JsonReader;
 
+import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.ingestion.models.LogContainer;
 import com.microsoft.appcenter.ingestion.models.one.CommonSchemaLog;
@@ -16,6 +19,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -28,8 +34,61 @@ public class DefaultLogSerializer implements LogSerializer {
 
     private static final String LOGS = "logs";
 
+    /**
+     * Writers that grew larger than this are not kept after use.
+     */
+    @VisibleForTesting
+    static final int MAX_RETAINED_WRITER_CAPACITY = 256 * 1024;
+
+    /**
+     * Maximum number of strings shared between the logs read by a serializer.
+     */
+    @VisibleForTesting
+    static final int MAX_POOLED_STRINGS = 1024;
+
     private final Map<String, LogFactory> mLogFactories = new HashMap<>();
 
+    /**
+     * Strings repeated in the logs read from storage.
+     */
+    private final StringPool mStringPool = new StringPool(MAX_POOLED_STRINGS);
+
+    /**
+     * Writer of each thread, reused between serializations.
+     */
+    private final ThreadLocal<BufferedJSONStringer> mWriters = new ThreadLocal<>();
+
+    /**
+     * Device of the last log read, shared with the next logs having an equal device
+     * so that its serialized fields are cached once for a whole batch.
+     */
+    private volatile Device mLastDevice;
+
+    /**
+     * Get the empty writer of the current thread.
+     * It must be passed to {@link #releaseWriter(BufferedJSONStringer)} once its JSON is used.
+     */
+    @NonNull
+    private BufferedJSONStringer obtainWriter() {
+        BufferedJSONStringer writer = mWriters.get();
+        if (writer == null) {
+            writer = new BufferedJSONStringer();
+            mWriters.set(writer);
+        } else {
+            writer.reset();
+        }
+        return writer;
+    }
+
+    /**
+     * Release a writer, dropping it if it grew too large to be worth keeping.
+     */
+    private void releaseWriter(BufferedJSONStringer writer) {
+        if (writer.getCapacity() > MAX_RETAINED_WRITER_CAPACITY) {
+            mWriters.remove();
+        }
+    }
+
     @NonNull
     private JSONStringer writeLog(JSONStringer writer, Log log) throws JSONException {
         writer.object();
@@ -39,29 +98,120 @@ public class DefaultLogSerializer implements LogSerializer {
     }
 
     @NonNull
-    private Log readLog(JSONObject object, String type) throws JSONException {
-        if (type == null) {
-            type = object.getString(TYPE);
-        }
+    private Log createLog(String type) throws JSONException {
         LogFactory logFactory = mLogFactories.get(type);
         if (logFactory == null) {
             throw new JSONException("Unknown log type: " + type);
         }
-        Log log = logFactory.create();
+        return logFactory.create();
+    }
+
+    @NonNull
+    private Log readLog(JSONObject object, String type) throws JSONException {
+        if (type == null) {
+            type = object.getString(TYPE);
+        }
+        Log log = createLog(type);
         log.read(object);
         return log;
     }
 
+    /**
+     * Replace the device of a log read from storage by an equal instance already read, if any.
+     */
+    private void shareDevice(Log log) {
+        Device device = log.getDevice();
+        if (device == null) {
+            return;
+        }
+        Device lastDevice = mLastDevice;
+        if (device.equals(lastDevice)) {
+            log.setDevice(lastDevice);
+        } else {
+            mLastDevice = device;
+        }
+    }
+
+    /**
+     * Find the log type without reading the other fields, as the type may not be the first field.
+     */
+    @NonNull
+    private static String readType(String json) throws JSONException, IOException {
+        JsonReader reader = new JsonReader(new StringReader(json));
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (TYPE.equals(reader.nextName())) {
+                    return reader.nextString();
+                }
+                reader.skipValue();
+            }
+            throw new JSONException("No value for " + TYPE);
+        } finally {
+            reader.close();
+        }
+    }
+
     @NonNull
     @Override
     public String serializeLog(@NonNull Log log) throws JSONException {
-        return writeLog(new JSONStringer(), log).toString();
+        BufferedJSONStringer writer = obtainWriter();
+        try {
+            return writeLog(writer, log).toString();
+        } finally {
+            releaseWriter(writer);
+        }
+    }
+
+    @Override
+    public void serializeLog(@NonNull Log log, @NonNull Writer writer) throws JSONException, IOException {
+
+        /* Copy the JSON from the reused buffer without creating a string. */
+        BufferedJSONStringer logWriter = obtainWriter();
+        try {
+            writeLog(logWriter, log);
+            logWriter.writeTo(writer);
+        } finally {
+            releaseWriter(logWriter);
+        }
     }
 
     @NonNull
     @Override
     public Log deserializeLog(@NonNull String json, String type) throws JSONException {
-        return readLog(new JSONObject(json), type);
+
+        /* Stream the fields into the log instead of building a JSON tree first. */
+        try {
+            if (type == null) {
+                type = readType(json);
+            }
+            Log log = createLog(type);
+            JsonReader reader = new JsonReader(new StringReader(json));
+            StringPool previousPool = StringPool.setCurrent(mStringPool);
+            try {
+                log.read(reader);
+            } finally {
+                StringPool.setCurrent(previousPool);
+                reader.close();
+            }
+            shareDevice(log);
+            return log;
+        } catch (IOException | IllegalStateException | IllegalArgumentException e) {
+
+            /* Malformed JSON, unexpected token or invalid value: report it like the JSON tree parser does. */
+            JSONException exception = new JSONException(e.getMessage());
+            exception.initCause(e);
+            throw exception;
+        }
+    }
+
+    /**
+     * Get statistics of the strings shared between the logs read by this serializer.
+     *
+     * @return statistics snapshot.
+     */
+    public StringPoolStats getStringPoolStats() {
+        return mStringPool.getStats();
     }
 
     @Override
@@ -74,17 +224,44 @@ public class DefaultLogSerializer implements LogSerializer {
     public String serializeContainer(@NonNull LogContainer logContainer) throws JSONException {
 
         /* Init JSON serializer. */
-        JSONStringer writer = new JSONStringer();
+        BufferedJSONStringer writer = obtainWriter();
+        try {
 
-        /* Start writing JSON. */
-        writer.object();
-        writer.key(LOGS).array();
-        for (Log log : logContainer.getLogs()) {
-            writeLog(writer, log);
+            /* Start writing JSON. */
+            writer.object();
+            writer.key(LOGS).array();
+            for (Log log : logContainer.getLogs()) {
+                writeLog(writer, log);
+            }
+            writer.endArray();
+            writer.endObject();
+            return writer.toString();
+        } finally {
+            releaseWriter(writer);
         }
-        writer.endArray();
-        writer.endObject();
-        return writer.toString();
+    }
+
+    @Override
+    public void serializeContainer(@NonNull LogContainer logContainer, @NonNull Writer writer) throws JSONException, IOException {
+
+        /* Write the same JSON as the string version but only hold one log in memory at a time. */
+        writer.write("{\"" + LOGS + "\":[");
+        BufferedJSONStringer logWriter = obtainWriter();
+        try {
+            boolean first = true;
+            for (Log log : logContainer.getLogs()) {
+                if (!first) {
+                    writer.write(',');
+                }
+                logWriter.reset();
+                writeLog(logWriter, log);
+                logWriter.writeTo(writer);
+                first = false;
+            }
+        } finally {
+            releaseWriter(logWriter);
+        }
+        writer.write("]}");
     }
 
     @NonNull
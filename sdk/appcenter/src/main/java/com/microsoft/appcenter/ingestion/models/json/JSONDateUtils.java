@@ -13,14 +13,46 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility to convert date to string and vice versa to use in JSON payloads.
  * The date format is using ISO 8601 and includes date and time to milliseconds accuracy.
  * It also always uses UTC timezone.
+ * Dates from 1970 to 9999 are converted without {@link SimpleDateFormat}, which is slow and allocates on each call.
  */
 public final class JSONDateUtils {
 
+    /**
+     * Length of a formatted date, for example 2017-07-08T00:32:58.123Z.
+     */
+    private static final int DATE_LENGTH = 24;
+
+    /**
+     * Time of 10000-01-01T00:00:00.000Z, the first one that does not fit the fixed length.
+     */
+    private static final long MAX_TIME = 253402300800000L;
+
+    /**
+     * Milliseconds in a day.
+     */
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    /**
+     * Days from 0000-03-01 to 1970-01-01.
+     */
+    private static final int EPOCH_DAY_OFFSET = 719468;
+
+    /**
+     * Days in a 400 years Gregorian cycle.
+     */
+    private static final int DAYS_PER_ERA = 146097;
+
+    /**
+     * Days in each month of a non leap year.
+     */
+    private static final int[] DAYS_PER_MONTH = {31, 28, 31, 30, 31, 30, 31, 31, 30, 31, 30, 31};
+
     /**
      * Date formatter.
      */
@@ -55,7 +87,49 @@ public final class JSONDateUtils {
      */
     public static String toString(Date date) throws JSONException {
         checkNull(date);
-        return DATE_FORMAT.get().format(date);
+        return toString(date.getTime());
+    }
+
+    /**
+     * Convert time to string.
+     *
+     * @param time time in milliseconds since epoch.
+     * @return string.
+     */
+    public static String toString(long time) {
+
+        /* Before 1970 the date format switches to the Julian calendar at some point, let it handle that. */
+        if (time < 0 || time >= MAX_TIME) {
+            return DATE_FORMAT.get().format(new Date(time));
+        }
+
+        /* Convert days to year, month and day, using years starting in March so that leap days are at the end. */
+        int days = (int) (time / DAY) + EPOCH_DAY_OFFSET;
+        int era = days / DAYS_PER_ERA;
+        int dayOfEra = days - era * DAYS_PER_ERA;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        int year = era * 400 + yearOfEra + (month <= 2 ? 1 : 0);
+        int millisOfDay = (int) (time % DAY);
+        char[] chars = new char[DATE_LENGTH];
+        writeDigits(chars, 0, year, 4);
+        chars[4] = '-';
+        writeDigits(chars, 5, month, 2);
+        chars[7] = '-';
+        writeDigits(chars, 8, day, 2);
+        chars[10] = 'T';
+        writeDigits(chars, 11, millisOfDay / 3600000, 2);
+        chars[13] = ':';
+        writeDigits(chars, 14, millisOfDay / 60000 % 60, 2);
+        chars[16] = ':';
+        writeDigits(chars, 17, millisOfDay / 1000 % 60, 2);
+        chars[19] = '.';
+        writeDigits(chars, 20, millisOfDay % 1000, 3);
+        chars[23] = 'Z';
+        return new String(chars);
     }
 
     /**
@@ -66,11 +140,75 @@ public final class JSONDateUtils {
      * @throws JSONException if string has a wrong format or is null.
      */
     public static Date toDate(String date) throws JSONException {
+        return new Date(toTime(date));
+    }
+
+    /**
+     * Convert string to time.
+     *
+     * @param date date.
+     * @return time in milliseconds since epoch.
+     * @throws JSONException if string has a wrong format or is null.
+     */
+    public static long toTime(String date) throws JSONException {
         checkNull(date);
+        if (date.length() == DATE_LENGTH && date.charAt(4) == '-' && date.charAt(7) == '-' && date.charAt(10) == 'T'
+                && date.charAt(13) == ':' && date.charAt(16) == ':' && date.charAt(19) == '.' && date.charAt(23) == 'Z') {
+            int year = readDigits(date, 0, 4);
+            int month = readDigits(date, 5, 2);
+            int day = readDigits(date, 8, 2);
+            int hour = readDigits(date, 11, 2);
+            int minute = readDigits(date, 14, 2);
+            int second = readDigits(date, 17, 2);
+            int millis = readDigits(date, 20, 3);
+            if (year >= 1970 && month >= 1 && month <= 12 && day >= 1 && day <= getDaysInMonth(year, month)
+                    && hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60 && millis >= 0) {
+
+                /* Reverse of the conversion in toString. */
+                int shiftedYear = month <= 2 ? year - 1 : year;
+                int era = shiftedYear / 400;
+                int yearOfEra = shiftedYear - era * 400;
+                int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+                int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+                long days = era * DAYS_PER_ERA + dayOfEra - EPOCH_DAY_OFFSET;
+                return days * DAY + ((hour * 60 + minute) * 60 + second) * 1000 + millis;
+            }
+        }
+
+        /* The date format is lenient, keep accepting what it accepts. */
         try {
-            return DATE_FORMAT.get().parse(date);
+            return DATE_FORMAT.get().parse(date).getTime();
         } catch (ParseException e) {
             throw new JSONException(e.getMessage());
         }
     }
+
+    private static int getDaysInMonth(int year, int month) {
+        boolean leapYear = year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+        return month == 2 && leapYear ? 29 : DAYS_PER_MONTH[month - 1];
+    }
+
+    private static void writeDigits(char[] chars, int offset, int value, int count) {
+        for (int i = offset + count - 1; i >= offset; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    /**
+     * Read a fixed number of decimal digits.
+     *
+     * @return the value, or -1 if a character is not a digit.
+     */
+    private static int readDigits(String string, int offset, int count) {
+        int value = 0;
+        for (int i = offset; i < offset + count; i++) {
+            char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
 }
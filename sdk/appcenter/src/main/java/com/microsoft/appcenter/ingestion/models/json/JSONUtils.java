@@ -6,6 +6,9 @@
 package com.microsoft.appcenter.ingestion.models.json;
 
 import android.support.annotation.VisibleForTesting;
+import android.util.Base64;
+import android.util.JsonReader;
+import android.util.JsonToken;
 
 import com.microsoft.appcenter.ingestion.models.Model;
 
@@ -14,6 +17,7 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -22,6 +26,11 @@ import java.util.Map;
 
 public class JSONUtils {
 
+    /**
+     * Initial capacity of lists read with a streaming reader, as the size is not known in advance.
+     */
+    private static final int ARRAY_INITIAL_CAPACITY = 10;
+
     @VisibleForTesting
     JSONUtils() {
     }
@@ -47,6 +56,13 @@ public class JSONUtils {
         return null;
     }
 
+    public static Double readDouble(JSONObject object, String key) throws JSONException {
+        if (object.has(key)) {
+            return object.getDouble(key);
+        }
+        return null;
+    }
+
     public static Map<String, String> readMap(JSONObject object, String key) throws JSONException {
         JSONObject jProperties = object.optJSONObject(key);
         if (jProperties == null) {
@@ -88,6 +104,201 @@ public class JSONUtils {
         return array;
     }
 
+    public static String readString(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextString();
+    }
+
+    /**
+     * Read a string likely repeated in many logs, sharing one instance through the {@link StringPool} of the current thread if any.
+     *
+     * @param reader reader positioned on the string or null value.
+     * @return string or null.
+     * @throws IOException if the JSON is malformed.
+     */
+    public static String readPooledString(JsonReader reader) throws IOException {
+        return StringPool.internCurrent(readString(reader));
+    }
+
+    public static Integer readInteger(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextInt();
+    }
+
+    public static Long readLong(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextLong();
+    }
+
+    public static Boolean readBoolean(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextBoolean();
+    }
+
+    public static Double readDouble(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return reader.nextDouble();
+    }
+
+    public static Map<String, String> readMap(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        Map<String, String> properties = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            properties.put(StringPool.internCurrent(reader.nextName()), reader.nextString());
+        }
+        reader.endObject();
+        return properties;
+    }
+
+    public static <M extends Model> List<M> readArray(JsonReader reader, ModelFactory<M> factory) throws JSONException, IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<M> array = factory.createList(ARRAY_INITIAL_CAPACITY);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            M model = factory.create();
+            model.read(reader);
+            array.add(model);
+        }
+        reader.endArray();
+        return array;
+    }
+
+    public static List<String> readStringArray(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<String> array = new ArrayList<>(ARRAY_INITIAL_CAPACITY);
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.add(reader.nextString());
+        }
+        reader.endArray();
+        return array;
+    }
+
+    /**
+     * Read any JSON value, for free form content that is kept as JSON.
+     *
+     * @param reader reader positioned on the value.
+     * @return {@link JSONObject}, {@link JSONArray}, {@link String}, {@link Boolean}, {@link Number} or {@link JSONObject#NULL},
+     * numbers have the same type as when parsed by {@link JSONObject}.
+     */
+    public static Object readValue(JsonReader reader) throws JSONException, IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readJSONObject(reader);
+
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+
+            case BOOLEAN:
+                return reader.nextBoolean();
+
+            case NUMBER:
+                return toNumber(reader.nextString());
+
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+
+            default:
+                return reader.nextString();
+        }
+    }
+
+    public static JSONObject readJSONObject(JsonReader reader) throws JSONException, IOException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            object.put(reader.nextName(), readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static Number toNumber(String value) {
+        if (value.indexOf('.') < 0 && value.indexOf('e') < 0 && value.indexOf('E') < 0) {
+            try {
+                long longValue = Long.parseLong(value);
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException ignored) {
+
+                /* Too large for a long. */
+            }
+        }
+        return Double.valueOf(value);
+    }
+
+    /**
+     * Check that a required field was read, the same way reading a missing field from a {@link JSONObject} fails.
+     *
+     * @param key   field name.
+     * @param value field value.
+     * @throws JSONException if the value is null.
+     */
+    public static void checkRequired(String key, Object value) throws JSONException {
+        if (value == null) {
+            throw new JSONException("No value for " + key);
+        }
+    }
+
+    /**
+     * Decode a Base64 field value.
+     *
+     * @param value Base64 value.
+     * @return decoded bytes.
+     * @throws JSONException if the value is not valid Base64.
+     */
+    public static byte[] decodeBase64(String value) throws JSONException {
+        try {
+            return Base64.decode(value, Base64.DEFAULT);
+        } catch (IllegalArgumentException e) {
+            throw new JSONException(e.getMessage());
+        }
+    }
+
+    /**
+     * Encode bytes as a Base64 field value, on a single line.
+     *
+     * @param value bytes.
+     * @return Base64 value.
+     */
+    public static String encodeBase64(byte[] value) {
+        return Base64.encodeToString(value, Base64.NO_WRAP);
+    }
+
     public static void write(JSONStringer writer, String key, Object value) throws JSONException {
         if (value != null) {
             writer.key(key).value(value);
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import android.support.annotation.VisibleForTesting;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Bounded pool of weakly referenced strings, to share one instance of the values repeated in many deserialized logs
+ * (device properties, event names, property keys...). Strings no longer used by any log are dropped by the garbage collector.
+ * <p>
+ * Models read such fields with {@link JSONUtils#readPooledString(android.util.JsonReader)},
+ * which uses the pool set for the current thread by the log serializer.
+ */
+public class StringPool {
+
+    /**
+     * Pool of the current thread.
+     */
+    private static final ThreadLocal<StringPool> sCurrent = new ThreadLocal<>();
+
+    /**
+     * Maximum number of strings in the pool.
+     */
+    private final int mMaxSize;
+
+    /**
+     * Pooled strings, the value is the canonical instance of its key.
+     */
+    private final Map<String, WeakReference<String>> mStrings = new WeakHashMap<>();
+
+    /**
+     * Number of strings looked up.
+     */
+    private long mLookupCount;
+
+    /**
+     * Number of strings replaced by a pooled instance.
+     */
+    private long mHitCount;
+
+    /**
+     * Characters of the strings replaced by a pooled instance.
+     */
+    private long mCharsSaved;
+
+    /**
+     * Init.
+     *
+     * @param maxSize maximum number of strings in the pool, new strings are not pooled once it is full.
+     */
+    public StringPool(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Set the pool of the current thread.
+     *
+     * @param pool pool, or null to stop pooling strings on this thread.
+     * @return previous pool of the current thread, to restore it once done.
+     */
+    public static StringPool setCurrent(StringPool pool) {
+        StringPool previous = sCurrent.get();
+        if (pool == null) {
+            sCurrent.remove();
+        } else {
+            sCurrent.set(pool);
+        }
+        return previous;
+    }
+
+    /**
+     * Get the pooled instance of a string using the pool of the current thread.
+     *
+     * @param value string, can be null.
+     * @return pooled instance, or the string itself if not pooling on this thread.
+     */
+    static String internCurrent(String value) {
+        StringPool pool = sCurrent.get();
+        return pool == null || value == null ? value : pool.intern(value);
+    }
+
+    /**
+     * Get the pooled instance of a string, adding it to the pool if not there yet and the pool is not full.
+     *
+     * @param value string.
+     * @return pooled instance equal to the string.
+     */
+    public synchronized String intern(String value) {
+        mLookupCount++;
+        WeakReference<String> reference = mStrings.get(value);
+        String pooled = reference == null ? null : reference.get();
+        if (pooled != null) {
+            if (pooled != value) {
+                mHitCount++;
+                mCharsSaved += value.length();
+            }
+            return pooled;
+        }
+        if (mStrings.size() < mMaxSize) {
+            mStrings.put(value, new WeakReference<>(value));
+        }
+        return value;
+    }
+
+    @VisibleForTesting
+    synchronized int size() {
+        return mStrings.size();
+    }
+
+    /**
+     * Get statistics since this pool was created.
+     *
+     * @return statistics snapshot.
+     */
+    public synchronized StringPoolStats getStats() {
+        return new StringPoolStats(mLookupCount, mHitCount, mCharsSaved * 2, mStrings.size());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+/**
+ * Snapshot of statistics of a {@link StringPool}.
+ */
+public class StringPoolStats {
+
+    /**
+     * Number of strings looked up.
+     */
+    private final long mLookupCount;
+
+    /**
+     * Number of strings replaced by a pooled instance.
+     */
+    private final long mHitCount;
+
+    /**
+     * Estimated bytes saved, two bytes per character of the strings replaced by a pooled instance.
+     */
+    private final long mBytesSaved;
+
+    /**
+     * Number of strings in the pool.
+     */
+    private final int mSize;
+
+    /**
+     * Init.
+     *
+     * @param lookupCount number of strings looked up.
+     * @param hitCount    number of strings replaced by a pooled instance.
+     * @param bytesSaved  estimated bytes saved.
+     * @param size        number of strings in the pool.
+     */
+    StringPoolStats(long lookupCount, long hitCount, long bytesSaved, int size) {
+        mLookupCount = lookupCount;
+        mHitCount = hitCount;
+        mBytesSaved = bytesSaved;
+        mSize = size;
+    }
+
+    /**
+     * Get the number of strings looked up.
+     *
+     * @return lookup count.
+     */
+    public long getLookupCount() {
+        return mLookupCount;
+    }
+
+    /**
+     * Get the number of strings replaced by a pooled instance.
+     *
+     * @return hit count.
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Get the ratio of strings replaced by a pooled instance.
+     *
+     * @return hit rate between 0 and 1, 0 if no string was looked up.
+     */
+    public double getHitRate() {
+        return mLookupCount == 0 ? 0 : (double) mHitCount / mLookupCount;
+    }
+
+    /**
+     * Get the estimated heap saved by sharing pooled instances, two bytes per character.
+     *
+     * @return bytes saved.
+     */
+    public long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    /**
+     * Get the number of strings in the pool.
+     *
+     * @return pool size.
+     */
+    public int getSize() {
+        return mSize;
+    }
+
+    @Override
+    public String toString() {
+        return "StringPoolStats{" +
+                "lookups=" + mLookupCount +
+                ", hits=" + mHitCount +
+                ", bytesSaved=" + mBytesSaved +
+                ", size=" + mSize +
+                '}';
+    }
+}
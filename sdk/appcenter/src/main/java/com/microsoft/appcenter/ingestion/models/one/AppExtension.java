@@ -5,66 +5,52 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * This is the application extension. It contains data specified by the application.
  */
+@JsonModel
 public class AppExtension implements Model {
 
-    /**
-     * Id property.
-     */
-    private static final String ID = "id";
-
-    /**
-     * Version property.
-     */
-    private static final String VER = "ver";
-
-    /**
-     * Name property.
-     */
-    private static final String NAME = "name";
-
-    /**
-     * Locale property.
-     */
-    private static final String LOCALE = "locale";
-
-    /**
-     * User ID.
-     */
-    private static final String USER_ID = "userId";
-
     /**
      * Application identifier.
      */
+    @JsonField("id")
     private String id;
 
     /**
      * Application version.
      */
+    @JsonField("ver")
     private String ver;
 
     /**
      * Application name.
      */
+    @JsonField("name")
     private String name;
 
     /**
      * Application locale.
      */
+    @JsonField("locale")
     private String locale;
 
     /**
      * User ID.
      */
+    @JsonField("userId")
     private String userId;
 
     /**
@@ -159,45 +145,33 @@ public class AppExtension implements Model {
     }
 
     @Override
-    public void read(JSONObject object) {
-        setId(object.optString(ID, null));
-        setVer(object.optString(VER, null));
-        setName(object.optString(NAME, null));
-        setLocale(object.optString(LOCALE, null));
-        setUserId(object.optString(USER_ID, null));
+    public void read(JSONObject object) throws JSONException {
+        AppExtensionSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        AppExtensionSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, ID, getId());
-        JSONUtils.write(writer, VER, getVer());
-        JSONUtils.write(writer, NAME, getName());
-        JSONUtils.write(writer, LOCALE, getLocale());
-        JSONUtils.write(writer, USER_ID, getUserId());
+        AppExtensionSerializer.write(this, writer);
     }
 
-    @SuppressWarnings("EqualsReplaceableByObjectsCall")
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        AppExtension that = (AppExtension) o;
-
-        if (id != null ? !id.equals(that.id) : that.id != null) return false;
-        if (ver != null ? !ver.equals(that.ver) : that.ver != null) return false;
-        if (name != null ? !name.equals(that.name) : that.name != null) return false;
-        if (locale != null ? !locale.equals(that.locale) : that.locale != null) return false;
-        return userId != null ? userId.equals(that.userId) : that.userId == null;
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return AppExtensionSerializer.equals(this, (AppExtension) o);
     }
 
     @Override
     public int hashCode() {
-        int result = id != null ? id.hashCode() : 0;
-        result = 31 * result + (ver != null ? ver.hashCode() : 0);
-        result = 31 * result + (name != null ? name.hashCode() : 0);
-        result = 31 * result + (locale != null ? locale.hashCode() : 0);
-        result = 31 * result + (userId != null ? userId.hashCode() : 0);
-        return result;
+        return AppExtensionSerializer.hashCode(this);
     }
 }
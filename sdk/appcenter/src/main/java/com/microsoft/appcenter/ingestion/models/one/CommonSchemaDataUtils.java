@@ -19,8 +19,13 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.microsoft.appcenter.ingestion.models.one.Data.BASE_DATA;
 import static com.microsoft.appcenter.ingestion.models.one.Data.BASE_TYPE;
@@ -44,6 +49,47 @@ public class CommonSchemaDataUtils {
     @VisibleForTesting
     static final int DATA_TYPE_DATETIME = 9;
 
+    /**
+     * Maximum number of cached plans, one per distinct set of property keys and types.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_PLANS = 64;
+
+    /**
+     * String property type in plan signatures.
+     */
+    private static final int TYPE_STRING = 0;
+
+    /**
+     * Long property type in plan signatures.
+     */
+    private static final int TYPE_LONG = 1;
+
+    /**
+     * Double property type in plan signatures.
+     */
+    private static final int TYPE_DOUBLE = 2;
+
+    /**
+     * Date time property type in plan signatures.
+     */
+    private static final int TYPE_DATETIME = 3;
+
+    /**
+     * Boolean property type in plan signatures.
+     */
+    private static final int TYPE_BOOLEAN = 4;
+
+    /**
+     * Flag added to a type in a plan signature when the property value is null.
+     */
+    private static final int NULL_VALUE = 8;
+
+    /**
+     * Plans by property keys and types.
+     */
+    private static final Map<Signature, Plan> sPlans = new ConcurrentHashMap<>();
+
     /**
      * Adds part B and part C properties to a log and Part A metadata.
      *
@@ -60,104 +106,133 @@ public class CommonSchemaDataUtils {
             Data data = new Data();
             dest.setData(data);
 
-            /* We also build Part A metadata extension at the same time to reflect the data. */
-            MetadataExtension metadata = new MetadataExtension();
-            for (TypedProperty property : properties) {
-
-                /* Validate property and get type. */
-                Object value;
-                try {
-                    value = validateProperty(property);
-                } catch (IllegalArgumentException e) {
-                    AppCenterLog.warn(LOG_TAG, e.getMessage());
-                    continue;
-                }
-
-                /* Get metadata type. */
-                Integer metadataType = getMetadataType(property);
-
-                /* Split property name by dot. */
-                String key = property.getName();
-                String[] keys = key.split("\\.", -1);
-                int lastIndex = keys.length - 1;
-
-                /* Handle all intermediate keys. */
-                JSONObject destProperties = data.getProperties();
-                JSONObject destMetadata = metadata.getMetadata();
-                for (int i = 0; i < lastIndex; i++) {
-
-                    /* Add data sub object. */
-                    String subKey = keys[i];
-                    JSONObject subDataObject = destProperties.optJSONObject(subKey);
-                    if (subDataObject == null) {
-                        if (destProperties.has(subKey)) {
-                            AppCenterLog.warn(LOG_TAG, "Property key '" + subKey + "' already has a value, the old value will be overridden.");
-                        }
-
-                        /* Add sub data intermediate object. */
-                        subDataObject = new JSONObject();
-                        destProperties.put(subKey, subDataObject);
+            /* The nesting and the metadata only depend on keys and types, reuse them for events with the same properties. */
+            Signature signature = Signature.of(properties);
+            Plan plan = signature != null ? sPlans.get(signature) : null;
+            if (plan == null) {
+                plan = compile(properties);
+                if (signature != null) {
+                    if (sPlans.size() >= MAX_CACHED_PLANS) {
+                        sPlans.clear();
                     }
-                    destProperties = subDataObject;
-
-                    /* Handle metadata. */
-                    destMetadata = addIntermediateMetadata(destMetadata, subKey);
+                    sPlans.put(signature, plan);
                 }
+            }
+            plan.apply(properties, data);
 
-                /* Handle the last key for data, the leaf. */
-                String lastKey = keys[lastIndex];
-                if (destProperties.has(lastKey)) {
-                    AppCenterLog.warn(LOG_TAG, "Property key '" + lastKey + "' already has a value, the old value will be overridden.");
+            /* Add metadata extension only if not empty. */
+            if (plan.mMetadata != null) {
+                if (dest.getExt() == null) {
+                    dest.setExt(new Extensions());
                 }
-                destProperties.put(lastKey, value);
+                dest.getExt().setMetadata(plan.mMetadata);
+            }
+        } catch (JSONException ignore) {
+
+            /* Can only happen with NaN or Infinite but this is already checked before. */
+        }
+    }
 
-                /* Handle the last key for meta-data, the leaf. */
-                addLeafMetadata(metadataType, destMetadata, lastKey);
+    /**
+     * Compile the data layout and metadata of a list of properties.
+     * The data is built with placeholders instead of values, then flattened in insertion order.
+     *
+     * @param properties properties.
+     * @return plan to apply to events with the same keys and types.
+     * @throws JSONException if JSON put fails (never happens).
+     */
+    private static Plan compile(List<TypedProperty> properties) throws JSONException {
+
+        /* We also build Part A metadata extension at the same time to reflect the data. */
+        List<String> warnings = new ArrayList<>();
+        JSONObject dataObject = new JSONObject();
+        MetadataExtension metadata = new MetadataExtension();
+        for (int index = 0; index < properties.size(); index++) {
+            TypedProperty property = properties.get(index);
+
+            /* Validate property. */
+            try {
+                validateProperty(property);
+            } catch (IllegalArgumentException e) {
+                warnings.add(e.getMessage());
+                continue;
             }
 
-            /* Warn/cleanup if baseData and baseType are not paired. */
-            JSONObject dataObject = data.getProperties();
-            String baseType = dataObject.optString(BASE_TYPE, null);
-            JSONObject baseData = dataObject.optJSONObject(BASE_DATA);
-            if (baseType == null && baseData != null) {
+            /* Get metadata type. */
+            Integer metadataType = getMetadataType(property);
+
+            /* Split property name by dot. */
+            String key = property.getName();
+            String[] keys = key.split("\\.", -1);
+            int lastIndex = keys.length - 1;
+
+            /* Handle all intermediate keys. */
+            JSONObject destProperties = dataObject;
+            JSONObject destMetadata = metadata.getMetadata();
+            for (int i = 0; i < lastIndex; i++) {
+
+                /* Add data sub object. */
+                String subKey = keys[i];
+                JSONObject subDataObject = destProperties.optJSONObject(subKey);
+                if (subDataObject == null) {
+                    if (destProperties.has(subKey)) {
+                        warnings.add("Property key '" + subKey + "' already has a value, the old value will be overridden.");
+                    }
 
-                /* Discard unpaired data and metadata. */
-                AppCenterLog.warn(LOG_TAG, "baseData was set but baseType is missing.");
-                dataObject.remove(BASE_DATA);
-                JSONObject baseMetaData = metadata.getMetadata().optJSONObject(METADATA_FIELDS);
+                    /* Add sub data intermediate object. */
+                    subDataObject = new JSONObject();
+                    destProperties.put(subKey, subDataObject);
+                }
+                destProperties = subDataObject;
 
-                /* baseMetaData is always non null as baseData has at least 1 sub object and not cleaned up yet if empty. */
-                baseMetaData.remove(BASE_DATA);
+                /* Handle metadata. */
+                destMetadata = addIntermediateMetadata(destMetadata, subKey);
             }
-            if (baseType != null && baseData == null) {
 
-                /* Discard unpaired base type. */
-                AppCenterLog.warn(LOG_TAG, "baseType was set but baseData is missing.");
-                dataObject.remove(BASE_TYPE);
+            /* Handle the last key for data, the leaf. */
+            String lastKey = keys[lastIndex];
+            if (destProperties.has(lastKey)) {
+                warnings.add("Property key '" + lastKey + "' already has a value, the old value will be overridden.");
             }
+            destProperties.put(lastKey, new Placeholder(index));
 
-            /* Add metadata extension only if not empty after cleanup. */
-            if (!cleanUpEmptyObjectsInMetadata(metadata.getMetadata())) {
-                if (dest.getExt() == null) {
-                    dest.setExt(new Extensions());
-                }
-                dest.getExt().setMetadata(metadata);
-            }
-        } catch (JSONException ignore) {
+            /* Handle the last key for meta-data, the leaf. */
+            addLeafMetadata(metadataType, destMetadata, lastKey);
+        }
 
-            /* Can only happen with NaN or Infinite but this is already checked before. */
+        /* Warn/cleanup if baseData and baseType are not paired. */
+        boolean hasBaseType = dataObject.has(BASE_TYPE);
+        JSONObject baseData = dataObject.optJSONObject(BASE_DATA);
+        if (!hasBaseType && baseData != null) {
+
+            /* Discard unpaired data and metadata. */
+            warnings.add("baseData was set but baseType is missing.");
+            dataObject.remove(BASE_DATA);
+            JSONObject baseMetaData = metadata.getMetadata().optJSONObject(METADATA_FIELDS);
+
+            /* baseMetaData is always non null as baseData has at least 1 sub object and not cleaned up yet if empty. */
+            baseMetaData.remove(BASE_DATA);
+        }
+        if (hasBaseType && baseData == null) {
+
+            /* Discard unpaired base type. */
+            warnings.add("baseType was set but baseData is missing.");
+            dataObject.remove(BASE_TYPE);
         }
+
+        /* Flatten data. */
+        Plan plan = new Plan(warnings.toArray(new String[0]), cleanUpEmptyObjectsInMetadata(metadata.getMetadata()) ? null : metadata);
+        plan.addOperations(dataObject, -1);
+        return plan;
     }
 
     /**
      * Validate typed property.
      *
      * @param property typed property.
-     * @return property value.
      * @throws IllegalArgumentException if the property is invalid.
-     * @throws JSONException            if JSON date formatting fails (never happens).
      */
-    private static Object validateProperty(TypedProperty property) throws IllegalArgumentException, JSONException {
+    private static void validateProperty(TypedProperty property) throws IllegalArgumentException {
 
         /* Validate key not null. */
         String key = property.getName();
@@ -178,31 +253,63 @@ public class CommonSchemaDataUtils {
             throw new IllegalArgumentException("baseData must be an object.");
         }
 
-        /* Get value from property. */
-        Object value;
-        if (property instanceof StringTypedProperty) {
-            StringTypedProperty stringTypedProperty = (StringTypedProperty) property;
-            value = stringTypedProperty.getValue();
-        } else if (property instanceof LongTypedProperty) {
-            LongTypedProperty longTypedProperty = (LongTypedProperty) property;
-            value = longTypedProperty.getValue();
-        } else if (property instanceof DoubleTypedProperty) {
-            DoubleTypedProperty doubleTypedProperty = (DoubleTypedProperty) property;
-            value = doubleTypedProperty.getValue();
-        } else if (property instanceof DateTimeTypedProperty) {
-            value = JSONDateUtils.toString(((DateTimeTypedProperty) property).getValue());
-        } else if (property instanceof BooleanTypedProperty) {
-            BooleanTypedProperty booleanTypedProperty = (BooleanTypedProperty) property;
-            value = booleanTypedProperty.getValue();
-        } else {
+        /* Validate type. */
+        if (getType(property) < 0) {
             throw new IllegalArgumentException("Unsupported property type: " + property.getType());
         }
 
         /* Validate value not null. */
-        if (value == null) {
+        if (getValue(property) == null) {
             throw new IllegalArgumentException("Value of property with key '" + key + "' cannot be null.");
         }
-        return value;
+    }
+
+    /**
+     * Get the type of a property for plan signatures.
+     *
+     * @param property property.
+     * @return type or -1 if not supported.
+     */
+    private static int getType(TypedProperty property) {
+        if (property instanceof StringTypedProperty) {
+            return ((StringTypedProperty) property).getValue() == null ? TYPE_STRING | NULL_VALUE : TYPE_STRING;
+        }
+        if (property instanceof LongTypedProperty) {
+            return TYPE_LONG;
+        }
+        if (property instanceof DoubleTypedProperty) {
+            return TYPE_DOUBLE;
+        }
+        if (property instanceof DateTimeTypedProperty) {
+            return ((DateTimeTypedProperty) property).getValue() == null ? TYPE_DATETIME | NULL_VALUE : TYPE_DATETIME;
+        }
+        if (property instanceof BooleanTypedProperty) {
+            return TYPE_BOOLEAN;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the JSON value of a property of a supported type.
+     *
+     * @param property typed property.
+     * @return property value or null if not set.
+     */
+    private static Object getValue(TypedProperty property) {
+        if (property instanceof StringTypedProperty) {
+            return ((StringTypedProperty) property).getValue();
+        }
+        if (property instanceof LongTypedProperty) {
+            return ((LongTypedProperty) property).getValue();
+        }
+        if (property instanceof DoubleTypedProperty) {
+            return ((DoubleTypedProperty) property).getValue();
+        }
+        if (property instanceof DateTimeTypedProperty) {
+            Date value = ((DateTimeTypedProperty) property).getValue();
+            return value != null ? JSONDateUtils.toString(value.getTime()) : null;
+        }
+        return ((BooleanTypedProperty) property).getValue();
     }
 
     /**
@@ -295,4 +402,167 @@ public class CommonSchemaDataUtils {
         }
         return object.length() == 0;
     }
+
+    /**
+     * Property keys and types of an event, the key of a plan.
+     */
+    private static class Signature {
+
+        /**
+         * Property keys.
+         */
+        private final String[] mKeys;
+
+        /**
+         * Property types, with {@link #NULL_VALUE} for null values.
+         */
+        private final int[] mTypes;
+
+        /**
+         * Cached hash code.
+         */
+        private final int mHashCode;
+
+        private Signature(String[] keys, int[] types) {
+            mKeys = keys;
+            mTypes = types;
+            mHashCode = 31 * Arrays.hashCode(keys) + Arrays.hashCode(types);
+        }
+
+        /**
+         * Get the signature of properties.
+         *
+         * @param properties properties.
+         * @return signature or null if a property type is not supported and the plan must not be cached.
+         */
+        static Signature of(List<TypedProperty> properties) {
+            int size = properties.size();
+            String[] keys = new String[size];
+            int[] types = new int[size];
+            for (int i = 0; i < size; i++) {
+                TypedProperty property = properties.get(i);
+                keys[i] = property.getName();
+                types[i] = getType(property);
+                if (types[i] < 0) {
+                    return null;
+                }
+            }
+            return new Signature(keys, types);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Signature that = (Signature) o;
+            return mHashCode == that.mHashCode && Arrays.equals(mTypes, that.mTypes) && Arrays.equals(mKeys, that.mKeys);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+    }
+
+    /**
+     * Value of a property in the data layout being compiled.
+     */
+    private static class Placeholder {
+
+        /**
+         * Property index.
+         */
+        private final int mIndex;
+
+        Placeholder(int index) {
+            mIndex = index;
+        }
+    }
+
+    /**
+     * Flattened data layout and metadata of a list of properties.
+     * Each operation puts either a new object or a property value in a parent,
+     * parents are created by previous operations so data is built in a single pass.
+     */
+    private static class Plan {
+
+        /**
+         * Warnings to log for each event.
+         */
+        private final String[] mWarnings;
+
+        /**
+         * Metadata, shared by all events using the plan, or null if empty.
+         */
+        private final MetadataExtension mMetadata;
+
+        /**
+         * Operation index of the parent object, -1 for the top level data properties.
+         */
+        private int[] mParents = new int[8];
+
+        /**
+         * Key to put in the parent.
+         */
+        private String[] mKeys = new String[8];
+
+        /**
+         * Index of the property to put, -1 to put a new object.
+         */
+        private int[] mValues = new int[8];
+
+        /**
+         * Number of operations.
+         */
+        private int mSize;
+
+        Plan(String[] warnings, MetadataExtension metadata) {
+            mWarnings = warnings;
+            mMetadata = metadata;
+        }
+
+        /**
+         * Add the operations building an object of the compiled layout, parents first and in insertion order.
+         */
+        private void addOperations(JSONObject object, int parent) {
+            for (Iterator<String> iterator = object.keys(); iterator.hasNext(); ) {
+                String key = iterator.next();
+                Object value = object.opt(key);
+                if (mSize == mParents.length) {
+                    mParents = Arrays.copyOf(mParents, mSize * 2);
+                    mKeys = Arrays.copyOf(mKeys, mSize * 2);
+                    mValues = Arrays.copyOf(mValues, mSize * 2);
+                }
+                int operation = mSize++;
+                mParents[operation] = parent;
+                mKeys[operation] = key;
+                if (value instanceof JSONObject) {
+                    mValues[operation] = -1;
+                    addOperations((JSONObject) value, operation);
+                } else {
+                    mValues[operation] = ((Placeholder) value).mIndex;
+                }
+            }
+        }
+
+        /**
+         * Build data from the values of properties matching the plan signature.
+         */
+        void apply(List<TypedProperty> properties, Data data) throws JSONException {
+            for (String warning : mWarnings) {
+                AppCenterLog.warn(LOG_TAG, warning);
+            }
+            JSONObject root = data.getProperties();
+            JSONObject[] objects = new JSONObject[mSize];
+            for (int i = 0; i < mSize; i++) {
+                JSONObject parent = mParents[i] < 0 ? root : objects[mParents[i]];
+                if (mValues[i] < 0) {
+                    objects[i] = new JSONObject();
+                    parent.put(mKeys[i], objects[i]);
+                } else {
+                    parent.put(mKeys[i], getValue(properties.get(mValues[i])));
+                }
+            }
+        }
+    }
 }
@@ -5,6 +5,10 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.AbstractLog;
 import com.microsoft.appcenter.ingestion.models.json.JSONDateUtils;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
@@ -13,10 +17,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Common schema has 1 log type with extensions, everything is called an event.
  * Part B can be used in the future for domain specific typing (like reflecting AppCenter log type).
  */
+@JsonModel
 public abstract class CommonSchemaLog extends AbstractLog {
 
     /**
@@ -34,36 +41,6 @@ public abstract class CommonSchemaLog extends AbstractLog {
      */
     private static final String TIME = "time";
 
-    /**
-     * popSample property.
-     */
-    private static final String POP_SAMPLE = "popSample";
-
-    /**
-     * iKey property.
-     */
-    private static final String IKEY = "iKey";
-
-    /**
-     * Flags property.
-     */
-    private static final String FLAGS = "flags";
-
-    /**
-     * Flags property.
-     */
-    private static final String CV = "cV";
-
-    /**
-     * Extensions property.
-     */
-    private static final String EXT = "ext";
-
-    /**
-     * Data property.
-     */
-    private static final String DATA = "data";
-
     /**
      * Common schema version.
      */
@@ -80,31 +57,37 @@ public abstract class CommonSchemaLog extends AbstractLog {
      * all the way up to all devices which is "100".
      * If this field does not exist then you should assume its value is 100.
      */
+    @JsonField("popSample")
     private Double popSample;
 
     /**
      * An identifier used to identify applications or other logical groupings of events.
      */
+    @JsonField("iKey")
     private String iKey;
 
     /**
      * Flags bitmask (latency, persistence, sensitivity).
      */
+    @JsonField("flags")
     private Long flags;
 
     /**
      * Correlation vector.
      */
+    @JsonField("cV")
     private String cV;
 
     /**
      * Part A Extensions.
      */
+    @JsonField("ext")
     private Extensions ext;
 
     /**
      * Data (parts B and C).
      */
+    @JsonField("data")
     private Data data;
 
     /**
@@ -261,29 +244,41 @@ public abstract class CommonSchemaLog extends AbstractLog {
 
         /* Override abstract log JSON since it's Common Schema and not App Center schema. */
 
-        /* Read top level PART A simple fields. */
+        /* Read top level PART A fields, time is the abstract log timestamp. */
         setVer(object.getString(VER));
         setName(object.getString(NAME));
         setTimestamp(JSONDateUtils.toDate(object.getString(TIME)));
-        if (object.has(POP_SAMPLE)) {
-            setPopSample(object.getDouble(POP_SAMPLE));
-        }
-        setIKey(object.optString(IKEY, null));
-        setFlags(JSONUtils.readLong(object, FLAGS));
-        setCV(object.optString(CV, null));
-
-        /* Read extensions. */
-        if (object.has(EXT)) {
-            Extensions extensions = new Extensions();
-            extensions.read(object.getJSONObject(EXT));
-            setExt(extensions);
-        }
 
-        /* Read Parts B&C. */
-        if (object.has(DATA)) {
-            Data data = new Data();
-            data.read(object.getJSONObject(DATA));
-            setData(data);
+        /* Then the other part A fields, extensions and parts B&C. */
+        CommonSchemaLogSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        super.read(reader);
+        JSONUtils.checkRequired(VER, getVer());
+        JSONUtils.checkRequired(NAME, getName());
+    }
+
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+
+        /* Override abstract log JSON since it's Common Schema and not App Center schema. */
+        switch (name) {
+            case VER:
+                setVer(reader.nextString());
+                return true;
+
+            case NAME:
+                setName(reader.nextString());
+                return true;
+
+            case TIME:
+                setTimestamp(JSONDateUtils.toDate(reader.nextString()));
+                return true;
+
+            default:
+                return CommonSchemaLogSerializer.readField(this, reader, name);
         }
     }
 
@@ -292,28 +287,13 @@ public abstract class CommonSchemaLog extends AbstractLog {
 
         /* Override abstract log JSON since it's Common Schema and not App Center schema. */
 
-        /* Part A. */
+        /* Part A, starting with the fields that come before the other ones. */
         writer.key(VER).value(getVer());
         writer.key(NAME).value(getName());
         writer.key(TIME).value(JSONDateUtils.toString(getTimestamp()));
-        JSONUtils.write(writer, POP_SAMPLE, getPopSample());
-        JSONUtils.write(writer, IKEY, getIKey());
-        JSONUtils.write(writer, FLAGS, getFlags());
-        JSONUtils.write(writer, CV, getCV());
-
-        /* Part A extensions. */
-        if (getExt() != null) {
-            writer.key(EXT).object();
-            getExt().write(writer);
-            writer.endObject();
-        }
 
-        /* Parts B & C. */
-        if (getData() != null) {
-            writer.key(DATA).object();
-            getData().write(writer);
-            writer.endObject();
-        }
+        /* Other part A fields, part A extensions then parts B & C. */
+        CommonSchemaLogSerializer.write(this, writer);
     }
 
     @SuppressWarnings("SimplifiableIfStatement")
@@ -327,13 +307,7 @@ public abstract class CommonSchemaLog extends AbstractLog {
 
         if (ver != null ? !ver.equals(that.ver) : that.ver != null) return false;
         if (name != null ? !name.equals(that.name) : that.name != null) return false;
-        if (popSample != null ? !popSample.equals(that.popSample) : that.popSample != null)
-            return false;
-        if (iKey != null ? !iKey.equals(that.iKey) : that.iKey != null) return false;
-        if (flags != null ? !flags.equals(that.flags) : that.flags != null) return false;
-        if (cV != null ? !cV.equals(that.cV) : that.cV != null) return false;
-        if (ext != null ? !ext.equals(that.ext) : that.ext != null) return false;
-        return data != null ? data.equals(that.data) : that.data == null;
+        return CommonSchemaLogSerializer.equals(this, that);
     }
 
     @Override
@@ -341,12 +315,7 @@ public abstract class CommonSchemaLog extends AbstractLog {
         int result = super.hashCode();
         result = 31 * result + (ver != null ? ver.hashCode() : 0);
         result = 31 * result + (name != null ? name.hashCode() : 0);
-        result = 31 * result + (popSample != null ? popSample.hashCode() : 0);
-        result = 31 * result + (iKey != null ? iKey.hashCode() : 0);
-        result = 31 * result + (flags != null ? flags.hashCode() : 0);
-        result = 31 * result + (cV != null ? cV.hashCode() : 0);
-        result = 31 * result + (ext != null ? ext.hashCode() : 0);
-        result = 31 * result + (data != null ? data.hashCode() : 0);
+        result = 31 * result + CommonSchemaLogSerializer.hashCode(this);
         return result;
     }
 }
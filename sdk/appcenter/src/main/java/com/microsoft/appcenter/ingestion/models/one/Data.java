@@ -5,6 +5,8 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.Model;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
@@ -13,6 +15,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Object that contains Part B and Part C from Common Schema.
  */
@@ -55,6 +59,17 @@ public class Data implements Model {
         }
     }
 
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+
+        /* Part B and C. */
+        reader.beginObject();
+        while (reader.hasNext()) {
+            mProperties.put(reader.nextName(), JSONUtils.readValue(reader));
+        }
+        reader.endObject();
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
 
@@ -5,26 +5,28 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The "device" extension tracks common device elements that are not available in the core envelope.
  */
+@JsonModel
 public class DeviceExtension implements Model {
 
-    /**
-     * Local ID property.
-     */
-    private static final String LOCAL_ID = "localId";
-
     /**
      * Local ID.
      */
+    @JsonField("localId")
     private String localId;
 
     /**
@@ -46,27 +48,33 @@ public class DeviceExtension implements Model {
     }
 
     @Override
-    public void read(JSONObject object) {
-        setLocalId(object.optString(LOCAL_ID, null));
+    public void read(JSONObject object) throws JSONException {
+        DeviceExtensionSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        DeviceExtensionSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, LOCAL_ID, getLocalId());
+        DeviceExtensionSerializer.write(this, writer);
     }
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        DeviceExtension that = (DeviceExtension) o;
-
-        return localId != null ? localId.equals(that.localId) : that.localId == null;
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return DeviceExtensionSerializer.equals(this, (DeviceExtension) o);
     }
 
     @Override
     public int hashCode() {
-        return localId != null ? localId.hashCode() : 0;
+        return DeviceExtensionSerializer.hashCode(this);
     }
 }
@@ -5,105 +5,76 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Common Schema Part A extensions.
  */
+@JsonModel
 public class Extensions implements Model {
 
     /**
      * Metadata extension.
      */
-    private static final String METADATA = "metadata";
-
-    /**
-     * Protocol property.
-     */
-    private static final String PROTOCOL = "protocol";
-
-    /**
-     * User property.
-     */
-    private static final String USER = "user";
-
-    /**
-     * Device property.
-     */
-    private static final String DEVICE = "device";
-
-    /**
-     * Os property.
-     */
-    private static final String OS = "os";
-
-    /**
-     * App property.
-     */
-    private static final String APP = "app";
-
-    /**
-     * Net property.
-     */
-    private static final String NET = "net";
-
-    /**
-     * SDK property.
-     */
-    private static final String SDK = "sdk";
-
-    /**
-     * Loc property.
-     */
-    private static final String LOC = "loc";
-
-    /**
-     * Metadata extension.
-     */
+    @JsonField("metadata")
     private MetadataExtension metadata;
 
     /**
      * Protocol extension.
      */
+    @JsonField("protocol")
     private ProtocolExtension protocol;
 
     /**
      * User extension.
      */
+    @JsonField("user")
     private UserExtension user;
 
     /**
      * Device extension.
      */
+    @JsonField("device")
     private DeviceExtension device;
 
     /**
      * Os extension.
      */
+    @JsonField("os")
     private OsExtension os;
 
     /**
      * Application extension.
      */
+    @JsonField("app")
     private AppExtension app;
 
     /**
      * Net extension.
      */
+    @JsonField("net")
     private NetExtension net;
 
     /**
      * SDK extension.
      */
+    @JsonField("sdk")
     private SdkExtension sdk;
 
     /**
      * Loc extension.
      */
+    @JsonField("loc")
     private LocExtension loc;
 
     /**
@@ -272,169 +243,32 @@ public class Extensions implements Model {
 
     @Override
     public void read(JSONObject object) throws JSONException {
+        ExtensionsSerializer.read(this, object);
+    }
 
-        /* Metadata. */
-        if (object.has(METADATA)) {
-            MetadataExtension metadata = new MetadataExtension();
-            metadata.read(object.getJSONObject(METADATA));
-            setMetadata(metadata);
-        }
-
-        /* Protocol. */
-        if (object.has(PROTOCOL)) {
-            ProtocolExtension protocol = new ProtocolExtension();
-            protocol.read(object.getJSONObject(PROTOCOL));
-            setProtocol(protocol);
-        }
-
-        /* User. */
-        if (object.has(USER)) {
-            UserExtension user = new UserExtension();
-            user.read(object.getJSONObject(USER));
-            setUser(user);
-        }
-
-        /* Device. */
-        if (object.has(DEVICE)) {
-            DeviceExtension device = new DeviceExtension();
-            device.read(object.getJSONObject(DEVICE));
-            setDevice(device);
-        }
-
-        /* Os. */
-        if (object.has(OS)) {
-            OsExtension os = new OsExtension();
-            os.read(object.getJSONObject(OS));
-            setOs(os);
-        }
-
-        /* App. */
-        if (object.has(APP)) {
-            AppExtension app = new AppExtension();
-            app.read(object.getJSONObject(APP));
-            setApp(app);
-        }
-
-        /* Net. */
-        if (object.has(NET)) {
-            NetExtension net = new NetExtension();
-            net.read(object.getJSONObject(NET));
-            setNet(net);
-        }
-
-        /* SDK. */
-        if (object.has(SDK)) {
-            SdkExtension sdk = new SdkExtension();
-            sdk.read(object.getJSONObject(SDK));
-            setSdk(sdk);
-        }
-
-        /* Loc. */
-        if (object.has(LOC)) {
-            LocExtension loc = new LocExtension();
-            loc.read(object.getJSONObject(LOC));
-            setLoc(loc);
-        }
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        ExtensionsSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-
-        /* Metadata. */
-        if (getMetadata() != null) {
-            writer.key(METADATA).object();
-            getMetadata().write(writer);
-            writer.endObject();
-        }
-
-        /* Protocol. */
-        if (getProtocol() != null) {
-            writer.key(PROTOCOL).object();
-            getProtocol().write(writer);
-            writer.endObject();
-        }
-
-        /* User. */
-        if (getUser() != null) {
-            writer.key(USER).object();
-            getUser().write(writer);
-            writer.endObject();
-        }
-
-        /* Device. */
-        if (getDevice() != null) {
-            writer.key(DEVICE).object();
-            getDevice().write(writer);
-            writer.endObject();
-        }
-
-        /* Os. */
-        if (getOs() != null) {
-            writer.key(OS).object();
-            getOs().write(writer);
-            writer.endObject();
-        }
-
-        /* App. */
-        if (getApp() != null) {
-            writer.key(APP).object();
-            getApp().write(writer);
-            writer.endObject();
-        }
-
-        /* Net. */
-        if (getNet() != null) {
-            writer.key(NET).object();
-            getNet().write(writer);
-            writer.endObject();
-        }
-
-        /* SDK. */
-        if (getSdk() != null) {
-            writer.key(SDK).object();
-            getSdk().write(writer);
-            writer.endObject();
-        }
-
-        /* Loc. */
-        if (getLoc() != null) {
-            writer.key(LOC).object();
-            getLoc().write(writer);
-            writer.endObject();
-        }
+        ExtensionsSerializer.write(this, writer);
     }
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        Extensions that = (Extensions) o;
-
-        if (metadata != null ? !metadata.equals(that.metadata) : that.metadata != null)
-            return false;
-        if (protocol != null ? !protocol.equals(that.protocol) : that.protocol != null)
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
             return false;
-        if (user != null ? !user.equals(that.user) : that.user != null) return false;
-        if (device != null ? !device.equals(that.device) : that.device != null) return false;
-        if (os != null ? !os.equals(that.os) : that.os != null) return false;
-        if (app != null ? !app.equals(that.app) : that.app != null) return false;
-        if (net != null ? !net.equals(that.net) : that.net != null) return false;
-        if (sdk != null ? !sdk.equals(that.sdk) : that.sdk != null) return false;
-        return loc != null ? loc.equals(that.loc) : that.loc == null;
+        }
+        return ExtensionsSerializer.equals(this, (Extensions) o);
     }
 
     @Override
     public int hashCode() {
-        int result = metadata != null ? metadata.hashCode() : 0;
-        result = 31 * result + (protocol != null ? protocol.hashCode() : 0);
-        result = 31 * result + (user != null ? user.hashCode() : 0);
-        result = 31 * result + (device != null ? device.hashCode() : 0);
-        result = 31 * result + (os != null ? os.hashCode() : 0);
-        result = 31 * result + (app != null ? app.hashCode() : 0);
-        result = 31 * result + (net != null ? net.hashCode() : 0);
-        result = 31 * result + (sdk != null ? sdk.hashCode() : 0);
-        result = 31 * result + (loc != null ? loc.hashCode() : 0);
-        return result;
+        return ExtensionsSerializer.hashCode(this);
     }
 }
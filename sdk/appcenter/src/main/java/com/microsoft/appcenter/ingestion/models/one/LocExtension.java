@@ -5,26 +5,28 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Describes the location from which the event was logged.
  */
+@JsonModel
 public class LocExtension implements Model {
 
-    /**
-     * Time zone property.
-     */
-    private static final String TZ = "tz";
-
     /**
      * Time zone on the device.
      */
+    @JsonField("tz")
     private String tz;
 
     /**
@@ -46,27 +48,33 @@ public class LocExtension implements Model {
     }
 
     @Override
-    public void read(JSONObject object) {
-        setTz(object.optString(TZ, null));
+    public void read(JSONObject object) throws JSONException {
+        LocExtensionSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        LocExtensionSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, TZ, getTz());
+        LocExtensionSerializer.write(this, writer);
     }
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        LocExtension that = (LocExtension) o;
-
-        return tz != null ? tz.equals(that.tz) : that.tz == null;
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return LocExtensionSerializer.equals(this, (LocExtension) o);
     }
 
     @Override
     public int hashCode() {
-        return tz != null ? tz.hashCode() : 0;
+        return LocExtensionSerializer.hashCode(this);
     }
 }
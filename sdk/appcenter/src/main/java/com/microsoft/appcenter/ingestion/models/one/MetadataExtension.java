@@ -5,12 +5,16 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.Iterator;
 
 /**
@@ -37,6 +41,11 @@ public class MetadataExtension implements Model {
         mMetadata = object;
     }
 
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        mMetadata = JSONUtils.readJSONObject(reader);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         for (Iterator<String> iterator = mMetadata.keys(); iterator.hasNext(); ) {
@@ -5,26 +5,28 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * Extension for network connectivity information.
  */
+@JsonModel
 public class NetExtension implements Model {
 
-    /**
-     * Network provider property.
-     */
-    private static final String PROVIDER = "provider";
-
     /**
      * Network provider on the device.
      */
+    @JsonField("provider")
     private String provider;
 
     /**
@@ -46,27 +48,33 @@ public class NetExtension implements Model {
     }
 
     @Override
-    public void read(JSONObject object) {
-        setProvider(object.optString(PROVIDER, null));
+    public void read(JSONObject object) throws JSONException {
+        NetExtensionSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        NetExtensionSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, PROVIDER, getProvider());
+        NetExtensionSerializer.write(this, writer);
     }
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        NetExtension that = (NetExtension) o;
-
-        return provider != null ? provider.equals(that.provider) : that.provider == null;
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return NetExtensionSerializer.equals(this, (NetExtension) o);
     }
 
     @Override
     public int hashCode() {
-        return provider != null ? provider.hashCode() : 0;
+        return NetExtensionSerializer.hashCode(this);
     }
 }
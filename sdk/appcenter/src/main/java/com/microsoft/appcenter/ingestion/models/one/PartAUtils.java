@@ -5,11 +5,15 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.support.annotation.VisibleForTesting;
+
 import com.microsoft.appcenter.ingestion.models.Device;
 import com.microsoft.appcenter.ingestion.models.Log;
 import com.microsoft.appcenter.utils.context.UserIdContext;
 
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 import static com.microsoft.appcenter.Constants.COMMON_SCHEMA_PREFIX_SEPARATOR;
@@ -24,6 +28,17 @@ public class PartAUtils {
      */
     private static final Pattern NAME_REGEX = Pattern.compile("^[a-zA-Z0-9]((\\.(?!(\\.|$)))|[_a-zA-Z0-9]){3,99}$");
 
+    /**
+     * Maximum number of cached part A templates, one per transmission target.
+     */
+    @VisibleForTesting
+    static final int MAX_CACHED_PART_A = 64;
+
+    /**
+     * Part A templates by transmission target token.
+     */
+    private static final Map<String, PartA> sPartAByTarget = new ConcurrentHashMap<>();
+
     /**
      * Get the project identifier from the full target token (aka ingestion key or apiKey).
      *
@@ -53,22 +68,21 @@ public class PartAUtils {
 
     /**
      * Adds part A extension to common schema log from device object in Log.
+     * The app, user, os, net, loc and device extensions are shared by all the logs converted with the same device,
+     * user identifier and transmission target: use {@link #getWritableApp(CommonSchemaLog)},
+     * {@link #getWritableUser(CommonSchemaLog)} and {@link #getWritableDevice(CommonSchemaLog)} to modify them.
      *
      * @param src                source log.
      * @param dest               destination common schema log.
      * @param transmissionTarget transmission target to use.
      */
     public static void addPartAFromLog(Log src, CommonSchemaLog dest, String transmissionTarget) {
-
-        /* TODO: We should cache the extension. */
-        Device device = src.getDevice();
+        PartA partA = getPartA(src.getDevice(), src.getUserId(), transmissionTarget);
 
         /* Add top level part A fields. */
         dest.setVer("3.0");
         dest.setTimestamp(src.getTimestamp());
-
-        /* TODO: We should cache the ikey for transmission target */
-        dest.setIKey("o" + COMMON_SCHEMA_PREFIX_SEPARATOR + getTargetKey(transmissionTarget));
+        dest.setIKey(partA.mIKey);
 
         /* Copy target token also in the set. */
         dest.addTransmissionTarget(transmissionTarget);
@@ -77,46 +91,204 @@ public class PartAUtils {
         if (dest.getExt() == null) {
             dest.setExt(new Extensions());
         }
+        Extensions ext = dest.getExt();
+
+        /* Protocol and SDK extensions get per log fields later in the pipeline, they are never shared. */
+        ProtocolExtension protocol = new ProtocolExtension();
+        protocol.setDevModel(partA.mDevModel);
+        protocol.setDevMake(partA.mDevMake);
+        ext.setProtocol(protocol);
+        SdkExtension sdk = new SdkExtension();
+        sdk.setLibVer(partA.mLibVer);
+        ext.setSdk(sdk);
+
+        /* Add shared extensions. */
+        ext.setUser(partA.mUser);
+        ext.setOs(partA.mOs);
+        ext.setApp(partA.mApp);
+        ext.setNet(partA.mNet);
+        ext.setLoc(partA.mLoc);
+        ext.setDevice(partA.mDeviceExtension);
+    }
 
-        /* Add protocol extension. */
-        dest.getExt().setProtocol(new ProtocolExtension());
-        dest.getExt().getProtocol().setDevModel(device.getModel());
-        dest.getExt().getProtocol().setDevMake(device.getOemName());
-
-        /* Add user extension. */
-        dest.getExt().setUser(new UserExtension());
-        dest.getExt().getUser().setLocalId(UserIdContext.getPrefixedUserId(src.getUserId()));
-        dest.getExt().getUser().setLocale(device.getLocale().replace("_", "-"));
-
-        /* Add OS extension. */
-        dest.getExt().setOs(new OsExtension());
-        dest.getExt().getOs().setName(device.getOsName());
-        dest.getExt().getOs().setVer(device.getOsVersion() + "-" + device.getOsBuild() + "-" + device.getOsApiLevel());
-
-        /* TODO: Add app locale. */
-        /* Add app extension. */
-        dest.getExt().setApp(new AppExtension());
-        dest.getExt().getApp().setVer(device.getAppVersion());
-        dest.getExt().getApp().setId("a" + COMMON_SCHEMA_PREFIX_SEPARATOR + device.getAppNamespace());
-
-        /* TODO: Add network type. */
-        /* Add net extension. */
-        dest.getExt().setNet(new NetExtension());
-        dest.getExt().getNet().setProvider(device.getCarrierName());
-
-        /* Add SDK extension. */
-        dest.getExt().setSdk(new SdkExtension());
-        dest.getExt().getSdk().setLibVer(device.getSdkName() + "-" + device.getSdkVersion());
-
-        /* Add loc extension. */
-        dest.getExt().setLoc(new LocExtension());
-        String timezoneOffset = String.format(Locale.US, "%s%02d:%02d",
-                device.getTimeZoneOffset() >= 0 ? "+" : "-",
-                Math.abs(device.getTimeZoneOffset() / 60),
-                Math.abs(device.getTimeZoneOffset() % 60));
-        dest.getExt().getLoc().setTz(timezoneOffset);
-
-        /* Add device extension. */
-        dest.getExt().setDevice(new DeviceExtension());
+    /**
+     * Get the cached part A of a transmission target, creating it if the device or the user identifier changed.
+     */
+    private static PartA getPartA(Device device, String userId, String transmissionTarget) {
+        PartA partA = sPartAByTarget.get(transmissionTarget);
+        if (partA != null && partA.matches(device, userId)) {
+            return partA;
+        }
+        partA = new PartA(device, userId, transmissionTarget);
+        if (sPartAByTarget.size() >= MAX_CACHED_PART_A) {
+            sPartAByTarget.clear();
+        }
+        sPartAByTarget.put(transmissionTarget, partA);
+        return partA;
+    }
+
+    /**
+     * Get the app extension of a log to modify it, copying it first as it can be shared with other logs.
+     *
+     * @param log common schema log with extensions.
+     * @return app extension owned by the log.
+     */
+    public static AppExtension getWritableApp(CommonSchemaLog log) {
+        AppExtension shared = log.getExt().getApp();
+        AppExtension app = new AppExtension();
+        if (shared != null) {
+            app.setId(shared.getId());
+            app.setVer(shared.getVer());
+            app.setName(shared.getName());
+            app.setLocale(shared.getLocale());
+            app.setUserId(shared.getUserId());
+        }
+        log.getExt().setApp(app);
+        return app;
+    }
+
+    /**
+     * Get the user extension of a log to modify it, copying it first as it can be shared with other logs.
+     *
+     * @param log common schema log with extensions.
+     * @return user extension owned by the log.
+     */
+    public static UserExtension getWritableUser(CommonSchemaLog log) {
+        UserExtension shared = log.getExt().getUser();
+        UserExtension user = new UserExtension();
+        if (shared != null) {
+            user.setLocalId(shared.getLocalId());
+            user.setLocale(shared.getLocale());
+        }
+        log.getExt().setUser(user);
+        return user;
+    }
+
+    /**
+     * Get the device extension of a log to modify it, copying it first as it can be shared with other logs.
+     *
+     * @param log common schema log with extensions.
+     * @return device extension owned by the log.
+     */
+    public static DeviceExtension getWritableDevice(CommonSchemaLog log) {
+        DeviceExtension shared = log.getExt().getDevice();
+        DeviceExtension device = new DeviceExtension();
+        if (shared != null) {
+            device.setLocalId(shared.getLocalId());
+        }
+        log.getExt().setDevice(device);
+        return device;
+    }
+
+    /**
+     * Part A fields derived from a device, a user identifier and a transmission target.
+     * Extensions are never modified after construction.
+     */
+    private static class PartA {
+
+        /**
+         * Device the template was created from.
+         */
+        private final Device mDevice;
+
+        /**
+         * User identifier the template was created from.
+         */
+        private final String mUserId;
+
+        /**
+         * Common schema ikey of the transmission target.
+         */
+        private final String mIKey;
+
+        /**
+         * Device model of the protocol extension.
+         */
+        private final String mDevModel;
+
+        /**
+         * Device manufacturer of the protocol extension.
+         */
+        private final String mDevMake;
+
+        /**
+         * Library version of the SDK extension.
+         */
+        private final String mLibVer;
+
+        /**
+         * Shared user extension.
+         */
+        private final UserExtension mUser = new UserExtension();
+
+        /**
+         * Shared OS extension.
+         */
+        private final OsExtension mOs = new OsExtension();
+
+        /**
+         * Shared app extension.
+         */
+        private final AppExtension mApp = new AppExtension();
+
+        /**
+         * Shared net extension.
+         */
+        private final NetExtension mNet = new NetExtension();
+
+        /**
+         * Shared loc extension.
+         */
+        private final LocExtension mLoc = new LocExtension();
+
+        /**
+         * Shared device extension.
+         */
+        private final DeviceExtension mDeviceExtension = new DeviceExtension();
+
+        PartA(Device device, String userId, String transmissionTarget) {
+            mDevice = device;
+            mUserId = userId;
+            mIKey = "o" + COMMON_SCHEMA_PREFIX_SEPARATOR + getTargetKey(transmissionTarget);
+
+            /* Protocol extension fields. */
+            mDevModel = device.getModel();
+            mDevMake = device.getOemName();
+
+            /* User extension. */
+            mUser.setLocalId(UserIdContext.getPrefixedUserId(userId));
+            mUser.setLocale(device.getLocale().replace("_", "-"));
+
+            /* OS extension. */
+            mOs.setName(device.getOsName());
+            mOs.setVer(device.getOsVersion() + "-" + device.getOsBuild() + "-" + device.getOsApiLevel());
+
+            /* TODO: Add app locale. */
+            /* App extension. */
+            mApp.setVer(device.getAppVersion());
+            mApp.setId("a" + COMMON_SCHEMA_PREFIX_SEPARATOR + device.getAppNamespace());
+
+            /* TODO: Add network type. */
+            /* Net extension. */
+            mNet.setProvider(device.getCarrierName());
+
+            /* SDK extension field. */
+            mLibVer = device.getSdkName() + "-" + device.getSdkVersion();
+
+            /* Loc extension. */
+            String timezoneOffset = String.format(Locale.US, "%s%02d:%02d",
+                    device.getTimeZoneOffset() >= 0 ? "+" : "-",
+                    Math.abs(device.getTimeZoneOffset() / 60),
+                    Math.abs(device.getTimeZoneOffset() % 60));
+            mLoc.setTz(timezoneOffset);
+        }
+
+        /**
+         * Devices attached to logs are snapshots: the channel replaces its device instead of modifying it.
+         * Devices read from storage are compared by value.
+         */
+        boolean matches(Device device, String userId) {
+            return (mUserId == null ? userId == null : mUserId.equals(userId)) && mDevice.equals(device);
+        }
     }
 }
@@ -5,6 +5,10 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
 import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
@@ -12,11 +16,13 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.List;
 
 /**
  * Extension for device specific information.
  */
+@JsonModel
 public class ProtocolExtension implements Model {
 
     /**
@@ -24,16 +30,6 @@ public class ProtocolExtension implements Model {
      */
     private static final String TICKET_KEYS = "ticketKeys";
 
-    /**
-     * Device manufacturer property.
-     */
-    private static final String DEV_MAKE = "devMake";
-
-    /**
-     * Device model property.
-     */
-    private static final String DEV_MODEL = "devModel";
-
     /**
      * Ticket keys.
      */
@@ -42,11 +38,13 @@ public class ProtocolExtension implements Model {
     /**
      * Device manufacturer.
      */
+    @JsonField("devMake")
     private String devMake;
 
     /**
      * Device model.
      */
+    @JsonField("devModel")
     private String devModel;
 
     /**
@@ -106,36 +104,48 @@ public class ProtocolExtension implements Model {
     @Override
     public void read(JSONObject object) throws JSONException {
         setTicketKeys(JSONUtils.readStringArray(object, TICKET_KEYS));
-        setDevMake(object.optString(DEV_MAKE, null));
-        setDevModel(object.optString(DEV_MODEL, null));
+        ProtocolExtensionSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (TICKET_KEYS.equals(name)) {
+                setTicketKeys(JSONUtils.readStringArray(reader));
+            } else if (!ProtocolExtensionSerializer.readField(this, reader, name)) {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
         JSONUtils.writeStringArray(writer, TICKET_KEYS, getTicketKeys());
-        JSONUtils.write(writer, DEV_MAKE, getDevMake());
-        JSONUtils.write(writer, DEV_MODEL, getDevModel());
+        ProtocolExtensionSerializer.write(this, writer);
     }
 
-    @SuppressWarnings("SimplifiableIfStatement")
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
         ProtocolExtension that = (ProtocolExtension) o;
-
-        if (ticketKeys != null ? !ticketKeys.equals(that.ticketKeys) : that.ticketKeys != null)
+        if (ticketKeys != null ? !ticketKeys.equals(that.ticketKeys) : that.ticketKeys != null) {
             return false;
-        if (devMake != null ? !devMake.equals(that.devMake) : that.devMake != null) return false;
-        return devModel != null ? devModel.equals(that.devModel) : that.devModel == null;
+        }
+        return ProtocolExtensionSerializer.equals(this, that);
     }
 
     @Override
     public int hashCode() {
         int result = ticketKeys != null ? ticketKeys.hashCode() : 0;
-        result = 31 * result + (devMake != null ? devMake.hashCode() : 0);
-        result = 31 * result + (devModel != null ? devModel.hashCode() : 0);
+        result = 31 * result + ProtocolExtensionSerializer.hashCode(this);
         return result;
     }
 }
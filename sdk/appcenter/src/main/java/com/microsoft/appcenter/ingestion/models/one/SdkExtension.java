@@ -5,59 +5,48 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
 import java.util.UUID;
 
 /**
  * The SDK extension is used by platform specific library to record field that are specifically
  * required for a specific SDK.
  */
+@JsonModel
 public class SdkExtension implements Model {
 
-    /**
-     * Library version property.
-     */
-    private static final String LIB_VER = "libVer";
-
-    /**
-     * Epoch property.
-     */
-    private static final String EPOCH = "epoch";
-
-    /**
-     * Sequence property.
-     */
-    private static final String SEQ = "seq";
-
-    /**
-     * InstallId property.
-     */
-    private static final String INSTALL_ID = "installId";
-
     /**
      * SDK version.
      */
+    @JsonField("libVer")
     private String libVer;
 
     /**
      * Seed for each SDK initialization.
      */
+    @JsonField("epoch")
     private String epoch;
 
     /**
      * ID incremented for each event.
      */
+    @JsonField("seq")
     private Long seq;
 
     /**
      * Install identifier.
      */
+    @JsonField("installId")
     private UUID installId;
 
     /**
@@ -136,42 +125,32 @@ public class SdkExtension implements Model {
 
     @Override
     public void read(JSONObject object) throws JSONException {
-        setLibVer(object.optString(LIB_VER, null));
-        setEpoch(object.optString(EPOCH, null));
-        setSeq(JSONUtils.readLong(object, SEQ));
-        if (object.has(INSTALL_ID)) {
-            setInstallId(UUID.fromString(object.getString(INSTALL_ID)));
-        }
+        SdkExtensionSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        SdkExtensionSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, LIB_VER, getLibVer());
-        JSONUtils.write(writer, EPOCH, getEpoch());
-        JSONUtils.write(writer, SEQ, getSeq());
-        JSONUtils.write(writer, INSTALL_ID, getInstallId());
+        SdkExtensionSerializer.write(this, writer);
     }
 
-    @SuppressWarnings("SimplifiableIfStatement")
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        SdkExtension that = (SdkExtension) o;
-
-        if (libVer != null ? !libVer.equals(that.libVer) : that.libVer != null) return false;
-        if (epoch != null ? !epoch.equals(that.epoch) : that.epoch != null) return false;
-        if (seq != null ? !seq.equals(that.seq) : that.seq != null) return false;
-        return installId != null ? installId.equals(that.installId) : that.installId == null;
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return SdkExtensionSerializer.equals(this, (SdkExtension) o);
     }
 
     @Override
     public int hashCode() {
-        int result = libVer != null ? libVer.hashCode() : 0;
-        result = 31 * result + (epoch != null ? epoch.hashCode() : 0);
-        result = 31 * result + (seq != null ? seq.hashCode() : 0);
-        result = 31 * result + (installId != null ? installId.hashCode() : 0);
-        return result;
+        return SdkExtensionSerializer.hashCode(this);
     }
 }
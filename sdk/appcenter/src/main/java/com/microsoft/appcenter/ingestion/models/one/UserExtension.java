@@ -5,36 +5,34 @@
 
 package com.microsoft.appcenter.ingestion.models.one;
 
+import android.util.JsonReader;
+
+import com.microsoft.appcenter.codegen.JsonField;
+import com.microsoft.appcenter.codegen.JsonModel;
 import com.microsoft.appcenter.ingestion.models.Model;
-import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 /**
  * The "user" extension tracks common user elements that are not available in the core envelope.
  */
+@JsonModel
 public class UserExtension implements Model {
 
-    /**
-     * LocalId property.
-     */
-    private static final String LOCAL_ID = "localId";
-
-    /**
-     * Locale property.
-     */
-    private static final String LOCALE = "locale";
-
     /**
      * Local Id.
      */
+    @JsonField("localId")
     private String localId;
 
     /**
      * User locale.
      */
+    @JsonField("locale")
     private String locale;
 
     /**
@@ -76,32 +74,33 @@ public class UserExtension implements Model {
     }
 
     @Override
-    public void read(JSONObject object) {
-        setLocalId(object.optString(LOCAL_ID, null));
-        setLocale(object.optString(LOCALE, null));
+    public void read(JSONObject object) throws JSONException {
+        UserExtensionSerializer.read(this, object);
+    }
+
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        UserExtensionSerializer.read(this, reader);
     }
 
     @Override
     public void write(JSONStringer writer) throws JSONException {
-        JSONUtils.write(writer, LOCAL_ID, getLocalId());
-        JSONUtils.write(writer, LOCALE, getLocale());
+        UserExtensionSerializer.write(this, writer);
     }
 
     @Override
     public boolean equals(Object o) {
-        if (this == o) return true;
-        if (o == null || getClass() != o.getClass()) return false;
-
-        UserExtension that = (UserExtension) o;
-
-        if (localId != null ? !localId.equals(that.localId) : that.localId != null) return false;
-        return locale != null ? locale.equals(that.locale) : that.locale == null;
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        return UserExtensionSerializer.equals(this, (UserExtension) o);
     }
 
     @Override
     public int hashCode() {
-        int result = localId != null ? localId.hashCode() : 0;
-        result = 31 * result + (locale != null ? locale.hashCode() : 0);
-        return result;
+        return UserExtensionSerializer.hashCode(this);
     }
 }
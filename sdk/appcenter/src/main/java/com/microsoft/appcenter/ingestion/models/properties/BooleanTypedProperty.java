@@ -5,10 +5,14 @@
 
 package com.microsoft.appcenter.ingestion.models.properties;
 
+import android.util.JsonReader;
+
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.VALUE;
 
 public class BooleanTypedProperty extends TypedProperty {
@@ -49,6 +53,15 @@ public class BooleanTypedProperty extends TypedProperty {
         setValue(object.getBoolean(VALUE));
     }
 
+    @Override
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        if (VALUE.equals(name)) {
+            setValue(reader.nextBoolean());
+            return true;
+        }
+        return super.readField(reader, name);
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         super.write(writer);
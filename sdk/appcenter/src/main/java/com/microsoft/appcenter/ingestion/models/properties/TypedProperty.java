@@ -5,14 +5,20 @@
 
 package com.microsoft.appcenter.ingestion.models.properties;
 
+import android.util.JsonReader;
+
 import com.microsoft.appcenter.ingestion.models.Model;
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONStringer;
 
+import java.io.IOException;
+
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.NAME;
 import static com.microsoft.appcenter.ingestion.models.CommonProperties.TYPE;
+import static com.microsoft.appcenter.ingestion.models.CommonProperties.VALUE;
 
 public abstract class TypedProperty implements Model {
 
@@ -54,6 +60,64 @@ public abstract class TypedProperty implements Model {
         setName(object.getString(NAME));
     }
 
+    @Override
+    public void read(JsonReader reader) throws JSONException, IOException {
+        reader.beginObject();
+        readFields(reader);
+    }
+
+    /**
+     * Read the fields of an object that is already started with a streaming reader, up to the end of the object.
+     * The value is required: sub-classes read it in {@link #readField(JsonReader, String)}.
+     *
+     * @param reader reader positioned on a field name or on the end of the object.
+     * @throws JSONException if a field value is invalid or a required field is missing.
+     * @throws IOException   if the JSON is malformed.
+     */
+    void readFields(JsonReader reader) throws JSONException, IOException {
+        boolean hasValue = false;
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (readField(reader, name)) {
+                hasValue |= VALUE.equals(name);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        JSONUtils.checkRequired(NAME, getName());
+        if (!hasValue) {
+            throw new JSONException("No value for " + VALUE);
+        }
+    }
+
+    /**
+     * Read a field with a streaming reader.
+     * Sub-classes read the value and call this method for the other fields.
+     *
+     * @param reader reader positioned on the field value.
+     * @param name   field name.
+     * @return true if the field was read, false if it is unknown and must be skipped.
+     * @throws JSONException if the field value is invalid.
+     * @throws IOException   if the JSON is malformed.
+     */
+    protected boolean readField(JsonReader reader, String name) throws JSONException, IOException {
+        switch (name) {
+            case TYPE:
+                if (!reader.nextString().equals(getType())) {
+                    throw new JSONException("Invalid type");
+                }
+                return true;
+
+            case NAME:
+                setName(JSONUtils.readPooledString(reader));
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
     @Override
     public void write(JSONStringer writer) throws JSONException {
         writer.key(TYPE).value(getType());
@@ -6,11 +6,16 @@
 package com.microsoft.appcenter.ingestion.models.properties;
 
 import android.support.annotation.NonNull;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import com.microsoft.appcenter.ingestion.models.json.JSONUtils;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -49,4 +54,38 @@ public class TypedPropertyUtils {
         }
         return null;
     }
+
+    public static List<TypedProperty> read(JsonReader reader) throws JSONException, IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        List<TypedProperty> array = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginObject();
+            String name = reader.hasNext() ? reader.nextName() : null;
+            TypedProperty typedProperty;
+            if (TYPE.equals(name)) {
+                typedProperty = create(reader.nextString());
+                typedProperty.readFields(reader);
+            } else {
+
+                /* The type is not the first field as we write it, read the whole object to find it. */
+                JSONObject object = new JSONObject();
+                if (name != null) {
+                    object.put(name, JSONUtils.readValue(reader));
+                }
+                while (reader.hasNext()) {
+                    object.put(reader.nextName(), JSONUtils.readValue(reader));
+                }
+                reader.endObject();
+                typedProperty = create(object.getString(TYPE));
+                typedProperty.read(object);
+            }
+            array.add(typedProperty);
+        }
+        reader.endArray();
+        return array;
+    }
 }
@@ -32,6 +32,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -119,6 +121,11 @@ public class DatabasePersistence extends Persistence {
      */
     private static final String GET_SORT_ORDER = COLUMN_PRIORITY + " DESC, " + PRIMARY_KEY;
 
+    /**
+     * Order by clause to select the log to delete first, same as storage eviction order.
+     */
+    private static final String DELETE_OLDEST_SORT_ORDER = COLUMN_PRIORITY + ", " + PRIMARY_KEY;
+
     /**
      * Size limit (in bytes) for a database row log payload.
      * A separate file is used if payload is larger.
@@ -165,11 +172,16 @@ public class DatabasePersistence extends Persistence {
     final DatabaseManager mDatabaseManager;
 
     /**
-     * Pending log groups. Key is a UUID and value is a list of database identifiers.
+     * Pending log groups. Key is the group name followed by the batch ID and value is a list of database identifiers.
      */
     @VisibleForTesting
     final Map<String, List<Long>> mPendingDbIdentifiersGroups;
 
+    /**
+     * Storage keys of the pending logs, with the same keys as {@link #mPendingDbIdentifiersGroups} and in the same order.
+     */
+    private final Map<String, List<String>> mPendingLogKeysGroups;
+
     /**
      * Pending logs across all groups.
      */
@@ -205,6 +217,7 @@ public class DatabasePersistence extends Persistence {
     DatabasePersistence(Context context, int version, @SuppressWarnings("SameParameterValue") final ContentValues schema) {
         mContext = context;
         mPendingDbIdentifiersGroups = new HashMap<>();
+        mPendingLogKeysGroups = new HashMap<>();
         mPendingDbIdentifiers = new HashSet<>();
         mDatabaseManager = new DatabaseManager(context, DATABASE, TABLE, version, schema, CREATE_LOGS_SQL, new DatabaseManager.Listener() {
 
@@ -324,6 +337,47 @@ public class DatabasePersistence extends Persistence {
         }
     }
 
+    @Override
+    public void putLogs(@NonNull Collection<Log> logs, @NonNull String group, @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags, @NonNull Map<Log, PersistenceException> outFailedLogs) {
+
+        /* Write all logs in a single transaction, fallback to individual writes if we can't start one. */
+        AppCenterLog.debug(LOG_TAG, "Storing " + logs.size() + " logs to the Persistence database with flags=" + flags);
+        if (!mDatabaseManager.beginTransaction()) {
+            super.putLogs(logs, group, flags, outFailedLogs);
+            return;
+        }
+        List<Long> databaseIds = new ArrayList<>(logs.size());
+        boolean successful = false;
+        try {
+            for (Log log : logs) {
+                try {
+                    databaseIds.add(putLog(log, group, flags));
+                } catch (PersistenceException e) {
+                    outFailedLogs.put(log, e);
+                }
+            }
+            successful = mDatabaseManager.setTransactionSuccessful();
+        } finally {
+
+            /* A transaction not marked successful is rolled back even if ending it succeeds. */
+            if (!mDatabaseManager.endTransaction() || !successful) {
+
+                /* Nothing was committed: clean up large payload files and report every log as failed. */
+                File directory = getLargePayloadGroupDirectory(group);
+                for (Long databaseId : databaseIds) {
+
+                    //noinspection ResultOfMethodCallIgnored file may not exist if payload was small.
+                    getLargePayloadFile(directory, databaseId).delete();
+                }
+                for (Log log : logs) {
+                    if (!outFailedLogs.containsKey(log)) {
+                        outFailedLogs.put(log, new PersistenceException("Failed to commit logs to the Persistence database."));
+                    }
+                }
+            }
+        }
+    }
+
     @NonNull
     @VisibleForTesting
     File getLargePayloadGroupDirectory(String group) {
@@ -352,6 +406,7 @@ public class DatabasePersistence extends Persistence {
 
         /* Delete logs. */
         List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + id);
+        mPendingLogKeysGroups.remove(group + id);
         File directory = getLargePayloadGroupDirectory(group);
         if (dbIdentifiers != null) {
             for (Long dbIdentifier : dbIdentifiers) {
@@ -362,6 +417,31 @@ public class DatabasePersistence extends Persistence {
         }
     }
 
+    @Override
+    public void deleteLogs(@NonNull String group, @NonNull String batchId, @NonNull Collection<String> logKeys) {
+        List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.get(group + batchId);
+        List<String> pendingLogKeys = mPendingLogKeysGroups.get(group + batchId);
+        if (dbIdentifiers == null || pendingLogKeys == null) {
+            return;
+        }
+
+        /* Log. */
+        AppCenterLog.debug(LOG_TAG, "Deleting " + logKeys.size() + " log(s) from the Persistence database for " + group + " with " + batchId);
+        AppCenterLog.debug(LOG_TAG, "The IDs for deleting log(s) is/are:");
+
+        /* Delete logs, the other logs stay pending with the same ID. */
+        File directory = getLargePayloadGroupDirectory(group);
+        for (int i = pendingLogKeys.size() - 1; i >= 0; i--) {
+            if (logKeys.contains(pendingLogKeys.get(i))) {
+                Long dbIdentifier = dbIdentifiers.remove(i);
+                pendingLogKeys.remove(i);
+                AppCenterLog.debug(LOG_TAG, "\t" + dbIdentifier);
+                deleteLog(directory, dbIdentifier);
+                mPendingDbIdentifiers.remove(dbIdentifier);
+            }
+        }
+    }
+
     @Override
     public void deleteLogs(String group) {
 
@@ -391,8 +471,56 @@ public class DatabasePersistence extends Persistence {
             String key = iterator.next();
             if (key.startsWith(group)) {
                 iterator.remove();
+                mPendingLogKeysGroups.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Exclude logs of paused transmission targets from a query.
+     *
+     * @param builder          query builder already filtering on group.
+     * @param pausedTargetKeys paused target keys.
+     * @param selectionArgs    selection arguments to complete.
+     */
+    private static void appendPausedTargetKeysFilter(SQLiteQueryBuilder builder, Collection<String> pausedTargetKeys, List<String> selectionArgs) {
+        if (!pausedTargetKeys.isEmpty()) {
+            StringBuilder filter = new StringBuilder();
+            for (int i = 0; i < pausedTargetKeys.size(); i++) {
+                filter.append("?,");
+            }
+            filter.deleteCharAt(filter.length() - 1);
+            builder.appendWhere(" AND ");
+            builder.appendWhere(COLUMN_TARGET_KEY + " NOT IN (" + filter.toString() + ")");
+            selectionArgs.addAll(pausedTargetKeys);
+        }
+    }
+
+    @Override
+    public boolean deleteOldestLog(@NonNull String group, @NonNull Collection<String> pausedTargetKeys) {
+        SQLiteQueryBuilder builder = SQLiteUtils.newSQLiteQueryBuilder();
+        builder.appendWhere(COLUMN_GROUP + " = ?");
+        List<String> selectionArgs = new ArrayList<>();
+        selectionArgs.add(group);
+        appendPausedTargetKeysFilter(builder, pausedTargetKeys, selectionArgs);
+        try {
+            Cursor cursor = mDatabaseManager.getCursor(builder, SELECT_PRIMARY_KEY, selectionArgs.toArray(new String[0]), DELETE_OLDEST_SORT_ORDER);
+            try {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    if (!mPendingDbIdentifiers.contains(id)) {
+                        deleteLog(getLargePayloadGroupDirectory(group), id);
+                        AppCenterLog.debug(LOG_TAG, "Deleted oldest log id=" + id + " from the Persistence database for " + group);
+                        return true;
+                    }
+                }
+            } finally {
+                cursor.close();
             }
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to delete oldest log: ", e);
         }
+        return false;
     }
 
     @Override
@@ -428,16 +556,7 @@ public class DatabasePersistence extends Persistence {
         builder.appendWhere(COLUMN_GROUP + " = ?");
         List<String> selectionArgs = new ArrayList<>();
         selectionArgs.add(group);
-        if (!pausedTargetKeys.isEmpty()) {
-            StringBuilder filter = new StringBuilder();
-            for (int i = 0; i < pausedTargetKeys.size(); i++) {
-                filter.append("?,");
-            }
-            filter.deleteCharAt(filter.length() - 1);
-            builder.appendWhere(" AND ");
-            builder.appendWhere(COLUMN_TARGET_KEY + " NOT IN (" + filter.toString() + ")");
-            selectionArgs.addAll(pausedTargetKeys);
-        }
+        appendPausedTargetKeysFilter(builder, pausedTargetKeys, selectionArgs);
 
         /* Add logs to output parameter after deserialization if logs are not already sent. */
         int count = 0;
@@ -546,6 +665,7 @@ public class DatabasePersistence extends Persistence {
         AppCenterLog.debug(LOG_TAG, "Returning " + candidates.size() + " log(s) with an ID, " + id);
         AppCenterLog.debug(LOG_TAG, "The SID/ID pairs for returning log(s) is/are:");
         List<Long> pendingDbIdentifiersGroup = new ArrayList<>();
+        List<String> pendingLogKeysGroup = new ArrayList<>();
         for (Map.Entry<Long, Log> entry : candidates.entrySet()) {
             Long dbIdentifier = entry.getKey();
 
@@ -554,6 +674,7 @@ public class DatabasePersistence extends Persistence {
 
             /* Store a database identifier to a group of the ID. */
             pendingDbIdentifiersGroup.add(dbIdentifier);
+            pendingLogKeysGroup.add(getLogKey(dbIdentifier, entry.getValue()));
 
             /* Add to output parameter. */
             outLogs.add(entry.getValue());
@@ -564,16 +685,47 @@ public class DatabasePersistence extends Persistence {
 
         /* Update pending IDs. */
         mPendingDbIdentifiersGroups.put(group + id, pendingDbIdentifiersGroup);
+        mPendingLogKeysGroups.put(group + id, pendingLogKeysGroup);
         return id;
     }
 
+    /**
+     * Get the storage key of a log. Timestamps are included because database identifiers restart when the database is recreated.
+     *
+     * @param dbIdentifier The database identifier of the log.
+     * @param log          The log.
+     * @return The storage key.
+     */
+    private static String getLogKey(long dbIdentifier, @NonNull Log log) {
+        Date timestamp = log.getTimestamp();
+        return dbIdentifier + "@" + (timestamp == null ? 0 : timestamp.getTime());
+    }
+
+    @NonNull
+    @Override
+    public List<String> getLogKeys(@NonNull String group, @NonNull String batchId) {
+        List<String> logKeys = mPendingLogKeysGroups.get(group + batchId);
+        return logKeys != null ? logKeys : Collections.<String>emptyList();
+    }
+
     @Override
     public void clearPendingLogState() {
         mPendingDbIdentifiers.clear();
         mPendingDbIdentifiersGroups.clear();
+        mPendingLogKeysGroups.clear();
         AppCenterLog.debug(LOG_TAG, "Cleared pending log states");
     }
 
+    @Override
+    public void clearPendingLogState(@NonNull String group, @NonNull String batchId) {
+        List<Long> dbIdentifiers = mPendingDbIdentifiersGroups.remove(group + batchId);
+        mPendingLogKeysGroups.remove(group + batchId);
+        if (dbIdentifiers != null) {
+            mPendingDbIdentifiers.removeAll(dbIdentifiers);
+        }
+        AppCenterLog.debug(LOG_TAG, "Cleared pending log state for " + group + " with " + batchId);
+    }
+
     @Override
     public void close() {
         mDatabaseManager.close();
@@ -17,6 +17,7 @@ import java.io.Closeable;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Abstract class for Persistence service.
@@ -40,6 +41,27 @@ public abstract class Persistence implements Closeable {
     public abstract long putLog(@NonNull Log log, @NonNull String group,
                                 @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags) throws PersistenceException;
 
+    /**
+     * Writes several logs to the storage with the given {@code group}.
+     * The default implementation writes logs one by one, subclasses can override it to write all logs at once.
+     *
+     * @param logs          The logs to be placed in the storage.
+     * @param group         The group of the storage for the logs.
+     * @param flags         The persistence flags.
+     * @param outFailedLogs A map to receive logs that could not be written, keyed by log instance, with their failure.
+     */
+    public void putLogs(@NonNull Collection<Log> logs, @NonNull String group,
+                        @IntRange(from = Flags.NORMAL, to = Flags.CRITICAL) int flags,
+                        @NonNull Map<Log, PersistenceException> outFailedLogs) {
+        for (Log log : logs) {
+            try {
+                putLog(log, group, flags);
+            } catch (PersistenceException e) {
+                outFailedLogs.put(log, e);
+            }
+        }
+    }
+
     /**
      * Deletes a log with the give ID from the {@code group}.
      *
@@ -48,6 +70,16 @@ public abstract class Persistence implements Closeable {
      */
     public abstract void deleteLogs(@NonNull String group, @NonNull String batchId);
 
+    /**
+     * Deletes some logs of a set returned with an ID by {@link #getLogs(String, Collection, int, List)}.
+     * The other logs of the set stay associated with the ID.
+     *
+     * @param group   The group of the storage for logs.
+     * @param batchId The ID for a set of logs.
+     * @param logKeys The storage keys of the logs to delete, as returned by {@link #getLogKeys(String, String)}.
+     */
+    public abstract void deleteLogs(@NonNull String group, @NonNull String batchId, @NonNull Collection<String> logKeys);
+
     /**
      * Deletes all logs for the given {@code group}.
      *
@@ -55,6 +87,17 @@ public abstract class Persistence implements Closeable {
      */
     public abstract void deleteLogs(String group);
 
+    /**
+     * Deletes the oldest log with the lowest priority for the given {@code group},
+     * skipping logs that are part of a batch returned by {@link #getLogs(String, Collection, int, List)}
+     * and logs of paused transmission targets, so that only a log counted as pending can be deleted.
+     *
+     * @param group            The group of the storage for logs.
+     * @param pausedTargetKeys Target keys of the logs to keep.
+     * @return true if a log was deleted, false otherwise.
+     */
+    public abstract boolean deleteOldestLog(@NonNull String group, @NonNull Collection<String> pausedTargetKeys);
+
     /**
      * Gets the number of logs for the given {@code group}.
      *
@@ -75,11 +118,31 @@ public abstract class Persistence implements Closeable {
     @Nullable
     public abstract String getLogs(@NonNull String group, @NonNull Collection<String> pausedTargetKeys, @IntRange(from = 0) int limit, @NonNull List<Log> outLogs);
 
+    /**
+     * Gets the storage keys of the logs returned with an ID by {@link #getLogs(String, Collection, int, List)}, in the same order.
+     * The key of a log does not depend on the batch it is returned in, and stays the same after an application restart.
+     *
+     * @param group   The group of the storage for logs.
+     * @param batchId The ID for a set of logs.
+     * @return The storage keys, empty if the ID is not pending.
+     */
+    @NonNull
+    public abstract List<String> getLogKeys(@NonNull String group, @NonNull String batchId);
+
     /**
      * Clears all associations between logs of the {@code group} and ids returned by {@link #getLogs(String, Collection, int, List)}}.
      */
     public abstract void clearPendingLogState();
 
+    /**
+     * Clears the association between logs of the {@code group} and a single id returned by {@link #getLogs(String, Collection, int, List)}},
+     * so that these logs can be returned again.
+     *
+     * @param group   The group of the storage for logs.
+     * @param batchId The ID for a set of logs.
+     */
+    public abstract void clearPendingLogState(@NonNull String group, @NonNull String batchId);
+
     /**
      * Gets a {@link LogSerializer}.
      *
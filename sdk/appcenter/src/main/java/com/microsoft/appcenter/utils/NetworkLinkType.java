@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.support.annotation.IntDef;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Class of the network link used to send data, see {@link NetworkQuality#getLinkType()}.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@IntDef({
+        NetworkLinkType.UNKNOWN,
+        NetworkLinkType.UNMETERED,
+        NetworkLinkType.METERED,
+        NetworkLinkType.CONSTRAINED
+})
+public @interface NetworkLinkType {
+
+    /**
+     * Link could not be determined, handled like a metered link.
+     */
+    int UNKNOWN = 0;
+
+    /**
+     * Unmetered link like Wi-Fi or Ethernet.
+     */
+    int UNMETERED = 1;
+
+    /**
+     * Metered link like a cellular connection.
+     */
+    int METERED = 2;
+
+    /**
+     * Slow, not validated or data saving link: only small amounts of data should be sent.
+     */
+    int CONSTRAINED = 3;
+}
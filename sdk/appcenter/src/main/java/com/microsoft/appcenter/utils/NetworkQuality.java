@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.utils;
+
+import android.support.annotation.NonNull;
+
+/**
+ * Properties of the network used by default to send data.
+ */
+public class NetworkQuality {
+
+    /**
+     * Quality when the default network cannot be inspected.
+     */
+    public static final NetworkQuality UNKNOWN = new NetworkQuality(false, true, true, 0, 0, false);
+
+    /**
+     * Downstream bandwidth estimate under which the link is constrained, in kbps.
+     */
+    static final int CONSTRAINED_BANDWIDTH_KBPS = 256;
+
+    /**
+     * Last cellular generation for which the link is constrained.
+     */
+    static final int CONSTRAINED_CELLULAR_GENERATION = 2;
+
+    private final boolean mKnown;
+
+    private final boolean mMetered;
+
+    private final boolean mValidated;
+
+    private final int mCellularGeneration;
+
+    private final int mDownstreamBandwidthKbps;
+
+    private final boolean mDataSaverEnabled;
+
+    /**
+     * Init.
+     *
+     * @param known                   whether the default network could be inspected.
+     * @param metered                 whether the network is metered.
+     * @param validated               whether Internet access was validated on the network.
+     * @param cellularGeneration      cellular generation (2 to 5), 0 if not cellular or unknown.
+     * @param downstreamBandwidthKbps downstream bandwidth estimate in kbps, 0 if unknown.
+     * @param dataSaverEnabled        whether the user restricts background data on metered networks.
+     */
+    NetworkQuality(boolean known, boolean metered, boolean validated, int cellularGeneration, int downstreamBandwidthKbps, boolean dataSaverEnabled) {
+        mKnown = known;
+        mMetered = metered;
+        mValidated = validated;
+        mCellularGeneration = cellularGeneration;
+        mDownstreamBandwidthKbps = downstreamBandwidthKbps;
+        mDataSaverEnabled = dataSaverEnabled;
+    }
+
+    /**
+     * @return whether the network is metered. True when unknown.
+     */
+    public boolean isMetered() {
+        return mMetered;
+    }
+
+    /**
+     * @return whether Internet access was validated on the network. True when unknown.
+     */
+    public boolean isValidated() {
+        return mValidated;
+    }
+
+    /**
+     * @return cellular generation (2 to 5), 0 if not cellular or unknown.
+     */
+    public int getCellularGeneration() {
+        return mCellularGeneration;
+    }
+
+    /**
+     * @return downstream bandwidth estimate in kbps, 0 if unknown.
+     */
+    public int getDownstreamBandwidthKbps() {
+        return mDownstreamBandwidthKbps;
+    }
+
+    /**
+     * @return whether the user restricts background data on metered networks.
+     */
+    public boolean isDataSaverEnabled() {
+        return mDataSaverEnabled;
+    }
+
+    /**
+     * Classify the link.
+     *
+     * @return link type.
+     */
+    @NetworkLinkType
+    public int getLinkType() {
+        if (!mKnown) {
+            return NetworkLinkType.UNKNOWN;
+        }
+        boolean slow = (mCellularGeneration > 0 && mCellularGeneration <= CONSTRAINED_CELLULAR_GENERATION) ||
+                (mDownstreamBandwidthKbps > 0 && mDownstreamBandwidthKbps < CONSTRAINED_BANDWIDTH_KBPS);
+        if (slow || !mValidated || (mMetered && mDataSaverEnabled)) {
+            return NetworkLinkType.CONSTRAINED;
+        }
+        return mMetered ? NetworkLinkType.METERED : NetworkLinkType.UNMETERED;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "NetworkQuality{" +
+                "linkType=" + getLinkType() +
+                ", metered=" + mMetered +
+                ", validated=" + mValidated +
+                ", cellularGeneration=" + mCellularGeneration +
+                ", downstreamBandwidthKbps=" + mDownstreamBandwidthKbps +
+                ", dataSaverEnabled=" + mDataSaverEnabled +
+                '}';
+    }
+}
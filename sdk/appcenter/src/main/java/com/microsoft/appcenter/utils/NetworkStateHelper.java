@@ -19,6 +19,7 @@ import android.os.Build;
 import android.support.annotation.NonNull;
 import android.support.annotation.RequiresApi;
 import android.support.annotation.VisibleForTesting;
+import android.telephony.TelephonyManager;
 
 import java.io.Closeable;
 import java.util.Arrays;
@@ -65,6 +66,26 @@ public class NetworkStateHelper implements Closeable {
      */
     private ConnectivityReceiver mConnectivityReceiver;
 
+    /**
+     * Data Saver event receiver, null on API level < 24.
+     */
+    private DataSaverReceiver mDataSaverReceiver;
+
+    /**
+     * Whether network changes are received, the network quality is cached only then.
+     */
+    private volatile boolean mNetworkMonitored;
+
+    /**
+     * Default network described by {@link #mNetworkQuality}, null on API level < 23 or if not known.
+     */
+    private Network mDefaultNetwork;
+
+    /**
+     * Cached quality of the default network, null until inspected again after a network change.
+     */
+    private NetworkQuality mNetworkQuality;
+
     /**
      * Current network state.
      */
@@ -126,13 +147,24 @@ public class NetworkStateHelper implements Closeable {
                     public void onLost(Network network) {
                         onNetworkLost(network);
                     }
+
+                    @Override
+                    public void onCapabilitiesChanged(Network network, NetworkCapabilities networkCapabilities) {
+                        onNetworkCapabilitiesChanged(network, networkCapabilities);
+                    }
                 };
                 mConnectivityManager.registerNetworkCallback(request.build(), mNetworkCallback);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                    mDataSaverReceiver = new DataSaverReceiver();
+                    mContext.registerReceiver(mDataSaverReceiver, new IntentFilter(ConnectivityManager.ACTION_RESTRICT_BACKGROUND_CHANGED));
+                }
             } else {
                 mConnectivityReceiver = new ConnectivityReceiver();
                 mContext.registerReceiver(mConnectivityReceiver, getOldIntentFilter());
                 handleNetworkStateUpdate();
             }
+            invalidateNetworkQuality();
+            mNetworkMonitored = true;
         } catch (RuntimeException e) {
 
             /*
@@ -143,6 +175,7 @@ public class NetworkStateHelper implements Closeable {
 
             /* We should try to send the data, even if we can't get the current network state. */
             mConnected.set(true);
+            mNetworkMonitored = false;
         }
     }
 
@@ -194,12 +227,129 @@ public class NetworkStateHelper implements Closeable {
         return false;
     }
 
+    /**
+     * Get the quality of the network used by default to send data.
+     * The quality is cached and updated from network callbacks, the network is inspected again
+     * only after a change that cannot be applied to the cached quality.
+     *
+     * @return network quality, {@link NetworkQuality#UNKNOWN} if not connected or it cannot be inspected.
+     */
+    @NonNull
+    public synchronized NetworkQuality getNetworkQuality() {
+        if (mNetworkQuality == null || !mNetworkMonitored) {
+            inspectNetworkQuality();
+        }
+        return mNetworkQuality;
+    }
+
+    /**
+     * Inspect the network used by default to send data and cache its quality.
+     */
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    private void inspectNetworkQuality() {
+        mDefaultNetwork = null;
+        mNetworkQuality = NetworkQuality.UNKNOWN;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                Network network = mConnectivityManager.getActiveNetwork();
+                NetworkCapabilities capabilities = network != null ? mConnectivityManager.getNetworkCapabilities(network) : null;
+                if (capabilities != null) {
+                    boolean dataSaverEnabled = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N &&
+                            mConnectivityManager.getRestrictBackgroundStatus() == ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED;
+                    mNetworkQuality = getNetworkQuality(network, capabilities, dataSaverEnabled);
+                    mDefaultNetwork = network;
+                }
+                return;
+            }
+            NetworkInfo info = mConnectivityManager.getActiveNetworkInfo();
+            if (info != null && info.isConnected()) {
+                int cellularGeneration = info.getType() == ConnectivityManager.TYPE_MOBILE ? getCellularGeneration(info.getSubtype()) : 0;
+                mNetworkQuality = new NetworkQuality(true, mConnectivityManager.isActiveNetworkMetered(), true, cellularGeneration, 0, false);
+            }
+        } catch (RuntimeException e) {
+
+            /* Same as connectivity: permission can be missing or firmware can be customized. */
+            AppCenterLog.warn(LOG_TAG, "Cannot access network quality information.", e);
+        }
+    }
+
+    /**
+     * Get the quality of a network from its capabilities.
+     *
+     * @param network          network.
+     * @param capabilities     network capabilities.
+     * @param dataSaverEnabled whether Data Saver restricts background data.
+     * @return network quality.
+     */
+    @NonNull
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    private NetworkQuality getNetworkQuality(Network network, NetworkCapabilities capabilities, boolean dataSaverEnabled) {
+        int cellularGeneration = 0;
+        if (capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)) {
+            NetworkInfo info = mConnectivityManager.getNetworkInfo(network);
+            cellularGeneration = info != null ? getCellularGeneration(info.getSubtype()) : 0;
+        }
+        return new NetworkQuality(true,
+                !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED),
+                capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED),
+                cellularGeneration,
+                capabilities.getLinkDownstreamBandwidthKbps(),
+                dataSaverEnabled);
+    }
+
+    /**
+     * Forget the cached network quality, the network is inspected again on next read.
+     */
+    private synchronized void invalidateNetworkQuality() {
+        mDefaultNetwork = null;
+        mNetworkQuality = null;
+    }
+
+    /**
+     * Get cellular generation of a mobile network subtype.
+     *
+     * @param networkType {@link TelephonyManager} network type.
+     * @return generation, 0 if unknown.
+     */
+    @VisibleForTesting
+    static int getCellularGeneration(int networkType) {
+        switch (networkType) {
+            case TelephonyManager.NETWORK_TYPE_GPRS:
+            case TelephonyManager.NETWORK_TYPE_EDGE:
+            case TelephonyManager.NETWORK_TYPE_CDMA:
+            case TelephonyManager.NETWORK_TYPE_1xRTT:
+            case TelephonyManager.NETWORK_TYPE_IDEN:
+            case TelephonyManager.NETWORK_TYPE_GSM:
+                return 2;
+            case TelephonyManager.NETWORK_TYPE_UMTS:
+            case TelephonyManager.NETWORK_TYPE_EVDO_0:
+            case TelephonyManager.NETWORK_TYPE_EVDO_A:
+            case TelephonyManager.NETWORK_TYPE_HSDPA:
+            case TelephonyManager.NETWORK_TYPE_HSUPA:
+            case TelephonyManager.NETWORK_TYPE_HSPA:
+            case TelephonyManager.NETWORK_TYPE_EVDO_B:
+            case TelephonyManager.NETWORK_TYPE_EHRPD:
+            case TelephonyManager.NETWORK_TYPE_HSPAP:
+            case TelephonyManager.NETWORK_TYPE_TD_SCDMA:
+                return 3;
+            case TelephonyManager.NETWORK_TYPE_LTE:
+            case TelephonyManager.NETWORK_TYPE_IWLAN:
+                return 4;
+            case TelephonyManager.NETWORK_TYPE_NR:
+                return 5;
+            default:
+                return 0;
+        }
+    }
+
     /**
      * Handle network available update on API level >= 21.
      */
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     private void onNetworkAvailable(Network network) {
         AppCenterLog.debug(LOG_TAG, "Network " + network + " is available.");
+        invalidateNetworkQuality();
         if (mConnected.compareAndSet(false, true)) {
             notifyNetworkStateUpdated(true);
         }
@@ -211,6 +361,7 @@ public class NetworkStateHelper implements Closeable {
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     private void onNetworkLost(Network network) {
         AppCenterLog.debug(LOG_TAG, "Network " + network + " is lost.");
+        invalidateNetworkQuality();
         Network[] networks = mConnectivityManager.getAllNetworks();
         boolean noNetwork = networks == null || networks.length == 0 ||
                 Arrays.equals(networks, new Network[]{network});
@@ -219,10 +370,29 @@ public class NetworkStateHelper implements Closeable {
         }
     }
 
+    /**
+     * Handle network capabilities update on API level >= 21.
+     */
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private synchronized void onNetworkCapabilitiesChanged(Network network, NetworkCapabilities capabilities) {
+
+        /* Update the cached quality of the default network, a change of another network may mean the default network changed. */
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && mNetworkQuality != null && network.equals(mDefaultNetwork)) {
+            try {
+                mNetworkQuality = getNetworkQuality(network, capabilities, mNetworkQuality.isDataSaverEnabled());
+                return;
+            } catch (RuntimeException e) {
+                AppCenterLog.warn(LOG_TAG, "Cannot access network quality information.", e);
+            }
+        }
+        invalidateNetworkQuality();
+    }
+
     /**
      * Handle network state update on API level < 21.
      */
     private void handleNetworkStateUpdate() {
+        invalidateNetworkQuality();
         boolean connected = isAnyNetworkConnected();
         if (mConnected.compareAndSet(!connected, connected)) {
             notifyNetworkStateUpdated(connected);
@@ -244,8 +414,13 @@ public class NetworkStateHelper implements Closeable {
     @Override
     public void close() {
         mConnected.set(false);
+        mNetworkMonitored = false;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
             mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+            if (mDataSaverReceiver != null) {
+                mContext.unregisterReceiver(mDataSaverReceiver);
+                mDataSaverReceiver = null;
+            }
         } else {
             mContext.unregisterReceiver(mConnectivityReceiver);
         }
@@ -292,4 +467,15 @@ public class NetworkStateHelper implements Closeable {
             handleNetworkStateUpdate();
         }
     }
+
+    /**
+     * Class receiving Data Saver changes on API level >= 24.
+     */
+    private class DataSaverReceiver extends BroadcastReceiver {
+
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            invalidateNetworkQuality();
+        }
+    }
 }
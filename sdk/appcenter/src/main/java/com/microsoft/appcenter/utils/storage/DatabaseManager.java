@@ -220,6 +220,52 @@ public class DatabaseManager implements Closeable {
         return id;
     }
 
+    /**
+     * Begins a transaction so that subsequent writes are committed together by {@link #endTransaction()}.
+     * Transactions can't be nested: callers must not call this method again before ending the transaction.
+     *
+     * @return true if the transaction was started, false otherwise.
+     */
+    public boolean beginTransaction() {
+        try {
+            getDatabase().beginTransaction();
+            return true;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to begin transaction on database " + mDatabase + ".", e);
+            return false;
+        }
+    }
+
+    /**
+     * Marks the current transaction as successful so that {@link #endTransaction()} commits it.
+     *
+     * @return true if the transaction was marked successful, false if it will be rolled back.
+     */
+    public boolean setTransactionSuccessful() {
+        try {
+            getDatabase().setTransactionSuccessful();
+            return true;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to mark transaction as successful on database " + mDatabase + ".", e);
+            return false;
+        }
+    }
+
+    /**
+     * Ends the current transaction, committing it if it was marked successful or rolling it back otherwise.
+     *
+     * @return true if the transaction ended without error, false otherwise.
+     */
+    public boolean endTransaction() {
+        try {
+            getDatabase().endTransaction();
+            return true;
+        } catch (RuntimeException e) {
+            AppCenterLog.error(LOG_TAG, "Failed to end transaction on database " + mDatabase + ".", e);
+            return false;
+        }
+    }
+
     /**
      * Deletes the entry by the identifier from the database.
      *
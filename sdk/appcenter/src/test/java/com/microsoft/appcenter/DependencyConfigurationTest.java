@@ -11,19 +11,31 @@ import android.os.Handler;
 import com.microsoft.appcenter.channel.DefaultChannel;
 import com.microsoft.appcenter.http.HttpClient;
 import com.microsoft.appcenter.http.HttpClientRetryer;
+import com.microsoft.appcenter.http.HttpTransportFactory;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
 import com.microsoft.appcenter.ingestion.models.json.LogSerializer;
 
 import org.junit.After;
 import org.junit.Test;
 
+import static com.microsoft.appcenter.AppCenter.PAIR_DELIMITER;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.powermock.api.mockito.PowerMockito.verifyNew;
 
 public class DependencyConfigurationTest extends AbstractAppCenterTest {
 
+    private static final String ONE_COLLECTOR_LOG_URL = "https://mobile.events.data.microsoft.com/OneCollector/1.0";
+
     @Test
     public void ConstructorCoverage() {
         new DependencyConfiguration();
@@ -47,6 +59,52 @@ public class DependencyConfigurationTest extends AbstractAppCenterTest {
         verifyNew(DefaultChannel.class).withArguments(any(Context.class), eq(DUMMY_APP_SECRET), any(LogSerializer.class), eq(mockHttpClient), any(Handler.class));
     }
 
+    @Test
+    public void setHttpTransportFactoryUsesTransport() throws Exception {
+        HttpTransportFactory transportFactory = mock(HttpTransportFactory.class);
+        when(transportFactory.createTransport(anyBoolean(), any(Handler.class))).thenReturn(mock(HttpClient.class));
+        assertTrue(AppCenter.setHttpTransportFactory(transportFactory));
+        AppCenter.start(mApplication, DUMMY_APP_SECRET);
+
+        /* Verify that the transport is created for the default HTTP client. */
+        verify(transportFactory).createTransport(eq(true), any(Handler.class));
+        verifyNew(DefaultChannel.class).withArguments(any(Context.class), eq(DUMMY_APP_SECRET), any(LogSerializer.class), isA(HttpClientRetryer.class), any(Handler.class));
+
+        /* Too late to change it. */
+        assertFalse(AppCenter.setHttpTransportFactory(null));
+    }
+
+    @Test
+    public void preconnectToAppCenter() {
+        HttpClient mockHttpClient = mock(HttpClient.class, withSettings().extraInterfaces(HttpClient.Preconnectable.class));
+        DependencyConfiguration.setHttpClient(mockHttpClient);
+        AppCenter.start(mApplication, DUMMY_APP_SECRET);
+        verify((HttpClient.Preconnectable) mockHttpClient).preconnect(AppCenterIngestion.DEFAULT_LOG_URL);
+        verify((HttpClient.Preconnectable) mockHttpClient, never()).preconnect(ONE_COLLECTOR_LOG_URL);
+    }
+
+    @Test
+    public void preconnectToAppCenterAndOneCollector() {
+        HttpClient mockHttpClient = mock(HttpClient.class, withSettings().extraInterfaces(HttpClient.Preconnectable.class));
+        DependencyConfiguration.setHttpClient(mockHttpClient);
+        AppCenter.setLogUrl("https://mock");
+        AppCenter.start(mApplication, DUMMY_APP_SECRET + PAIR_DELIMITER + DUMMY_TARGET_TOKEN_STRING);
+
+        /* Custom log URL applies only to App Center. */
+        verify((HttpClient.Preconnectable) mockHttpClient).preconnect("https://mock");
+        verify((HttpClient.Preconnectable) mockHttpClient).preconnect(ONE_COLLECTOR_LOG_URL);
+    }
+
+    @Test
+    public void preconnectToCustomOneCollectorUrl() {
+        HttpClient mockHttpClient = mock(HttpClient.class, withSettings().extraInterfaces(HttpClient.Preconnectable.class));
+        DependencyConfiguration.setHttpClient(mockHttpClient);
+        AppCenter.setLogUrl("https://mock");
+        AppCenter.start(mApplication, DUMMY_TARGET_TOKEN_STRING);
+        verify((HttpClient.Preconnectable) mockHttpClient).preconnect("https://mock");
+        verify((HttpClient.Preconnectable) mockHttpClient, never()).preconnect(AppCenterIngestion.DEFAULT_LOG_URL);
+    }
+
     @After
     public void resetDependencies() {
         DependencyConfiguration.setHttpClient(null);
@@ -16,6 +16,8 @@ import com.microsoft.appcenter.utils.AppCenterLog;
 import com.microsoft.appcenter.utils.DeviceInfoHelper;
 import com.microsoft.appcenter.utils.HandlerUtils;
 import com.microsoft.appcenter.utils.IdHelper;
+import com.microsoft.appcenter.utils.NetworkQuality;
+import com.microsoft.appcenter.utils.NetworkStateHelper;
 import com.microsoft.appcenter.utils.storage.SharedPreferencesManager;
 
 import org.junit.Before;
@@ -43,6 +45,7 @@ import static org.powermock.api.mockito.PowerMockito.mockStatic;
         DeviceInfoHelper.class,
         HandlerUtils.class,
         IdHelper.class,
+        NetworkStateHelper.class,
         SharedPreferencesManager.class,
         System.class
 })
@@ -62,6 +65,9 @@ public class AbstractDefaultChannelTest {
     @Mock
     protected Handler mAppCenterHandler;
 
+    @Mock
+    protected NetworkStateHelper mNetworkStateHelper;
+
     static Answer<String> getGetLogsAnswer() {
         return getGetLogsAnswer(-1);
     }
@@ -131,5 +137,8 @@ public class AbstractDefaultChannelTest {
         HandlerUtils.runOnUiThread(any(Runnable.class));
         mockStatic(SharedPreferencesManager.class);
         mockStatic(System.class);
+        mockStatic(NetworkStateHelper.class);
+        when(NetworkStateHelper.getSharedInstance(any(Context.class))).thenReturn(mNetworkStateHelper);
+        when(mNetworkStateHelper.getNetworkQuality()).thenReturn(NetworkQuality.UNKNOWN);
     }
 }
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class CoalescingKeyWriterTest {
+
+    @Test
+    public void skipIgnoredPaths() throws JSONException {
+        CoalescingKeyWriter writer = new CoalescingKeyWriter(Arrays.asList("time", "ext.sdk.seq", "ext.app"));
+        writer.object();
+        writer.key("time").value("2018-01-01");
+        writer.key("name").value("event");
+        writer.key("ext").object();
+        writer.key("sdk").object().key("seq").value(3L).key("epoch").value("e").endObject();
+        writer.key("app").object().key("seq").value(1L).key("list").array().value(true).endArray().endObject();
+        writer.key("seq").value(2.5);
+        writer.endObject();
+        writer.key("list").array().object().key("time").value(false).endObject().endArray();
+        writer.endObject();
+        assertEquals("{\"name\":\"event\",\"ext\":{\"sdk\":{\"epoch\":\"e\"},\"seq\":2.5},\"list\":[{\"time\":false}]}", writer.toString());
+    }
+
+    @Test
+    public void hashIgnoresSkippedValues() throws JSONException {
+        CoalescingKeyWriter writer1 = new CoalescingKeyWriter(Collections.singletonList("id"));
+        writer1.object().key("id").value("a").key("type").value("event").endObject();
+        CoalescingKeyWriter writer2 = new CoalescingKeyWriter(Collections.singletonList("id"));
+        writer2.object().key("type").value("event").key("id").value("b").endObject();
+        CoalescingKeyWriter writer3 = new CoalescingKeyWriter(Collections.singletonList("id"));
+        writer3.object().key("type").value("page").endObject();
+        assertEquals(writer1.hash(), writer2.hash());
+        assertNotEquals(writer1.hash(), writer3.hash());
+    }
+}
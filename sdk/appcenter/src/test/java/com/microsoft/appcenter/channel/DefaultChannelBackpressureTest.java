@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.channel.DefaultChannel.BACKPRESSURE_SAMPLING_INTERVAL;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.spy;
+
+public class DefaultChannelBackpressureTest extends AbstractDefaultChannelTest {
+
+    @Test
+    public void dropNewest() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        Channel.Listener listener = spy(new AbstractChannelListener());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.addListener(listener);
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.DROP_NEWEST, 2);
+
+        /* Enqueue 3 logs, the last one is dropped. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        Log droppedLog = mock(Log.class);
+        channel.enqueue(droppedLog, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, times(2)).putLog(any(Log.class), eq(TEST_GROUP), anyInt());
+        verify(mockPersistence, never()).putLog(eq(droppedLog), anyString(), anyInt());
+        verify(mockListener).onBeforeSending(droppedLog);
+        verify(mockListener).onFailure(eq(droppedLog), any(BackpressureException.class));
+        verify(listener).onBackpressure(TEST_GROUP, droppedLog, 2, BackpressurePolicy.DROP_NEWEST);
+        assertEquals(2, channel.getQueueDepth(TEST_GROUP));
+
+        /* Disabling policy accepts logs again. */
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.NONE, 0);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(3, channel.getQueueDepth(TEST_GROUP));
+    }
+
+    @Test
+    public void dropOldest() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        when(mockPersistence.deleteOldestLog(eq(TEST_GROUP), anyCollectionOf(String.class))).thenReturn(true);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.DROP_OLDEST, 2);
+
+        /* Every log is persisted but queue depth stays at the limit. */
+        for (int i = 0; i < 5; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence, times(5)).putLog(any(Log.class), eq(TEST_GROUP), anyInt());
+        verify(mockPersistence, times(3)).deleteOldestLog(eq(TEST_GROUP), anyCollectionOf(String.class));
+        verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
+        assertEquals(2, channel.getQueueDepth(TEST_GROUP));
+    }
+
+    @Test
+    public void dropOldestKeepsPausedTargets() {
+        Persistence mockPersistence = mock(Persistence.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.DROP_OLDEST, 1);
+        channel.pauseGroup(TEST_GROUP, "iKey-token");
+
+        /* Only a counted log can be deleted: nothing deleted means the new log adds up. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence).deleteOldestLog(TEST_GROUP, Collections.singleton("iKey"));
+        assertEquals(2, channel.getQueueDepth(TEST_GROUP));
+    }
+
+    @Test
+    public void sample() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.SAMPLE, 1);
+
+        /* First log is under the limit, then one log out of the sampling interval is kept. */
+        int overLimitCount = 2 * BACKPRESSURE_SAMPLING_INTERVAL;
+        for (int i = 0; i < 1 + overLimitCount; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        verify(mockPersistence, times(3)).putLog(any(Log.class), eq(TEST_GROUP), anyInt());
+        verify(mockListener, times(overLimitCount - 2)).onFailure(any(Log.class), any(BackpressureException.class));
+        assertEquals(3, channel.getQueueDepth(TEST_GROUP));
+    }
+
+    @Test
+    public void coalesce() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = spy(new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(AppCenterIngestion.class), mAppCenterHandler));
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.COALESCE, 1);
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        Log log3 = mock(Log.class);
+        Log log4 = mock(Log.class);
+        doReturn(1L).when(channel).getCoalescingKey(log2);
+        doReturn(1L).when(channel).getCoalescingKey(log3);
+        doReturn(null).when(channel).getCoalescingKey(log4);
+
+        /* Only the duplicate of a log enqueued over the limit is discarded. */
+        channel.enqueueAll(Arrays.asList(log1, log2, log3, log4), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockListener).onFailure(eq(log3), any(BackpressureException.class));
+        verify(mockListener, times(1)).onFailure(any(Log.class), any(Exception.class));
+        assertEquals(3, channel.getQueueDepth(TEST_GROUP));
+    }
+
+    @Test
+    public void queueDepthIncludesSendingBatches() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(2));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 2, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Unknown group. */
+        assertEquals(0, channel.getQueueDepth("unknown"));
+
+        /* Batch is being sent and not acknowledged yet. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(2, channel.getQueueDepth(TEST_GROUP));
+    }
+
+    @Test
+    public void invalidPolicySettings() {
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mock(Persistence.class), mock(AppCenterIngestion.class), mAppCenterHandler);
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.DROP_NEWEST, 1);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.setBackpressurePolicy(TEST_GROUP, BackpressurePolicy.DROP_NEWEST, 0);
+        assertEquals(BackpressurePolicy.NONE, channel.getGroupState(TEST_GROUP).mBackpressurePolicy);
+    }
+}
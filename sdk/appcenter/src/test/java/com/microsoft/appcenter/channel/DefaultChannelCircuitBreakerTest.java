@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.AppCenterIngestion;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.OneCollectorIngestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static com.microsoft.appcenter.channel.DefaultChannel.CIRCUIT_BREAKER_INITIAL_OPEN_DURATION;
+import static com.microsoft.appcenter.channel.DefaultChannel.CIRCUIT_BREAKER_MAX_OPEN_DURATION;
+import static com.microsoft.appcenter.channel.DefaultChannel.CIRCUIT_HALF_OPEN;
+import static com.microsoft.appcenter.channel.DefaultChannel.CIRCUIT_OPEN;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultChannelCircuitBreakerTest extends AbstractDefaultChannelTest {
+
+    private static final String OTHER_GROUP = TEST_GROUP + "2";
+
+    @Test
+    public void failingIngestionDoesNotBlockOtherIngestion() throws IOException {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        OneCollectorIngestion mockAlternateIngestion = mock(OneCollectorIngestion.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer());
+        when(mockAlternateIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(new HttpException(new HttpResponse(503))));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(OTHER_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, mockAlternateIngestion, null);
+
+        /* Alternate ingestion fails and opens its circuit breaker. */
+        channel.enqueue(mock(Log.class), OTHER_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), OTHER_GROUP, Flags.DEFAULTS);
+        verify(mockAlternateIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(CIRCUIT_OPEN, channel.getCircuitBreaker(mockAlternateIngestion).mState);
+        assertEquals(2, channel.getGroupState(OTHER_GROUP).mPendingLogCount);
+
+        /* Default ingestion keeps sending. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence, times(2)).deleteLogs(eq(TEST_GROUP), anyString());
+        assertNull(channel.getCircuitBreaker(mockIngestion));
+        assertTrue(channel.isEnabled());
+
+        /* Ingestions are not closed. */
+        verify(mockAlternateIngestion, never()).close();
+        verify(mockIngestion, never()).close();
+    }
+
+    @Test
+    public void probeFailureReopensWithLongerDuration() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer(new SocketException()))
+                .then(getSendAsyncAnswer(new SocketException()))
+                .then(getSendAsyncAnswer(new SocketException()))
+                .then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* First failure. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        DefaultChannel.CircuitBreaker circuitBreaker = channel.getCircuitBreaker(mockIngestion);
+        assertEquals(1, circuitBreaker.mFailureCount);
+        verify(mAppCenterHandler).postDelayed(circuitBreaker.mRunnable, CIRCUIT_BREAKER_INITIAL_OPEN_DURATION);
+
+        /* Probe fails, open duration doubles. */
+        circuitBreaker.mRunnable.run();
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        assertEquals(CIRCUIT_OPEN, circuitBreaker.mState);
+        assertEquals(2, circuitBreaker.mFailureCount);
+        verify(mAppCenterHandler).postDelayed(circuitBreaker.mRunnable, 2 * CIRCUIT_BREAKER_INITIAL_OPEN_DURATION);
+
+        /* Open duration is capped. */
+        circuitBreaker.mFailureCount = 10;
+        circuitBreaker.mRunnable.run();
+        verify(mAppCenterHandler).postDelayed(circuitBreaker.mRunnable, CIRCUIT_BREAKER_MAX_OPEN_DURATION);
+
+        /* Probe succeeds and closes circuit breaker. */
+        circuitBreaker.mRunnable.run();
+        verify(mockIngestion, times(4)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+        verify(mockPersistence, times(3)).clearPendingLogState(eq(TEST_GROUP), anyString());
+        assertNull(channel.getCircuitBreaker(mockIngestion));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void singleProbeWhileHalfOpen() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        final List<ServiceCallback> callbacks = new ArrayList<>();
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                callbacks.add((ServiceCallback) invocation.getArguments()[3]);
+                return null;
+            }
+        });
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.addGroup(OTHER_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+
+        /* Send 2 batches in parallel. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        assertEquals(2, callbacks.size());
+
+        /* Both fail, the second failure does not extend open duration. */
+        callbacks.get(0).onCallFailed(new SocketException());
+        callbacks.get(1).onCallFailed(new SocketException());
+        DefaultChannel.CircuitBreaker circuitBreaker = channel.getCircuitBreaker(mockIngestion);
+        assertEquals(1, circuitBreaker.mFailureCount);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), anyLong());
+
+        /* Logs of both groups are pending while open. */
+        channel.enqueue(mock(Log.class), OTHER_GROUP, Flags.DEFAULTS);
+        assertEquals(2, callbacks.size());
+
+        /* Only one probe batch is sent while half open. */
+        circuitBreaker.mRunnable.run();
+        assertEquals(CIRCUIT_HALF_OPEN, circuitBreaker.mState);
+        assertEquals(3, callbacks.size());
+        channel.enqueue(mock(Log.class), OTHER_GROUP, Flags.DEFAULTS);
+        assertEquals(3, callbacks.size());
+
+        /* Probe success resumes all groups using the ingestion. */
+        callbacks.get(2).onCallSucceeded(new HttpResponse(200, ""));
+        assertNull(channel.getCircuitBreaker(mockIngestion));
+        verify(mAppCenterHandler).removeCallbacks(circuitBreaker.mRunnable);
+        assertEquals(6, callbacks.size());
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertEquals(0, channel.getGroupState(OTHER_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void disableResetsCircuitBreakers() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Ingestion mockIngestion = mock(Ingestion.class);
+        when(mockPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer(1));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer(new SocketException()))
+                .then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<Runnable> halfOpenRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(halfOpenRunnable.capture(), eq(CIRCUIT_BREAKER_INITIAL_OPEN_DURATION));
+
+        /* Disabling cancels the timer and closes circuit breaker. */
+        channel.setEnabled(false);
+        verify(mAppCenterHandler).removeCallbacks(halfOpenRunnable.getValue());
+        assertNull(channel.getCircuitBreaker(mockIngestion));
+
+        /* Enabling again sends logs immediately. */
+        when(mockPersistence.countLogs(TEST_GROUP)).thenReturn(1);
+        channel.removeGroup(TEST_GROUP);
+        channel.setEnabled(true);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+}
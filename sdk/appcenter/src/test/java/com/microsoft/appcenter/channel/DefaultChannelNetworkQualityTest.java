@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.channel;
+
+import android.content.Context;
+
+import com.microsoft.appcenter.Flags;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.Ingestion;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.persistence.Persistence;
+import com.microsoft.appcenter.utils.NetworkLinkType;
+import com.microsoft.appcenter.utils.NetworkQuality;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static com.microsoft.appcenter.channel.DefaultChannel.CONSTRAINED_MAX_LOGS_PER_BATCH;
+import static com.microsoft.appcenter.channel.DefaultChannel.UNMETERED_BATCH_SIZE_MULTIPLIER;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DefaultChannelNetworkQualityTest extends AbstractDefaultChannelTest {
+
+    private static final int MAX_LOGS_PER_BATCH = 20;
+
+    private Persistence mPersistence;
+
+    private Ingestion mIngestion;
+
+    private void setLinkType(@NetworkLinkType int linkType) {
+        NetworkQuality networkQuality = mock(NetworkQuality.class);
+        when(networkQuality.getLinkType()).thenReturn(linkType);
+        when(mNetworkStateHelper.getNetworkQuality()).thenReturn(networkQuality);
+    }
+
+    /**
+     * Create a channel with a paused group holding the specified number of pending logs.
+     */
+    private DefaultChannel createChannel(int pendingLogCount) {
+        mPersistence = mock(Persistence.class);
+        mIngestion = mock(Ingestion.class);
+        when(mPersistence.getLogs(anyString(), anyListOf(String.class), anyInt(), anyListOf(Log.class))).then(getGetLogsAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mPersistence, mIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, MAX_LOGS_PER_BATCH, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.pauseGroup(TEST_GROUP, null);
+        for (int i = 0; i < pendingLogCount; i++) {
+            channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        }
+        return channel;
+    }
+
+    @Test
+    public void largerBatchesOnUnmeteredNetwork() {
+        setLinkType(NetworkLinkType.UNMETERED);
+        DefaultChannel channel = createChannel(3 * MAX_LOGS_PER_BATCH);
+        channel.resumeGroup(TEST_GROUP, null);
+
+        /* Pending logs fit in 2 batches instead of 3. */
+        verify(mPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(MAX_LOGS_PER_BATCH * UNMETERED_BATCH_SIZE_MULTIPLIER), anyListOf(Log.class));
+        verify(mPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(MAX_LOGS_PER_BATCH), anyListOf(Log.class));
+        verify(mIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+
+    @Test
+    public void defaultBatchesOnMeteredOrUnknownNetwork() {
+        for (int linkType : new int[]{NetworkLinkType.METERED, NetworkLinkType.UNKNOWN}) {
+            setLinkType(linkType);
+            DefaultChannel channel = createChannel(3 * MAX_LOGS_PER_BATCH);
+            channel.resumeGroup(TEST_GROUP, null);
+            verify(mPersistence, times(MAX_PARALLEL_BATCHES)).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(MAX_LOGS_PER_BATCH), anyListOf(Log.class));
+            verify(mIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        }
+    }
+
+    @Test
+    public void smallSequentialBatchesOnConstrainedNetwork() {
+        setLinkType(NetworkLinkType.CONSTRAINED);
+        DefaultChannel channel = createChannel(3 * MAX_LOGS_PER_BATCH);
+        channel.resumeGroup(TEST_GROUP, null);
+
+        /* No parallel batch while the first one is being sent. */
+        verify(mPersistence).getLogs(eq(TEST_GROUP), anyListOf(String.class), eq(CONSTRAINED_MAX_LOGS_PER_BATCH), anyListOf(Log.class));
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+
+        /* Parallel batches resume once the network is no longer constrained. */
+        setLinkType(NetworkLinkType.METERED);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mIngestion, times(MAX_PARALLEL_BATCHES)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+    }
+}
@@ -31,20 +31,30 @@ import org.mockito.stubbing.Answer;
 import java.io.IOException;
 import java.net.SocketException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static com.microsoft.appcenter.Flags.NORMAL;
+import static com.microsoft.appcenter.channel.DefaultChannel.CIRCUIT_BREAKER_INITIAL_OPEN_DURATION;
+import static com.microsoft.appcenter.channel.DefaultChannel.CIRCUIT_OPEN;
 import static com.microsoft.appcenter.channel.DefaultChannel.START_TIMER_PREFIX;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -165,6 +175,92 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mockPersistence).deleteLogs(eq(TEST_GROUP));
     }
 
+    @Test
+    public void logKeysSentWithLogs() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class)))
+                .then(new Answer<String>() {
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public String answer(InvocationOnMock invocation) {
+                        ((List<Log>) invocation.getArguments()[3]).add(mock(Log.class));
+                        return "mockBatchId";
+                    }
+                })
+                .thenReturn(null);
+        when(mockPersistence.getLogKeys(TEST_GROUP, "mockBatchId")).thenReturn(Collections.singletonList("1@1000"));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class)))
+                .then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+
+        /* The storage keys of the logs are passed to the ingestion. */
+        ArgumentCaptor<LogContainer> logContainer = ArgumentCaptor.forClass(LogContainer.class);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), logContainer.capture(), any(ServiceCallback.class));
+        assertEquals(Collections.singletonList("1@1000"), logContainer.getValue().getLogKeys());
+        verify(mockPersistence).deleteLogs(TEST_GROUP, "mockBatchId");
+    }
+
+    @Test
+    public void partsHandledSeparately() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        final Log log1 = mock(Log.class);
+        final Log log2 = mock(Log.class);
+        final Log log3 = mock(Log.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class)))
+                .then(new Answer<String>() {
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public String answer(InvocationOnMock invocation) {
+                        ((List<Log>) invocation.getArguments()[3]).addAll(Arrays.asList(log1, log2, log3));
+                        return "mockBatchId";
+                    }
+                })
+                .thenReturn(null);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), callback.capture());
+        assertTrue(callback.getValue() instanceof Ingestion.PartCallback);
+        Ingestion.PartCallback partCallback = (Ingestion.PartCallback) callback.getValue();
+
+        /* A part sent is deleted and reported as a success. */
+        LogContainer part1 = new LogContainer();
+        part1.setLogs(Collections.singletonList(log1));
+        part1.setLogKeys(Collections.singletonList("1@1000"));
+        partCallback.onPartSucceeded(part1, new HttpResponse(200));
+        verify(mockPersistence).deleteLogs(TEST_GROUP, "mockBatchId", part1.getLogKeys());
+        verify(mockListener).onSuccess(log1);
+
+        /* A part rejected is deleted and reported as a failure. */
+        LogContainer part2 = new LogContainer();
+        part2.setLogs(Collections.singletonList(log2));
+        part2.setLogKeys(Collections.singletonList("2@1000"));
+        Exception tooLarge = new HttpException(new HttpResponse(413));
+        partCallback.onPartFailed(part2, tooLarge);
+        verify(mockPersistence).deleteLogs(TEST_GROUP, "mockBatchId", part2.getLogKeys());
+        verify(mockListener).onFailure(log2, tooLarge);
+
+        /* A recoverable failure only keeps the remaining log to send it again. */
+        partCallback.onCallFailed(new HttpException(new HttpResponse(503)));
+        verify(mockPersistence).clearPendingLogState(TEST_GROUP, "mockBatchId");
+        verify(mockPersistence, never()).deleteLogs(TEST_GROUP, "mockBatchId");
+        verify(mockListener, never()).onSuccess(log3);
+        verify(mockListener, never()).onFailure(eq(log3), any(Exception.class));
+        verify(mockListener, never()).onSuccess(log2);
+
+        /* Results of the parts of a batch no longer sent are ignored. */
+        partCallback.onPartSucceeded(part1, new HttpResponse(200));
+        verify(mockPersistence).deleteLogs(TEST_GROUP, "mockBatchId", part1.getLogKeys());
+    }
+
     @Test
     public void lessLogsThanExpected() {
         Persistence mockPersistence = mock(Persistence.class);
@@ -343,28 +439,32 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Verify that we have not called deleteLogs on the Persistence. */
         verify(mockPersistence, never()).deleteLogs(any(String.class), any(String.class));
 
-        /* Verify that the Channel is disabled. */
-        assertFalse(channel.isEnabled());
-        verify(mockPersistence).clearPendingLogState();
+        /* Verify that the Channel is still enabled but the ingestion circuit breaker is open. */
+        assertTrue(channel.isEnabled());
+        assertEquals(CIRCUIT_OPEN, channel.getCircuitBreaker(mockIngestion).mState);
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
+        verify(mockPersistence, never()).clearPendingLogState();
         verify(mockPersistence, never()).deleteLogs(TEST_GROUP);
+        ArgumentCaptor<Runnable> halfOpenRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(halfOpenRunnable.capture(), eq(CIRCUIT_BREAKER_INITIAL_OPEN_DURATION));
 
         /* Enqueuing 20 more events. */
         for (int i = 0; i < 20; i++) {
             channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
         }
 
-        /* The counter keeps being increased. */
+        /* The counter keeps being increased but nothing is sent while circuit breaker is open. */
         assertEquals(70, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
 
         /* Prepare to mock timer. */
         ArgumentCaptor<Runnable> delayedRunnable = ArgumentCaptor.forClass(Runnable.class);
         when(mAppCenterHandler.postDelayed(delayedRunnable.capture(), anyLong())).thenReturn(true);
 
-        /* Enable channel. */
-        channel.setEnabled(true);
-
-        /* Upon enabling, 1st batch of 50 is sent immediately, 20 logs are remaining. */
+        /* Half open circuit breaker: 1st batch of 50 is sent as a probe, 20 logs are remaining. */
+        halfOpenRunnable.getValue().run();
         assertEquals(20, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        assertNull(channel.getCircuitBreaker(mockIngestion));
 
         /* Wait for timer. */
         delayedRunnable.getValue().run();
@@ -387,7 +487,35 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
 
         /* Verify timer. */
         verify(mAppCenterHandler, times(2)).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
-        verify(mAppCenterHandler).removeCallbacks(any(Runnable.class));
+        verify(mAppCenterHandler, times(2)).removeCallbacks(any(Runnable.class));
+        verify(mAppCenterHandler).removeCallbacks(halfOpenRunnable.getValue());
+    }
+
+    @Test
+    public void logTooLarge() throws Exception {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class)))
+                .then(getGetLogsAnswer(1))
+                .then(getGetLogsAnswer(1));
+        HttpException exception = new HttpException(new HttpResponse(413));
+        when(mockIngestion.sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class))).then(getSendAsyncAnswer(exception)).then(getSendAsyncAnswer());
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* The log rejected as too large is discarded. */
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockListener).onFailure(any(Log.class), eq(exception));
+        verify(mockPersistence).deleteLogs(eq(TEST_GROUP), anyString());
+
+        /* The channel keeps sending other logs. */
+        assertTrue(channel.isEnabled());
+        assertNull(channel.getCircuitBreaker(mockIngestion));
+        channel.enqueue(mock(Log.class), TEST_GROUP, Flags.DEFAULTS);
+        verify(mockIngestion, times(2)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mockListener).onSuccess(any(Log.class));
+        verify(mockPersistence, never()).deleteLogs(TEST_GROUP);
     }
 
     @Test
@@ -536,29 +664,35 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         /* Verify that we have called onBeforeSending in the listener. */
         verify(mockListener).onBeforeSending(any(Log.class));
 
-        /* Verify that we have not called the failure listener. It's a transient exception that will be retried later when the channel is re-enabled. */
+        /* Verify that we have not called the failure listener. It's a transient exception that will be retried later when the circuit breaker is half open. */
         verify(mockListener, never()).onFailure(any(Log.class), any(Exception.class));
 
-        /* Verify that the Channel is disabled. */
-        assertFalse(channel.isEnabled());
-        verify(mockPersistence).clearPendingLogState();
+        /* Verify that the Channel is still enabled. */
+        assertTrue(channel.isEnabled());
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
+        verify(mockPersistence, never()).clearPendingLogState();
         verify(mockPersistence, never()).deleteLogs(TEST_GROUP);
+        assertEquals(logNumber, channel.getGroupState(TEST_GROUP).mPendingLogCount);
 
         /* Verify timer. */
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
         verify(mAppCenterHandler, never()).removeCallbacks(any(Runnable.class));
+        ArgumentCaptor<Runnable> halfOpenRunnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(mAppCenterHandler).postDelayed(halfOpenRunnable.capture(), eq(CIRCUIT_BREAKER_INITIAL_OPEN_DURATION));
 
-        channel.setEnabled(true);
+        /* Half open circuit breaker, probe succeeds and closes it. */
+        halfOpenRunnable.getValue().run();
 
-        /* Verify that we have called sendAsync on the ingestion n+1 times total: 1 failure before re-enabling, n success after. */
+        /* Verify that we have called sendAsync on the ingestion n+1 times total: 1 failure before probing, n success after. */
         verify(mockIngestion, times(logNumber + 1)).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
 
         /* Verify that we have called deleteLogs on the Persistence n times. */
         verify(mockPersistence, times(logNumber)).deleteLogs(any(String.class), any(String.class));
+        assertNull(channel.getCircuitBreaker(mockIngestion));
 
         /* Verify timer. */
         verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
-        verify(mAppCenterHandler, never()).removeCallbacks(any(Runnable.class));
+        verify(mAppCenterHandler).removeCallbacks(halfOpenRunnable.getValue());
     }
 
     @Test
@@ -632,7 +766,11 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
         channel.addGroup(TEST_GROUP, 1, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, null);
 
-        assertFalse(channel.isEnabled());
+        /* Recoverable failure only opens the circuit breaker, other batches are still being sent. */
+        assertTrue(channel.isEnabled());
+        assertEquals(CIRCUIT_OPEN, channel.getCircuitBreaker(mockIngestion).mState);
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mSendingBatches.size());
+        assertEquals(1, channel.getGroupState(TEST_GROUP).mPendingLogCount);
     }
 
     @Test
@@ -664,6 +802,92 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mockListener, times(10)).onFailure(any(Log.class), any(Persistence.PersistenceException.class));
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void enqueueAll() throws Persistence.PersistenceException {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        Channel.Listener listener = spy(new AbstractChannelListener());
+        when(mockPersistence.getLogs(any(String.class), anyListOf(String.class), anyInt(), anyListOf(Log.class)))
+                .then(getGetLogsAnswer(50));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.addListener(listener);
+
+        /* Enqueue a full batch at once. */
+        List<Log> logs = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            logs.add(mock(Log.class));
+        }
+        channel.enqueueAll(logs, TEST_GROUP, Flags.DEFAULTS);
+
+        /* Listeners are called for every log but storage is called only once. */
+        verify(listener, times(50)).onPreparingLog(any(Log.class), eq(TEST_GROUP));
+        verify(listener, times(50)).onPreparedLog(any(Log.class), eq(TEST_GROUP), eq(Flags.DEFAULTS));
+        verify(mockPersistence).putLogs(eq(logs), eq(TEST_GROUP), eq(Flags.DEFAULTS), any(Map.class));
+        verify(mockPersistence, never()).putLog(any(Log.class), anyString(), anyInt());
+
+        /* Ingestion was triggered once without waiting for timer. */
+        verify(mockIngestion).sendAsync(anyString(), any(UUID.class), any(LogContainer.class), any(ServiceCallback.class));
+        verify(mAppCenterHandler, never()).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+        assertEquals(0, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+    }
+
+    @Test
+    public void enqueueAllPersistenceFailure() {
+        Persistence mockPersistence = mock(Persistence.class);
+        AppCenterIngestion mockIngestion = mock(AppCenterIngestion.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        final Log failedLog = mock(Log.class);
+        final Persistence.PersistenceException exception = new Persistence.PersistenceException("mock", new IOException("mock"));
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) {
+                ((Map<Log, Persistence.PersistenceException>) invocation.getArguments()[3]).put(failedLog, exception);
+                return null;
+            }
+        }).when(mockPersistence).putLogs(anyCollectionOf(Log.class), anyString(), anyInt(), anyMapOf(Log.class, Persistence.PersistenceException.class));
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mockIngestion, mAppCenterHandler);
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+
+        /* Enqueue 3 logs, one of them fails. */
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        channel.enqueueAll(Arrays.asList(log1, failedLog, log2), TEST_GROUP, Flags.DEFAULTS);
+
+        /* Only the failed log is reported, others are counted and scheduled once. */
+        verify(mockListener).onBeforeSending(failedLog);
+        verify(mockListener).onFailure(failedLog, exception);
+        verify(mockListener, never()).onFailure(eq(log1), any(Exception.class));
+        verify(mockListener, never()).onFailure(eq(log2), any(Exception.class));
+        assertEquals(2, channel.getGroupState(TEST_GROUP).mPendingLogCount);
+        verify(mAppCenterHandler).postDelayed(any(Runnable.class), eq(BATCH_TIME_INTERVAL));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void enqueueAllInvalidGroupOrDiscarded() {
+        Persistence mockPersistence = mock(Persistence.class);
+        Channel.GroupListener mockListener = mock(Channel.GroupListener.class);
+        DefaultChannel channel = new DefaultChannel(mock(Context.class), UUID.randomUUID().toString(), mockPersistence, mock(Ingestion.class), mAppCenterHandler);
+
+        /* Invalid group. */
+        List<Log> logs = Arrays.asList(mock(Log.class), mock(Log.class));
+        channel.enqueueAll(logs, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, never()).putLogs(anyCollectionOf(Log.class), anyString(), anyInt(), any(Map.class));
+
+        /* Discard logs when disabled. */
+        channel.addGroup(TEST_GROUP, 50, BATCH_TIME_INTERVAL, MAX_PARALLEL_BATCHES, null, mockListener);
+        channel.setEnabled(false);
+        channel.enqueueAll(logs, TEST_GROUP, Flags.DEFAULTS);
+        verify(mockPersistence, never()).putLogs(anyCollectionOf(Log.class), anyString(), anyInt(), any(Map.class));
+        verify(mockListener, times(2)).onBeforeSending(any(Log.class));
+        verify(mockListener, times(2)).onFailure(any(Log.class), any(CancellationException.class));
+    }
+
     @Test
     public void setEnabled() throws IOException {
 
@@ -909,7 +1133,7 @@ public class DefaultChannelTest extends AbstractDefaultChannelTest {
         verify(mockPersistence, never()).deleteLogs(TEST_GROUP);
 
         /* But that we cleared batch state. */
-        verify(mockPersistence).clearPendingLogState();
+        verify(mockPersistence).clearPendingLogState(eq(TEST_GROUP), anyString());
     }
 
     @Test
@@ -315,4 +315,12 @@ public class OneCollectorChannelListenerTest {
         listener.setLogUrl(logUrl);
         verify(ingestion).setLogUrl(logUrl);
     }
+
+    @Test
+    public void preconnect() {
+        OneCollectorIngestion ingestion = mock(OneCollectorIngestion.class);
+        OneCollectorChannelListener listener = new OneCollectorChannelListener(ingestion, mock(Channel.class), mock(LogSerializer.class), UUID.randomUUID());
+        listener.preconnect();
+        verify(ingestion).preconnect();
+    }
 }
@@ -7,6 +7,7 @@ package com.microsoft.appcenter.http;
 
 import android.net.TrafficStats;
 import android.os.Build;
+import android.os.Handler;
 import android.util.Log;
 import android.util.Pair;
 
@@ -34,7 +35,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.HttpURLConnection;
+import java.net.SocketException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
@@ -43,20 +47,29 @@ import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSession;
 import javax.net.ssl.SSLSocketFactory;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_GET;
 import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyMapOf;
@@ -117,8 +130,11 @@ public class DefaultHttpClientTest {
                         (HttpClient.CallTemplate) invocation.getArguments()[3],
                         (ServiceCallback) invocation.getArguments()[4],
                         (DefaultHttpClientCallTask.Tracker) invocation.getArguments()[5],
-                        (boolean) invocation.getArguments()[6]));
-                when(call.executeOnExecutor(any(Executor.class))).then(new Answer<DefaultHttpClientCallTask>() {
+                        (boolean) invocation.getArguments()[6],
+                        (boolean) invocation.getArguments()[7],
+                        (Handler) invocation.getArguments()[8],
+                        (HttpBufferPool) invocation.getArguments()[9]));
+                doAnswer(new Answer<DefaultHttpClientCallTask>() {
 
                     @Override
                     public DefaultHttpClientCallTask answer(InvocationOnMock invocation) {
@@ -131,7 +147,7 @@ public class DefaultHttpClientTest {
                         }
                         return call;
                     }
-                });
+                }).when(call).executeOnExecutor(any(Executor.class));
                 if (callback != null) {
                     callback.accept(call);
                 }
@@ -192,6 +208,158 @@ public class DefaultHttpClientTest {
         }));
     }
 
+    @Test
+    public void tls1_2SocketFactoryIsShared() throws Exception {
+        mockCall();
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.KITKAT);
+        ArgumentCaptor<SSLSocketFactory> socketFactory = ArgumentCaptor.forClass(SSLSocketFactory.class);
+        for (int i = 0; i < 2; i++) {
+            String urlString = "https://mock/logs?api-version=1.0.0";
+            HttpsURLConnection urlConnection = mockConnection(urlString);
+            new DefaultHttpClient().callAsync(urlString, METHOD_POST, new HashMap<String, String>(), null, mock(ServiceCallback.class));
+            verify(urlConnection).setSSLSocketFactory(socketFactory.capture());
+        }
+        assertSame(socketFactory.getAllValues().get(0), socketFactory.getAllValues().get(1));
+    }
+
+    @Test
+    public void connectionReuse() throws Exception {
+
+        /* Configure mock HTTPS, handshake happens only on first call. */
+        String urlString = "https://mock/logs?api-version=1.0.0";
+        HostnameVerifier platformVerifier = mock(HostnameVerifier.class);
+        when(platformVerifier.verify(anyString(), any(SSLSession.class))).thenReturn(true);
+        final ConnectionTrackingHostnameVerifier hostnameVerifier = ConnectionTrackingHostnameVerifier.getInstance();
+        Whitebox.setInternalState(hostnameVerifier, "mDelegate", platformVerifier);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true);
+        mockCall();
+        for (int i = 0; i < 3; i++) {
+            HttpsURLConnection urlConnection = mockConnection(urlString);
+            if (i == 0) {
+                when(urlConnection.getResponseCode()).then(new Answer<Integer>() {
+
+                    @Override
+                    public Integer answer(InvocationOnMock invocation) {
+                        assertTrue(hostnameVerifier.verify("mock", mock(SSLSession.class)));
+                        return 200;
+                    }
+                });
+            } else {
+                when(urlConnection.getResponseCode()).thenReturn(200);
+            }
+            when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+            ServiceCallback serviceCallback = mock(ServiceCallback.class);
+            httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+            verify(serviceCallback).onCallSucceeded(any(HttpResponse.class));
+
+            /* Connection is released to the pool instead of being disconnected. */
+            verify(urlConnection).setHostnameVerifier(hostnameVerifier);
+            verify(urlConnection, never()).disconnect();
+        }
+
+        /* Check statistics. */
+        ConnectionPoolStats stats = httpClient.getConnectionPoolStats();
+        assertEquals(3, stats.getRequestCount());
+        assertEquals(1, stats.getNewConnectionCount());
+        assertEquals(2, stats.getReusedConnectionCount());
+        assertEquals(3, stats.getReleasedConnectionCount());
+        assertNotNull(stats.toString());
+    }
+
+    @Test
+    public void connectionReuseDisconnectsOnFailure() throws Exception {
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        InputStream inputStream = mock(InputStream.class);
+        when(urlConnection.getInputStream()).thenReturn(inputStream);
+        InputStreamReader inputStreamReader = mock(InputStreamReader.class);
+        whenNew(InputStreamReader.class).withAnyArguments().thenReturn(inputStreamReader);
+        IOException exception = new IOException("mock");
+        when(inputStreamReader.read(any(char[].class))).thenThrow(exception);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback).onCallFailed(exception);
+
+        /* Partially read connection cannot be reused. */
+        verify(urlConnection).disconnect();
+        ConnectionPoolStats stats = httpClient.getConnectionPoolStats();
+        assertEquals(1, stats.getRequestCount());
+        assertEquals(0, stats.getReleasedConnectionCount());
+
+        /* Connection failures are not counted. */
+        urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenThrow(new IOException());
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(urlConnection).disconnect();
+        assertEquals(1, httpClient.getConnectionPoolStats().getRequestCount());
+    }
+
+    @Test
+    public void preconnectConnectsWithoutRequest() throws Exception {
+        Executor executor = mock(Executor.class);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true, executor, null);
+        HttpsURLConnection urlConnection = mockConnection("https://localhost/logs");
+        mockStatic(TrafficStats.class);
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.LOLLIPOP);
+        httpClient.preconnect("https://localhost/logs");
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+        verify(executor).execute(runnable.capture());
+        runnable.getValue().run();
+
+        /* Connection is configured like calls, connected and disconnected: no call. */
+        verify(urlConnection).setSSLSocketFactory(any(TLS1_2SocketFactory.class));
+        verify(urlConnection).setConnectTimeout(HttpUtils.CONNECT_TIMEOUT);
+        verify(urlConnection).setReadTimeout(HttpUtils.READ_TIMEOUT);
+        verify(urlConnection).connect();
+        verify(urlConnection).disconnect();
+        verify(urlConnection, never()).getResponseCode();
+        verify(urlConnection, never()).getOutputStream();
+        assertEquals(0, httpClient.getConnectionPoolStats().getRequestCount());
+
+        /* Verify socket tagged to avoid strict mode error. */
+        verifyStatic();
+        TrafficStats.setThreadStatsTag(HttpUtils.THREAD_STATS_TAG);
+        verifyStatic();
+        TrafficStats.clearThreadStatsTag();
+    }
+
+    @Test
+    public void preconnectFailuresIgnored() throws Exception {
+        Executor executor = mock(Executor.class);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, false, executor, null);
+        HttpsURLConnection urlConnection = mockConnection("https://localhost:8443/logs");
+        doThrow(new IOException()).when(urlConnection).connect();
+        mockStatic(TrafficStats.class);
+        ArgumentCaptor<Runnable> runnable = ArgumentCaptor.forClass(Runnable.class);
+
+        /* Connection is disconnected when it fails. */
+        httpClient.preconnect("https://localhost:8443/logs");
+        verify(executor).execute(runnable.capture());
+        runnable.getValue().run();
+        verify(urlConnection).disconnect();
+
+        /* Invalid and insecure URLs are ignored. */
+        httpClient.preconnect("mock");
+        verify(executor, times(2)).execute(runnable.capture());
+        runnable.getValue().run();
+        httpClient.preconnect("http://localhost/logs");
+        verify(executor, times(3)).execute(runnable.capture());
+        runnable.getValue().run();
+        verify(urlConnection).connect();
+
+        /* Thread is untagged even after a failure. */
+        verifyStatic(times(3));
+        TrafficStats.clearThreadStatsTag();
+
+        /* Full executor is ignored. */
+        doThrow(new RejectedExecutionException()).when(executor).execute(any(Runnable.class));
+        httpClient.preconnect("https://localhost/logs");
+        assertEquals(0, httpClient.getConnectionPoolStats().getRequestCount());
+    }
+
     @Test
     public void post200() throws Exception {
 
@@ -335,6 +503,113 @@ public class DefaultHttpClientTest {
         httpClient.close();
     }
 
+    @Test
+    public void getStatusOnly() throws Exception {
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getHeaderFields()).thenReturn(Collections.singletonMap("X-Test", Collections.singletonList("value")));
+        ByteArrayInputStream inputStream = spy(new ByteArrayInputStream("OK".getBytes()));
+        when(urlConnection.getInputStream()).thenReturn(inputStream);
+        HttpClient.StreamingResponseCallTemplate callTemplate = mock(HttpClient.StreamingResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STATUS);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+
+        /* Body is read to reuse the connection but not decoded, headers are not copied. */
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "", Collections.<String, String>emptyMap()));
+        assertEquals(0, inputStream.available());
+        verify(inputStream).close();
+        verify(urlConnection, never()).getHeaderFields();
+        verify(urlConnection, never()).disconnect();
+        verify(callTemplate, never()).readResponseBody(any(Reader.class));
+    }
+
+    @Test
+    public void getHeadersOnly() throws Exception {
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getHeaderFields()).thenReturn(Collections.singletonMap("X-Test", Collections.singletonList("value")));
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        HttpClient.ResponseCallTemplate callTemplate = mock(HttpClient.ResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.HEADERS);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        new DefaultHttpClient().callAsync(urlString, METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "", Collections.singletonMap("X-Test", "value")));
+    }
+
+    @Test
+    public void errorIsReadWhenStatusOnly() throws Exception {
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(503);
+        when(urlConnection.getHeaderFields()).thenReturn(Collections.singletonMap("Retry-After", Collections.singletonList("1")));
+        when(urlConnection.getErrorStream()).thenReturn(new ByteArrayInputStream("Busy".getBytes()));
+        HttpClient.ResponseCallTemplate callTemplate = mock(HttpClient.ResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STATUS);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        new DefaultHttpClient().callAsync(urlString, METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallFailed(new HttpException(new HttpResponse(503, "Busy", Collections.singletonMap("Retry-After", "1"))));
+    }
+
+    @Test
+    public void getStreamed() throws Exception {
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getHeaderFields()).thenReturn(Collections.singletonMap("X-Test", Collections.singletonList("value")));
+        ByteArrayInputStream inputStream = spy(new ByteArrayInputStream("{\"a\":1}, ignored".getBytes()));
+        when(urlConnection.getInputStream()).thenReturn(inputStream);
+        HttpClient.StreamingResponseCallTemplate callTemplate = mock(HttpClient.StreamingResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STREAM);
+        final StringBuilder body = new StringBuilder();
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+
+                /* Read only the beginning. */
+                char[] buffer = new char[7];
+                int length = ((Reader) invocation.getArguments()[0]).read(buffer);
+                body.append(buffer, 0, length);
+                return null;
+            }
+        }).when(callTemplate).readResponseBody(any(Reader.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, true);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        assertEquals("{\"a\":1}", body.toString());
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "", Collections.singletonMap("X-Test", "value")));
+
+        /* Rest of the body is skipped to reuse the connection. */
+        assertEquals(0, inputStream.available());
+        verify(inputStream).close();
+        verify(urlConnection, never()).disconnect();
+    }
+
+    @Test
+    public void getStreamedFails() throws Exception {
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("{".getBytes()));
+        HttpClient.StreamingResponseCallTemplate callTemplate = mock(HttpClient.StreamingResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STREAM);
+        JSONException exception = new JSONException("mock");
+        doThrow(exception).when(callTemplate).readResponseBody(any(Reader.class));
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        new DefaultHttpClient(true, true).callAsync(urlString, METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback).onCallFailed(exception);
+        verify(urlConnection).disconnect();
+    }
+
     @Test
     public void get2xx() throws Exception {
 
@@ -667,7 +942,7 @@ public class DefaultHttpClientTest {
 
         /* Cancel and verify. */
         call.cancel();
-        verify(mockCall).cancel(true);
+        verify(mockCall).cancel();
     }
 
     @Test
@@ -687,9 +962,12 @@ public class DefaultHttpClientTest {
                         (HttpClient.CallTemplate) invocation.getArguments()[3],
                         (ServiceCallback) invocation.getArguments()[4],
                         (DefaultHttpClientCallTask.Tracker) invocation.getArguments()[5],
-                        (boolean) invocation.getArguments()[6]));
+                        (boolean) invocation.getArguments()[6],
+                        (boolean) invocation.getArguments()[7],
+                        (Handler) invocation.getArguments()[8],
+                        (HttpBufferPool) invocation.getArguments()[9]));
                 callTask.set(call);
-                when(call.executeOnExecutor(any(Executor.class))).then(new Answer<DefaultHttpClientCallTask>() {
+                doAnswer(new Answer<DefaultHttpClientCallTask>() {
 
                     @Override
                     public DefaultHttpClientCallTask answer(InvocationOnMock invocation) {
@@ -698,7 +976,7 @@ public class DefaultHttpClientTest {
                         /* Simulate we will cancel before doInBackground. */
                         return call;
                     }
-                });
+                }).when(call).executeOnExecutor(any(Executor.class));
                 return call;
             }
         });
@@ -710,10 +988,62 @@ public class DefaultHttpClientTest {
 
         /* Close and verify. */
         httpClient.close();
-        verify(callTask.get()).cancel(true);
+        verify(callTask.get()).cancel();
+        assertEquals(0, httpClient.getTasks().size());
+    }
+
+    @Test
+    public void cancelDisconnectsInFlightCall() throws Exception {
+
+        /* Configure mock HTTPS: cancel while waiting for the response. */
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        final AtomicReference<DefaultHttpClientCallTask> callTask = new AtomicReference<>();
+        mockCall(new Consumer<DefaultHttpClientCallTask>() {
+
+            @Override
+            public void accept(DefaultHttpClientCallTask call) {
+                callTask.set(call);
+            }
+        });
+        when(urlConnection.getResponseCode()).thenAnswer(new Answer<Integer>() {
+
+            @Override
+            public Integer answer(InvocationOnMock invocation) throws Throwable {
+                callTask.get().cancel();
+                throw new SocketException("Socket closed");
+            }
+        });
+
+        /* Connection is disconnected by cancel, then again when the call ends. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), mock(HttpClient.CallTemplate.class), serviceCallback);
+        verify(urlConnection, times(2)).disconnect();
+        verifyNoMoreInteractions(serviceCallback);
         assertEquals(0, httpClient.getTasks().size());
     }
 
+    @Test
+    public void cancelInterruptsRunningThread() {
+        final DefaultHttpClientCallTask call = spy(new DefaultHttpClientCallTask("https://mock/get", METHOD_GET, new HashMap<String, String>(), null, mock(ServiceCallback.class), mock(DefaultHttpClientCallTask.Tracker.class), false, false, mock(Handler.class), new HttpBufferPool()));
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        doAnswer(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                call.cancel();
+                interrupted.set(Thread.currentThread().isInterrupted());
+                return null;
+            }
+        }).when(call).doInBackground();
+        call.run();
+
+        /* Thread is interrupted during the call but not after, to be reused by the executor. */
+        assertTrue(interrupted.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+
     @Test
     public void cancelledBeforeSending() throws Exception {
 
@@ -1007,6 +1337,91 @@ public class DefaultHttpClientTest {
         verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
     }
 
+    @Test
+    public void deliverResultOnCallbackHandler() throws Exception {
+        mockStatic(TrafficStats.class);
+        String urlString = "https://mock/get";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Run calls synchronously, capture posted callback. */
+        Executor executor = mock(Executor.class);
+        doAnswer(new Answer<Object>() {
+
+            @Override
+            public Object answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return null;
+            }
+        }).when(executor).execute(any(Runnable.class));
+        Handler callbackHandler = mock(Handler.class);
+        ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+        when(callbackHandler.post(callback.capture())).thenReturn(true);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, false, executor, callbackHandler);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        httpClient.callAsync(urlString, METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+
+        /* Result is delivered only on callback handler. */
+        verify(urlConnection).disconnect();
+        verifyZeroInteractions(serviceCallback);
+        assertEquals(1, httpClient.getTasks().size());
+        callback.getValue().run();
+        verify(serviceCallback).onCallSucceeded(any(HttpResponse.class));
+        assertEquals(0, httpClient.getTasks().size());
+    }
+
+    @Test
+    public void rejectedByExecutorOnCallbackHandler() {
+        Executor executor = mock(Executor.class);
+        RejectedExecutionException exception = new RejectedExecutionException();
+        doThrow(exception).when(executor).execute(any(Runnable.class));
+        Handler callbackHandler = mock(Handler.class);
+        ArgumentCaptor<Runnable> callback = ArgumentCaptor.forClass(Runnable.class);
+        when(callbackHandler.post(callback.capture())).thenReturn(true);
+        DefaultHttpClient httpClient = new DefaultHttpClient(true, false, executor, callbackHandler);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        httpClient.callAsync("https://mock/get", METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        assertEquals(0, httpClient.getTasks().size());
+        verifyZeroInteractions(serviceCallback);
+        callback.getValue().run();
+        verify(serviceCallback).onCallFailed(exception);
+    }
+
+    @Test
+    public void boundedExecutorWithNamedThreads() throws Exception {
+        ExecutorService executor = DefaultHttpClient.createExecutor(1, 1, 0);
+        final Semaphore started = new Semaphore(0);
+        final Semaphore release = new Semaphore(0);
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        try {
+
+            /* Block the only thread. */
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    threadName.set(Thread.currentThread().getName());
+                    started.release();
+                    release.acquireUninterruptibly();
+                }
+            });
+            started.acquireUninterruptibly();
+            assertTrue(threadName.get().startsWith(DefaultHttpClient.THREAD_NAME_PREFIX));
+
+            /* Fill the queue then check rejection. */
+            executor.execute(mock(Runnable.class));
+            try {
+                executor.execute(mock(Runnable.class));
+                fail("Expected rejection when queue is full");
+            } catch (RejectedExecutionException ignored) {
+            }
+        } finally {
+            release.release();
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void sendGzipWithoutVerboseLogging() throws Exception {
 
@@ -1076,6 +1491,108 @@ public class DefaultHttpClientTest {
         }));
     }
 
+    @Test
+    public void sendStreamingGzipWithChunkedTransfer() throws Exception {
+
+        /* Mock no verbose logging. */
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.DEBUG);
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        ByteArrayOutputStream buffer = spy(new ByteArrayOutputStream());
+        when(urlConnection.getOutputStream()).thenReturn(buffer);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+
+        /* Short payload is compressed too as size is unknown while streaming. */
+        final String payload = "{a:1,b:2}";
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[0]).write(payload);
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(any(Writer.class));
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+
+        /* Test calling code. */
+        Map<String, String> headers = new HashMap<>();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mockCall();
+        httpClient.callAsync(urlString, METHOD_POST, headers, callTemplate, serviceCallback);
+        verify(serviceCallback).onCallSucceeded(new HttpResponse(200, "OK", Collections.<String, String>emptyMap()));
+        verifyNoMoreInteractions(serviceCallback);
+        verify(urlConnection).setRequestProperty("Content-Type", "application/json");
+        verify(urlConnection).setRequestProperty("Content-Encoding", "gzip");
+        verify(urlConnection).setDoOutput(true);
+        verify(urlConnection).setChunkedStreamingMode(DefaultHttpClientCallTask.STREAMING_CHUNK_LENGTH);
+        verify(urlConnection, never()).setFixedLengthStreamingMode(anyInt());
+        verify(callTemplate).onBeforeCalling(any(URL.class), anyMapOf(String.class, String.class));
+        verify(callTemplate, never()).buildRequestBody();
+        verify(buffer).close();
+        httpClient.close();
+
+        /* Verify payload compressed. */
+        InputStreamReader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(buffer.toByteArray())), StandardCharsets.UTF_8);
+        char[] chars = new char[payload.length() + 1];
+        assertEquals(payload.length(), reader.read(chars));
+        assertEquals(payload, new String(chars, 0, payload.length()));
+    }
+
+    @Test
+    public void sendStreamingFallsBackWithVerboseLoggingOrWithoutCompression() throws Exception {
+
+        /* Configure mock HTTPS. */
+        String urlString = "https://mock";
+        HttpsURLConnection urlConnection = mockConnection(urlString);
+        when(urlConnection.getResponseCode()).thenReturn(200);
+        when(urlConnection.getOutputStream()).thenReturn(new ByteArrayOutputStream());
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{}");
+        mockCall();
+
+        /* Payload needs to be in memory to be logged. */
+        mockStatic(AppCenterLog.class);
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.VERBOSE);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        httpClient.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, mock(ServiceCallback.class));
+
+        /* Compression disabled. */
+        when(AppCenterLog.getLogLevel()).thenReturn(Log.DEBUG);
+        when(urlConnection.getInputStream()).thenReturn(new ByteArrayInputStream("OK".getBytes()));
+        DefaultHttpClient httpClientWithoutCompression = new DefaultHttpClient(false);
+        httpClientWithoutCompression.callAsync(urlString, METHOD_POST, new HashMap<String, String>(), callTemplate, mock(ServiceCallback.class));
+
+        /* Verify both calls built the payload. */
+        verify(callTemplate, times(2)).buildRequestBody();
+        verify(callTemplate, never()).writeRequestBody(any(Writer.class));
+        verify(urlConnection, times(2)).setFixedLengthStreamingMode(2);
+        verify(urlConnection, never()).setChunkedStreamingMode(anyInt());
+        httpClient.close();
+        httpClientWithoutCompression.close();
+    }
+
+    @Test
+    public void compressionLevel() {
+        mockStatic(AppCenterLog.class);
+        DefaultHttpClient httpClient = new DefaultHttpClient();
+        assertEquals(Deflater.DEFAULT_COMPRESSION, httpClient.getCompressionLevel());
+        httpClient.setCompressionLevel(Deflater.BEST_SPEED);
+        assertEquals(Deflater.BEST_SPEED, httpClient.getCompressionLevel());
+
+        /* Invalid levels are ignored. */
+        httpClient.setCompressionLevel(Deflater.NO_COMPRESSION);
+        httpClient.setCompressionLevel(Deflater.BEST_COMPRESSION + 1);
+        assertEquals(Deflater.BEST_SPEED, httpClient.getCompressionLevel());
+        verifyStatic(times(2));
+        AppCenterLog.error(anyString(), anyString());
+    }
+
     @Test
     public void sendNoGzipWhenCompressionDisabled() throws Exception {
 
@@ -0,0 +1,244 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test vectors come from RFC 7541 appendix C.
+ */
+public class HpackTest {
+
+    private static byte[] hex(String hex) {
+        hex = hex.replace(" ", "");
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static List<String[]> headers(String... namesAndValues) {
+        List<String[]> headers = new ArrayList<>();
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.add(new String[]{namesAndValues[i], namesAndValues[i + 1]});
+        }
+        return headers;
+    }
+
+    private static void assertHeaders(List<String[]> expected, List<String[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static byte[] encode(HpackEncoder encoder, List<String[]> headers) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        encoder.encode(headers, out);
+        return out.toByteArray();
+    }
+
+    private static List<String[]> decode(HpackDecoder decoder, byte[] block) throws IOException {
+        return decoder.decode(block, block.length);
+    }
+
+    @Test
+    public void huffman() throws IOException {
+        String[][] vectors = {
+                {"www.example.com", "f1e3 c2e5 f23a 6ba0 ab90 f4ff"},
+                {"no-cache", "a8eb 1064 9cbf"},
+                {"custom-value", "25a8 49e9 5bb8 e8b4 bf"},
+                {"Mon, 21 Oct 2013 20:13:21 GMT", "d07a be94 1054 d444 a820 0595 040b 8166 e082 a62d 1bff"},
+                {"https://www.example.com", "9d29 ad17 1863 c78f 0b97 c8e9 ae82 ae43 d3"}
+        };
+        for (String[] vector : vectors) {
+            byte[] data = vector[0].getBytes(StandardCharsets.ISO_8859_1);
+            byte[] encoded = hex(vector[1]);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            HpackHuffman.encode(data, out);
+            assertArrayEquals(vector[0], encoded, out.toByteArray());
+            assertEquals(encoded.length, HpackHuffman.getEncodedLength(data));
+            assertArrayEquals(data, HpackHuffman.decode(encoded, 0, encoded.length));
+        }
+
+        /* All octets round trip. */
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HpackHuffman.encode(data, out);
+        assertArrayEquals(data, HpackHuffman.decode(out.toByteArray(), 0, out.size()));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void huffmanInvalidPadding() throws IOException {
+
+        /* "0" is 00000, padding must be ones. */
+        HpackHuffman.decode(new byte[]{0x00}, 0, 1);
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void huffmanPaddingTooLong() throws IOException {
+        HpackHuffman.decode(new byte[]{(byte) 0xff, (byte) 0xff}, 0, 2);
+    }
+
+    @Test
+    public void requestsWithHuffman() throws IOException {
+        List<String[]> first = headers(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com");
+        List<String[]> second = headers(":method", "GET", ":scheme", "http", ":path", "/", ":authority", "www.example.com", "cache-control", "no-cache");
+        List<String[]> third = headers(":method", "GET", ":scheme", "https", ":path", "/index.html", ":authority", "www.example.com", "custom-key", "custom-value");
+        byte[] firstBlock = hex("8286 8441 8cf1 e3c2 e5f2 3a6b a0ab 90f4 ff");
+        byte[] secondBlock = hex("8286 84be 5886 a8eb 1064 9cbf");
+        byte[] thirdBlock = hex("8287 85bf 4088 25a8 49e9 5ba9 7d7f 8925 a849 e95b b8e8 b4bf");
+
+        /* Encoder produces the same blocks. */
+        HpackEncoder encoder = new HpackEncoder();
+        assertArrayEquals(firstBlock, encode(encoder, first));
+        assertArrayEquals(secondBlock, encode(encoder, second));
+        assertArrayEquals(thirdBlock, encode(encoder, third));
+
+        /* Decoder. */
+        HpackDecoder decoder = new HpackDecoder();
+        assertHeaders(first, decode(decoder, firstBlock));
+        assertHeaders(second, decode(decoder, secondBlock));
+        assertHeaders(third, decode(decoder, thirdBlock));
+    }
+
+    @Test
+    public void sensitiveHeadersNeverIndexed() throws IOException {
+        List<String[]> secrets = headers("app-secret", "secret", "apikey", "key", "tickets", "{\"a\":\"b\"}");
+        List<String[]> headers = new ArrayList<>(secrets);
+        headers.add(new String[]{"install-id", "id"});
+        HpackEncoder encoder = new HpackEncoder();
+        byte[] firstBlock = encode(encoder, headers);
+        byte[] secondBlock = encode(encoder, headers);
+
+        /* Secrets are sent as never indexed literals every time, the other header is then indexed. */
+        int secretsLength = encode(new HpackEncoder(), secrets).length;
+        assertEquals(HpackEncoder.LITERAL_NEVER_INDEXED, firstBlock[0]);
+        assertEquals(HpackEncoder.LITERAL_NEVER_INDEXED, secondBlock[0]);
+        assertEquals(secretsLength + 1, secondBlock.length);
+        assertArrayEquals(Arrays.copyOf(firstBlock, secretsLength), Arrays.copyOf(secondBlock, secretsLength));
+        assertEquals(0x80, secondBlock[secretsLength] & 0x80);
+        HpackDecoder decoder = new HpackDecoder();
+        assertHeaders(headers, decode(decoder, firstBlock));
+        assertHeaders(headers, decode(decoder, secondBlock));
+
+        /* Names from the static table are still referenced by index. */
+        assertArrayEquals(hex("1f08 00"), Arrays.copyOf(encode(new HpackEncoder(), headers("authorization", "")), 3));
+    }
+
+    @Test
+    public void responsesWithEviction() throws IOException {
+
+        /* RFC 7541 C.6 with a 256 bytes table. */
+        HpackDecoder decoder = new HpackDecoder();
+        assertHeaders(headers(), decode(decoder, hex("3fe1 01")));
+        assertHeaders(headers(":status", "302", "cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decode(decoder, hex("4882 6402 5885 aec3 771a 4b61 96d0 7abe 9410 54d4 44a8 2005 9504 0b81 66e0 82a6 2d1b ff6e 919d 29ad 1718 63c7 8f0b 97c8 e9ae 82ae 43d3")));
+        assertHeaders(headers(":status", "307", "cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:21 GMT", "location", "https://www.example.com"),
+                decode(decoder, hex("4883 640e ffc1 c0bf")));
+        assertHeaders(headers(":status", "200", "cache-control", "private", "date", "Mon, 21 Oct 2013 20:13:22 GMT", "location", "https://www.example.com",
+                "content-encoding", "gzip", "set-cookie", "foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"),
+                decode(decoder, hex("88c1 6196 d07a be94 1054 d444 a820 0595 040b 8166 e084 a62d 1bff c05a 839b d9ab 77ad 94e7 821d d7f2 e6c7 b335 dfdf cd5b 3960 d5af 2708 7f36 72c1 ab27 0fb5 291f 9587 3160 65c0 03ed 4ee5 b106 3d50 07")));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void invalidIndex() throws IOException {
+        decode(new HpackDecoder(), hex("be"));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void tableSizeUpdateAfterHeader() throws IOException {
+        decode(new HpackDecoder(), hex("8220"));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void truncatedString() throws IOException {
+        decode(new HpackDecoder(), hex("4003 6162"));
+    }
+
+    @Test
+    public void headerListSizeLimit() throws IOException {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        List<String[]> headers = headers("x-large", "0123456789", "x-test", "value");
+        int size = "x-large".length() + "0123456789".length() + "x-test".length() + "value".length() + 2 * 32;
+        byte[] block = encode(encoder, headers);
+        assertNull(decoder.decode(block, block.length, size - 1));
+
+        /* Table is still in sync with the encoder. */
+        block = encode(encoder, headers);
+        assertHeaders(headers, decoder.decode(block, block.length, size));
+    }
+
+    @Test
+    public void repeatedHeadersAreIndexed() throws IOException {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        List<String[]> first = headers(":method", "POST", ":path", "/logs?api-version=1.0.0", "app-secret", "00000000-0000-0000-0000-000000000000",
+                "install-id", "11111111-1111-1111-1111-111111111111", "content-length", "1000");
+        List<String[]> second = headers(":method", "POST", ":path", "/logs?api-version=1.0.0", "app-secret", "00000000-0000-0000-0000-000000000000",
+                "install-id", "11111111-1111-1111-1111-111111111111", "content-length", "2000");
+        List<String[]> third = headers(":method", "POST", ":path", "/logs?api-version=1.0.0", "app-secret", "00000000-0000-0000-0000-000000000000",
+                "install-id", "11111111-1111-1111-1111-111111111111", "content-length", "3000");
+        byte[] firstBlock = encode(encoder, first);
+        byte[] secondBlock = encode(encoder, second);
+        byte[] thirdBlock = encode(encoder, third);
+        assertHeaders(first, decode(decoder, firstBlock));
+        assertHeaders(second, decode(decoder, secondBlock));
+        assertHeaders(third, decode(decoder, thirdBlock));
+
+        /* Install identifier and path take one byte each after the first request, the secret is never indexed. */
+        int secretLength = encode(new HpackEncoder(), headers("app-secret", "00000000-0000-0000-0000-000000000000")).length;
+        assertTrue(firstBlock.length > 60);
+        assertEquals((byte) 0x83, thirdBlock[0]);
+        assertEquals(HpackEncoder.LITERAL_NEVER_INDEXED, thirdBlock[2]);
+        assertEquals(secondBlock.length, thirdBlock.length);
+        assertTrue(thirdBlock.length < 12 + secretLength);
+
+        /* A length changing on every request is not indexed after the first one. */
+        assertEquals(0x0f, thirdBlock[3 + secretLength] & 0xff);
+        assertEquals(0x0d, thirdBlock[4 + secretLength] & 0xff);
+    }
+
+    @Test
+    public void tableSizeUpdate() throws IOException {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        List<String[]> headers = headers("install-id", "id");
+        decode(decoder, encode(encoder, headers));
+
+        /* Peer disables the dynamic table: the encoder announces it and sends literals. */
+        encoder.setMaxTableSize(0);
+        byte[] block = encode(encoder, headers);
+        assertEquals(0x20, block[0]);
+        assertHeaders(headers, decode(decoder, block));
+        encoder.setMaxTableSize(0);
+        assertEquals(0x40, encode(encoder, headers)[0]);
+
+        /* Size larger than ours is capped. */
+        encoder.setMaxTableSize(8192);
+        block = encode(encoder, headers);
+        assertArrayEquals(Arrays.copyOf(hex("3fe1 1f"), 3), Arrays.copyOf(block, 3));
+        assertHeaders(headers, decode(decoder, block));
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.microsoft.appcenter.http.Http2Session.DEFAULT_MAX_FRAME_SIZE;
+import static com.microsoft.appcenter.http.Http2Session.DEFAULT_WINDOW_SIZE;
+import static com.microsoft.appcenter.http.Http2Session.ERROR_CANCEL;
+import static com.microsoft.appcenter.http.Http2Session.ERROR_NO_ERROR;
+import static com.microsoft.appcenter.http.Http2Session.ERROR_REFUSED_STREAM;
+import static com.microsoft.appcenter.http.Http2Session.FLAG_ACK;
+import static com.microsoft.appcenter.http.Http2Session.FLAG_END_HEADERS;
+import static com.microsoft.appcenter.http.Http2Session.FLAG_END_STREAM;
+import static com.microsoft.appcenter.http.Http2Session.FLAG_PADDED;
+import static com.microsoft.appcenter.http.Http2Session.FRAME_HEADER_LENGTH;
+import static com.microsoft.appcenter.http.Http2Session.MAX_HEADER_LIST_SIZE;
+import static com.microsoft.appcenter.http.Http2Session.SETTINGS_ENABLE_PUSH;
+import static com.microsoft.appcenter.http.Http2Session.SETTINGS_MAX_CONCURRENT_STREAMS;
+import static com.microsoft.appcenter.http.Http2Session.SETTINGS_MAX_HEADER_LIST_SIZE;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_CONTINUATION;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_DATA;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_GOAWAY;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_HEADERS;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_PING;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_PUSH_PROMISE;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_RST_STREAM;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_SETTINGS;
+import static com.microsoft.appcenter.http.Http2Session.TYPE_WINDOW_UPDATE;
+import static com.microsoft.appcenter.http.HttpResponseParser.MAX_BODY_SIZE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Http2SessionTest {
+
+    private static final String PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
+
+    private Http2Session mSession;
+
+    private final HpackEncoder mServerEncoder = new HpackEncoder();
+
+    private final HpackDecoder mServerDecoder = new HpackDecoder();
+
+    private static ByteBuffer frame(int type, int flags, int streamId, byte[] payload) {
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + payload.length);
+        frame.put((byte) (payload.length >>> 16));
+        frame.put((byte) (payload.length >>> 8));
+        frame.put((byte) payload.length);
+        frame.put((byte) type);
+        frame.put((byte) flags);
+        frame.putInt(streamId);
+        frame.put(payload);
+        frame.flip();
+        return frame;
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static List<String[]> responseHeaders(String status, String... namesAndValues) {
+        List<String[]> headers = new ArrayList<>();
+        headers.add(new String[]{":status", status});
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            headers.add(new String[]{namesAndValues[i], namesAndValues[i + 1]});
+        }
+        return headers;
+    }
+
+    private static List<String[]> requestHeaders() {
+        List<String[]> headers = new ArrayList<>();
+        headers.add(new String[]{":method", "POST"});
+        headers.add(new String[]{":scheme", "https"});
+        headers.add(new String[]{":authority", "in.appcenter.ms"});
+        headers.add(new String[]{":path", "/logs?api-version=1.0.0"});
+        headers.add(new String[]{"app-secret", "secret"});
+        return headers;
+    }
+
+    private byte[] encodeResponse(List<String[]> headers) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        mServerEncoder.encode(headers, block);
+        return block.toByteArray();
+    }
+
+    /**
+     * Consume the session output.
+     */
+    private List<Frame> readOutput() {
+        ByteBuffer output = mSession.getOutput();
+        output.flip();
+        List<Frame> frames = new ArrayList<>();
+        while (output.hasRemaining()) {
+            Frame frame = new Frame();
+            int length = (output.get() & 0xff) << 16 | (output.get() & 0xff) << 8 | (output.get() & 0xff);
+            frame.mType = output.get();
+            frame.mFlags = output.get();
+            frame.mStreamId = output.getInt();
+            frame.mPayload = new byte[length];
+            output.get(frame.mPayload);
+            frames.add(frame);
+        }
+        output.clear();
+        return frames;
+    }
+
+    @Before
+    public void setUp() {
+        mSession = new Http2Session();
+
+        /* Check and skip preface. */
+        ByteBuffer output = mSession.getOutput();
+        output.flip();
+        byte[] preface = new byte[PREFACE.length()];
+        output.get(preface);
+        assertEquals(PREFACE, new String(preface, StandardCharsets.US_ASCII));
+        output.compact();
+    }
+
+    @Test
+    public void settings() throws IOException {
+
+        /* Client disables push and limits response headers. */
+        List<Frame> frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(TYPE_SETTINGS, frames.get(0).mType);
+        ByteBuffer settings = ByteBuffer.wrap(frames.get(0).mPayload);
+        assertEquals(SETTINGS_ENABLE_PUSH, settings.getShort());
+        assertEquals(0, settings.getInt());
+        assertEquals(SETTINGS_MAX_HEADER_LIST_SIZE, settings.getShort());
+        assertEquals(MAX_HEADER_LIST_SIZE, settings.getInt());
+        assertFalse(settings.hasRemaining());
+
+        /* Server limits streams, client acknowledges. */
+        ByteBuffer payload = ByteBuffer.allocate(6);
+        payload.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS);
+        payload.putInt(1);
+        mSession.feed(frame(TYPE_SETTINGS, 0, 0, payload.array()));
+        frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(TYPE_SETTINGS, frames.get(0).mType);
+        assertEquals(FLAG_ACK, frames.get(0).mFlags);
+        assertTrue(mSession.canOpenStream());
+        mSession.openStream(requestHeaders(), null, 0, null);
+        assertFalse(mSession.canOpenStream());
+        assertTrue(mSession.isAcceptingStreams());
+
+        /* Settings acknowledgment is not acknowledged. */
+        readOutput();
+        mSession.feed(frame(TYPE_SETTINGS, FLAG_ACK, 0, new byte[0]));
+        assertTrue(readOutput().isEmpty());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void invalidSettings() throws IOException {
+        mSession.feed(frame(TYPE_SETTINGS, 0, 0, new byte[5]));
+    }
+
+    @Test
+    public void requestAndResponse() throws IOException {
+        readOutput();
+        Object tag = new Object();
+        byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+        Http2Session.Stream stream = mSession.openStream(requestHeaders(), body, body.length, tag);
+        assertEquals(1, stream.getId());
+        assertSame(tag, stream.getTag());
+        assertEquals(1, mSession.getStreamCount());
+
+        /* Headers then body. */
+        assertTrue(mSession.hasPendingData());
+        mSession.fillOutput();
+        assertFalse(mSession.hasPendingData());
+        List<Frame> frames = readOutput();
+        assertEquals(2, frames.size());
+        Frame headers = frames.get(0);
+        assertEquals(TYPE_HEADERS, headers.mType);
+        assertEquals(FLAG_END_HEADERS, headers.mFlags);
+        assertEquals(1, headers.mStreamId);
+        List<String[]> decoded = mServerDecoder.decode(headers.mPayload, headers.mPayload.length);
+        assertEquals(requestHeaders().size(), decoded.size());
+        assertArrayEquals(new String[]{"app-secret", "secret"}, decoded.get(4));
+        Frame data = frames.get(1);
+        assertEquals(TYPE_DATA, data.mType);
+        assertEquals(FLAG_END_STREAM, data.mFlags);
+        assertEquals("hello", new String(data.mPayload, StandardCharsets.UTF_8));
+
+        /* Response with padded data. */
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS, 1, encodeResponse(responseHeaders("200", "x-test", "value"))));
+        assertTrue(mSession.pollFinishedStreams().isEmpty());
+        mSession.feed(frame(TYPE_DATA, FLAG_END_STREAM | FLAG_PADDED, 1, new byte[]{2, 'O', 'K', 0, 0}));
+        List<Http2Session.Stream> finished = mSession.pollFinishedStreams();
+        assertEquals(1, finished.size());
+        assertSame(stream, finished.get(0));
+        assertNull(stream.getError());
+        assertEquals(200, stream.getStatusCode());
+        assertEquals("value", stream.getHeaders().get("x-test"));
+        assertFalse(stream.getHeaders().containsKey(":status"));
+        assertEquals("OK", stream.getBody());
+        assertEquals(0, mSession.getStreamCount());
+        assertEquals(1, mSession.getCompletedStreamCount());
+
+        /* Connection flow control credit is given back, padding included. */
+        frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(TYPE_WINDOW_UPDATE, frames.get(0).mType);
+        assertEquals(0, frames.get(0).mStreamId);
+        assertEquals(5, ByteBuffer.wrap(frames.get(0).mPayload).getInt());
+    }
+
+    @Test
+    public void informationalResponseAndContinuation() throws IOException {
+        Http2Session.Stream stream = mSession.openStream(requestHeaders(), null, 0, null);
+        readOutput();
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS, 1, encodeResponse(responseHeaders("100"))));
+        byte[] block = encodeResponse(responseHeaders("503", "retry-after", "10"));
+        int split = block.length / 2;
+
+        /* Frames received one byte at a time. */
+        ByteBuffer headers = frame(TYPE_HEADERS, FLAG_END_STREAM, 1, Arrays.copyOf(block, split));
+        ByteBuffer continuation = frame(TYPE_CONTINUATION, FLAG_END_HEADERS, 1, Arrays.copyOfRange(block, split, block.length));
+        ByteBuffer both = ByteBuffer.allocate(headers.remaining() + continuation.remaining());
+        both.put(headers).put(continuation).flip();
+        while (both.hasRemaining()) {
+            mSession.feed(ByteBuffer.wrap(new byte[]{both.get()}));
+        }
+        assertEquals(1, mSession.pollFinishedStreams().size());
+        assertEquals(503, stream.getStatusCode());
+        assertEquals("10", stream.getHeaders().get("retry-after"));
+        assertEquals("", stream.getBody());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void interruptedHeaderBlock() throws IOException {
+        mSession.openStream(requestHeaders(), null, 0, null);
+        mSession.feed(frame(TYPE_HEADERS, 0, 1, encodeResponse(responseHeaders("200"))));
+        mSession.feed(frame(TYPE_DATA, 0, 1, new byte[1]));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void headerBlockTooLarge() throws IOException {
+        mSession.openStream(requestHeaders(), null, 0, null);
+        byte[] fragment = new byte[MAX_HEADER_LIST_SIZE / 2];
+        mSession.feed(frame(TYPE_HEADERS, 0, 1, fragment));
+        mSession.feed(frame(TYPE_CONTINUATION, 0, 1, fragment));
+        mSession.feed(frame(TYPE_CONTINUATION, FLAG_END_HEADERS, 1, new byte[1]));
+    }
+
+    @Test
+    public void headerListTooLarge() throws IOException {
+        Http2Session.Stream first = mSession.openStream(requestHeaders(), null, 0, null);
+        Http2Session.Stream second = mSession.openStream(requestHeaders(), null, 0, null);
+        readOutput();
+
+        /* Header repeated from the dynamic table: small block, large list. */
+        char[] value = new char[1000];
+        Arrays.fill(value, 'a');
+        List<String[]> headers = responseHeaders("200");
+        for (int i = 0; i < MAX_HEADER_LIST_SIZE / value.length; i++) {
+            headers.add(new String[]{"x-large", new String(value)});
+        }
+        byte[] block = encodeResponse(headers);
+        assertTrue(block.length < MAX_HEADER_LIST_SIZE);
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS, 1, block));
+        List<Http2Session.Stream> finished = mSession.pollFinishedStreams();
+        assertEquals(1, finished.size());
+        assertSame(first, finished.get(0));
+        assertTrue(first.getError() instanceof ProtocolException);
+        assertFalse(first.isRefused());
+        List<Frame> frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(TYPE_RST_STREAM, frames.get(0).mType);
+        assertEquals(1, frames.get(0).mStreamId);
+        assertEquals(ERROR_CANCEL, ByteBuffer.wrap(frames.get(0).mPayload).getInt());
+
+        /* Late data of the reset stream is ignored, the other stream still completes. */
+        mSession.feed(frame(TYPE_DATA, FLAG_END_STREAM, 1, new byte[1]));
+        assertTrue(mSession.pollFinishedStreams().isEmpty());
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_END_STREAM, 3, encodeResponse(responseHeaders("200"))));
+        assertSame(second, mSession.pollFinishedStreams().get(0));
+        assertNull(second.getError());
+    }
+
+    @Test
+    public void bodyTooLarge() throws IOException {
+        Http2Session.Stream first = mSession.openStream(requestHeaders(), null, 0, null);
+        Http2Session.Stream second = mSession.openStream(requestHeaders(), null, 0, null);
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS, 1, encodeResponse(responseHeaders("200"))));
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS, 3, encodeResponse(responseHeaders("200"))));
+        byte[] data = new byte[DEFAULT_MAX_FRAME_SIZE];
+        for (int i = 0; i < MAX_BODY_SIZE / data.length; i++) {
+            mSession.feed(frame(TYPE_DATA, 0, 1, data));
+        }
+        assertTrue(mSession.pollFinishedStreams().isEmpty());
+        readOutput();
+
+        /* One more byte resets only this stream. */
+        mSession.feed(frame(TYPE_DATA, 0, 1, new byte[1]));
+        List<Http2Session.Stream> finished = mSession.pollFinishedStreams();
+        assertEquals(1, finished.size());
+        assertSame(first, finished.get(0));
+        assertTrue(first.getError() instanceof ProtocolException);
+        List<Frame> frames = readOutput();
+        assertEquals(2, frames.size());
+        assertEquals(TYPE_RST_STREAM, frames.get(0).mType);
+        assertEquals(1, frames.get(0).mStreamId);
+        assertEquals(ERROR_CANCEL, ByteBuffer.wrap(frames.get(0).mPayload).getInt());
+
+        /* The connection window is still replenished. */
+        assertEquals(TYPE_WINDOW_UPDATE, frames.get(1).mType);
+        assertEquals(0, frames.get(1).mStreamId);
+        assertEquals(1, ByteBuffer.wrap(frames.get(1).mPayload).getInt());
+        mSession.feed(frame(TYPE_DATA, FLAG_END_STREAM, 3, new byte[1]));
+        assertSame(second, mSession.pollFinishedStreams().get(0));
+        assertNull(second.getError());
+    }
+
+    @Test
+    public void flowControl() throws IOException {
+        readOutput();
+        byte[] body = new byte[DEFAULT_WINDOW_SIZE + 1000];
+        mSession.openStream(requestHeaders(), body, body.length, null);
+        mSession.fillOutput();
+        List<Frame> frames = readOutput();
+        int sent = 0;
+        for (Frame frame : frames.subList(1, frames.size())) {
+            assertEquals(TYPE_DATA, frame.mType);
+            assertEquals(0, frame.mFlags);
+            assertTrue(frame.mPayload.length <= DEFAULT_MAX_FRAME_SIZE);
+            sent += frame.mPayload.length;
+        }
+        assertEquals(DEFAULT_WINDOW_SIZE, sent);
+        assertFalse(mSession.hasPendingData());
+
+        /* Stream window alone is not enough. */
+        mSession.feed(frame(TYPE_WINDOW_UPDATE, 0, 1, ints(5000)));
+        assertFalse(mSession.hasPendingData());
+        mSession.feed(frame(TYPE_WINDOW_UPDATE, 0, 0, ints(400)));
+        assertTrue(mSession.hasPendingData());
+        mSession.fillOutput();
+        frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(400, frames.get(0).mPayload.length);
+        assertEquals(0, frames.get(0).mFlags);
+
+        /* Rest of the body. */
+        mSession.feed(frame(TYPE_WINDOW_UPDATE, 0, 0, ints(5000)));
+        mSession.fillOutput();
+        frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(600, frames.get(0).mPayload.length);
+        assertEquals(FLAG_END_STREAM, frames.get(0).mFlags);
+        assertFalse(mSession.hasPendingData());
+    }
+
+    @Test
+    public void earlyResponseStopsBody() throws IOException {
+        byte[] body = new byte[DEFAULT_WINDOW_SIZE * 2];
+        mSession.openStream(requestHeaders(), body, body.length, null);
+        mSession.fillOutput();
+        readOutput();
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_END_STREAM, 1, encodeResponse(responseHeaders("413"))));
+        assertEquals(413, mSession.pollFinishedStreams().get(0).getStatusCode());
+
+        /* The response is complete: this is not a cancellation. */
+        List<Frame> frames = readOutput();
+        assertEquals(TYPE_RST_STREAM, frames.get(0).mType);
+        assertEquals(ERROR_NO_ERROR, ByteBuffer.wrap(frames.get(0).mPayload).getInt());
+        mSession.feed(frame(TYPE_WINDOW_UPDATE, 0, 0, ints(DEFAULT_WINDOW_SIZE)));
+        assertFalse(mSession.hasPendingData());
+    }
+
+    @Test
+    public void resetAndCancel() throws IOException {
+        Http2Session.Stream first = mSession.openStream(requestHeaders(), null, 0, null);
+        Http2Session.Stream second = mSession.openStream(requestHeaders(), null, 0, null);
+        Http2Session.Stream third = mSession.openStream(requestHeaders(), null, 0, null);
+        assertEquals(3, second.getId());
+        readOutput();
+
+        /* Refused stream can be retried, other errors cannot. */
+        mSession.feed(frame(TYPE_RST_STREAM, 0, 1, ints(ERROR_REFUSED_STREAM)));
+        mSession.feed(frame(TYPE_RST_STREAM, 0, 3, ints(2)));
+        List<Http2Session.Stream> finished = mSession.pollFinishedStreams();
+        assertEquals(2, finished.size());
+        assertTrue(first.isRefused());
+        assertNotNull(first.getError());
+        assertFalse(second.isRefused());
+        assertNotNull(second.getError());
+
+        /* Cancel. */
+        mSession.cancelStream(third);
+        List<Frame> frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(TYPE_RST_STREAM, frames.get(0).mType);
+        assertEquals(5, frames.get(0).mStreamId);
+        assertEquals(0, mSession.getStreamCount());
+
+        /* Late response of a cancelled stream is ignored. */
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_END_STREAM, 5, encodeResponse(responseHeaders("200"))));
+        assertTrue(mSession.pollFinishedStreams().isEmpty());
+    }
+
+    @Test
+    public void goAway() throws IOException {
+        Http2Session.Stream first = mSession.openStream(requestHeaders(), null, 0, null);
+        Http2Session.Stream second = mSession.openStream(requestHeaders(), null, 0, null);
+        mSession.feed(frame(TYPE_GOAWAY, 0, 0, ints(1, 0)));
+        assertFalse(mSession.isAcceptingStreams());
+        assertFalse(mSession.canOpenStream());
+        List<Http2Session.Stream> finished = mSession.pollFinishedStreams();
+        assertEquals(1, finished.size());
+        assertSame(second, finished.get(0));
+        assertTrue(second.isRefused());
+
+        /* Stream below the last identifier still completes. */
+        assertEquals(1, mSession.getStreamCount());
+        mSession.feed(frame(TYPE_HEADERS, FLAG_END_HEADERS | FLAG_END_STREAM, 1, encodeResponse(responseHeaders("200"))));
+        assertSame(first, mSession.pollFinishedStreams().get(0));
+        assertNull(first.getError());
+    }
+
+    @Test
+    public void ping() throws IOException {
+        readOutput();
+        byte[] payload = {1, 2, 3, 4, 5, 6, 7, 8};
+        mSession.feed(frame(TYPE_PING, 0, 0, payload));
+        List<Frame> frames = readOutput();
+        assertEquals(1, frames.size());
+        assertEquals(TYPE_PING, frames.get(0).mType);
+        assertEquals(FLAG_ACK, frames.get(0).mFlags);
+        assertArrayEquals(payload, frames.get(0).mPayload);
+
+        /* Ping acknowledgment is not answered. */
+        mSession.feed(frame(TYPE_PING, FLAG_ACK, 0, payload));
+        assertTrue(readOutput().isEmpty());
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void pushPromiseRejected() throws IOException {
+        mSession.openStream(requestHeaders(), null, 0, null);
+        mSession.feed(frame(TYPE_PUSH_PROMISE, FLAG_END_HEADERS, 1, ints(2)));
+    }
+
+    @Test(expected = ProtocolException.class)
+    public void frameTooLarge() throws IOException {
+        mSession.feed(frame(TYPE_DATA, 0, 1, new byte[DEFAULT_MAX_FRAME_SIZE + 1]));
+    }
+
+    @Test
+    public void unknownFrameIgnored() throws IOException {
+        readOutput();
+        mSession.feed(frame(0x42, 0, 0, new byte[3]));
+        assertTrue(readOutput().isEmpty());
+    }
+
+    private static class Frame {
+
+        private int mType;
+
+        private int mFlags;
+
+        private int mStreamId;
+
+        private byte[] mPayload;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.Deflater;
+
+import static com.microsoft.appcenter.http.HttpBufferPool.MAX_POOLED_DEFLATERS;
+import static com.microsoft.appcenter.http.HttpBufferPool.MAX_RETAINED_PAYLOAD_BUFFER_SIZE;
+import static com.microsoft.appcenter.http.HttpUtils.READ_BUFFER_SIZE;
+import static com.microsoft.appcenter.http.HttpUtils.WRITE_BUFFER_SIZE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("unused")
+public class HttpBufferPoolTest {
+
+    @Test
+    public void buffersReusedOnSameThread() {
+        HttpBufferPool pool = new HttpBufferPool();
+        byte[] byteBuffer = pool.obtainByteBuffer();
+        assertEquals(WRITE_BUFFER_SIZE, byteBuffer.length);
+        assertSame(byteBuffer, pool.obtainByteBuffer());
+        char[] charBuffer = pool.obtainCharBuffer();
+        assertEquals(READ_BUFFER_SIZE, charBuffer.length);
+        assertSame(charBuffer, pool.obtainCharBuffer());
+    }
+
+    @Test
+    public void buffersNotSharedBetweenThreads() throws InterruptedException {
+        final HttpBufferPool pool = new HttpBufferPool();
+        byte[] byteBuffer = pool.obtainByteBuffer();
+        final AtomicReference<byte[]> otherByteBuffer = new AtomicReference<>();
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                otherByteBuffer.set(pool.obtainByteBuffer());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertNotNull(otherByteBuffer.get());
+        assertNotSame(byteBuffer, otherByteBuffer.get());
+    }
+
+    @Test
+    public void deflaterReusedAfterRelease() {
+        HttpBufferPool pool = new HttpBufferPool();
+        Deflater deflater = pool.obtainDeflater();
+        deflater.setInput(new byte[]{1, 2, 3});
+        deflater.finish();
+        deflater.deflate(new byte[16]);
+
+        /* Deflater in use is not handed out twice. */
+        Deflater otherDeflater = pool.obtainDeflater();
+        assertNotSame(deflater, otherDeflater);
+
+        /* Released deflater is reset and reused. */
+        pool.releaseDeflater(deflater);
+        assertSame(deflater, pool.obtainDeflater());
+        assertEquals(0, deflater.getBytesRead());
+        pool.releaseDeflater(deflater);
+        pool.releaseDeflater(otherDeflater);
+    }
+
+    @Test
+    public void deflaterSharedBetweenThreads() throws InterruptedException {
+        final HttpBufferPool pool = new HttpBufferPool();
+        Deflater deflater = pool.obtainDeflater();
+        pool.releaseDeflater(deflater);
+        final AtomicReference<Deflater> otherDeflater = new AtomicReference<>();
+        Thread thread = new Thread() {
+
+            @Override
+            public void run() {
+                otherDeflater.set(pool.obtainDeflater());
+            }
+        };
+        thread.start();
+        thread.join();
+        assertSame(deflater, otherDeflater.get());
+    }
+
+    @Test
+    public void extraDeflatersEnded() {
+        HttpBufferPool pool = new HttpBufferPool();
+        Deflater[] deflaters = new Deflater[MAX_POOLED_DEFLATERS + 1];
+        for (int i = 0; i < deflaters.length; i++) {
+            deflaters[i] = pool.obtainDeflater();
+        }
+        for (Deflater deflater : deflaters) {
+            pool.releaseDeflater(deflater);
+        }
+
+        /* Last released deflater is ended: using it fails. */
+        try {
+            deflaters[MAX_POOLED_DEFLATERS].reset();
+            fail();
+        } catch (NullPointerException ignored) {
+        }
+        for (int i = 0; i < MAX_POOLED_DEFLATERS; i++) {
+            pool.obtainDeflater().reset();
+        }
+    }
+
+    @Test
+    public void payloadBuffer() {
+        HttpBufferPool pool = new HttpBufferPool();
+
+        /* Small buffer is kept and reset. */
+        HttpBufferPool.PayloadBuffer buffer = pool.obtainPayloadBuffer();
+        buffer.write(42);
+        pool.releasePayloadBuffer(buffer);
+        assertSame(buffer, pool.obtainPayloadBuffer());
+        assertEquals(0, buffer.size());
+
+        /* Buffer that grew too large is dropped. */
+        buffer.write(new byte[MAX_RETAINED_PAYLOAD_BUFFER_SIZE + 1], 0, MAX_RETAINED_PAYLOAD_BUFFER_SIZE + 1);
+        assertEquals(MAX_RETAINED_PAYLOAD_BUFFER_SIZE + 1, buffer.size());
+        pool.releasePayloadBuffer(buffer);
+        assertNotSame(buffer, pool.obtainPayloadBuffer());
+    }
+}
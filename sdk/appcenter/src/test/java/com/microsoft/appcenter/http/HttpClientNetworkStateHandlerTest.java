@@ -29,11 +29,14 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 @SuppressWarnings("unused")
 public class HttpClientNetworkStateHandlerTest {
@@ -290,4 +293,53 @@ public class HttpClientNetworkStateHandlerTest {
         thread.interrupt();
         TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", 0);
     }
+
+    @Test
+    public void preconnectWaitsForNetwork() {
+        HttpClient httpClient = mock(HttpClient.class, withSettings().extraInterfaces(HttpClient.Preconnectable.class));
+        NetworkStateHelper networkStateHelper = mock(NetworkStateHelper.class);
+        HttpClientNetworkStateHandler decorator = new HttpClientNetworkStateHandler(httpClient, networkStateHelper);
+
+        /* Network is down: nothing done yet, and same URL is preconnected only once. */
+        decorator.preconnect("https://mock1");
+        decorator.preconnect("https://mock1");
+        decorator.preconnect("https://mock2");
+        verify((HttpClient.Preconnectable) httpClient, never()).preconnect(any(String.class));
+
+        /* Network is back. */
+        decorator.onNetworkStateUpdated(true);
+        verify((HttpClient.Preconnectable) httpClient).preconnect("https://mock1");
+        verify((HttpClient.Preconnectable) httpClient).preconnect("https://mock2");
+        decorator.onNetworkStateUpdated(false);
+        decorator.onNetworkStateUpdated(true);
+        verify((HttpClient.Preconnectable) httpClient).preconnect("https://mock1");
+
+        /* Network is up: preconnect now. */
+        when(networkStateHelper.isNetworkConnected()).thenReturn(true);
+        decorator.preconnect("https://mock3");
+        verify((HttpClient.Preconnectable) httpClient).preconnect("https://mock3");
+    }
+
+    @Test
+    public void preconnectCanceledOnClose() throws IOException {
+        HttpClient httpClient = mock(HttpClient.class, withSettings().extraInterfaces(HttpClient.Preconnectable.class));
+        NetworkStateHelper networkStateHelper = mock(NetworkStateHelper.class);
+        HttpClientNetworkStateHandler decorator = new HttpClientNetworkStateHandler(httpClient, networkStateHelper);
+        decorator.preconnect("https://mock");
+        decorator.close();
+        decorator.onNetworkStateUpdated(true);
+        verify((HttpClient.Preconnectable) httpClient, never()).preconnect(any(String.class));
+    }
+
+    @Test
+    public void preconnectNotSupported() {
+
+        /* Decorated client cannot preconnect: ignored. */
+        HttpClient httpClient = mock(HttpClient.class);
+        NetworkStateHelper networkStateHelper = mock(NetworkStateHelper.class);
+        when(networkStateHelper.isNetworkConnected()).thenReturn(true);
+        HttpClientNetworkStateHandler decorator = new HttpClientNetworkStateHandler(httpClient, networkStateHelper);
+        decorator.preconnect("https://mock");
+        verifyZeroInteractions(httpClient);
+    }
 }
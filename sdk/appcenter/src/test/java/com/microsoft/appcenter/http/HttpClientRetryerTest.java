@@ -8,18 +8,28 @@ package com.microsoft.appcenter.http;
 import android.os.Handler;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatcher;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_KEY;
 import static com.microsoft.appcenter.http.DefaultHttpClient.CONTENT_TYPE_VALUE;
 import static com.microsoft.appcenter.http.DefaultHttpClient.X_MS_RETRY_AFTER_MS_HEADER;
+import static com.microsoft.appcenter.http.HttpClientRetryer.RETRY_AFTER_HEADER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.anyMapOf;
 import static org.mockito.Matchers.anyString;
@@ -27,7 +37,10 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.longThat;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
@@ -52,8 +65,7 @@ public class HttpClientRetryerTest {
             @Override
             public boolean matches(Object argument) {
                 long interval = (Long) argument;
-                long retryInterval = HttpClientRetryer.RETRY_INTERVALS[retryIndex];
-                return interval >= retryInterval / 2 && interval <= retryInterval;
+                return interval >= 0 && interval <= HttpClientRetryer.getMaxRetryInterval(retryIndex);
             }
         }));
     }
@@ -166,9 +178,12 @@ public class HttpClientRetryerTest {
         HttpClient retryer = new HttpClientRetryer(httpClient, handler);
         simulateRetryAfterDelay(handler);
         retryer.callAsync(null, null, null, null, callback);
-        verifyDelay(handler, 0);
-        verifyDelay(handler, 1);
-        verifyDelay(handler, 2);
+        ArgumentCaptor<Long> delays = ArgumentCaptor.forClass(Long.class);
+        verify(handler, times(HttpClientRetryer.MAX_RETRY_COUNT)).postDelayed(any(Runnable.class), delays.capture());
+        for (int i = 0; i < HttpClientRetryer.MAX_RETRY_COUNT; i++) {
+            long delay = delays.getAllValues().get(i);
+            assertTrue(delay >= 0 && delay <= HttpClientRetryer.getMaxRetryInterval(i));
+        }
         verifyNoMoreInteractions(handler);
         verify(callback).onCallFailed(new HttpException(new HttpResponse(408)));
         verifyNoMoreInteractions(callback);
@@ -216,6 +231,171 @@ public class HttpClientRetryerTest {
         verifyNoMoreInteractions(callback);
     }
 
+    @Test
+    public void maxRetryIntervalGrowsExponentially() {
+        assertEquals(TimeUnit.SECONDS.toMillis(10), HttpClientRetryer.getMaxRetryInterval(0));
+        assertEquals(TimeUnit.SECONDS.toMillis(100), HttpClientRetryer.getMaxRetryInterval(1));
+        assertEquals(TimeUnit.SECONDS.toMillis(1000), HttpClientRetryer.getMaxRetryInterval(2));
+        assertEquals(HttpClientRetryer.MAX_RETRY_INTERVAL, HttpClientRetryer.getMaxRetryInterval(3));
+        assertEquals(HttpClientRetryer.MAX_RETRY_INTERVAL, HttpClientRetryer.getMaxRetryInterval(100));
+    }
+
+    @Test
+    public void retryAfterHeaders() {
+        assertEquals(-1, HttpClientRetryer.getRetryAfter(Collections.<String, String>emptyMap()));
+        assertEquals(1234, HttpClientRetryer.getRetryAfter(Collections.singletonMap("X-MS-Retry-After-MS", "1234")));
+        assertEquals(120000, HttpClientRetryer.getRetryAfter(Collections.singletonMap("retry-after", "120")));
+        assertEquals(120000, HttpClientRetryer.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, " 120 ")));
+
+        /* Milliseconds header wins. */
+        Map<String, String> headers = new HashMap<>();
+        headers.put(RETRY_AFTER_HEADER, "120");
+        headers.put(X_MS_RETRY_AFTER_MS_HEADER, "500");
+        assertEquals(500, HttpClientRetryer.getRetryAfter(headers));
+
+        /* HTTP date. */
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        long delay = HttpClientRetryer.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, format.format(new Date(System.currentTimeMillis() + 60000))));
+        assertTrue(String.valueOf(delay), delay > 55000 && delay <= 60000);
+
+        /* No delay or past date: jittered interval is used. */
+        assertEquals(-1, HttpClientRetryer.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, "Wed, 21 Oct 2015 07:28:00 GMT")));
+        assertEquals(-1, HttpClientRetryer.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, "0")));
+        assertEquals(-1, HttpClientRetryer.getRetryAfter(Collections.singletonMap(X_MS_RETRY_AFTER_MS_HEADER, "0")));
+        assertEquals(-1, HttpClientRetryer.getRetryAfter(Collections.singletonMap(X_MS_RETRY_AFTER_MS_HEADER, "-5")));
+
+        /* Delays are capped. */
+        assertEquals(HttpClientRetryer.MAX_RETRY_INTERVAL, HttpClientRetryer.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, "86400")));
+        assertEquals(HttpClientRetryer.MAX_RETRY_INTERVAL, HttpClientRetryer.getRetryAfter(Collections.singletonMap(X_MS_RETRY_AFTER_MS_HEADER, Long.toString(Long.MAX_VALUE))));
+        assertEquals(HttpClientRetryer.MAX_RETRY_INTERVAL, HttpClientRetryer.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, format.format(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(2))))));
+
+        /* Invalid values are ignored. */
+        assertEquals(-1, HttpClientRetryer.getRetryAfter(Collections.singletonMap(RETRY_AFTER_HEADER, "soon")));
+        assertEquals(-1, HttpClientRetryer.getRetryAfter(Collections.singletonMap(X_MS_RETRY_AFTER_MS_HEADER, "1s")));
+    }
+
+    @Test
+    public void delayUsingStandardRetryHeader() {
+        final HttpException expectedException = new HttpException(new HttpResponse(503, "", Collections.singletonMap("retry-after", "3")));
+        final ServiceCallback callback = mock(ServiceCallback.class);
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(expectedException);
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        simulateRetryAfterDelay(handler);
+        retryer.callAsync(null, null, null, null, callback);
+
+        /* Header delay is used for every retry, and retries are still limited. */
+        verify(handler, times(HttpClientRetryer.MAX_RETRY_COUNT)).postDelayed(any(Runnable.class), eq(3000L));
+        verifyNoMoreInteractions(handler);
+        verify(callback).onCallFailed(expectedException);
+        verifyNoMoreInteractions(callback);
+    }
+
+    @Test
+    public void retryBudgetSharedByHost() {
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(new HttpResponse(503)));
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(eq("https://a.com/logs"), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallSucceeded(new HttpResponse(200));
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(eq("https://a.com/other"), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(new HttpResponse(503)));
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(eq("https://b.com/logs"), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        HttpClient retryer = new HttpClientRetryer(httpClient, handler);
+        simulateRetryAfterDelay(handler);
+
+        /* Half of the budget is used by retries. */
+        int allowedRetries = HttpClientRetryer.RETRY_BUDGET_CAPACITY / 2 / HttpClientRetryer.RETRY_TOKEN_COST;
+        ServiceCallback callback = mock(ServiceCallback.class);
+        retryer.callAsync("https://a.com/logs", "POST", null, null, callback);
+        retryer.callAsync("https://a.com/logs", "POST", null, null, callback);
+        verify(handler, times(allowedRetries)).postDelayed(any(Runnable.class), anyLong());
+        verify(callback, times(2)).onCallFailed(any(Exception.class));
+
+        /* Next call to the same host fails without retry. */
+        callback = mock(ServiceCallback.class);
+        retryer.callAsync("https://a.com/logs", "POST", null, null, callback);
+        verify(handler, times(allowedRetries)).postDelayed(any(Runnable.class), anyLong());
+        verify(callback).onCallFailed(any(Exception.class));
+
+        /* Other hosts have their own budget. */
+        retryer.callAsync("https://b.com/logs", "POST", null, null, callback);
+        verify(handler, times(allowedRetries + HttpClientRetryer.MAX_RETRY_COUNT)).postDelayed(any(Runnable.class), anyLong());
+
+        /* Successful calls to the host give a retry back. */
+        int successesPerRetry = HttpClientRetryer.RETRY_TOKEN_COST / HttpClientRetryer.SUCCESS_TOKEN_REFILL;
+        for (int i = 0; i < successesPerRetry; i++) {
+            retryer.callAsync("https://a.com/other", "POST", null, null, mock(ServiceCallback.class));
+        }
+        retryer.callAsync("https://a.com/logs", "POST", null, null, callback);
+        verify(handler, times(allowedRetries + HttpClientRetryer.MAX_RETRY_COUNT + 1)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void retryBudgetRecoversOverTime() {
+        HttpClient httpClient = mock(HttpClient.class);
+        doAnswer(new Answer<ServiceCall>() {
+
+            @Override
+            public ServiceCall answer(InvocationOnMock invocationOnMock) {
+                ((ServiceCallback) invocationOnMock.getArguments()[4]).onCallFailed(new HttpException(new HttpResponse(503)));
+                return mock(ServiceCall.class);
+            }
+        }).when(httpClient).callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), any(HttpClient.CallTemplate.class), any(ServiceCallback.class));
+        Handler handler = mock(Handler.class);
+        HttpClientRetryer retryer = spy(new HttpClientRetryer(httpClient, handler));
+        doReturn(0L).when(retryer).getCurrentTime();
+        simulateRetryAfterDelay(handler);
+
+        /* Drain the budget. */
+        int allowedRetries = HttpClientRetryer.RETRY_BUDGET_CAPACITY / 2 / HttpClientRetryer.RETRY_TOKEN_COST;
+        retryer.callAsync("https://a.com/logs", "POST", null, null, mock(ServiceCallback.class));
+        retryer.callAsync("https://a.com/logs", "POST", null, null, mock(ServiceCallback.class));
+        verify(handler, times(allowedRetries)).postDelayed(any(Runnable.class), anyLong());
+
+        /* No token is regained yet. */
+        doReturn(HttpClientRetryer.RETRY_TOKEN_REFILL_INTERVAL - 1).when(retryer).getCurrentTime();
+        retryer.callAsync("https://a.com/logs", "POST", null, null, mock(ServiceCallback.class));
+        verify(handler, times(allowedRetries)).postDelayed(any(Runnable.class), anyLong());
+
+        /* One token is enough for a single retry. */
+        doReturn(HttpClientRetryer.RETRY_TOKEN_REFILL_INTERVAL).when(retryer).getCurrentTime();
+        retryer.callAsync("https://a.com/logs", "POST", null, null, mock(ServiceCallback.class));
+        verify(handler, times(allowedRetries + 1)).postDelayed(any(Runnable.class), anyLong());
+
+        /* The budget is full again after enough time, without any successful call. */
+        doReturn(HttpClientRetryer.RETRY_TOKEN_REFILL_INTERVAL * (1 + HttpClientRetryer.RETRY_BUDGET_CAPACITY)).when(retryer).getCurrentTime();
+        retryer.callAsync("https://a.com/logs", "POST", null, null, mock(ServiceCallback.class));
+        verify(handler, times(allowedRetries + 1 + HttpClientRetryer.MAX_RETRY_COUNT)).postDelayed(any(Runnable.class), anyLong());
+    }
+
     @Test
     public void cancel() throws InterruptedException {
         final ServiceCall call = mock(ServiceCall.class);
@@ -6,14 +6,22 @@
 package com.microsoft.appcenter.http;
 
 import android.content.Context;
+import android.os.Handler;
 
 import org.junit.Test;
 
 import static com.microsoft.appcenter.http.HttpUtils.MAX_CHARACTERS_DISPLAYED_FOR_SECRET;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 @SuppressWarnings("unused")
 public class HttpUtilsTest {
@@ -98,8 +106,70 @@ public class HttpUtilsTest {
         assertFalse(defaultHttpClient.isCompressionEnabled());
     }
 
+    @Test
+    public void connectionReuseEnabledByDefault() {
+        HttpClient httpClient = HttpUtils.createHttpClient(mock(Context.class));
+        assertTrue(getDefaultHttpClient((HttpClientDecorator) httpClient).isConnectionReuseEnabled());
+        assertFalse(new DefaultHttpClient().isConnectionReuseEnabled());
+    }
+
+    @Test
+    public void transportFactory() {
+        HttpTransportFactory transportFactory = mock(HttpTransportFactory.class);
+        HttpClient transport = mock(HttpClient.class);
+        when(transportFactory.createTransport(anyBoolean(), any(Handler.class))).thenReturn(transport);
+
+        /* Explicit factory. */
+        HttpClientDecorator httpClient = (HttpClientDecorator) HttpUtils.createHttpClient(mock(Context.class), false, null, transportFactory);
+        assertSame(transport, ((HttpClientDecorator) httpClient.getDecoratedApi()).getDecoratedApi());
+        verify(transportFactory).createTransport(false, null);
+
+        /* Without factory. */
+        assertTrue(getDefaultHttpClient((HttpClientDecorator) HttpUtils.createHttpClient(mock(Context.class), true, null, null)).isCompressionEnabled());
+        assertTrue(getDefaultHttpClient((HttpClientDecorator) HttpUtils.createHttpClient(mock(Context.class))).isCompressionEnabled());
+
+        /* Built-in non blocking transport. */
+        assertTrue(NioHttpClient.FACTORY.createTransport(true, null) instanceof NioHttpClient);
+    }
+
     private DefaultHttpClient getDefaultHttpClient(HttpClientDecorator httpClientDecorator) {
         httpClientDecorator = (HttpClientDecorator) httpClientDecorator.getDecoratedApi();
         return (DefaultHttpClient) httpClientDecorator.getDecoratedApi();
     }
-}
\ No newline at end of file
+
+    @Test
+    public void preconnect() {
+        HttpClient httpClient = mock(HttpClient.class, withSettings().extraInterfaces(HttpClient.Preconnectable.class));
+        HttpUtils.preconnect(httpClient, "https://mock");
+        verify((HttpClient.Preconnectable) httpClient).preconnect("https://mock");
+
+        /* Ignored if not supported. */
+        httpClient = mock(HttpClient.class);
+        HttpUtils.preconnect(httpClient, "https://mock");
+        verifyZeroInteractions(httpClient);
+    }
+
+    @Test
+    public void getResponseMode() {
+        assertEquals(ResponseMode.BODY, HttpUtils.getResponseMode(null));
+        assertEquals(ResponseMode.BODY, HttpUtils.getResponseMode(mock(HttpClient.CallTemplate.class)));
+        HttpClient.ResponseCallTemplate callTemplate = mock(HttpClient.ResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STATUS);
+        assertEquals(ResponseMode.STATUS, HttpUtils.getResponseMode(callTemplate));
+
+        /* Streaming needs a template that can read the body. */
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STREAM);
+        assertEquals(ResponseMode.BODY, HttpUtils.getResponseMode(callTemplate));
+        HttpClient.StreamingResponseCallTemplate streamingCallTemplate = mock(HttpClient.StreamingResponseCallTemplate.class);
+        when(streamingCallTemplate.getResponseMode()).thenReturn(ResponseMode.STREAM);
+        assertEquals(ResponseMode.STREAM, HttpUtils.getResponseMode(streamingCallTemplate));
+    }
+
+    @Test
+    public void payloadTooLarge() {
+        assertTrue(HttpUtils.isPayloadTooLarge(new HttpException(new HttpResponse(413))));
+        assertFalse(HttpUtils.isPayloadTooLarge(new HttpException(new HttpResponse(400))));
+        assertFalse(HttpUtils.isPayloadTooLarge(new Exception()));
+        assertFalse(HttpUtils.isRecoverableError(new HttpException(new HttpResponse(413))));
+    }
+}
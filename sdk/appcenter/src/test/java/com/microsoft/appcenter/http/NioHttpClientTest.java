@@ -0,0 +1,834 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import android.os.Handler;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ProtocolException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPInputStream;
+
+import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_GET;
+import static com.microsoft.appcenter.http.DefaultHttpClient.METHOD_POST;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unused")
+public class NioHttpClientTest {
+
+    private static final long TIMEOUT = 5000;
+
+    private TestServer mServer;
+
+    private Handler mHandler;
+
+    private NioHttpClient mHttpClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new TestServer();
+        mHandler = mock(Handler.class);
+        when(mHandler.post(any(Runnable.class))).then(new Answer<Boolean>() {
+
+            @Override
+            public Boolean answer(InvocationOnMock invocation) {
+                ((Runnable) invocation.getArguments()[0]).run();
+                return true;
+            }
+        });
+        mHttpClient = new NioHttpClient(true, mHandler, null, null, true, false);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mHttpClient.close();
+        mServer.close();
+    }
+
+    @Test
+    public void postAndKeepAlive() throws Exception {
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nX-Test: value\r\n\r\nOK");
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nOK2");
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).thenReturn("{a:1}");
+
+        /* First call. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/logs?api-version=1.0.0"), METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        ArgumentCaptor<HttpResponse> response = ArgumentCaptor.forClass(HttpResponse.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(response.capture());
+        assertEquals(200, response.getValue().getStatusCode());
+        assertEquals("OK", response.getValue().getPayload());
+        assertEquals("value", response.getValue().getHeaders().get("X-Test"));
+        Request request = mServer.takeRequest();
+        assertEquals("POST /logs?api-version=1.0.0 HTTP/1.1", request.mRequestLine);
+        assertEquals("application/json", request.mHeaders.get("content-type"));
+        assertNull(request.mHeaders.get("content-encoding"));
+        assertEquals("{a:1}", new String(request.mBody, StandardCharsets.UTF_8));
+        verify(callTemplate).onBeforeCalling(any(java.net.URL.class), any(Map.class));
+
+        /* Second call reuses the connection. */
+        serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(response.capture());
+        assertEquals("OK2", response.getValue().getPayload());
+        assertEquals("GET / HTTP/1.1", mServer.takeRequest().mRequestLine);
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void responseModes() throws Exception {
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\nX-Test: value\r\n\r\nOK");
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 7\r\nX-Test: value\r\n\r\n{\"a\":1}");
+        mServer.respond("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 4\r\n\r\nBusy");
+
+        /* Status only. */
+        HttpClient.ResponseCallTemplate callTemplate = mock(HttpClient.ResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STATUS);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(new HttpResponse(200, "", Collections.<String, String>emptyMap()));
+
+        /* Streamed. */
+        final StringBuilder body = new StringBuilder();
+        HttpClient.StreamingResponseCallTemplate streamingCallTemplate = mock(HttpClient.StreamingResponseCallTemplate.class);
+        when(streamingCallTemplate.getResponseMode()).thenReturn(ResponseMode.STREAM);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Reader reader = (Reader) invocation.getArguments()[0];
+                int c;
+                while ((c = reader.read()) >= 0) {
+                    body.append((char) c);
+                }
+                return null;
+            }
+        }).when(streamingCallTemplate).readResponseBody(any(Reader.class));
+        serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), streamingCallTemplate, serviceCallback);
+        ArgumentCaptor<HttpResponse> response = ArgumentCaptor.forClass(HttpResponse.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(response.capture());
+        assertEquals("", response.getValue().getPayload());
+        assertEquals("value", response.getValue().getHeaders().get("X-Test"));
+        assertEquals("{\"a\":1}", body.toString());
+
+        /* Errors are always read. */
+        callTemplate = mock(HttpClient.ResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STATUS);
+        serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallFailed(exception.capture());
+        assertEquals("Busy", ((HttpException) exception.getValue()).getHttpResponse().getPayload());
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void streamedBodyReadWhileReceived() throws Exception {
+        mServer.respond("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n7\r\n{\"a\":1}\r\n" + TestServer.PAUSE + "7\r\n{\"b\":2}\r\n0\r\n\r\n");
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 14\r\nConnection: close\r\n\r\n{\"a\":1}" + TestServer.PAUSE);
+        final BlockingQueue<Object> reads = new LinkedBlockingQueue<>();
+        HttpClient.StreamingResponseCallTemplate callTemplate = mock(HttpClient.StreamingResponseCallTemplate.class);
+        when(callTemplate.getResponseMode()).thenReturn(ResponseMode.STREAM);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Reader reader = (Reader) invocation.getArguments()[0];
+                char[] buffer = new char[64];
+                int count;
+                try {
+                    while ((count = reader.read(buffer)) >= 0) {
+                        reads.add(new String(buffer, 0, count));
+                    }
+                } catch (IOException e) {
+                    reads.add(e);
+                    throw e;
+                }
+                return null;
+            }
+        }).when(callTemplate).readResponseBody(any(Reader.class));
+
+        /* The first chunk is read before the server sends the next one. */
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        assertEquals("{\"a\":1}", reads.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
+        mServer.resume();
+        assertEquals("{\"b\":2}", reads.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        ArgumentCaptor<HttpResponse> response = ArgumentCaptor.forClass(HttpResponse.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(response.capture());
+        assertEquals("", response.getValue().getPayload());
+
+        /* A truncated body fails both the reader and the call. */
+        serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), callTemplate, serviceCallback);
+        assertEquals("{\"a\":1}", reads.poll(TIMEOUT, TimeUnit.MILLISECONDS));
+        mServer.resume();
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallFailed(exception.capture());
+        assertTrue(exception.getValue() instanceof IOException);
+        assertTrue(reads.poll(TIMEOUT, TimeUnit.MILLISECONDS) instanceof IOException);
+        verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
+    }
+
+    @Test
+    public void streamingCompressedPayload() throws Exception {
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+        final String payload = "{\"logs\":[]}";
+        HttpClient.StreamingCallTemplate callTemplate = mock(HttpClient.StreamingCallTemplate.class);
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                ((Writer) invocation.getArguments()[0]).write(payload);
+                return null;
+            }
+        }).when(callTemplate).writeRequestBody(any(Writer.class));
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(any(HttpResponse.class));
+        Request request = mServer.takeRequest();
+        assertEquals("gzip", request.mHeaders.get("content-encoding"));
+        GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(request.mBody));
+        byte[] decompressed = new byte[payload.length()];
+        assertEquals(payload.length(), gzipStream.read(decompressed));
+        assertEquals(payload, new String(decompressed, StandardCharsets.UTF_8));
+        verify(callTemplate, never()).buildRequestBody();
+    }
+
+    @Test
+    public void requestPreparedOffSelectorThread() throws Exception {
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n");
+        final AtomicReference<String> threadName = new AtomicReference<>();
+        HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+        when(callTemplate.buildRequestBody()).then(new Answer<String>() {
+
+            @Override
+            public String answer(InvocationOnMock invocation) {
+                threadName.set(Thread.currentThread().getName());
+                return "{}";
+            }
+        });
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_POST, new HashMap<String, String>(), callTemplate, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(any(HttpResponse.class));
+        assertNotNull(threadName.get());
+        assertNotEquals(NioHttpClient.THREAD_NAME, threadName.get());
+    }
+
+    @Test
+    public void unknownHostDoesNotBlockOtherCalls() throws Exception {
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK");
+        ServiceCallback failingCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync("http://unknown.invalid/", METHOD_GET, new HashMap<String, String>(), null, failingCallback);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(any(HttpResponse.class));
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(failingCallback, timeout(TIMEOUT)).onCallFailed(exception.capture());
+        assertTrue(exception.getValue() instanceof UnknownHostException);
+    }
+
+    @Test
+    public void chunkedErrorAndConnectionClose() throws Exception {
+        mServer.respond("HTTP/1.1 503 Service Unavailable\r\nTransfer-Encoding: chunked\r\nConnection: close\r\n\r\n4\r\nBusy\r\n5;ext=1\r\n, bye\r\n0\r\n\r\n");
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK");
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallFailed(exception.capture());
+        assertTrue(exception.getValue() instanceof HttpException);
+        HttpResponse response = ((HttpException) exception.getValue()).getHttpResponse();
+        assertEquals(503, response.getStatusCode());
+        assertEquals("Busy, bye", response.getPayload());
+
+        /* Connection was not reused. */
+        serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(any(HttpResponse.class));
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void responseBodyTooLarge() throws Exception {
+        char[] body = new char[HttpResponseParser.MAX_BODY_SIZE + 1];
+        Arrays.fill(body, 'a');
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: " + body.length + "\r\n\r\n" + new String(body));
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK");
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallFailed(exception.capture());
+        assertTrue(exception.getValue() instanceof ProtocolException);
+
+        /* The connection is closed. */
+        assertTrue(mServer.awaitDisconnection());
+        serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(any(HttpResponse.class));
+        assertEquals(2, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void preconnect() throws Exception {
+
+        /* Connection is opened without any request. */
+        mHttpClient.preconnect(mServer.getUrl("/"));
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (mServer.getConnectionCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, mServer.getConnectionCount());
+
+        /* Already connected: nothing to do. */
+        mHttpClient.preconnect(mServer.getUrl("/"));
+
+        /* Call uses the connection. */
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK");
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(any(HttpResponse.class));
+        assertEquals("GET / HTTP/1.1", mServer.takeRequest().mRequestLine);
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void callTakesOverPreconnection() throws Exception {
+        mServer.respond("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nOK");
+        mHttpClient.preconnect(mServer.getUrl("/"));
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallSucceeded(any(HttpResponse.class));
+        assertEquals(1, mServer.getConnectionCount());
+    }
+
+    @Test
+    public void httpsRequired() {
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        new NioHttpClient(true, mHandler).callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        ArgumentCaptor<Exception> exception = ArgumentCaptor.forClass(Exception.class);
+        verify(serviceCallback, timeout(TIMEOUT)).onCallFailed(exception.capture());
+        assertTrue(exception.getValue() instanceof IOException);
+    }
+
+    @Test
+    public void cancelAndStopWhenIdle() throws Exception {
+
+        /* Server never responds. */
+        mServer.respond(TestServer.WAIT_FOR_CLOSE);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        ServiceCall call = mHttpClient.callAsync(mServer.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, serviceCallback);
+        assertNotNull(mServer.takeRequest());
+        assertTrue(mHttpClient.isSelectorThreadRunning());
+        call.cancel();
+
+        /* Connection is closed and the selector thread stops. */
+        assertTrue(mServer.awaitDisconnection());
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (mHttpClient.isSelectorThreadRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(mHttpClient.isSelectorThreadRunning());
+        verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
+        verify(serviceCallback, never()).onCallFailed(any(Exception.class));
+    }
+
+    @Test
+    public void http2MultiplexesCallsOnOneConnection() throws Exception {
+        Http2TestServer server = new Http2TestServer(3);
+        NioHttpClient httpClient = new NioHttpClient(true, mHandler, null, null, true, true);
+        try {
+            HttpClient.CallTemplate callTemplate = mock(HttpClient.CallTemplate.class);
+            when(callTemplate.buildRequestBody()).thenReturn("{a:1}");
+            List<ServiceCallback> serviceCallbacks = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                server.respond(200 + i, "OK" + i);
+                Map<String, String> headers = new HashMap<>();
+                headers.put("App-Secret", "00000000-0000-0000-0000-000000000000");
+                headers.put("Install-ID", "11111111-1111-1111-1111-111111111111");
+                ServiceCallback serviceCallback = mock(ServiceCallback.class);
+                serviceCallbacks.add(serviceCallback);
+                httpClient.callAsync(server.getUrl("/logs?api-version=1.0.0"), METHOD_POST, headers, callTemplate, serviceCallback);
+            }
+
+            /* The server answers only once it received the 3 requests: they are concurrent streams. */
+            for (int i = 0; i < 3; i++) {
+                ArgumentCaptor<HttpResponse> response = ArgumentCaptor.forClass(HttpResponse.class);
+                verify(serviceCallbacks.get(i), timeout(TIMEOUT)).onCallSucceeded(response.capture());
+                assertEquals(200 + i, response.getValue().getStatusCode());
+                assertEquals("OK" + i, response.getValue().getPayload());
+                assertEquals("value", response.getValue().getHeaders().get("x-test"));
+            }
+            List<Request> requests = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                Request request = server.takeRequest();
+                assertEquals("POST /logs?api-version=1.0.0", request.mRequestLine);
+                assertEquals("00000000-0000-0000-0000-000000000000", request.mHeaders.get("app-secret"));
+                assertEquals("11111111-1111-1111-1111-111111111111", request.mHeaders.get("install-id"));
+                assertEquals("application/json", request.mHeaders.get("content-type"));
+                assertEquals("5", request.mHeaders.get("content-length"));
+                assertEquals("{a:1}", new String(request.mBody, StandardCharsets.UTF_8));
+                requests.add(request);
+            }
+            assertEquals(1, server.getConnectionCount());
+
+            /* Repeated headers are sent as table indexes after the first request. */
+            Collections.sort(requests, new Comparator<Request>() {
+
+                @Override
+                public int compare(Request left, Request right) {
+                    return left.mStreamId - right.mStreamId;
+                }
+            });
+            assertEquals(1, requests.get(0).mStreamId);
+            assertTrue(requests.get(1).mHeaderBlockLength < requests.get(0).mHeaderBlockLength / 4);
+            assertEquals(requests.get(1).mHeaderBlockLength, requests.get(2).mHeaderBlockLength);
+        } finally {
+            httpClient.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void http2RetriesStreamsRefusedByGoAway() throws Exception {
+        Http2TestServer server = new Http2TestServer(2);
+        NioHttpClient httpClient = new NioHttpClient(false, mHandler, null, null, true, true);
+        try {
+
+            /* First connection answers the first stream and refuses the other one. */
+            server.respond(200, "first");
+            server.respond(Http2TestServer.GO_AWAY, null);
+            server.respond(200, "retried");
+            ServiceCallback first = mock(ServiceCallback.class);
+            ServiceCallback second = mock(ServiceCallback.class);
+            httpClient.callAsync(server.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, first);
+            httpClient.callAsync(server.getUrl("/"), METHOD_GET, new HashMap<String, String>(), null, second);
+            ArgumentCaptor<HttpResponse> response = ArgumentCaptor.forClass(HttpResponse.class);
+            verify(first, timeout(TIMEOUT)).onCallSucceeded(response.capture());
+            assertEquals("first", response.getValue().getPayload());
+            verify(second, timeout(TIMEOUT)).onCallSucceeded(response.capture());
+            assertEquals("retried", response.getValue().getPayload());
+            verify(first, never()).onCallFailed(any(Exception.class));
+            verify(second, never()).onCallFailed(any(Exception.class));
+            assertEquals(2, server.getConnectionCount());
+
+            /* The drained connection is closed by the client. */
+            assertTrue(server.awaitDisconnection());
+        } finally {
+            httpClient.close();
+            server.close();
+        }
+    }
+
+    /**
+     * Received request.
+     */
+    private static class Request {
+
+        private String mRequestLine;
+
+        private final Map<String, String> mHeaders = new HashMap<>();
+
+        private byte[] mBody = new byte[0];
+
+        /**
+         * HTTP/2 stream identifier.
+         */
+        private int mStreamId;
+
+        /**
+         * HTTP/2 encoded header block length.
+         */
+        private int mHeaderBlockLength;
+    }
+
+    /**
+     * Minimal HTTP/2 server with prior knowledge, answering requests with scripted responses in order.
+     * Requests on the first connection are answered once a batch of them is received, later connections answer right away.
+     */
+    private static class Http2TestServer {
+
+        /**
+         * Scripted status to send GOAWAY instead of a response, refusing the stream and the next ones.
+         */
+        static final int GO_AWAY = -1;
+
+        private static final String PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
+
+        private final int mBatchSize;
+
+        private final ServerSocket mServerSocket;
+
+        private final BlockingQueue<Object[]> mResponses = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<Request> mRequests = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<Boolean> mDisconnections = new LinkedBlockingQueue<>();
+
+        private final AtomicInteger mConnectionCount = new AtomicInteger();
+
+        Http2TestServer(int batchSize) throws IOException {
+            mBatchSize = batchSize;
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            final Socket socket = mServerSocket.accept();
+                            final int batchSize = mConnectionCount.incrementAndGet() == 1 ? mBatchSize : 1;
+                            new Thread() {
+
+                                @Override
+                                public void run() {
+                                    serve(socket, batchSize);
+                                }
+                            }.start();
+                        }
+                    } catch (IOException ignored) {
+
+                        /* Server closed. */
+                    }
+                }
+            }.start();
+        }
+
+        private static void writeFrame(OutputStream out, int type, int flags, int streamId, byte[] payload) throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(Http2Session.FRAME_HEADER_LENGTH);
+            header.put((byte) (payload.length >>> 16));
+            header.put((byte) (payload.length >>> 8));
+            header.put((byte) payload.length);
+            header.put((byte) type);
+            header.put((byte) flags);
+            header.putInt(streamId);
+            out.write(header.array());
+            out.write(payload);
+        }
+
+        String getUrl(String path) {
+            return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+        }
+
+        void respond(int status, String body) {
+            mResponses.add(new Object[]{status, body});
+        }
+
+        Request takeRequest() throws InterruptedException {
+            return mRequests.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        boolean awaitDisconnection() throws InterruptedException {
+            return mDisconnections.poll(TIMEOUT, TimeUnit.MILLISECONDS) != null;
+        }
+
+        int getConnectionCount() {
+            return mConnectionCount.get();
+        }
+
+        void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        private void serve(Socket socket, int batchSize) {
+            try {
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                OutputStream out = socket.getOutputStream();
+                byte[] preface = new byte[PREFACE.length()];
+                in.readFully(preface);
+                assertEquals(PREFACE, new String(preface, StandardCharsets.US_ASCII));
+                writeFrame(out, Http2Session.TYPE_SETTINGS, 0, 0, new byte[0]);
+                HpackDecoder decoder = new HpackDecoder();
+                HpackEncoder encoder = new HpackEncoder();
+                Map<Integer, Request> openRequests = new HashMap<>();
+                List<Request> batch = new ArrayList<>();
+                int lastStreamId = Integer.MAX_VALUE;
+                while (true) {
+                    int length = in.readUnsignedShort() << 8 | in.readUnsignedByte();
+                    int type = in.readUnsignedByte();
+                    int flags = in.readUnsignedByte();
+                    int streamId = in.readInt();
+                    byte[] payload = new byte[length];
+                    in.readFully(payload);
+                    if (streamId > lastStreamId) {
+                        continue;
+                    }
+                    Request request = openRequests.get(streamId);
+                    if (type == Http2Session.TYPE_SETTINGS && (flags & Http2Session.FLAG_ACK) == 0) {
+                        writeFrame(out, Http2Session.TYPE_SETTINGS, Http2Session.FLAG_ACK, 0, new byte[0]);
+                    } else if (type == Http2Session.TYPE_HEADERS) {
+                        assertTrue((flags & Http2Session.FLAG_END_HEADERS) != 0);
+                        request = new Request();
+                        request.mStreamId = streamId;
+                        request.mHeaderBlockLength = length;
+                        String method = null;
+                        String path = null;
+                        for (String[] header : decoder.decode(payload, length)) {
+                            if (":method".equals(header[0])) {
+                                method = header[1];
+                            } else if (":path".equals(header[0])) {
+                                path = header[1];
+                            } else {
+                                request.mHeaders.put(header[0], header[1]);
+                            }
+                        }
+                        request.mRequestLine = method + " " + path;
+                        openRequests.put(streamId, request);
+                    } else if (type == Http2Session.TYPE_DATA && request != null) {
+                        ByteArrayOutputStream body = new ByteArrayOutputStream();
+                        body.write(request.mBody);
+                        body.write(payload);
+                        request.mBody = body.toByteArray();
+                    } else {
+                        continue;
+                    }
+                    if (request == null || (flags & Http2Session.FLAG_END_STREAM) == 0) {
+                        continue;
+                    }
+
+                    /* Request complete. */
+                    openRequests.remove(streamId);
+                    mRequests.add(request);
+                    batch.add(request);
+                    if (batch.size() < batchSize && lastStreamId == Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    for (Request batchRequest : batch) {
+                        Object[] response = mResponses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+                        int status = (Integer) response[0];
+                        if (status == GO_AWAY) {
+                            lastStreamId = batchRequest.mStreamId - 2;
+                            writeFrame(out, Http2Session.TYPE_GOAWAY, 0, 0, ByteBuffer.allocate(8).putInt(lastStreamId).putInt(0).array());
+                            break;
+                        }
+                        List<String[]> headers = new ArrayList<>();
+                        headers.add(new String[]{":status", String.valueOf(status)});
+                        headers.add(new String[]{"x-test", "value"});
+                        ByteArrayOutputStream block = new ByteArrayOutputStream();
+                        encoder.encode(headers, block);
+                        writeFrame(out, Http2Session.TYPE_HEADERS, Http2Session.FLAG_END_HEADERS, batchRequest.mStreamId, block.toByteArray());
+                        writeFrame(out, Http2Session.TYPE_DATA, Http2Session.FLAG_END_STREAM, batchRequest.mStreamId, ((String) response[1]).getBytes(StandardCharsets.UTF_8));
+                    }
+                    out.flush();
+                    batch.clear();
+                }
+            } catch (IOException | InterruptedException ignored) {
+
+                /* Connection closed. */
+            } finally {
+                mDisconnections.add(true);
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+
+                    /* Nothing to do. */
+                }
+            }
+        }
+    }
+
+    /**
+     * Minimal HTTP/1.1 server answering requests with scripted responses in order.
+     */
+    private static class TestServer {
+
+        /**
+         * Scripted response to not respond and wait for the client to close the connection.
+         */
+        static final String WAIT_FOR_CLOSE = "";
+
+        /**
+         * Marker in a scripted response to send what precedes and wait for {@link #resume()} before sending the rest.
+         */
+        static final String PAUSE = "\u0000";
+
+        private final ServerSocket mServerSocket;
+
+        private final BlockingQueue<String> mResponses = new LinkedBlockingQueue<>();
+
+        private final Semaphore mResumes = new Semaphore(0);
+
+        private final BlockingQueue<Request> mRequests = new LinkedBlockingQueue<>();
+
+        private final BlockingQueue<Boolean> mDisconnections = new LinkedBlockingQueue<>();
+
+        private final AtomicInteger mConnectionCount = new AtomicInteger();
+
+        TestServer() throws IOException {
+            mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        while (true) {
+                            final Socket socket = mServerSocket.accept();
+                            mConnectionCount.incrementAndGet();
+                            new Thread() {
+
+                                @Override
+                                public void run() {
+                                    serve(socket);
+                                }
+                            }.start();
+                        }
+                    } catch (IOException ignored) {
+
+                        /* Server closed. */
+                    }
+                }
+            }.start();
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    return null;
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            return line.toString();
+        }
+
+        String getUrl(String path) {
+            return "http://127.0.0.1:" + mServerSocket.getLocalPort() + path;
+        }
+
+        void respond(String response) {
+            mResponses.add(response);
+        }
+
+        void resume() {
+            mResumes.release();
+        }
+
+        Request takeRequest() throws InterruptedException {
+            return mRequests.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        boolean awaitDisconnection() throws InterruptedException {
+            return mDisconnections.poll(TIMEOUT, TimeUnit.MILLISECONDS) != null;
+        }
+
+        int getConnectionCount() {
+            return mConnectionCount.get();
+        }
+
+        void close() throws IOException {
+            mServerSocket.close();
+        }
+
+        private void serve(Socket socket) {
+            try {
+                InputStream in = socket.getInputStream();
+                OutputStream out = socket.getOutputStream();
+                while (true) {
+                    Request request = new Request();
+                    request.mRequestLine = readLine(in);
+                    if (request.mRequestLine == null) {
+                        break;
+                    }
+                    String line;
+                    while ((line = readLine(in)) != null && !line.isEmpty()) {
+                        int separator = line.indexOf(':');
+                        request.mHeaders.put(line.substring(0, separator).trim().toLowerCase(Locale.US), line.substring(separator + 1).trim());
+                    }
+                    String contentLength = request.mHeaders.get("content-length");
+                    if (contentLength != null) {
+                        ByteArrayOutputStream body = new ByteArrayOutputStream();
+                        for (int i = Integer.parseInt(contentLength); i > 0; i--) {
+                            body.write(in.read());
+                        }
+                        request.mBody = body.toByteArray();
+                    }
+                    mRequests.add(request);
+                    String response = mResponses.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+                    if (WAIT_FOR_CLOSE.equals(response)) {
+
+                        /* Wait for the client to close. */
+                        while (in.read() >= 0) {
+                            Thread.yield();
+                        }
+                        break;
+                    }
+                    String[] parts = response.split(PAUSE, -1);
+                    for (int i = 0; i < parts.length; i++) {
+                        if (i > 0) {
+                            mResumes.tryAcquire(TIMEOUT, TimeUnit.MILLISECONDS);
+                        }
+                        out.write(parts[i].getBytes(StandardCharsets.UTF_8));
+                        out.flush();
+                    }
+                    if (response.contains("Connection: close")) {
+                        break;
+                    }
+                }
+            } catch (IOException | InterruptedException ignored) {
+
+                /* Connection closed. */
+            } finally {
+                mDisconnections.add(true);
+                try {
+                    socket.close();
+                } catch (IOException ignored) {
+
+                    /* Nothing to do. */
+                }
+            }
+        }
+    }
+}
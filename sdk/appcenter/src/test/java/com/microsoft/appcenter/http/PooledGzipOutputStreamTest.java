@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SuppressWarnings("unused")
+public class PooledGzipOutputStreamTest {
+
+    private static byte[] compress(Deflater deflater, byte[] payload) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(buffer, deflater, new byte[64]);
+        gzipStream.write(payload[0]);
+        gzipStream.write(payload, 1, payload.length - 1);
+        gzipStream.close();
+        return buffer.toByteArray();
+    }
+
+    private static byte[] decompress(byte[] compressed) throws IOException {
+        GZIPInputStream gzipStream = new GZIPInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[256];
+        int length;
+        while ((length = gzipStream.read(chunk)) > 0) {
+            buffer.write(chunk, 0, length);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Test
+    public void deflaterGivenBackToPoolOnClose() throws IOException {
+        HttpBufferPool pool = mock(HttpBufferPool.class);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        when(pool.obtainDeflater()).thenReturn(deflater);
+        when(pool.obtainByteBuffer()).thenReturn(new byte[64]);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(buffer, pool);
+        gzipStream.write(new byte[]{'a', 'b'});
+
+        /* Given back only once. */
+        gzipStream.close();
+        gzipStream.close();
+        verify(pool).releaseDeflater(deflater);
+        assertArrayEquals(new byte[]{'a', 'b'}, decompress(buffer.toByteArray()));
+    }
+
+    @Test
+    public void sameOutputAsPlatformGzip() throws IOException {
+        byte[] payload = new byte[10000];
+        new Random(42).nextBytes(payload);
+        for (int i = 0; i < payload.length; i += 3) {
+            payload[i] = 'a';
+        }
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        GZIPOutputStream gzipStream = new GZIPOutputStream(expected);
+        gzipStream.write(payload);
+        gzipStream.close();
+
+        /* Reusing the deflater after reset gives the same result. */
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        assertArrayEquals(expected.toByteArray(), compress(deflater, payload));
+        deflater.reset();
+        assertArrayEquals(expected.toByteArray(), compress(deflater, payload));
+    }
+
+    @Test
+    public void compressionLevel() throws IOException {
+        byte[] payload = new byte[10000];
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) ('a' + i % 7);
+        }
+        byte[] fast = compress(new Deflater(Deflater.NO_COMPRESSION, true), payload);
+        byte[] best = compress(new Deflater(Deflater.BEST_COMPRESSION, true), payload);
+        assertTrue(best.length < fast.length);
+        assertArrayEquals(payload, decompress(fast));
+        assertArrayEquals(payload, decompress(best));
+    }
+
+    @Test
+    public void finishTwiceAndWriteAfterFinish() throws IOException {
+        OutputStream out = mock(OutputStream.class);
+        PooledGzipOutputStream gzipStream = new PooledGzipOutputStream(out, new Deflater(Deflater.DEFAULT_COMPRESSION, true), new byte[64]);
+        gzipStream.write(new byte[0], 0, 0);
+        gzipStream.finish();
+        gzipStream.close();
+        verify(out).close();
+        try {
+            gzipStream.write(1);
+            fail("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals("write beyond end of stream", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.http;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class ResponseBodyPipeTest {
+
+    @Test
+    public void readChunksThenEnd() throws IOException {
+        ResponseBodyPipe pipe = new ResponseBodyPipe();
+        byte[] bytes = "xabcdx".getBytes(StandardCharsets.UTF_8);
+        pipe.feed(bytes, 1, 2);
+        pipe.feed(bytes, 3, 2);
+        pipe.feed(bytes, 0, 0);
+        assertEquals(4, pipe.available());
+
+        /* Chunks are copied. */
+        bytes[1] = 'z';
+        byte[] buffer = new byte[8];
+        assertEquals(2, pipe.read(buffer, 0, 8));
+        assertEquals("ab", new String(buffer, 0, 2, StandardCharsets.UTF_8));
+        assertEquals('c', pipe.read());
+        assertEquals(0, pipe.read(buffer, 0, 0));
+        pipe.end();
+        assertEquals(1, pipe.read(buffer, 0, 8));
+        assertEquals('d', buffer[0]);
+        assertEquals(-1, pipe.read(buffer, 0, 8));
+        pipe.awaitEnd();
+    }
+
+    @Test
+    public void readWaitsForChunk() throws Exception {
+        final ResponseBodyPipe pipe = new ResponseBodyPipe();
+        final AtomicInteger read = new AtomicInteger(-2);
+        Thread reader = new Thread() {
+
+            @Override
+            public void run() {
+                try {
+                    read.set(pipe.read());
+                } catch (IOException ignored) {
+
+                    /* Checked by the test. */
+                }
+            }
+        };
+        reader.start();
+        Thread.sleep(100);
+        assertEquals(-2, read.get());
+        pipe.feed(new byte[]{42}, 0, 1);
+        reader.join(5000);
+        assertEquals(42, read.get());
+    }
+
+    @Test
+    public void failAfterChunks() throws IOException {
+        ResponseBodyPipe pipe = new ResponseBodyPipe();
+        pipe.feed(new byte[]{1}, 0, 1);
+        EOFException error = new EOFException();
+        pipe.fail(error);
+
+        /* Received bytes are read first, then the error. */
+        assertEquals(1, pipe.read());
+        try {
+            pipe.read();
+            fail();
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+        try {
+            pipe.awaitEnd();
+            fail();
+        } catch (IOException e) {
+            assertSame(error, e);
+        }
+
+        /* Failing after the end is ignored. */
+        pipe = new ResponseBodyPipe();
+        pipe.end();
+        pipe.fail(error);
+        assertEquals(-1, pipe.read());
+    }
+
+    @Test
+    public void closedPipeDiscardsChunks() throws Exception {
+        final ResponseBodyPipe pipe = new ResponseBodyPipe();
+        pipe.feed(new byte[]{1}, 0, 1);
+        pipe.close();
+        assertEquals(0, pipe.available());
+        pipe.feed(new byte[]{2}, 0, 1);
+        try {
+            pipe.read();
+            fail();
+        } catch (IOException ignored) {
+        }
+
+        /* Waiting for the end returns once it is received. */
+        new Thread() {
+
+            @Override
+            public void run() {
+                pipe.end();
+            }
+        }.start();
+        pipe.awaitEnd();
+    }
+}
@@ -7,6 +7,8 @@ package com.microsoft.appcenter.ingestion;
 
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.ResponseMode;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
@@ -19,14 +21,17 @@ import org.json.JSONException;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -91,16 +96,33 @@ public class AppCenterIngestionTest {
         String appSecret = UUID.randomUUID().toString();
         UUID installId = UUID.randomUUID();
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
-        assertEquals(call, ingestion.sendAsync(appSecret, installId, container, serviceCallback));
+        ServiceCall serviceCall = ingestion.sendAsync(appSecret, installId, container, serviceCallback);
 
         /* Verify call to http client. */
         HashMap<String, String> expectedHeaders = new HashMap<>();
         expectedHeaders.put(Constants.APP_SECRET, appSecret);
         expectedHeaders.put(AppCenterIngestion.INSTALL_ID, installId.toString());
-        verify(mHttpClient).callAsync(eq("http://mock" + AppCenterIngestion.API_PATH), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mHttpClient).callAsync(eq("http://mock" + AppCenterIngestion.API_PATH), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), callback.capture());
         assertNotNull(callTemplate.get());
         assertEquals("mockPayload", callTemplate.get().buildRequestBody());
 
+        /* Verify result and cancel are forwarded. */
+        HttpResponse response = new HttpResponse(200);
+        callback.getValue().onCallSucceeded(response);
+        verify(serviceCallback).onCallSucceeded(response);
+        serviceCall.cancel();
+        verify(call).cancel();
+
+        /* Verify streaming serialization. */
+        Writer writer = mock(Writer.class);
+        ((HttpClient.StreamingCallTemplate) callTemplate.get()).writeRequestBody(writer);
+        verify(serializer).serializeContainer(container, writer);
+
+        /* Only the status of the response is needed. */
+        HttpClient.ResponseCallTemplate responseCallTemplate = (HttpClient.ResponseCallTemplate) callTemplate.get();
+        assertEquals(ResponseMode.STATUS, responseCallTemplate.getResponseMode());
+
         /* Verify close. */
         ingestion.close();
         verify(mHttpClient).close();
@@ -110,6 +132,28 @@ public class AppCenterIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void sendAsyncWithIdempotencyKey() {
+        LogContainer container = new LogContainer();
+        container.setLogs(Collections.singletonList(mock(Log.class)));
+        container.setLogKeys(Collections.singletonList("1@1000"));
+
+        /* Test calling code. */
+        AppCenterIngestion ingestion = new AppCenterIngestion(mHttpClient, mock(LogSerializer.class));
+        ingestion.setLogUrl("http://mock");
+        String appSecret = UUID.randomUUID().toString();
+        UUID installId = UUID.randomUUID();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        ingestion.sendAsync(appSecret, installId, container, serviceCallback);
+
+        /* The idempotency key is derived from the log keys. */
+        HashMap<String, String> expectedHeaders = new HashMap<>();
+        expectedHeaders.put(Constants.APP_SECRET, appSecret);
+        expectedHeaders.put(AppCenterIngestion.INSTALL_ID, installId.toString());
+        expectedHeaders.put(Constants.IDEMPOTENCY_KEY, container.getIdempotencyKey());
+        verify(mHttpClient).callAsync(eq("http://mock" + AppCenterIngestion.API_PATH), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), notNull(ServiceCallback.class));
+    }
+
     @Test
     public void failedSerialization() throws Exception {
 
@@ -141,13 +185,13 @@ public class AppCenterIngestionTest {
         String appSecret = UUID.randomUUID().toString();
         UUID installId = UUID.randomUUID();
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
-        assertEquals(call, ingestion.sendAsync(appSecret, installId, container, serviceCallback));
+        assertNotNull(ingestion.sendAsync(appSecret, installId, container, serviceCallback));
 
         /* Verify call to http client. */
         HashMap<String, String> expectedHeaders = new HashMap<>();
         expectedHeaders.put(Constants.APP_SECRET, appSecret);
         expectedHeaders.put(AppCenterIngestion.INSTALL_ID, installId.toString());
-        verify(mHttpClient).callAsync(eq("http://mock/logs?api-version=1.0.0"), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
+        verify(mHttpClient).callAsync(eq("http://mock/logs?api-version=1.0.0"), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), notNull(ServiceCallback.class));
         assertNotNull(callTemplate.get());
 
         try {
@@ -232,7 +276,7 @@ public class AppCenterIngestionTest {
         });
         AppCenterIngestion ingestion = new AppCenterIngestion(mHttpClient, mock(LogSerializer.class));
         ingestion.setLogUrl("http://mock");
-        assertEquals(call, ingestion.sendAsync(appSecret, UUID.randomUUID(), mock(LogContainer.class), mock(ServiceCallback.class)));
+        assertNotNull(ingestion.sendAsync(appSecret, UUID.randomUUID(), mock(LogContainer.class), mock(ServiceCallback.class)));
         return callTemplate.get();
     }
 }
\ No newline at end of file
@@ -0,0 +1,285 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion;
+
+import com.microsoft.appcenter.http.HttpException;
+import com.microsoft.appcenter.http.HttpResponse;
+import com.microsoft.appcenter.http.ServiceCall;
+import com.microsoft.appcenter.http.ServiceCallback;
+import com.microsoft.appcenter.ingestion.models.Log;
+import com.microsoft.appcenter.ingestion.models.LogContainer;
+import com.microsoft.appcenter.utils.AppCenterLog;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.rule.PowerMockRule;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.microsoft.appcenter.http.HttpUtils.HTTP_PAYLOAD_TOO_LARGE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+
+@PrepareForTest(AppCenterLog.class)
+public class BatchSizeLimiterTest {
+
+    private static final String URL = "https://mock/logs";
+
+    @Rule
+    public PowerMockRule mRule = new PowerMockRule();
+
+    private final List<LogContainer> mSentContainers = new ArrayList<>();
+
+    private final List<ServiceCallback> mSentCallbacks = new ArrayList<>();
+
+    private final List<ServiceCall> mSentCalls = new ArrayList<>();
+
+    private final BatchSizeLimiter.Sender mSender = new BatchSizeLimiter.Sender() {
+
+        @Override
+        public ServiceCall send(LogContainer logContainer, ServiceCallback serviceCallback) {
+            ServiceCall call = mock(ServiceCall.class);
+            mSentContainers.add(logContainer);
+            mSentCallbacks.add(serviceCallback);
+            mSentCalls.add(call);
+            return call;
+        }
+    };
+
+    private static LogContainer getLogContainer(int logCount, boolean withLogKeys) {
+        List<Log> logs = new ArrayList<>();
+        List<String> logKeys = new ArrayList<>();
+        for (int i = 0; i < logCount; i++) {
+            logs.add(mock(Log.class));
+            logKeys.add(i + "@1000");
+        }
+        LogContainer logContainer = new LogContainer();
+        logContainer.setLogs(logs);
+        logContainer.setLogKeys(withLogKeys ? logKeys : null);
+        return logContainer;
+    }
+
+    private static HttpException getPayloadTooLargeException() {
+        return new HttpException(new HttpResponse(HTTP_PAYLOAD_TOO_LARGE));
+    }
+
+    @Before
+    public void setUp() {
+        mockStatic(AppCenterLog.class);
+    }
+
+    @Test
+    public void notSplit() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        assertEquals(Integer.MAX_VALUE, limiter.getMaxBatchSize(URL));
+        LogContainer logContainer = getLogContainer(50, true);
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        limiter.sendAsync(URL, logContainer, serviceCallback, mSender);
+
+        /* Container is sent as is. */
+        assertEquals(1, mSentContainers.size());
+        assertSame(logContainer, mSentContainers.get(0));
+
+        /* Result is forwarded once. */
+        HttpResponse response = new HttpResponse(200);
+        mSentCallbacks.get(0).onCallSucceeded(response);
+        mSentCallbacks.get(0).onCallSucceeded(response);
+        verify(serviceCallback).onCallSucceeded(response);
+
+        /* Other failures are not split. */
+        ServiceCall call = limiter.sendAsync(URL, logContainer, serviceCallback, mSender);
+        Exception exception = new HttpException(new HttpResponse(400));
+        mSentCallbacks.get(1).onCallFailed(exception);
+        verify(serviceCallback).onCallFailed(exception);
+        assertEquals(2, mSentContainers.size());
+        assertEquals(Integer.MAX_VALUE, limiter.getMaxBatchSize(URL));
+
+        /* Cancel. */
+        call = limiter.sendAsync(URL, logContainer, serviceCallback, mSender);
+        call.cancel();
+        verify(mSentCalls.get(2)).cancel();
+    }
+
+    @Test
+    public void splitOnPayloadTooLarge() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        LogContainer logContainer = getLogContainer(4, true);
+        Ingestion.PartCallback serviceCallback = mock(Ingestion.PartCallback.class);
+        limiter.sendAsync(URL, logContainer, serviceCallback, mSender);
+        mSentCallbacks.get(0).onCallFailed(getPayloadTooLargeException());
+
+        /* Sent again in halves with their own keys, one after the other. */
+        assertEquals(2, limiter.getMaxBatchSize(URL));
+        assertEquals(2, mSentContainers.size());
+        assertEquals(logContainer.getLogs().subList(0, 2), mSentContainers.get(1).getLogs());
+        assertEquals(logContainer.getLogKeys().subList(0, 2), mSentContainers.get(1).getLogKeys());
+
+        /* The first part is reported, then the second one is sent. */
+        HttpResponse response = new HttpResponse(200);
+        mSentCallbacks.get(1).onCallSucceeded(response);
+        verify(serviceCallback).onPartSucceeded(mSentContainers.get(1), response);
+        verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
+        assertEquals(3, mSentContainers.size());
+        assertEquals(logContainer.getLogs().subList(2, 4), mSentContainers.get(2).getLogs());
+        assertEquals(logContainer.getLogKeys().subList(2, 4), mSentContainers.get(2).getLogKeys());
+
+        /* The last part completes the call. */
+        mSentCallbacks.get(2).onCallSucceeded(response);
+        verify(serviceCallback).onCallSucceeded(response);
+        verify(serviceCallback, never()).onPartSucceeded(mSentContainers.get(2), response);
+        verify(serviceCallback, never()).onCallFailed(any(Exception.class));
+
+        /* Binary search between 2 accepted and 4 rejected. */
+        assertEquals(3, limiter.getMaxBatchSize(URL));
+
+        /* Larger batches are split before sending. */
+        limiter.sendAsync(URL, getLogContainer(7, false), mock(ServiceCallback.class), mSender);
+        assertEquals(4, mSentContainers.size());
+        assertEquals(2, mSentContainers.get(3).getLogs().size());
+        assertNull(mSentContainers.get(3).getLogKeys());
+        mSentCallbacks.get(3).onCallSucceeded(response);
+        assertEquals(2, mSentContainers.get(4).getLogs().size());
+        mSentCallbacks.get(4).onCallSucceeded(response);
+        assertEquals(3, mSentContainers.get(5).getLogs().size());
+
+        /* Once 3 logs are rejected, the limit converges to 2. */
+        mSentCallbacks.get(5).onCallFailed(getPayloadTooLargeException());
+        assertEquals(2, limiter.getMaxBatchSize(URL));
+        assertEquals(7, mSentContainers.size());
+        assertEquals(1, mSentContainers.get(6).getLogs().size());
+        mSentCallbacks.get(6).onCallSucceeded(response);
+        assertEquals(2, mSentContainers.get(7).getLogs().size());
+
+        /* Other endpoints are not affected. */
+        assertEquals(Integer.MAX_VALUE, limiter.getMaxBatchSize("https://other"));
+    }
+
+    @Test
+    public void singleLogTooLarge() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        limiter.sendAsync(URL, getLogContainer(1, true), serviceCallback, mSender);
+        Exception exception = getPayloadTooLargeException();
+        mSentCallbacks.get(0).onCallFailed(exception);
+        verify(serviceCallback).onCallFailed(exception);
+        assertEquals(1, mSentContainers.size());
+        assertEquals(Integer.MAX_VALUE, limiter.getMaxBatchSize(URL));
+    }
+
+    @Test
+    public void singleLogTooLargeInParts() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        Ingestion.PartCallback serviceCallback = mock(Ingestion.PartCallback.class);
+        limiter.sendAsync(URL, getLogContainer(3, true), serviceCallback, mSender);
+        mSentCallbacks.get(0).onCallFailed(getPayloadTooLargeException());
+        assertEquals(1, limiter.getMaxBatchSize(URL));
+
+        /* The log too large fails alone and does not change the batch size. */
+        Exception exception = getPayloadTooLargeException();
+        mSentCallbacks.get(1).onCallFailed(exception);
+        verify(serviceCallback).onPartFailed(mSentContainers.get(1), exception);
+        assertEquals(1, limiter.getMaxBatchSize(URL));
+
+        /* The other parts are still sent. */
+        HttpResponse response = new HttpResponse(200);
+        assertEquals(3, mSentContainers.size());
+        mSentCallbacks.get(2).onCallSucceeded(response);
+        verify(serviceCallback).onPartSucceeded(mSentContainers.get(2), response);
+        assertEquals(4, mSentContainers.size());
+        mSentCallbacks.get(3).onCallSucceeded(response);
+        verify(serviceCallback).onCallSucceeded(response);
+        verify(serviceCallback, never()).onCallFailed(any(Exception.class));
+
+        /* Callbacks not notified of parts fail the call instead. */
+        ServiceCallback plainCallback = mock(ServiceCallback.class);
+        limiter.sendAsync(URL, getLogContainer(2, true), plainCallback, mSender);
+        mSentCallbacks.get(4).onCallFailed(exception);
+        verify(plainCallback).onCallFailed(exception);
+        assertEquals(5, mSentContainers.size());
+    }
+
+    @Test
+    public void resetAfterAcceptedBatches() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        limiter.sendAsync(URL, getLogContainer(2, true), mock(ServiceCallback.class), mSender);
+        mSentCallbacks.get(0).onCallFailed(getPayloadTooLargeException());
+        assertEquals(1, limiter.getMaxBatchSize(URL));
+
+        /* The learned batch size is forgotten after enough accepted batches. */
+        for (int i = 1; i < BatchSizeLimiter.ACCEPTED_BATCHES_BEFORE_RESET; i++) {
+            limiter.sendAsync(URL, getLogContainer(1, true), mock(ServiceCallback.class), mSender);
+            mSentCallbacks.get(mSentCallbacks.size() - 1).onCallSucceeded(new HttpResponse(200));
+        }
+        assertEquals(1, limiter.getMaxBatchSize(URL));
+        mSentCallbacks.get(1).onCallSucceeded(new HttpResponse(200));
+        assertEquals(Integer.MAX_VALUE, limiter.getMaxBatchSize(URL));
+    }
+
+    @Test
+    public void partFailure() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        Ingestion.PartCallback serviceCallback = mock(Ingestion.PartCallback.class);
+        limiter.sendAsync(URL, getLogContainer(4, true), serviceCallback, mSender);
+        mSentCallbacks.get(0).onCallFailed(getPayloadTooLargeException());
+
+        /* A failing part fails the logs not reported yet, other parts are not sent. */
+        Exception exception = new Exception();
+        mSentCallbacks.get(1).onCallFailed(exception);
+        verify(serviceCallback).onCallFailed(exception);
+        assertEquals(2, mSentContainers.size());
+
+        /* Other results are ignored. */
+        mSentCallbacks.get(1).onCallSucceeded(new HttpResponse(200));
+        mSentCallbacks.get(1).onCallFailed(new Exception());
+        verify(serviceCallback).onCallFailed(any(Exception.class));
+        verify(serviceCallback, never()).onCallSucceeded(any(HttpResponse.class));
+        verify(serviceCallback, never()).onPartSucceeded(any(LogContainer.class), any(HttpResponse.class));
+        assertEquals(2, mSentContainers.size());
+    }
+
+    @Test
+    public void cancel() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        ServiceCallback serviceCallback = mock(Ingestion.PartCallback.class);
+        ServiceCall call = limiter.sendAsync(URL, getLogContainer(4, true), serviceCallback, mSender);
+        mSentCallbacks.get(0).onCallFailed(getPayloadTooLargeException());
+
+        /* Cancel the part in progress. */
+        call.cancel();
+        verify(mSentCalls.get(1)).cancel();
+
+        /* Results after cancel are ignored and the other parts are not sent. */
+        mSentCallbacks.get(1).onCallSucceeded(new HttpResponse(200));
+        assertEquals(2, mSentContainers.size());
+        verifyZeroInteractions(serviceCallback);
+    }
+
+    @Test
+    public void cancelBeforeSplit() {
+        BatchSizeLimiter limiter = new BatchSizeLimiter();
+        ServiceCallback serviceCallback = mock(ServiceCallback.class);
+        ServiceCall call = limiter.sendAsync(URL, getLogContainer(4, true), serviceCallback, mSender);
+        call.cancel();
+        verify(mSentCalls.get(0)).cancel();
+
+        /* A late rejection is not split. */
+        mSentCallbacks.get(0).onCallFailed(getPayloadTooLargeException());
+        assertEquals(1, mSentContainers.size());
+        assertNotSame(serviceCallback, mSentCallbacks.get(0));
+        verifyZeroInteractions(serviceCallback);
+    }
+}
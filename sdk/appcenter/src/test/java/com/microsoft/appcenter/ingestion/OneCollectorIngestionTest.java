@@ -8,6 +8,7 @@ package com.microsoft.appcenter.ingestion;
 import com.microsoft.appcenter.Constants;
 import com.microsoft.appcenter.http.DefaultHttpClient;
 import com.microsoft.appcenter.http.HttpClient;
+import com.microsoft.appcenter.http.ResponseMode;
 import com.microsoft.appcenter.http.HttpUtils;
 import com.microsoft.appcenter.http.ServiceCall;
 import com.microsoft.appcenter.http.ServiceCallback;
@@ -35,6 +36,8 @@ import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -59,9 +62,11 @@ import static org.mockito.Matchers.contains;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.notNull;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.verifyStatic;
@@ -146,6 +151,15 @@ public class OneCollectorIngestionTest {
         LogSerializer serializer = mock(LogSerializer.class);
         when(serializer.serializeLog(log1)).thenReturn("mockPayload1");
         when(serializer.serializeLog(log2)).thenReturn("mockPayload2");
+        doAnswer(new Answer<Void>() {
+
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+                Writer writer = (Writer) invocation.getArguments()[1];
+                writer.write(invocation.getArguments()[0] == log1 ? "mockPayload1" : "mockPayload2");
+                return null;
+            }
+        }).when(serializer).serializeLog(any(Log.class), any(Writer.class));
 
         /* Configure mock HTTP. */
         ServiceCall call = mock(ServiceCall.class);
@@ -156,7 +170,7 @@ public class OneCollectorIngestionTest {
         OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, serializer);
         ingestion.setLogUrl("http://mock");
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
-        assertEquals(call, ingestion.sendAsync(null, null, container, serviceCallback));
+        ServiceCall serviceCall = ingestion.sendAsync(null, null, container, serviceCallback);
 
         /* Verify call to http client. */
         HashMap<String, String> expectedHeaders = new HashMap<>();
@@ -164,10 +178,27 @@ public class OneCollectorIngestionTest {
         expectedHeaders.put(OneCollectorIngestion.CLIENT_VERSION_KEY, String.format("ACS-Android-Java-no-%s-no", VERSION_NAME));
         expectedHeaders.put(OneCollectorIngestion.UPLOAD_TIME_KEY, "1234");
         expectedHeaders.put(DefaultHttpClient.CONTENT_TYPE_KEY, "application/x-json-stream; charset=utf-8");
-        verify(mHttpClient).callAsync(eq("http://mock"), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), eq(serviceCallback));
+        ArgumentCaptor<ServiceCallback> callback = ArgumentCaptor.forClass(ServiceCallback.class);
+        verify(mHttpClient).callAsync(eq("http://mock"), eq(METHOD_POST), eq(expectedHeaders), notNull(HttpClient.CallTemplate.class), callback.capture());
         assertNotNull(callTemplate.getValue());
         assertEquals("mockPayload1\nmockPayload2\n", callTemplate.getValue().buildRequestBody());
 
+        /* Verify result and cancel are forwarded. */
+        Exception exception = new Exception();
+        callback.getValue().onCallFailed(exception);
+        verify(serviceCallback).onCallFailed(exception);
+        serviceCall.cancel();
+        verify(call).cancel();
+
+        /* Verify streaming serialization produces the same payload. */
+        StringWriter writer = new StringWriter();
+        ((HttpClient.StreamingCallTemplate) callTemplate.getValue()).writeRequestBody(writer);
+        assertEquals("mockPayload1\nmockPayload2\n", writer.toString());
+
+        /* Only the status of the response is needed. */
+        HttpClient.ResponseCallTemplate responseCallTemplate = (HttpClient.ResponseCallTemplate) callTemplate.getValue();
+        assertEquals(ResponseMode.STATUS, responseCallTemplate.getResponseMode());
+
         /* Verify close. */
         ingestion.close();
         verify(mHttpClient).close();
@@ -177,6 +208,25 @@ public class OneCollectorIngestionTest {
         verify(mHttpClient).reopen();
     }
 
+    @Test
+    public void sendAsyncWithIdempotencyKey() {
+        final CommonSchemaLog log = mock(CommonSchemaLog.class);
+        when(log.getExt()).thenReturn(new Extensions() {{
+            setProtocol(new ProtocolExtension());
+        }});
+        LogContainer container = new LogContainer() {{
+            setLogs(Collections.<Log>singletonList(log));
+        }};
+        container.setLogKeys(Collections.singletonList("1@1000"));
+        when(mHttpClient.callAsync(anyString(), anyString(), mHeadersCaptor.capture(), any(HttpClient.CallTemplate.class), any(ServiceCallback.class))).thenReturn(mock(ServiceCall.class));
+
+        /* The idempotency key is derived from the log keys. */
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, mock(LogSerializer.class));
+        ingestion.sendAsync(null, null, container, mock(ServiceCallback.class));
+        assertNotNull(container.getIdempotencyKey());
+        assertEquals(container.getIdempotencyKey(), mHeadersCaptor.getValue().get(Constants.IDEMPOTENCY_KEY));
+    }
+
     @Test
     public void passTicketsDebug() {
         Constants.APPLICATION_DEBUGGABLE = true;
@@ -207,7 +257,9 @@ public class OneCollectorIngestionTest {
             }});
         }};
         Extensions ext2 = new Extensions() {{
-            setProtocol(new ProtocolExtension());
+            setProtocol(new ProtocolExtension() {{
+                setTicketKeys(Collections.singletonList("key2"));
+            }});
         }};
         when(log1.getExt()).thenReturn(ext1);
         when(log2.getExt()).thenReturn(ext2);
@@ -227,7 +279,7 @@ public class OneCollectorIngestionTest {
         OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, serializer);
         ingestion.setLogUrl("http://mock");
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
-        assertEquals(call, ingestion.sendAsync(null, null, container, serviceCallback));
+        assertNotNull(ingestion.sendAsync(null, null, container, serviceCallback));
 
         /* Verify call to http client. */
         Map<String, String> headers = mHeadersCaptor.getValue();
@@ -270,7 +322,7 @@ public class OneCollectorIngestionTest {
         OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, serializer);
         ingestion.setLogUrl("http://mock");
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
-        assertEquals(call, ingestion.sendAsync(null, null, container, serviceCallback));
+        assertNotNull(ingestion.sendAsync(null, null, container, serviceCallback));
 
         /* Verify call to http client was made without headers as JSON failed. */
         Map<String, String> headers = mHeadersCaptor.getValue();
@@ -303,7 +355,7 @@ public class OneCollectorIngestionTest {
         OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, serializer);
         ingestion.setLogUrl("http://mock");
         ServiceCallback serviceCallback = mock(ServiceCallback.class);
-        assertEquals(call, ingestion.sendAsync(null, null, container, serviceCallback));
+        assertNotNull(ingestion.sendAsync(null, null, container, serviceCallback));
 
         /* Verify call to http client. */
         assertNotNull(callTemplate.getValue());
@@ -380,6 +432,19 @@ public class OneCollectorIngestionTest {
         AppCenterLog.verbose(anyString(), anyString());
     }
 
+    @Test
+    public void preconnect() {
+        HttpClient httpClient = mock(HttpClient.class, withSettings().extraInterfaces(HttpClient.Preconnectable.class));
+        OneCollectorIngestion ingestion = new OneCollectorIngestion(httpClient, mock(LogSerializer.class));
+        ingestion.preconnect();
+        verify((HttpClient.Preconnectable) httpClient).preconnect("https://mobile.events.data.microsoft.com/OneCollector/1.0");
+
+        /* Custom log URL. */
+        ingestion.setLogUrl("https://mock");
+        ingestion.preconnect();
+        verify((HttpClient.Preconnectable) httpClient).preconnect("https://mock");
+    }
+
     private HttpClient.CallTemplate getCallTemplate() {
 
         /* Configure mock HTTP to get an instance of IngestionCallTemplate. */
@@ -388,7 +453,7 @@ public class OneCollectorIngestionTest {
         when(mHttpClient.callAsync(anyString(), anyString(), anyMapOf(String.class, String.class), callTemplate.capture(), any(ServiceCallback.class))).thenReturn(call);
         OneCollectorIngestion ingestion = new OneCollectorIngestion(mHttpClient, mock(LogSerializer.class));
         ingestion.setLogUrl("http://mock");
-        assertEquals(call, ingestion.sendAsync(null, null, mock(LogContainer.class), mock(ServiceCallback.class)));
+        assertNotNull(ingestion.sendAsync(null, null, mock(LogContainer.class), mock(ServiceCallback.class)));
         return callTemplate.getValue();
     }
 }
@@ -5,11 +5,17 @@
 
 package com.microsoft.appcenter.ingestion.models;
 
+import com.microsoft.appcenter.ingestion.models.json.BufferedJSONStringer;
+
+import org.json.JSONException;
 import org.junit.Test;
 
 import static com.microsoft.appcenter.test.TestUtils.checkEquals;
 import static com.microsoft.appcenter.test.TestUtils.checkNotEquals;
 import static com.microsoft.appcenter.test.TestUtils.compareSelfNullClass;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 @SuppressWarnings("unused")
 public class DeviceTest {
@@ -207,4 +213,36 @@ public class DeviceTest {
         b.setAppNamespace("a");
         checkEquals(a, b);
     }
+
+    @Test
+    public void writeCachedFields() throws JSONException {
+        Device device = new Device();
+        device.setSdkName("sdk");
+        device.setWrapperSdkName("wrapper");
+        String json = write(device);
+        assertTrue(json.startsWith("{\"wrapperSdkName\":\"wrapper\",\"sdkName\":\"sdk\","));
+
+        /* Cached fields are reused. */
+        assertEquals(json, write(device));
+
+        /* Setters of both classes clear the cache. */
+        device.setOsName("os");
+        Device expected = new Device();
+        expected.setSdkName("sdk");
+        expected.setWrapperSdkName("wrapper");
+        expected.setOsName("os");
+        assertEquals(write(expected), write(device));
+        device.setWrapperSdkName(null);
+        expected.setWrapperSdkName(null);
+        assertEquals(write(expected), write(device));
+        assertNotEquals(json, write(device));
+    }
+
+    private static String write(Device device) throws JSONException {
+        BufferedJSONStringer writer = new BufferedJSONStringer();
+        writer.object();
+        device.write(writer);
+        writer.endObject();
+        return writer.toString();
+    }
 }
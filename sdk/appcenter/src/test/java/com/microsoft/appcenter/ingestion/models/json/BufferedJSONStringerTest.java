@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import org.json.JSONException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings("unused")
+public class BufferedJSONStringerTest {
+
+    @Test
+    public void writeValues() throws JSONException {
+        BufferedJSONStringer writer = new BufferedJSONStringer();
+        writer.object();
+        writer.key("string").value("a\"b\\c/d\n\t\r\b\f\u0001\u001fé");
+        writer.key("long").value(42L);
+        writer.key("double").value(1.5);
+        writer.key("integralDouble").value(2.0);
+        writer.key("negativeZero").value(-0d);
+        writer.key("boolean").value(true);
+        writer.key("null").value(null);
+        writer.key("array").array().value(1).value((Object) 3.0).value(false).object().endObject().array().endArray().endArray();
+        writer.key("k\"ey").value("");
+        writer.endObject();
+        assertEquals("{\"string\":\"a\\\"b\\\\c\\/d\\n\\t\\r\\b\\f\\u0001\\u001fé\"," +
+                "\"long\":42," +
+                "\"double\":1.5," +
+                "\"integralDouble\":2," +
+                "\"negativeZero\":-0," +
+                "\"boolean\":true," +
+                "\"null\":null," +
+                "\"array\":[1,3,false,{},[]]," +
+                "\"k\\\"ey\":\"\"}", writer.toString());
+    }
+
+    @Test
+    public void cachedKeys() throws JSONException {
+
+        /* Same output when the escaped key comes from the cache. */
+        for (int i = 0; i < 2; i++) {
+            BufferedJSONStringer writer = new BufferedJSONStringer();
+            writer.object().key("cached/key").value(i).endObject();
+            assertEquals("{\"cached\\/key\":" + i + "}", writer.toString());
+        }
+    }
+
+    @Test
+    public void growBuffer() throws JSONException {
+        StringBuilder expected = new StringBuilder("[");
+        BufferedJSONStringer writer = new BufferedJSONStringer();
+        writer.array();
+        for (int i = 0; i < BufferedJSONStringer.INITIAL_BUFFER_SIZE; i++) {
+            writer.value("value");
+            expected.append(i == 0 ? "" : ",").append("\"value\"");
+        }
+        writer.endArray();
+        assertEquals(expected.append("]").toString(), writer.toString());
+    }
+
+    @Test
+    public void resetAndWriteTo() throws JSONException, IOException {
+        BufferedJSONStringer writer = new BufferedJSONStringer();
+        writer.object().key("a").value(1).endObject();
+        writer.reset();
+        assertEquals(0, writer.length());
+        assertNull(writer.toString());
+        writer.array().value("b").endArray();
+        StringWriter stringWriter = new StringWriter();
+        writer.writeTo(stringWriter);
+        assertEquals("[\"b\"]", stringWriter.toString());
+        assertEquals(5, writer.length());
+    }
+
+    @Test
+    public void copyAndAppendFields() throws JSONException {
+        BufferedJSONStringer writer = new BufferedJSONStringer();
+        writer.object().key("a").value(1);
+        int start = writer.length();
+        writer.key("b").value("c").key("d").value(2);
+        char[] fields = writer.copyFields(start);
+        assertEquals("\"b\":\"c\",\"d\":2", new String(fields));
+        writer.endObject();
+
+        /* Separators are added around the fields as needed. */
+        writer.reset();
+        writer.object().appendFields(fields);
+        writer.key("e").value(3);
+        writer.appendFields(fields);
+        writer.appendFields(new char[0]);
+        writer.endObject();
+        assertEquals("{\"b\":\"c\",\"d\":2,\"e\":3,\"b\":\"c\",\"d\":2}", writer.toString());
+    }
+
+    @Test
+    public void invalidCalls() throws JSONException {
+        try {
+            new BufferedJSONStringer().value("root");
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            new BufferedJSONStringer().key("root");
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            new BufferedJSONStringer().endObject();
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            new BufferedJSONStringer().object().key(null);
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            new BufferedJSONStringer().array().value(Double.NaN);
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            new BufferedJSONStringer().array().value(Double.POSITIVE_INFINITY);
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            new BufferedJSONStringer().appendFields(new char[0]);
+            fail();
+        } catch (JSONException ignored) {
+        }
+        try {
+            new BufferedJSONStringer().object().endObject().object();
+            fail();
+        } catch (JSONException ignored) {
+        }
+    }
+}
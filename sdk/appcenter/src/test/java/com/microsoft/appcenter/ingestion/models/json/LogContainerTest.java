@@ -12,9 +12,14 @@ import com.microsoft.appcenter.test.TestUtils;
 
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.UUID;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
 @SuppressWarnings("unused")
 public class LogContainerTest {
 
@@ -53,4 +58,22 @@ public class LogContainerTest {
         TestUtils.compareSelfNullClass(container1);
         TestUtils.checkNotEquals(container1, container2);
     }
+
+    @Test
+    public void idempotencyKey() {
+        LogContainer container = new LogContainer();
+        assertNull(container.getIdempotencyKey());
+        container.setLogKeys(Collections.<String>emptyList());
+        assertNull(container.getIdempotencyKey());
+
+        /* Depends only on the log keys, in order. */
+        container.setLogKeys(Arrays.asList("1@1000", "2@1000"));
+        LogContainer sameLogs = new LogContainer();
+        sameLogs.setLogKeys(Arrays.asList("1@1000", "2@1000"));
+        assertEquals(container.getIdempotencyKey(), sameLogs.getIdempotencyKey());
+        sameLogs.setLogKeys(Arrays.asList("2@1000", "1@1000"));
+        assertNotEquals(container.getIdempotencyKey(), sameLogs.getIdempotencyKey());
+        sameLogs.setLogKeys(Collections.singletonList("1@1000"));
+        assertNotEquals(container.getIdempotencyKey(), sameLogs.getIdempotencyKey());
+    }
 }
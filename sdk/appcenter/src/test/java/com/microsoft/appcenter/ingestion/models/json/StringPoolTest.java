@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) Microsoft Corporation. All rights reserved.
+ * Licensed under the MIT License.
+ */
+
+package com.microsoft.appcenter.ingestion.models.json;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+@SuppressWarnings({"unused", "StringOperationCanBeSimplified"})
+public class StringPoolTest {
+
+    @After
+    public void tearDown() {
+        StringPool.setCurrent(null);
+    }
+
+    @Test
+    public void internAndStats() {
+        StringPool pool = new StringPool(10);
+        String first = new String("model");
+        String second = new String("model");
+        assertSame(first, pool.intern(first));
+        assertSame(first, pool.intern(second));
+
+        /* Looking up the pooled instance itself is not a hit. */
+        assertSame(first, pool.intern(first));
+        StringPoolStats stats = pool.getStats();
+        assertEquals(3, stats.getLookupCount());
+        assertEquals(1, stats.getHitCount());
+        assertEquals(1 / 3d, stats.getHitRate(), 0.0001);
+        assertEquals(10, stats.getBytesSaved());
+        assertEquals(1, stats.getSize());
+    }
+
+    @Test
+    public void emptyStats() {
+        assertEquals(0, new StringPool(10).getStats().getHitRate(), 0);
+    }
+
+    @Test
+    public void bounded() {
+        StringPool pool = new StringPool(1);
+        String first = new String("a");
+        pool.intern(first);
+        String other = new String("b");
+        assertSame(other, pool.intern(other));
+        assertNotSame(other, pool.intern(new String("b")));
+        assertEquals(1, pool.size());
+        assertSame(first, pool.intern(new String("a")));
+    }
+
+    @Test
+    public void currentPool() {
+        String first = new String("name");
+        assertSame(first, StringPool.internCurrent(first));
+        StringPool pool = new StringPool(10);
+        assertNull(StringPool.setCurrent(pool));
+        assertSame(first, StringPool.internCurrent(first));
+        assertSame(first, StringPool.internCurrent(new String("name")));
+        assertNull(StringPool.internCurrent(null));
+        assertSame(pool, StringPool.setCurrent(null));
+        String second = new String("name");
+        assertSame(second, StringPool.internCurrent(second));
+    }
+}
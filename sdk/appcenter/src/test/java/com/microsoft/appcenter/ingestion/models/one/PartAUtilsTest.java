@@ -17,7 +17,9 @@ import java.util.Date;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -86,6 +88,96 @@ public class PartAUtilsTest {
         assertEquals(extensions, commonSchemaLog.getExt());
     }
 
+    @Test
+    public void partAIsCachedPerDeviceUserAndTarget() {
+        Device device = getDevice(0);
+        Log log = mock(Log.class);
+        when(log.getDevice()).thenReturn(device);
+        when(log.getUserId()).thenReturn("alice");
+        MockCommonSchemaLog first = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, first, "T1UUID1-T2UUID2");
+
+        /* Same device by value, user and target: extensions are shared, protocol and SDK are not. */
+        when(log.getDevice()).thenReturn(getDevice(0));
+        MockCommonSchemaLog second = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, second, "T1UUID1-T2UUID2");
+        assertSame(first.getExt().getOs(), second.getExt().getOs());
+        assertSame(first.getExt().getApp(), second.getExt().getApp());
+        assertSame(first.getExt().getUser(), second.getExt().getUser());
+        assertNotSame(first.getExt().getProtocol(), second.getExt().getProtocol());
+        assertNotSame(first.getExt().getSdk(), second.getExt().getSdk());
+        assertEquals(first.getExt(), second.getExt());
+
+        /* Changing the user updates the template. */
+        when(log.getUserId()).thenReturn("bob");
+        MockCommonSchemaLog third = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, third, "T1UUID1-T2UUID2");
+        assertEquals("c:bob", third.getExt().getUser().getLocalId());
+        assertEquals("c:alice", first.getExt().getUser().getLocalId());
+
+        /* Changing the device updates the template. */
+        when(log.getDevice()).thenReturn(getDevice(60));
+        MockCommonSchemaLog fourth = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, fourth, "T1UUID1-T2UUID2");
+        assertEquals("+01:00", fourth.getExt().getLoc().getTz());
+        assertEquals("+00:00", first.getExt().getLoc().getTz());
+
+        /* Other target. */
+        MockCommonSchemaLog fifth = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, fifth, "T3UUID3-T4UUID4");
+        assertEquals("o:T3UUID3", fifth.getIKey());
+        assertEquals("o:T1UUID1", fourth.getIKey());
+    }
+
+    @Test
+    public void writableExtensionsAreCopied() {
+        Log log = mock(Log.class);
+        when(log.getDevice()).thenReturn(getDevice(0));
+        when(log.getUserId()).thenReturn("alice");
+        MockCommonSchemaLog first = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, first, "T1UUID1-T2UUID2");
+        MockCommonSchemaLog second = new MockCommonSchemaLog();
+        PartAUtils.addPartAFromLog(log, second, "T1UUID1-T2UUID2");
+
+        /* Modify the first log. */
+        AppExtension app = PartAUtils.getWritableApp(first);
+        app.setName("name");
+        PartAUtils.getWritableUser(first).setLocalId("c:bob");
+        PartAUtils.getWritableDevice(first).setLocalId("a:id");
+        assertSame(app, first.getExt().getApp());
+        assertEquals("name", first.getExt().getApp().getName());
+        assertEquals("1.0.0", first.getExt().getApp().getVer());
+        assertEquals("c:bob", first.getExt().getUser().getLocalId());
+        assertEquals("en-US", first.getExt().getUser().getLocale());
+        assertEquals("a:id", first.getExt().getDevice().getLocalId());
+
+        /* The second log is not modified. */
+        assertNull(second.getExt().getApp().getName());
+        assertEquals("c:alice", second.getExt().getUser().getLocalId());
+        assertNull(second.getExt().getDevice().getLocalId());
+
+        /* Writable extensions are created if missing. */
+        MockCommonSchemaLog empty = new MockCommonSchemaLog();
+        empty.setExt(new Extensions());
+        assertNotNull(PartAUtils.getWritableApp(empty));
+        assertNotNull(PartAUtils.getWritableUser(empty));
+        assertNotNull(PartAUtils.getWritableDevice(empty));
+        assertNotNull(empty.getExt().getApp());
+        assertNotNull(empty.getExt().getUser());
+        assertNotNull(empty.getExt().getDevice());
+    }
+
+    @Test
+    public void cacheIsBounded() {
+        Log log = mock(Log.class);
+        when(log.getDevice()).thenReturn(getDevice(0));
+        for (int i = 0; i <= PartAUtils.MAX_CACHED_PART_A; i++) {
+            MockCommonSchemaLog commonSchemaLog = new MockCommonSchemaLog();
+            PartAUtils.addPartAFromLog(log, commonSchemaLog, "T" + i + "-UUID");
+            assertEquals("o:T" + i, commonSchemaLog.getIKey());
+        }
+    }
+
     /**
      * Convert to Part A and check.
      */
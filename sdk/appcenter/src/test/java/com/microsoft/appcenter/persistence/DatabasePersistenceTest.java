@@ -22,19 +22,25 @@ import com.microsoft.appcenter.utils.storage.DatabaseManager;
 import org.json.JSONException;
 import org.junit.Rule;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.rule.PowerMockRule;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.microsoft.appcenter.Flags.NORMAL;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
@@ -43,7 +49,10 @@ import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNotNull;
 import static org.mockito.Matchers.isNull;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -138,6 +147,137 @@ public class DatabasePersistenceTest {
         assertEquals(0, persistence.mPendingDbIdentifiers.size());
     }
 
+    @Test
+    public void clearPendingLogStateOfBatch() throws Exception {
+
+        /* Mock logs. */
+        final int groupCount = 2;
+        final int logCount = 3;
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
+        when(mockDatabaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        for (int i = 0; i < groupCount; i++) {
+            List<ContentValues> values = new ArrayList<>();
+            for (long l = 1; l <= logCount; l++) {
+                ContentValues value = mock(ContentValues.class);
+                when(value.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(l + i * logCount);
+                when(value.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("{}");
+                values.add(value);
+            }
+            MockCursor mockCursor = new MockCursor(values);
+            mockCursor.mockBuildValues(mockDatabaseManager);
+            when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), eq(new String[]{String.valueOf(i)}), anyString()))
+                    .thenReturn(mockCursor);
+        }
+        LogSerializer mockLogSerializer = mock(LogSerializer.class);
+        when(mockLogSerializer.deserializeLog(anyString(), anyString())).thenReturn(mock(Log.class));
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(mockLogSerializer);
+
+        /* Get a batch for each group. */
+        String batchId = persistence.getLogs("0", Collections.<String>emptyList(), logCount, new ArrayList<Log>());
+        persistence.getLogs("1", Collections.<String>emptyList(), logCount, new ArrayList<Log>());
+        assertNotNull(batchId);
+
+        /* Only the first batch is released. */
+        persistence.clearPendingLogState("0", batchId);
+        assertEquals(1, persistence.mPendingDbIdentifiersGroups.size());
+        assertEquals(logCount, persistence.mPendingDbIdentifiers.size());
+        assertFalse(persistence.mPendingDbIdentifiers.contains(1L));
+        assertTrue(persistence.mPendingDbIdentifiers.contains(logCount + 1L));
+
+        /* Unknown batch is ignored. */
+        persistence.clearPendingLogState("0", batchId);
+        assertEquals(logCount, persistence.mPendingDbIdentifiers.size());
+    }
+
+    @Test
+    public void logKeysDoNotDependOnBatch() throws Exception {
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
+        when(mockDatabaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        List<ContentValues> values = new ArrayList<>();
+        for (long l = 1; l <= 2; l++) {
+            ContentValues value = mock(ContentValues.class);
+            when(value.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(l);
+            when(value.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("{}");
+            values.add(value);
+        }
+        MockCursor firstCursor = new MockCursor(values);
+        firstCursor.mockBuildValues(mockDatabaseManager);
+        MockCursor secondCursor = new MockCursor(values.subList(1, 2));
+        secondCursor.mockBuildValues(mockDatabaseManager);
+        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString()))
+                .thenReturn(firstCursor, secondCursor);
+        Log log = mock(Log.class);
+        when(log.getTimestamp()).thenReturn(new Date(1000));
+        LogSerializer mockLogSerializer = mock(LogSerializer.class);
+        when(mockLogSerializer.deserializeLog(anyString(), anyString())).thenReturn(log);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(mockLogSerializer);
+
+        /* Keys are made of the row identifier and the timestamp. */
+        String batchId = persistence.getLogs("group", Collections.<String>emptyList(), 2, new ArrayList<Log>());
+        assertNotNull(batchId);
+        assertEquals(Arrays.asList("1@1000", "2@1000"), persistence.getLogKeys("group", batchId));
+        assertEquals(Collections.<String>emptyList(), persistence.getLogKeys("otherGroup", batchId));
+
+        /* A log read again in another batch keeps its key. */
+        persistence.clearPendingLogState("group", batchId);
+        assertEquals(Collections.<String>emptyList(), persistence.getLogKeys("group", batchId));
+        String otherBatchId = persistence.getLogs("group", Collections.<String>emptyList(), 2, new ArrayList<Log>());
+        assertNotNull(otherBatchId);
+        assertNotEquals(batchId, otherBatchId);
+        assertEquals(Collections.singletonList("2@1000"), persistence.getLogKeys("group", otherBatchId));
+
+        /* Keys are released with the batch. */
+        persistence.deleteLogs("group", otherBatchId);
+        assertEquals(Collections.<String>emptyList(), persistence.getLogKeys("group", otherBatchId));
+    }
+
+    @Test
+    public void deleteSomeLogsOfBatch() throws Exception {
+        DatabaseManager mockDatabaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(mockDatabaseManager);
+        when(mockDatabaseManager.nextValues(any(Cursor.class))).thenCallRealMethod();
+        List<ContentValues> values = new ArrayList<>();
+        for (long l = 1; l <= 3; l++) {
+            ContentValues value = mock(ContentValues.class);
+            when(value.getAsLong(DatabaseManager.PRIMARY_KEY)).thenReturn(l);
+            when(value.getAsString(DatabasePersistence.COLUMN_LOG)).thenReturn("{}");
+            values.add(value);
+        }
+        MockCursor cursor = new MockCursor(values);
+        cursor.mockBuildValues(mockDatabaseManager);
+        when(mockDatabaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(cursor);
+        Log log = mock(Log.class);
+        when(log.getTimestamp()).thenReturn(new Date(1000));
+        LogSerializer mockLogSerializer = mock(LogSerializer.class);
+        when(mockLogSerializer.deserializeLog(anyString(), anyString())).thenReturn(log);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.setLogSerializer(mockLogSerializer);
+        String batchId = persistence.getLogs("group", Collections.<String>emptyList(), 3, new ArrayList<Log>());
+        assertNotNull(batchId);
+
+        /* Unknown batches are ignored. */
+        persistence.deleteLogs("group", "unknown", Collections.singletonList("2@1000"));
+        verify(mockDatabaseManager, never()).delete(anyLong());
+
+        /* Only the given logs are deleted, the others stay pending with the same ID. */
+        persistence.deleteLogs("group", batchId, Collections.singletonList("2@1000"));
+        verify(mockDatabaseManager).delete(2L);
+        verify(mockDatabaseManager, never()).delete(1L);
+        verify(mockDatabaseManager, never()).delete(3L);
+        assertEquals(Arrays.asList("1@1000", "3@1000"), persistence.getLogKeys("group", batchId));
+        assertEquals(Arrays.asList(1L, 3L), persistence.mPendingDbIdentifiersGroups.get("group" + batchId));
+
+        /* Deleting the batch deletes the remaining logs. */
+        persistence.deleteLogs("group", batchId);
+        verify(mockDatabaseManager).delete(1L);
+        verify(mockDatabaseManager).delete(3L);
+        verify(mockDatabaseManager).delete(2L);
+    }
+
     @Test
     public void getLogsWithGetCursorException() throws Exception {
 
@@ -423,6 +563,127 @@ public class DatabasePersistenceTest {
         persistence.putLog(mock(Log.class), "test-p1", NORMAL);
     }
 
+    @Test
+    public void putLogsInTransaction() throws Exception {
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        when(databaseManager.beginTransaction()).thenReturn(true);
+        when(databaseManager.setTransactionSuccessful()).thenReturn(true);
+        when(databaseManager.endTransaction()).thenReturn(true);
+        when(databaseManager.getMaxSize()).thenReturn(20480L);
+        when(databaseManager.put(any(ContentValues.class), anyString())).thenReturn(1L, -1L);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        persistence.setLogSerializer(logSerializer);
+
+        /* Persist logs, second one fails to be inserted. */
+        Log log1 = mock(Log.class);
+        Log log2 = mock(Log.class);
+        Map<Log, PersistenceException> failedLogs = new IdentityHashMap<>();
+        persistence.putLogs(Arrays.asList(log1, log2), "test-p1", NORMAL, failedLogs);
+
+        /* Verify a single committed transaction and failure only for the second log. */
+        InOrder inOrder = inOrder(databaseManager);
+        inOrder.verify(databaseManager).beginTransaction();
+        inOrder.verify(databaseManager, times(2)).put(any(ContentValues.class), anyString());
+        inOrder.verify(databaseManager).setTransactionSuccessful();
+        inOrder.verify(databaseManager).endTransaction();
+        assertEquals(1, failedLogs.size());
+        assertTrue(failedLogs.containsKey(log2));
+    }
+
+    @Test
+    public void putLogsFallbackAndCommitFailure() throws Exception {
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        when(databaseManager.beginTransaction()).thenReturn(false).thenReturn(true);
+        when(databaseManager.setTransactionSuccessful()).thenReturn(true);
+        when(databaseManager.endTransaction()).thenReturn(false);
+        when(databaseManager.getMaxSize()).thenReturn(20480L);
+        when(databaseManager.put(any(ContentValues.class), anyString())).thenReturn(1L);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        persistence.setLogSerializer(logSerializer);
+
+        /* Cannot start transaction: logs are written one by one. */
+        Map<Log, PersistenceException> failedLogs = new IdentityHashMap<>();
+        persistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class)), "test-p1", NORMAL, failedLogs);
+        verify(databaseManager, times(2)).put(any(ContentValues.class), anyString());
+        verify(databaseManager, never()).endTransaction();
+        assertTrue(failedLogs.isEmpty());
+
+        /* Commit fails: every log is reported as failed. */
+        persistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class)), "test-p1", NORMAL, failedLogs);
+        verify(databaseManager).endTransaction();
+        assertEquals(2, failedLogs.size());
+    }
+
+    @Test
+    public void putLogsMarkSuccessfulFailure() throws Exception {
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        when(databaseManager.beginTransaction()).thenReturn(true);
+        when(databaseManager.setTransactionSuccessful()).thenReturn(false);
+        when(databaseManager.endTransaction()).thenReturn(true);
+        when(databaseManager.getMaxSize()).thenReturn(20480L);
+        when(databaseManager.put(any(ContentValues.class), anyString())).thenReturn(1L);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+
+        /* Set a mock log serializer. */
+        LogSerializer logSerializer = mock(LogSerializer.class);
+        when(logSerializer.serializeLog(any(Log.class))).thenReturn("mock");
+        persistence.setLogSerializer(logSerializer);
+
+        /* Transaction ends without error but is rolled back: every log is reported as failed. */
+        Map<Log, PersistenceException> failedLogs = new IdentityHashMap<>();
+        persistence.putLogs(Arrays.asList(mock(Log.class), mock(Log.class)), "test-p1", NORMAL, failedLogs);
+        verify(databaseManager).endTransaction();
+        assertEquals(2, failedLogs.size());
+    }
+
+    @Test
+    public void deleteOldestLogSkipsPendingLogs() throws Exception {
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        Cursor cursor = mock(Cursor.class);
+        when(cursor.moveToNext()).thenReturn(true, true, false);
+        when(cursor.getLong(0)).thenReturn(1L, 2L);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString()))
+                .thenReturn(cursor).thenThrow(new RuntimeException());
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+        persistence.mPendingDbIdentifiers.add(1L);
+
+        /* First log is being sent, the next one is deleted. */
+        assertTrue(persistence.deleteOldestLog("test-p1", Collections.<String>emptyList()));
+        verify(databaseManager, never()).delete(1L);
+        verify(databaseManager).delete(2L);
+        verify(cursor).close();
+
+        /* Query failure. */
+        assertFalse(persistence.deleteOldestLog("test-p1", Collections.<String>emptyList()));
+    }
+
+    @Test
+    public void deleteOldestLogSkipsPausedTargets() throws Exception {
+        DatabaseManager databaseManager = mock(DatabaseManager.class);
+        whenNew(DatabaseManager.class).withAnyArguments().thenReturn(databaseManager);
+        Cursor cursor = mock(Cursor.class);
+        when(databaseManager.getCursor(any(SQLiteQueryBuilder.class), any(String[].class), any(String[].class), anyString())).thenReturn(cursor);
+        DatabasePersistence persistence = new DatabasePersistence(mock(Context.class));
+
+        /* Paused target keys are excluded by the query, nothing else to delete. */
+        assertFalse(persistence.deleteOldestLog("test-p1", Collections.singletonList("paused")));
+        verify(databaseManager).getCursor(any(SQLiteQueryBuilder.class), any(String[].class), eq(new String[]{"test-p1", "paused"}), anyString());
+        verify(databaseManager, never()).delete(anyLong());
+        verify(cursor).close();
+    }
+
     private static class MockCursor extends CursorWrapper {
 
         private final List<ContentValues> mList;
@@ -11,8 +11,10 @@ import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.NetworkRequest;
+import android.telephony.TelephonyManager;
 
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 
@@ -148,4 +150,45 @@ public class NetworkStateHelperTestBeforeLollipop extends AbstractNetworkStateHe
         verify(mConnectivityManager, never()).unregisterNetworkCallback(any(ConnectivityManager.NetworkCallback.class));
         verify(mConnectivityManager, never()).registerNetworkCallback(any(NetworkRequest.class), any(ConnectivityManager.NetworkCallback.class));
     }
+
+    @Test
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    public void networkQuality() {
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+        ArgumentCaptor<BroadcastReceiver> receiver = ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(mContext).registerReceiver(receiver.capture(), any(IntentFilter.class));
+        Intent intent = mock(Intent.class);
+        assertEquals(NetworkQuality.UNKNOWN, helper.getNetworkQuality());
+        NetworkInfo networkInfo = mock(NetworkInfo.class);
+        when(mConnectivityManager.getActiveNetworkInfo()).thenReturn(networkInfo);
+        receiver.getValue().onReceive(mContext, intent);
+        assertEquals(NetworkQuality.UNKNOWN, helper.getNetworkQuality());
+
+        /* Wi-Fi. */
+        when(networkInfo.isConnected()).thenReturn(true);
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_WIFI);
+        receiver.getValue().onReceive(mContext, intent);
+        assertEquals(NetworkLinkType.UNMETERED, helper.getNetworkQuality().getLinkType());
+
+        /* Quality is cached until the network changes. */
+        when(mConnectivityManager.isActiveNetworkMetered()).thenReturn(true);
+        when(networkInfo.getType()).thenReturn(ConnectivityManager.TYPE_MOBILE);
+        when(networkInfo.getSubtype()).thenReturn(TelephonyManager.NETWORK_TYPE_HSPA);
+        assertEquals(NetworkLinkType.UNMETERED, helper.getNetworkQuality().getLinkType());
+        verify(mConnectivityManager, times(3)).getActiveNetworkInfo();
+
+        /* Mobile. */
+        receiver.getValue().onReceive(mContext, intent);
+        NetworkQuality quality = helper.getNetworkQuality();
+        assertEquals(NetworkLinkType.METERED, quality.getLinkType());
+        assertEquals(3, quality.getCellularGeneration());
+        when(networkInfo.getSubtype()).thenReturn(TelephonyManager.NETWORK_TYPE_EDGE);
+        receiver.getValue().onReceive(mContext, intent);
+        assertEquals(NetworkLinkType.CONSTRAINED, helper.getNetworkQuality().getLinkType());
+
+        /* Permission denied. */
+        when(mConnectivityManager.getActiveNetworkInfo()).thenThrow(new SecurityException());
+        receiver.getValue().onReceive(mContext, intent);
+        assertEquals(NetworkQuality.UNKNOWN, helper.getNetworkQuality());
+    }
 }
@@ -6,6 +6,7 @@
 package com.microsoft.appcenter.utils;
 
 import android.content.BroadcastReceiver;
+import android.content.Intent;
 import android.content.IntentFilter;
 import android.net.ConnectivityManager;
 import android.net.Network;
@@ -13,6 +14,7 @@ import android.net.NetworkCapabilities;
 import android.net.NetworkInfo;
 import android.net.NetworkRequest;
 import android.os.Build;
+import android.telephony.TelephonyManager;
 
 import com.microsoft.appcenter.test.TestUtils;
 
@@ -22,20 +24,24 @@ import org.junit.Test;
 import org.mockito.ArgumentCaptor;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
-import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mock;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 
-@PrepareForTest(NetworkStateHelper.class)
+@PrepareForTest({NetworkStateHelper.class, NetworkCapabilities.class})
 public class NetworkStateHelperTestFromLollipop extends AbstractNetworkStateHelperTest {
 
     @Before
@@ -176,4 +182,130 @@ public class NetworkStateHelperTestFromLollipop extends AbstractNetworkStateHelp
         verify(builder).addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
         verify(builder, never()).addCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED);
     }
+
+    @Test
+    @SuppressWarnings({"deprecation", "RedundantSuppression"})
+    public void networkQuality() throws Exception {
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.N);
+        NetworkStateHelper helper = new NetworkStateHelper(mContext);
+        ArgumentCaptor<ConnectivityManager.NetworkCallback> callback = ArgumentCaptor.forClass(ConnectivityManager.NetworkCallback.class);
+        verify(mConnectivityManager).registerNetworkCallback(any(NetworkRequest.class), callback.capture());
+        ArgumentCaptor<BroadcastReceiver> dataSaverReceiver = ArgumentCaptor.forClass(BroadcastReceiver.class);
+        verify(mContext).registerReceiver(dataSaverReceiver.capture(), any(IntentFilter.class));
+
+        /* No default network. */
+        assertEquals(NetworkLinkType.UNKNOWN, helper.getNetworkQuality().getLinkType());
+        Network network = mock(Network.class);
+        when(mConnectivityManager.getActiveNetwork()).thenReturn(network);
+        callback.getValue().onAvailable(network);
+        assertEquals(NetworkLinkType.UNKNOWN, helper.getNetworkQuality().getLinkType());
+
+        /* Wi-Fi. */
+        NetworkCapabilities capabilities = mock(NetworkCapabilities.class);
+        when(mConnectivityManager.getNetworkCapabilities(network)).thenReturn(capabilities);
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)).thenReturn(true);
+        when(capabilities.getLinkDownstreamBandwidthKbps()).thenReturn(30000);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        NetworkQuality quality = helper.getNetworkQuality();
+        assertEquals(NetworkLinkType.UNMETERED, quality.getLinkType());
+        assertFalse(quality.isMetered());
+        assertTrue(quality.isValidated());
+        assertEquals(0, quality.getCellularGeneration());
+        assertEquals(30000, quality.getDownstreamBandwidthKbps());
+        assertFalse(quality.isDataSaverEnabled());
+
+        /* Quality is cached until the network changes. */
+        assertSame(quality, helper.getNetworkQuality());
+        verify(mConnectivityManager, times(3)).getActiveNetwork();
+
+        /* Captive portal: the default network capabilities are applied without inspecting the network again. */
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)).thenReturn(false);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertEquals(NetworkLinkType.CONSTRAINED, helper.getNetworkQuality().getLinkType());
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)).thenReturn(true);
+        verify(mConnectivityManager, times(3)).getActiveNetwork();
+        verify(mConnectivityManager, times(2)).getNetworkCapabilities(network);
+
+        /* 5G. */
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(false);
+        when(capabilities.hasTransport(NetworkCapabilities.TRANSPORT_CELLULAR)).thenReturn(true);
+        NetworkInfo networkInfo = mock(NetworkInfo.class);
+        when(mConnectivityManager.getNetworkInfo(network)).thenReturn(networkInfo);
+        when(networkInfo.getSubtype()).thenReturn(TelephonyManager.NETWORK_TYPE_NR);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        quality = helper.getNetworkQuality();
+        assertEquals(NetworkLinkType.METERED, quality.getLinkType());
+        assertTrue(quality.isMetered());
+        assertEquals(5, quality.getCellularGeneration());
+
+        /* Data saver only restricts metered networks. */
+        when(mConnectivityManager.getRestrictBackgroundStatus()).thenReturn(ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED);
+        assertFalse(helper.getNetworkQuality().isDataSaverEnabled());
+        dataSaverReceiver.getValue().onReceive(mContext, mock(Intent.class));
+        quality = helper.getNetworkQuality();
+        assertTrue(quality.isDataSaverEnabled());
+        assertEquals(NetworkLinkType.CONSTRAINED, quality.getLinkType());
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        quality = helper.getNetworkQuality();
+        assertTrue(quality.isDataSaverEnabled());
+        assertEquals(NetworkLinkType.UNMETERED, quality.getLinkType());
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(false);
+        when(mConnectivityManager.getRestrictBackgroundStatus()).thenReturn(ConnectivityManager.RESTRICT_BACKGROUND_STATUS_WHITELISTED);
+        dataSaverReceiver.getValue().onReceive(mContext, mock(Intent.class));
+
+        /* 2G or low bandwidth. */
+        when(networkInfo.getSubtype()).thenReturn(TelephonyManager.NETWORK_TYPE_EDGE);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertEquals(NetworkLinkType.CONSTRAINED, helper.getNetworkQuality().getLinkType());
+        when(networkInfo.getSubtype()).thenReturn(TelephonyManager.NETWORK_TYPE_LTE);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertEquals(NetworkLinkType.METERED, helper.getNetworkQuality().getLinkType());
+        when(capabilities.getLinkDownstreamBandwidthKbps()).thenReturn(100);
+        callback.getValue().onCapabilitiesChanged(network, capabilities);
+        assertEquals(NetworkLinkType.CONSTRAINED, helper.getNetworkQuality().getLinkType());
+        when(capabilities.getLinkDownstreamBandwidthKbps()).thenReturn(0);
+
+        /* A change of another network means the default network may have changed. */
+        Network wifi = mock(Network.class);
+        NetworkCapabilities wifiCapabilities = mock(NetworkCapabilities.class);
+        when(wifiCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        when(wifiCapabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_VALIDATED)).thenReturn(true);
+        when(mConnectivityManager.getActiveNetwork()).thenReturn(wifi);
+        when(mConnectivityManager.getNetworkCapabilities(wifi)).thenReturn(wifiCapabilities);
+        callback.getValue().onCapabilitiesChanged(wifi, wifiCapabilities);
+        assertEquals(NetworkLinkType.UNMETERED, helper.getNetworkQuality().getLinkType());
+        when(mConnectivityManager.getActiveNetwork()).thenReturn(network);
+        callback.getValue().onLost(wifi);
+
+        /* Data saver status is not checked before Android N. */
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.M);
+        when(mConnectivityManager.getRestrictBackgroundStatus()).thenReturn(ConnectivityManager.RESTRICT_BACKGROUND_STATUS_ENABLED);
+        assertEquals(NetworkLinkType.METERED, helper.getNetworkQuality().getLinkType());
+
+        /* Permission denied. */
+        when(mConnectivityManager.getActiveNetwork()).thenThrow(new SecurityException());
+        callback.getValue().onAvailable(network);
+        assertEquals(NetworkLinkType.UNKNOWN, helper.getNetworkQuality().getLinkType());
+
+        /* Not cached when network changes are not received. */
+        TestUtils.setInternalState(Build.VERSION.class, "SDK_INT", Build.VERSION_CODES.N);
+        helper.close();
+        verify(mContext).unregisterReceiver(dataSaverReceiver.getValue());
+        doReturn(network).when(mConnectivityManager).getActiveNetwork();
+        when(mConnectivityManager.getRestrictBackgroundStatus()).thenReturn(ConnectivityManager.RESTRICT_BACKGROUND_STATUS_WHITELISTED);
+        assertEquals(NetworkLinkType.METERED, helper.getNetworkQuality().getLinkType());
+        when(capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_NOT_METERED)).thenReturn(true);
+        assertEquals(NetworkLinkType.UNMETERED, helper.getNetworkQuality().getLinkType());
+    }
+
+    @Test
+    public void cellularGenerations() {
+        assertEquals(2, NetworkStateHelper.getCellularGeneration(TelephonyManager.NETWORK_TYPE_GPRS));
+        assertEquals(3, NetworkStateHelper.getCellularGeneration(TelephonyManager.NETWORK_TYPE_HSPAP));
+        assertEquals(4, NetworkStateHelper.getCellularGeneration(TelephonyManager.NETWORK_TYPE_LTE));
+        assertEquals(5, NetworkStateHelper.getCellularGeneration(TelephonyManager.NETWORK_TYPE_NR));
+        assertEquals(0, NetworkStateHelper.getCellularGeneration(TelephonyManager.NETWORK_TYPE_UNKNOWN));
+    }
 }